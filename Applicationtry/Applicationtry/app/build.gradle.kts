@@ -33,6 +33,7 @@ android {
 
 dependencies {
 
+    implementation(project(":processing"))
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.activity)
@@ -45,5 +46,4 @@ dependencies {
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
-    implementation ("com.jjoe64:graphview:4.2.2")
 }
@@ -0,0 +1,652 @@
+/**
+ * This service owns the acquisition: the Bluetooth devices, the sample history of every channel,
+ * the session recorder and the vitals rules. It outlives the activity, so backgrounding the app or
+ * turning the screen off keeps the GATT connections and the recording going; once acquisition
+ * runs it is a foreground service with a notification. The activity binds to it and attaches as a
+ * {@link Viewer} while it is visible, and finds the history and the current vitals right there,
+ * without reconnecting.
+ * Sensors can be added while it runs, e.g. for more beds; each gets its own channels, and an
+ * oximeter its own {@link VitalsRuleEngine}, which runs on the worker pool the device's pipeline
+ * decodes on.
+ * The device buffers are drained on the main thread: once per display frame while a viewer is
+ * attached, so the waveform sees new samples every frame, and every {@link #BACKGROUND_DRAIN_MS}
+ * otherwise, when there are no frames to wait for.
+ * Session exports run here as well, so they are not cancelled when the activity is recreated.
+ */
+package com.example.Application;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.bluetooth.BluetoothManager;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.os.Binder;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import android.view.Choreographer;
+import android.widget.Toast;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.example.applicationtrial.R;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class AcquisitionService extends Service implements DataReciever {
+    private static final String TAG = "AcquisitionService";
+    // stops the acquisition, sent by the notification
+    public static final String ACTION_STOP = "com.example.Application.action.STOP_ACQUISITION";
+    // exports the session named by EXTRA_SESSION in the format of EXTRA_FORMAT, see startExport
+    public static final String ACTION_EXPORT = "com.example.Application.action.EXPORT_SESSION";
+    public static final String EXTRA_SESSION = "session";
+    // SessionExporter.FORMAT_CSV or FORMAT_NPY
+    public static final String EXTRA_FORMAT = "format";
+    // the device rings hold 1024 samples, about 10 s at 100 Hz
+    public static final long BACKGROUND_DRAIN_MS = 100;
+    // about 10 minutes of history at 100 Hz
+    private static final int HISTORY_CAPACITY = 1 << 16;
+    private static final double REPLAY_TEXT_SAMPLE_RATE = 100;
+    private static final String NOTIFICATION_CHANNEL = "acquisition";
+    private static final int NOTIFICATION_ID = 1;
+
+    /**
+     * What the activity shows. All calls are made on the main thread.
+     */
+    public interface Viewer {
+        void setSpo2Text(char[] text, int start, int length);
+
+        void setPulseRateText(char[] text, int start, int length);
+
+        void setMockupText(char[] text, int start, int length);
+
+        /**
+         * Shows the warning box while the alert button raised it or a critical rule is active.
+         */
+        void onWarningChanged(boolean visible);
+    }
+
+    /**
+     * Gives the activity in this process the service itself.
+     */
+    public final class LocalBinder extends Binder {
+        public AcquisitionService getService() {
+            return AcquisitionService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // sample history of every channel, indexed by the DataReciever channel id; null for the
+    // channels of sensors that were not added
+    private final SampleStore[] channels = new SampleStore[BleConnectionManager.MAX_CHANNELS];
+    private BleConnectionManager connectionManager;
+    private SessionRecorder recorder;
+    private ReplayDevice replayDevice;
+    // runs session exports off the main thread
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor();
+    private SessionExporter exporter;
+    // exports that have not finished yet; the service keeps running for them
+    private int runningExports;
+    // history of the replayed channels, apart from the live ones; null until the first replay
+    private SampleStore[] replayChannels;
+    // check the vitals of one device each off the main thread and report warnings as they start
+    // and end; indexed by channel, null for channels without rules
+    private final VitalsRuleEngine[] vitalsRules = new VitalsRuleEngine[BleConnectionManager.MAX_CHANNELS];
+    private final List<VitalsRuleEngine> ruleEngines = new ArrayList<>();
+    // publishes the vitals text to the viewer at most every 100 ms, only when it changed
+    private final VitalsPresenter vitalsPresenter = new VitalsPresenter();
+    private Viewer viewer;
+    private boolean foreground;
+    // by the event channel of the button that raised it
+    private final boolean[] alertRaised = new boolean[BleConnectionManager.MAX_CHANNELS];
+    private int raisedAlerts;
+    private int activeCriticalRules;
+    // the button whose last change is not on the screen yet and the arrival of that press
+    private SensorDevice pendingAlert;
+    private long pendingAlertNanos;
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            drain();
+            vitalsPresenter.onFrame(frameTimeNanos);
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    // runs before the traversal of the frame that draws the warning box
+    private final Choreographer.FrameCallback alertShownCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (pendingAlert != null) {
+                pendingAlert.getMetrics().onAlertShown(pendingAlertNanos, SystemClock.elapsedRealtimeNanos());
+                pendingAlert = null;
+            }
+        }
+    };
+
+    // a replay is only shown, in stores of its own: it is not recorded again into the live session,
+    // does not raise the warnings of the live patient and does not mix with the live samples
+    private final DataReciever replayReceiver = new DataReciever() {
+        @Override
+        public void onSample(int channel, long timestampNanos, int value) {
+            SampleStore store = channel < replayChannels.length ? replayChannels[channel] : null;
+            if (store != null) {
+                store.append(timestampNanos, value);
+            }
+        }
+
+        @Override
+        public void onSamples(int channel, long[] timestampsNanos, int[] values, int offset, int count) {
+            SampleStore store = channel < replayChannels.length ? replayChannels[channel] : null;
+            if (store == null) {
+                return;
+            }
+            for (int i = offset; i < offset + count; i++) {
+                store.append(timestampsNanos[i], values[i]);
+            }
+        }
+    };
+
+    private final Runnable backgroundDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+            handler.postDelayed(this, BACKGROUND_DRAIN_MS);
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+            channels[channel] = new SampleStore(HISTORY_CAPACITY);
+        }
+
+        String session = "session-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date());
+        // room for the channels of every sensor that can be added
+        recorder = new SessionRecorder(new File(getFilesDir(), "sessions"), session, BleConnectionManager.MAX_CHANNELS,
+                2 * BleConnectionManager.MAX_CHANNELS, SessionRecorder.DEFAULT_SEGMENT_BYTES);
+        recorder.start();
+
+        BluetoothManager bluetoothManager = (BluetoothManager) getSystemService(BLUETOOTH_SERVICE);
+        connectionManager = new BleConnectionManager(this, bluetoothManager.getAdapter(), this);
+        for (SensorDevice device : connectionManager.getDevices()) {
+            startVitalsRules(device);
+        }
+        VitalsPresenter.Field spo2Text = vitalsPresenter.addField((text, start, length) -> {
+            if (viewer != null) {
+                viewer.setSpo2Text(text, start, length);
+            }
+        }, "SpO2: ", "%");
+        VitalsPresenter.Field pulseRateText = vitalsPresenter.addField((text, start, length) -> {
+            if (viewer != null) {
+                viewer.setPulseRateText(text, start, length);
+            }
+        }, "Pulse Rate: ", " bpm");
+        SensorDevice spo2Device = connectionManager.getDevice(DeviceProfile.SPO2_OXIMETER);
+        spo2Device.setTextField(SampleRingBuffer.LANE_SPO2, spo2Text, 0);
+        spo2Device.setTextField(SampleRingBuffer.LANE_PULSE_RATE, pulseRateText, 0);
+        VitalsPresenter.Field mockupText = vitalsPresenter.addField((text, start, length) -> {
+            if (viewer != null) {
+                viewer.setMockupText(text, start, length);
+            }
+        }, "PPG: ", ", HeatRate: ", "bpm, SPO2: ", "%");
+        SensorDevice mockupDevice = connectionManager.getDevice(DeviceProfile.ESP32_MOCKUP);
+        mockupDevice.setTextField(SampleRingBuffer.LANE_PPG, mockupText, 0);
+        mockupDevice.setTextField(SampleRingBuffer.LANE_PULSE_RATE, mockupText, 1);
+        mockupDevice.setTextField(SampleRingBuffer.LANE_SPO2, mockupText, 2);
+
+        handler.post(backgroundDrain);
+    }
+
+    /**
+     * Started with {@code startForegroundService} when acquisition begins, so it keeps running
+     * after the activity unbinds; with {@link #ACTION_STOP} from the notification; or with
+     * {@link #ACTION_EXPORT}, which keeps it running until the export is done. Acquisition and
+     * exports hold the service separately: it stops once neither runs, see {@link #stopIfIdle()}.
+     */
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            stopAcquisition();
+            return START_NOT_STICKY;
+        }
+        if (intent != null && ACTION_EXPORT.equals(intent.getAction())) {
+            startExport(intent.getStringExtra(EXTRA_SESSION),
+                    intent.getIntExtra(EXTRA_FORMAT, SessionExporter.FORMAT_CSV));
+            return START_NOT_STICKY;
+        }
+        if (!foreground) {
+            try {
+                if (ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT)
+                        == PackageManager.PERMISSION_GRANTED) {
+                    startForeground(NOTIFICATION_ID, buildNotification(),
+                            ServiceInfo.FOREGROUND_SERVICE_TYPE_CONNECTED_DEVICE);
+                    foreground = true;
+                } else {
+                    Log.w(TAG, "No Bluetooth permission, acquisition only runs while the app is visible");
+                    stopIfIdle();
+                }
+            } catch (RuntimeException e) {
+                // e.g. the app is not allowed to start a foreground service from the background
+                Log.e(TAG, "Cannot run in the foreground", e);
+                stopIfIdle();
+            }
+        }
+        // a restarted service would have no connections and start an empty session
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    /**
+     * Shows the vitals and warnings in a viewer and drains once per display frame. The viewer gets
+     * the current texts with the next frame.
+     */
+    public void attach(Viewer viewer) {
+        this.viewer = viewer;
+        vitalsPresenter.invalidate();
+        viewer.onWarningChanged(isWarningVisible());
+        handler.removeCallbacks(backgroundDrain);
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    /**
+     * Stops showing anything in the viewer; the acquisition goes on.
+     */
+    public void detach(Viewer viewer) {
+        if (this.viewer != viewer) {
+            return;
+        }
+        this.viewer = null;
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        handler.removeCallbacks(backgroundDrain);
+        handler.postDelayed(backgroundDrain, BACKGROUND_DRAIN_MS);
+    }
+
+    /**
+     * Adds another sensor of a known kind, e.g. the oximeter of another bed, with its own channels,
+     * history and vitals rules. It is connected by {@link BleConnectionManager#connectAll()} or
+     * its own {@link SensorDevice#connect()}.
+     *
+     * @throws IllegalStateException    if no more sensors can be connected.
+     * @throws IllegalArgumentException if the name is taken or the address is no MAC address.
+     * @see BleConnectionManager#addDevice
+     */
+    public SensorDevice addSensor(DeviceProfile kind, String name, String address) {
+        SensorDevice device = connectionManager.addDevice(kind, name, address);
+        for (int channel = CHANNEL_COUNT; channel < channels.length; channel++) {
+            if (device.getProfile().hasChannel(channel)) {
+                channels[channel] = new SampleStore(HISTORY_CAPACITY);
+            }
+        }
+        startVitalsRules(device);
+        return device;
+    }
+
+    private void drain() {
+        Trace.beginSection("drain");
+        try {
+            List<SensorDevice> devices = connectionManager.getDevices();
+            for (int i = 0; i < devices.size(); i++) {
+                devices.get(i).onFrame();
+            }
+            if (replayDevice != null) {
+                replayDevice.onFrame();
+            }
+            // channels that went quiet, e.g. the alert button, still reach the disk in time
+            recorder.flushStale(System.nanoTime());
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Closes the connections and leaves the foreground; the service ends once the activity unbinds
+     * and the running exports are done.
+     */
+    public void stopAcquisition() {
+        connectionManager.closeAll();
+        stopReplay();
+        if (foreground) {
+            stopForeground(STOP_FOREGROUND_REMOVE);
+            foreground = false;
+        }
+        stopIfIdle();
+    }
+
+    /**
+     * Stops the started service when neither the acquisition nor an export runs; a bound activity
+     * still keeps it until it unbinds.
+     */
+    private void stopIfIdle() {
+        if (runningExports == 0 && !foreground) {
+            stopSelf();
+        }
+    }
+
+    /**
+     * Writes the rest of the recorded session to disk.
+     */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        handler.removeCallbacks(backgroundDrain);
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        stopReplay();
+        if (exporter != null) {
+            exporter.cancel();
+        }
+        exportExecutor.shutdown();
+        try {
+            for (VitalsRuleEngine engine : ruleEngines) {
+                engine.stop();
+            }
+            connectionManager.shutdown();
+            recorder.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Log.i(TAG, "Recorded " + recorder.getRecordedSampleCount() + " samples, "
+                + recorder.getDroppedSampleCount() + " dropped, " + recorder.getBytesWritten() + " bytes");
+    }
+
+    private void stopReplay() {
+        if (replayDevice == null) {
+            return;
+        }
+        try {
+            replayDevice.stop();
+            Log.i(TAG, "Replay throughput: " + replayDevice.getSamplesPerSecond() + " samples/s");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        replayDevice = null;
+    }
+
+    /**
+     * Exports the channels of all sensors, the added ones as well, of a recorded session to the
+     * app's external files directory, where it can be pulled for offline analysis. An export that
+     * is still running is cancelled.
+     *
+     * @param session A session name in the sessions directory.
+     * @param format  {@link SessionExporter#FORMAT_CSV} or {@link SessionExporter#FORMAT_NPY}.
+     */
+    private void startExport(String session, int format) {
+        if (session == null) {
+            stopIfIdle();
+            return;
+        }
+        if (exporter != null) {
+            exporter.cancel();
+        }
+        // the recorder has room for the channels of every sensor that can be added
+        List<Integer> sensorChannels = new ArrayList<>();
+        for (int channel = 0; channel < BleConnectionManager.MAX_CHANNELS; channel++) {
+            if (connectionManager.getDeviceOfChannel(channel) != null) {
+                sensorChannels.add(channel);
+            }
+        }
+        int[] exported = new int[sensorChannels.size()];
+        for (int i = 0; i < exported.length; i++) {
+            exported[i] = sensorChannels.get(i);
+        }
+        File directory = getExternalFilesDir("exports");
+        File output = new File(directory, format == SessionExporter.FORMAT_CSV ? session + ".csv" : session);
+        SessionExporter started = new SessionExporter(new File(getFilesDir(), "sessions"), session, format, exported,
+                Long.MIN_VALUE, Long.MAX_VALUE, output);
+        exporter = started;
+        runningExports++;
+        started.start(exportExecutor, handler::post, new SessionExporter.Listener() {
+            @Override
+            public void onProgress(long exportedSamples, long totalSamples) {
+                Log.i(TAG, "Exporting " + session + ": " + exportedSamples + " of " + totalSamples + " samples");
+            }
+
+            @Override
+            public void onFinished(List<File> files, IOException failure) {
+                if (failure != null) {
+                    Log.e(TAG, "Cannot export " + session, failure);
+                    Toast.makeText(getApplicationContext(), "Cannot export " + session, Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getApplicationContext(), "Exported to " + output, Toast.LENGTH_SHORT).show();
+                }
+                if (exporter == started) {
+                    exporter = null;
+                }
+                runningExports--;
+                stopIfIdle();
+            }
+        });
+    }
+
+    private Notification buildNotification() {
+        NotificationManager notifications = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        notifications.createNotificationChannel(new NotificationChannel(NOTIFICATION_CHANNEL, "Acquisition",
+                NotificationManager.IMPORTANCE_LOW));
+        PendingIntent open = PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class),
+                PendingIntent.FLAG_IMMUTABLE);
+        PendingIntent stop = PendingIntent.getService(this, 0,
+                new Intent(this, AcquisitionService.class).setAction(ACTION_STOP), PendingIntent.FLAG_IMMUTABLE);
+        return new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle("Recording vitals")
+                .setContentText("The sensors stay connected in the background")
+                .setContentIntent(open)
+                .addAction(0, "Stop", stop)
+                .setOngoing(true)
+                .build();
+    }
+
+    public BleConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * The sample history of a channel, kept for as long as the service runs; null for the
+     * channels of a sensor that was not added.
+     */
+    public SampleStore getChannel(int channel) {
+        return channels[channel];
+    }
+
+    /**
+     * The history of a replayed channel, kept for as long as the service runs; null before the
+     * first replay and for the channels of added sensors, whose replayed samples are not kept.
+     */
+    public SampleStore getReplayChannel(int channel) {
+        return replayChannels != null && channel < replayChannels.length ? replayChannels[channel] : null;
+    }
+
+    /**
+     * Clears the raised alerts of all buttons, e.g. when the warning box was tapped. Warnings of
+     * the vitals rules stay until the values are back in range.
+     */
+    public void acknowledgeAlerts() {
+        for (SensorDevice device : connectionManager.getDevices()) {
+            device.acknowledgeAlert();
+        }
+    }
+
+    public SessionRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Appends a sample to the history of its channel and hands it to the recorder and the rules.
+     */
+    @Override
+    public void onSample(int channel, long timestampNanos, int value) {
+        channels[channel].append(timestampNanos, value);
+        recorder.record(channel, timestampNanos, value);
+        VitalsRuleEngine rules = vitalsRules[channel];
+        if (rules != null) {
+            rules.submit(channel, timestampNanos, value);
+        }
+        SensorDevice device = connectionManager.getDeviceOfChannel(channel);
+        if (device != null && device.getProfile().getEventChannel() == channel && alertRaised[channel] != (value != 0)) {
+            alertRaised[channel] = value != 0;
+            raisedAlerts += value != 0 ? 1 : -1;
+            updateWarning();
+            // an acknowledgement is no press
+            if (value != 0 && viewer != null) {
+                pendingAlert = device;
+                pendingAlertNanos = timestampNanos;
+                Choreographer.getInstance().removeFrameCallback(alertShownCallback);
+                Choreographer.getInstance().postFrameCallback(alertShownCallback);
+            }
+        }
+    }
+
+    /**
+     * Appends a batch of samples to the history of their channel.
+     */
+    @Override
+    public void onSamples(int channel, long[] timestampsNanos, int[] values, int offset, int count) {
+        SampleStore store = channels[channel];
+        for (int i = offset; i < offset + count; i++) {
+            store.append(timestampsNanos[i], values[i]);
+        }
+        recorder.record(channel, timestampsNanos, values, offset, count);
+        VitalsRuleEngine rules = vitalsRules[channel];
+        if (rules != null) {
+            rules.submit(channel, timestampsNanos, values, offset, count);
+        }
+    }
+
+    /**
+     * Starts the rules of an oximeter on the worker pool, in an engine of its own. The ESP32
+     * mockup gets none: its SpO2 and heart rate lanes carry test values, not vitals, and would keep
+     * the warning box of the alert button lit for as long as it streams.
+     */
+    private void startVitalsRules(SensorDevice device) {
+        DeviceProfile profile = device.getProfile();
+        if (profile.getBase() != DeviceProfile.SPO2_OXIMETER) {
+            return;
+        }
+        VitalsRuleEngine engine = new VitalsRuleEngine(BleConnectionManager.MAX_CHANNELS,
+                connectionManager.getWorkerPool(), handler::post, this::onRuleChanged);
+        addVitalsRules(engine, profile);
+        engine.start();
+        ruleEngines.add(engine);
+        for (int channel = 0; channel < vitalsRules.length; channel++) {
+            if (profile.hasChannel(channel)) {
+                vitalsRules[channel] = engine;
+            }
+        }
+    }
+
+    /**
+     * The ranges the vitals of an oximeter are checked against. A value
+     * has to stay out of range for a few seconds before it is reported, so single outliers do not
+     * raise warnings.
+     * Warnings are shown in the text field of the value, so a sensor without text fields, like an
+     * added one, only gets the critical rules, which show the warning box.
+     */
+    private static void addVitalsRules(VitalsRuleEngine engine, DeviceProfile profile) {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        boolean added = profile.getBase() != profile;
+        // the rules of an added sensor are named after it
+        String prefix = added ? profile.getName() + ": " : "";
+        int saturation = profile.getLaneChannel(SampleRingBuffer.LANE_SPO2);
+        int pulseRate = profile.getLaneChannel(SampleRingBuffer.LANE_PULSE_RATE);
+        if (!added) {
+            engine.addRule(new VitalsRuleEngine.Rule("SpO2 value out of range", saturation,
+                    VitalsRuleEngine.SEVERITY_WARNING, 95, 99, 0.5, 2 * second, second));
+            engine.addRule(new VitalsRuleEngine.Rule("Pulse Rate value out of range", pulseRate,
+                    VitalsRuleEngine.SEVERITY_WARNING, 60, 100, 2, 2 * second, second));
+        }
+        engine.addRule(new VitalsRuleEngine.Rule(prefix + "SpO2 critically low", saturation,
+                VitalsRuleEngine.SEVERITY_CRITICAL, 90, Double.POSITIVE_INFINITY, 1, 5 * second, 2 * second));
+        engine.addRule(new VitalsRuleEngine.Rule(prefix + "Pulse rate critical", pulseRate,
+                VitalsRuleEngine.SEVERITY_CRITICAL, 40, 150, 5, 5 * second, 2 * second));
+    }
+
+    /**
+     * Applies the state change of a vitals rule. Runs on the main thread, once per transition.
+     */
+    private void onRuleChanged(VitalsRuleEngine.Rule rule, boolean active, long timestampNanos, double value) {
+        Log.i(TAG, rule + (active ? " active at " : " cleared at ") + value);
+        if (rule.severity == VitalsRuleEngine.SEVERITY_CRITICAL) {
+            activeCriticalRules += active ? 1 : -1;
+            updateWarning();
+        } else {
+            // in the text field of the value, of whichever sensor it is
+            SensorDevice device = connectionManager.getDeviceOfChannel(rule.channel);
+            VitalsPresenter.Field field = device != null ? device.getTextFieldOfChannel(rule.channel) : null;
+            if (field != null) {
+                field.setWarning(active ? "Warning: " + rule.name + "!" : null);
+            } else {
+                Log.w(TAG, "No text field for the warning " + rule);
+            }
+        }
+    }
+
+    private boolean isWarningVisible() {
+        return raisedAlerts > 0 || activeCriticalRules > 0;
+    }
+
+    private void updateWarning() {
+        if (viewer != null) {
+            viewer.onWarningChanged(isWarningVisible());
+        }
+    }
+
+    /**
+     * Replays a recorded session, a signal text file (e.g. ppg_values.txt) or a synthetic signal
+     * through the same path as the devices, so the app can be tested without the sensors. The
+     * replayed samples are kept apart from the live ones, see {@link #getReplayChannel}, and are
+     * neither recorded nor checked by the vitals rules.
+     *
+     * @param replay A session name in the sessions directory, the path of a .txt file, or a
+     *               {@code synthetic:} description.
+     * @param speed  The replay speed factor, {@link ReplayDevice#AS_FAST_AS_POSSIBLE} for no pacing.
+     * @throws IOException if the replay cannot be opened.
+     */
+    public void startReplay(String replay, double speed) throws IOException {
+        ReplaySource source;
+        if (replay.startsWith(SyntheticReplaySource.PREFIX)) {
+            source = SyntheticReplaySource.parse(replay);
+        } else if (replay.endsWith(".txt")) {
+            source = TextReplaySource.mockupPpg(new FileReader(replay), REPLAY_TEXT_SAMPLE_RATE, true);
+        } else {
+            source = new SessionReplaySource(new File(getFilesDir(), "sessions"), replay);
+        }
+        stopReplay();
+        if (replayChannels == null) {
+            replayChannels = new SampleStore[CHANNEL_COUNT];
+            for (int channel = 0; channel < CHANNEL_COUNT; channel++) {
+                replayChannels[channel] = new SampleStore(HISTORY_CAPACITY);
+            }
+        }
+        replayDevice = new ReplayDevice(source, replayReceiver, SystemClock::elapsedRealtimeNanos);
+        replayDevice.setSpeed(speed);
+        replayDevice.start();
+        Log.i(TAG, "Replaying " + replay + " at speed " + speed);
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * This class owns all Bluetooth sensor devices of the app: one {@link SensorDevice} per
+ * {@link DeviceProfile}, and the sensors added at runtime, e.g. for more beds, up to the
+ * {@link #MAX_CONNECTIONS} the Bluetooth stack can keep at once. Every added sensor gets its own
+ * block of channels after the built-in ones. It gives every connection its own
+ * {@link GattOperationQueue}, finds all devices with one shared {@link SensorScanner} session,
+ * routes their notifications with one {@link NotificationRouter} and decodes them on one
+ * {@link WorkerPool}, where every device has its own {@link DevicePipeline}. It brings the devices
+ * up in parallel from a single call and measures the time from the connect request to the first
+ * received sample of each device.
+ */
+package com.example.Application;
+
+import android.bluetooth.BluetoothAdapter;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class BleConnectionManager {
+    private static final String TAG = "BleConnectionManager";
+    private static final long GATT_OPERATION_TIMEOUT_MS = GattOperationQueue.DEFAULT_TIMEOUT_MS;
+    // the LE connections the Bluetooth stack keeps at once (GATT_MAX_PHY_CHANNEL of AOSP)
+    public static final int MAX_CONNECTIONS = 7;
+    // every device runs its decoding and its rules on the pool
+    public static final int TASKS_PER_DEVICE = 2;
+    public static final int MAX_CHANNELS = DataReciever.CHANNEL_COUNT
+            + (MAX_CONNECTIONS - DeviceProfile.getProfiles().size()) * DataReciever.CHANNELS_PER_DEVICE;
+
+    private final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final SensorScanner scanner;
+    private final NotificationRouter router = new NotificationRouter();
+    private final WorkerPool workerPool = new WorkerPool("DevicePipeline", WorkerPool.defaultThreads(),
+            MAX_CONNECTIONS * TASKS_PER_DEVICE);
+    private final Context context;
+    private final DataReciever reciever;
+    // the built-in devices first, then the added ones in the order they were added
+    private final List<SensorDevice> devices = new CopyOnWriteArrayList<>();
+    private final List<SensorDevice> devicesView = Collections.unmodifiableList(devices);
+    // device tag -> elapsedRealtimeNanos of the connect request
+    private final Map<String, Long> connectStartNanos = new ConcurrentHashMap<>();
+    // device tag -> nanoseconds from connect request to the first sample
+    private final Map<String, Long> timeToFirstSampleNanos = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for the BleConnectionManager class. Creates the devices it manages.
+     *
+     * @param context          The context of the acquisition service.
+     * @param bluetoothAdapter The Bluetooth adapter used to initiate connections.
+     * @param reciever         The receiver for the samples of all devices.
+     */
+    public BleConnectionManager(Context context, BluetoothAdapter bluetoothAdapter, DataReciever reciever) {
+        this.context = context;
+        this.reciever = reciever;
+        scanner = new SensorScanner(context, bluetoothAdapter);
+        for (DeviceProfile profile : DeviceProfile.getProfiles()) {
+            devices.add(new SensorDevice(context, reciever, this, profile, devices.size()));
+        }
+    }
+
+    /**
+     * Adds another sensor of a known kind, e.g. the oximeter of another bed. Its values go to its
+     * own block of channels after the built-in ones. Must be called on the UI thread.
+     *
+     * @param kind    One of the declared profiles, e.g. {@link DeviceProfile#SPO2_OXIMETER}.
+     * @param name    The name the device is logged and measured under.
+     * @param address The MAC address of the sensor, in either case.
+     * @return The new device, not connected yet.
+     * @throws IllegalStateException    if there are {@link #MAX_CONNECTIONS} devices already.
+     * @throws IllegalArgumentException if the name is taken or the address is no MAC address.
+     */
+    public SensorDevice addDevice(DeviceProfile kind, String name, String address) {
+        if (devices.size() >= MAX_CONNECTIONS) {
+            throw new IllegalStateException("at most " + MAX_CONNECTIONS + " sensors can be connected");
+        }
+        // the scan filter only takes upper case addresses and throws later, on the main thread
+        address = address != null ? address.toUpperCase(Locale.ROOT) : null;
+        if (!BluetoothAdapter.checkBluetoothAddress(address)) {
+            throw new IllegalArgumentException(name + ": invalid address " + address);
+        }
+        for (SensorDevice device : devices) {
+            if (device.getProfile().getName().equals(name)) {
+                throw new IllegalArgumentException(name + " exists");
+            }
+        }
+        int added = devices.size() - DeviceProfile.getProfiles().size();
+        int firstChannel = DataReciever.CHANNEL_COUNT + added * DataReciever.CHANNELS_PER_DEVICE;
+        SensorDevice device = new SensorDevice(context, reciever, this,
+                kind.forSensor(name, address, firstChannel), devices.size());
+        devices.add(device);
+        Log.i(TAG, "Added " + name + " (" + kind + ") at " + address + ", channels from " + firstChannel);
+        return device;
+    }
+
+    /**
+     * Returns the device of the given profile, or null if there is none.
+     */
+    public SensorDevice getDevice(DeviceProfile profile) {
+        for (SensorDevice device : devices) {
+            if (device.getProfile() == profile) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all devices: the built-in ones in the order of {@link DeviceProfile#getProfiles()},
+     * then the added ones.
+     */
+    public List<SensorDevice> getDevices() {
+        return devicesView;
+    }
+
+    /**
+     * Returns the device whose values include the given channel, or null if there is none.
+     */
+    public SensorDevice getDeviceOfChannel(int channel) {
+        for (SensorDevice device : devices) {
+            if (device.getProfile().hasChannel(channel)) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the scanner that all devices share to find their hardware.
+     */
+    public SensorScanner getScanner() {
+        return scanner;
+    }
+
+    /**
+     * Returns the router the devices register their characteristics with.
+     */
+    public NotificationRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * Returns the pool the pipelines of all devices run on.
+     */
+    public WorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
+    /**
+     * Creates the operation queue for one GATT connection.
+     */
+    public GattOperationQueue newOperationQueue() {
+        return new GattOperationQueue(timeoutScheduler, GATT_OPERATION_TIMEOUT_MS);
+    }
+
+    /**
+     * Starts connecting to all devices at once. The connect calls return immediately, so the
+     * devices are found by one scan and their connections, service discoveries and subscriptions
+     * run in parallel.
+     */
+    public void connectAll() {
+        Log.i(TAG, "Connecting all devices");
+        for (SensorDevice device : devices) {
+            device.connect();
+        }
+    }
+
+    /**
+     * Closes the connections of all devices.
+     */
+    public void closeAll() {
+        for (SensorDevice device : devices) {
+            device.closeConnection();
+        }
+    }
+
+    /**
+     * Closes all connections, removes the devices' metrics from the report and stops the worker
+     * pool and the timeouts; the manager cannot be used afterwards.
+     */
+    public void shutdown() {
+        closeAll();
+        for (SensorDevice device : devices) {
+            PipelineMetrics.unregister(device.getMetrics());
+        }
+        workerPool.shutdown();
+        timeoutScheduler.shutdown();
+    }
+
+    /**
+     * Called by a device when it starts connecting.
+     *
+     * @param device The TAG of the device.
+     */
+    void onConnecting(String device) {
+        connectStartNanos.put(device, SystemClock.elapsedRealtimeNanos());
+        timeToFirstSampleNanos.remove(device);
+    }
+
+    /**
+     * Called by a device when its notifications have been enabled.
+     *
+     * @param device The TAG of the device.
+     */
+    void onSubscribed(String device) {
+        Long start = connectStartNanos.get(device);
+        if (start != null) {
+            Log.i(TAG, device + " subscribed after " + (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000 + " ms");
+        }
+    }
+
+    /**
+     * Called by a device when it received its first sample after connecting.
+     *
+     * @param device The TAG of the device.
+     */
+    void onFirstSample(String device) {
+        Long start = connectStartNanos.get(device);
+        if (start != null) {
+            long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+            timeToFirstSampleNanos.put(device, elapsed);
+            Log.i(TAG, device + " time to first sample: " + elapsed / 1_000_000 + " ms");
+        }
+    }
+
+    /**
+     * Returns the time from the connect request to the first sample in milliseconds,
+     * or -1 if the device has not delivered a sample since it last connected.
+     *
+     * @param device The TAG of the device.
+     */
+    public long getTimeToFirstSampleMs(String device) {
+        Long elapsed = timeToFirstSampleNanos.get(device);
+        return elapsed != null ? elapsed / 1_000_000 : -1;
+    }
+}
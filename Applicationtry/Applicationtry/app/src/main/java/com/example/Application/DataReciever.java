@@ -1,14 +0,0 @@
-/**
- * This interface defines the contract for a data receiver component.
- * Implementing classes are expected to handle the addition of data points.
- */
-package com.example.Application;
-
-
-public interface DataReciever {
-
-    void addDataPoint(int datapoint);
-
-
-
-}
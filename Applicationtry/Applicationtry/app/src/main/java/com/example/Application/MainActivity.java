@@ -1,21 +1,28 @@
 /**
  * MainActivity is the main entry point of the application.
- * It handles Bluetooth connectivity, user interface elements,
- * and data visualization using a GraphView. It also manages
- * permissions related to Bluetooth and location services.
+ * It handles the user interface elements and data visualization using a WaveformView, and
+ * manages permissions related to Bluetooth and location services. The devices and the recording
+ * belong to the {@link AcquisitionService}; the activity binds to it and shows its data while it
+ * is visible.
  */
 package com.example.Application;
 
 import android.Manifest;
 import android.annotation.SuppressLint;
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothManager;
+import android.graphics.Color;
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
+import android.os.IBinder;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.View;
+import android.view.Choreographer;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -29,19 +36,32 @@ import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
 import com.example.applicationtrial.R;
-import com.jjoe64.graphview.GraphView;
-import com.jjoe64.graphview.series.DataPoint;
-import com.jjoe64.graphview.series.LineGraphSeries;
 
-public class MainActivity extends AppCompatActivity implements DataReciever {
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+public class MainActivity extends AppCompatActivity implements AcquisitionService.Viewer {
     private static final String TAG = "MainActivity";
     private static final int REQUEST_BLUETOOTH_PERMISSIONS = 1;
-
-    // Creating instances of the Classes
-    private BluetoothAdapter bluetoothAdapter;
-    private Spo2Device spo2Device;
-    private MockupDevice mockupDevice;
-    private Alert AlertSensor;
+    // a recorded session name, the path of a signal text file or a synthetic signal
+    // (e.g. "synthetic:ppg:90", see SyntheticReplaySource) to replay instead of the devices
+    public static final String EXTRA_REPLAY = "replay";
+    // replay speed factor, 0 for as fast as possible
+    public static final String EXTRA_REPLAY_SPEED = "replaySpeed";
+    // a recorded session name to export to the app's external files directory, see
+    // AcquisitionService#ACTION_EXPORT
+    public static final String EXTRA_EXPORT = "export";
+    // "csv" (the default) or "npy"
+    public static final String EXTRA_EXPORT_FORMAT = "exportFormat";
+    // more sensors of a known kind, e.g. "Spo2Device@AA:BB:CC:DD:EE:FF,MockupDevice@11:22:33:44:55:66",
+    // each connected with the others and drawn in a band of its own
+    public static final String EXTRA_SENSORS = "sensors";
 
     private Button connectButton;
     private Button spo2Button;
@@ -51,14 +71,67 @@ public class MainActivity extends AppCompatActivity implements DataReciever {
     public static TextView textViewPulseRate;
     public static TextView textViewMockup;
     public static TextView warningBox;
-    private Handler handler;
-    private GraphView graph;
-    private LineGraphSeries series,series2;
-    private int counter;
+    // pipeline metrics, shown by a long press on the start button
+    private TextView metricsOverlay;
+    private long metricsShownNanos;
+    private WaveformView graph;
+    // owns the devices and the recording, set while the activity is bound to it
+    private AcquisitionService service;
+    private boolean tracesAdded;
+    // replay requested by the intent, started once the service is bound
+    private String pendingReplay;
+    private double pendingReplaySpeed;
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = ((AcquisitionService.LocalBinder) binder).getService();
+            if (pendingReplay != null) {
+                startReplay(pendingReplay, pendingReplaySpeed);
+                pendingReplay = null;
+            }
+            if (!tracesAdded) {
+                // the history is the service's, so it is all there when the activity comes back
+                // hours of recording are drawn from the recorder's summaries
+                SessionRecorder recorder = service.getRecorder();
+                graph.addTrace(service.getChannel(DataReciever.CHANNEL_MOCK_PPG),
+                        () -> recorder.getSummary(DataReciever.CHANNEL_MOCK_PPG), Color.rgb(0, 128, 0), "mockup PPG", 0);
+                graph.addTrace(service.getChannel(DataReciever.CHANNEL_SPO2_PPG),
+                        () -> recorder.getSummary(DataReciever.CHANNEL_SPO2_PPG), Color.BLUE, "SpO2 PPG", 0);
+                int row = addSensors(getIntent().getStringExtra(EXTRA_SENSORS));
+                // a replay has its own history, drawn in the band below the live sensors
+                if (service.getReplayChannel(DataReciever.CHANNEL_MOCK_PPG) != null) {
+                    graph.addTrace(service.getReplayChannel(DataReciever.CHANNEL_MOCK_PPG),
+                            Color.rgb(0, 128, 0), "replayed mockup PPG", row);
+                    graph.addTrace(service.getReplayChannel(DataReciever.CHANNEL_SPO2_PPG),
+                            Color.BLUE, "replayed SpO2 PPG", row);
+                }
+                tracesAdded = true;
+            }
+            service.attach(MainActivity.this);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            service = null;
+        }
+    };
+
+    // updates the metrics overlay once per display frame
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (metricsOverlay.getVisibility() == View.VISIBLE
+                    && frameTimeNanos - metricsShownNanos >= TimeUnit.SECONDS.toNanos(1)) {
+                metricsShownNanos = frameTimeNanos;
+                metricsOverlay.setText(PipelineMetrics.reportAll(SystemClock.elapsedRealtimeNanos()) + graph.reportLatency());
+            }
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
     /**
      * MainActivity class implements the main functionality of the app, including:
-     * - Handling Bluetooth connection for SpO2 and mockup devices.
-     * - Displaying real-time data in a GraphView.
+     * - Starting the Bluetooth connections of the SpO2 and mockup devices in the acquisition service.
+     * - Displaying real-time data in a WaveformView.
      * - Managing user interface elements like buttons and TextViews.
      * - Handling permissions for Bluetooth and location access.
      * - Applying window insets for a better user interface experience.
@@ -72,33 +145,24 @@ public class MainActivity extends AppCompatActivity implements DataReciever {
         setContentView(R.layout.activity_main);
         //the graph view ID
         graph = findViewById(R.id.graph);
-        counter=0;
-
-        // series of data points
-        series = new LineGraphSeries<>(new DataPoint[] {
-                new DataPoint(0, 1),
-                new DataPoint(1, 5),
-                new DataPoint(2, 3),
-                new DataPoint(3, 2),
-                new DataPoint(4, 6)
-        });
-        counter=4;
-
-
-
-        graph.addSeries(series);
-
-
-
-        graph.getViewport().setScalable(true);
-        graph.getViewport().setScrollable(true);
-        graph.getViewport().setYAxisBoundsManual(true);
-        graph.getViewport().setMinY(0);
-        graph.getViewport().setMaxY(150);
-        graph.getViewport().setXAxisBoundsManual(true);
-        graph.getViewport().setMinX(0);
-        graph.getViewport().setMaxX(100);
-
+        graph.setYRange(0, 150);
+        graph.setVisibleNanos(TimeUnit.SECONDS.toNanos(2));
+
+        // only on the first start, not when the activity is recreated
+        String replay = getIntent().getStringExtra(EXTRA_REPLAY);
+        if (replay != null && savedInstanceState == null) {
+            pendingReplay = replay;
+            pendingReplaySpeed = getIntent().getDoubleExtra(EXTRA_REPLAY_SPEED, ReplayDevice.REAL_TIME);
+        }
+        // the service runs the export, so it goes on while the activity is recreated
+        String export = getIntent().getStringExtra(EXTRA_EXPORT);
+        if (export != null && savedInstanceState == null) {
+            startService(new Intent(this, AcquisitionService.class)
+                    .setAction(AcquisitionService.ACTION_EXPORT)
+                    .putExtra(AcquisitionService.EXTRA_SESSION, export)
+                    .putExtra(AcquisitionService.EXTRA_FORMAT, "npy".equals(getIntent().getStringExtra(EXTRA_EXPORT_FORMAT))
+                            ? SessionExporter.FORMAT_NPY : SessionExporter.FORMAT_CSV));
+        }
 
         // UI elements
         textViewSpO2 = findViewById(R.id.textViewSpO2);
@@ -109,27 +173,55 @@ public class MainActivity extends AppCompatActivity implements DataReciever {
         mockupButton = findViewById(R.id.button1);
         warningBox = findViewById(R.id.warningBox);
         AlertButton=findViewById(R.id.button4);
-
-        // Initializing Bluetooth connection
-        BluetoothManager bluetoothManager = (BluetoothManager) getSystemService(BLUETOOTH_SERVICE);
-        bluetoothAdapter = bluetoothManager.getAdapter();
-        spo2Device = new Spo2Device(this, bluetoothAdapter, this);
-        mockupDevice = new MockupDevice(this, bluetoothAdapter, this);
-        Alert AlertSensor = new Alert(this, bluetoothAdapter, this);
+        metricsOverlay = findViewById(R.id.metricsOverlay);
 
 
         connectButton.setOnClickListener(v -> {
             Toast.makeText(getApplicationContext(), "Starting and Checking permissions...", Toast.LENGTH_SHORT).show();
 
             checkBluetooth();
-            checkPermissions();
+            if (checkPermissions() && service != null) {
+                startAcquisition();
+                // brings up all sensors in parallel
+                service.getConnectionManager().connectAll();
+            }
 
         });
 
-        spo2Button.setOnClickListener(view -> spo2Device.connect());
-        mockupButton.setOnClickListener(view -> mockupDevice.connect());
-        AlertButton.setOnClickListener(view -> AlertSensor.connectAlert());
-        handler = new Handler();
+        connectButton.setOnLongClickListener(v -> {
+            toggleMetrics();
+            return true;
+        });
+        metricsOverlay.setOnLongClickListener(v -> {
+            dumpMetrics();
+            return true;
+        });
+
+        spo2Button.setOnClickListener(view -> {
+            if (service != null) {
+                startAcquisition();
+                service.getConnectionManager().getDevice(DeviceProfile.SPO2_OXIMETER).connect();
+            }
+        });
+        mockupButton.setOnClickListener(view -> {
+            if (service != null) {
+                startAcquisition();
+                service.getConnectionManager().getDevice(DeviceProfile.ESP32_MOCKUP).connect();
+            }
+        });
+        AlertButton.setOnClickListener(view -> {
+            if (service != null) {
+                startAcquisition();
+                service.getConnectionManager().getDevice(DeviceProfile.ALERT_BUTTON).connect();
+            }
+        });
+
+        // a raised alert stays until it is acknowledged here
+        warningBox.setOnClickListener(view -> {
+            if (service != null) {
+                service.acknowledgeAlerts();
+            }
+        });
 
         ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.main), (v, insets) -> {
             Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
@@ -137,23 +229,125 @@ public class MainActivity extends AppCompatActivity implements DataReciever {
             return insets;
         });
     }
+
     /**
-     * this method is resposible for adding data points to the Graph
-     * Adds a data point to the graph series and updates the counter.
-     * @param dataPoint The data point to be added to the graph.
+     * Keeps the acquisition service running in the foreground, so the connections survive the
+     * activity. Without the Bluetooth permission it only runs while the activity is bound.
      */
-       // this method is resposible for adding data points to the Graph
-    public void addDataPoint(int dataPoint) {
-        series.appendData(new DataPoint(counter, dataPoint), true, 100);
-        counter++;
+    private void startAcquisition() {
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED) {
+            ContextCompat.startForegroundService(this, new Intent(this, AcquisitionService.class));
+        }
+    }
+
+    @Override
+    public void setSpo2Text(char[] text, int start, int length) {
+        textViewSpO2.setText(text, start, length);
+    }
+
+    @Override
+    public void setPulseRateText(char[] text, int start, int length) {
+        textViewPulseRate.setText(text, start, length);
+    }
+
+    @Override
+    public void setMockupText(char[] text, int start, int length) {
+        textViewMockup.setText(text, start, length);
+    }
+
+    @Override
+    public void onWarningChanged(boolean visible) {
+        warningBox.setVisibility(visible ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Replays a recorded session, a signal text file or a synthetic signal in the acquisition
+     * service, see {@link AcquisitionService#startReplay}.
+     */
+    private void startReplay(String replay, double speed) {
+        try {
+            service.startReplay(replay, speed);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Cannot replay " + replay, e);
+            Toast.makeText(getApplicationContext(), "Cannot replay " + replay, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Adds the sensors of {@link #EXTRA_SENSORS} to the acquisition service, unless it already has
+     * them from an earlier start of the activity, and draws the PPG of each in a band of its own.
+     *
+     * @return The first band that is still free.
+     */
+    private int addSensors(String sensors) {
+        int row = 1;
+        if (sensors == null) {
+            return row;
+        }
+        for (String sensor : sensors.split(",")) {
+            int at = sensor.indexOf('@');
+            DeviceProfile kind = at > 0 ? DeviceProfile.forName(sensor.substring(0, at).trim()) : null;
+            if (kind == null || !kind.hasSamples()) {
+                Log.e(TAG, "Cannot add sensor " + sensor);
+                continue;
+            }
+            String address = sensor.substring(at + 1).trim().toUpperCase(Locale.ROOT);
+            String name = kind.getName() + " " + address;
+            SensorDevice device = null;
+            for (SensorDevice added : service.getConnectionManager().getDevices()) {
+                if (added.getProfile().getName().equals(name)) {
+                    device = added;
+                }
+            }
+            try {
+                if (device == null) {
+                    device = service.addSensor(kind, name, address);
+                }
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                Log.e(TAG, "Cannot add sensor " + sensor, e);
+                Toast.makeText(getApplicationContext(), "Cannot add sensor " + sensor, Toast.LENGTH_SHORT).show();
+                continue;
+            }
+            int ppg = device.getProfile().getLaneChannel(SampleRingBuffer.LANE_PPG);
+            SessionRecorder recorder = service.getRecorder();
+            graph.addTrace(service.getChannel(ppg), () -> recorder.getSummary(ppg), Color.rgb(128, 0, 128), name + " PPG", row++);
+        }
+        return row;
+    }
+
+    /**
+     * Turns the pipeline metrics and their overlay on or off.
+     */
+    private void toggleMetrics() {
+        boolean enable = !PipelineMetrics.isEnabled();
+        PipelineMetrics.setEnabled(enable);
+        metricsOverlay.setVisibility(enable ? View.VISIBLE : View.GONE);
+        metricsShownNanos = 0;
+    }
+
+    /**
+     * Writes the pipeline metrics to a file in the app's files directory.
+     */
+    private void dumpMetrics() {
+        String name = "metrics-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date()) + ".txt";
+        File file = new File(getFilesDir(), name);
+        try (Writer writer = new FileWriter(file)) {
+            PipelineMetrics.dumpAll(writer, SystemClock.elapsedRealtimeNanos());
+            writer.write(graph.reportLatency());
+            Toast.makeText(getApplicationContext(), "Metrics written to " + file, Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot write " + file, e);
+        }
     }
 
     /**
      * Checks if the necessary Bluetooth and location permissions are granted,
      * and requests them if not.
+     *
+     * @return true if all permissions are already granted.
      */
 
-    private void checkPermissions() {
+    private boolean checkPermissions() {
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED ||
                 ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED ||
                 ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
@@ -164,10 +358,12 @@ public class MainActivity extends AppCompatActivity implements DataReciever {
                         new String[]{Manifest.permission.BLUETOOTH_SCAN, Manifest.permission.BLUETOOTH_CONNECT, Manifest.permission.ACCESS_FINE_LOCATION},
                         REQUEST_BLUETOOTH_PERMISSIONS);
             }
+            return false;
         } else {
             Log.d(TAG, "Permissions already granted");
             Toast.makeText(getApplicationContext(), "Permissions are granted.", Toast.LENGTH_SHORT).show();
             checkBluetooth();
+            return true;
         }
     }
 
@@ -190,28 +386,31 @@ public class MainActivity extends AppCompatActivity implements DataReciever {
     }
 
     /**
-     * Closes Bluetooth connections when the activity is no longer visible.
+     * Attaches to the acquisition service and updates the metrics while the activity is visible.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, AcquisitionService.class), connection, Context.BIND_AUTO_CREATE);
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    /**
+     * Detaches from the acquisition service; the connections and the recording go on, unless the
+     * activity is closed for good. Then the acquisition ends, which writes the rest of the recorded
+     * session to disk once the service stops; a running export still finishes first.
      */
     @Override
     public void onStop() {
         super.onStop();
-
-
-        if (spo2Device != null) {
-            spo2Device.closeConnection();
-        }
-
-        if (mockupDevice != null) {
-            mockupDevice.closeConnectionMock();
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        if (service != null) {
+            service.detach(this);
+            if (isFinishing()) {
+                service.stopAcquisition();
+            }
+            service = null;
         }
-
-
+        unbindService(connection);
     }
-
-
-
-
 }
-
-
-
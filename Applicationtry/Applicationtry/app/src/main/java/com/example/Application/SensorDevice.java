@@ -0,0 +1,602 @@
+/**
+ * This class connects to one Bluetooth sensor described by a {@link DeviceProfile}. It finds the
+ * sensor by its address or advertised service, subscribes to the profile's characteristics and
+ * registers each of them with the {@link NotificationRouter}, so a notification reaches its decoder
+ * without comparing UUIDs. The notifications of a streaming sensor go through the device's own
+ * {@link DevicePipeline}: they are decoded on the shared worker pool, where the beats of the PPG
+ * waveform are detected as well, and buffered until the next display frame, where every lane and
+ * the beats are handed to the receiver as channels of their own; the alert state
+ * of a button is handed to the receiver on the UI thread, ahead of everything queued there.
+ */
+package com.example.Application;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.ParcelUuid;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.Arrays;
+
+public class SensorDevice {
+    private static final int SAMPLE_CAPACITY = 1024;
+    // about a minute of beats
+    private static final int BEAT_CAPACITY = 128;
+    // pause before looking for a missing sensor again, doubled after every window it was not found
+    private static final long RESCAN_INITIAL_DELAY_MS = 5_000;
+    private static final long RESCAN_MAX_DELAY_MS = 60_000;
+
+    private final DeviceProfile profile;
+    private final String tag;
+    private final int slot;
+    private final ParcelUuid scanService;
+    private final Context context;
+    private final DataReciever reciever;
+    private final BleConnectionManager connectionManager;
+    private final NotificationRouter router;
+    private final GattOperationQueue operations;
+    private final PipelineMetrics metrics;
+    // section names of a system trace, built once
+    private final String notifySection;
+    private final String deliverSection;
+    // alert changes are handed to the receiver on the main thread
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // set on the main thread, released on a binder thread when the sensor disconnects
+    private volatile BluetoothGatt bluetoothGatt;
+    // a scan request for the sensor is pending with the scanner; only touched on the main thread
+    private boolean finding;
+    // set by connect() and cleared by closeConnection(); while set, a lost sensor is looked for
+    // until it comes back. Only touched on the main thread.
+    private boolean wanted;
+    private long rescanDelayMs = RESCAN_INITIAL_DELAY_MS;
+    private final Runnable rescanTask = () -> {
+        if (wanted) {
+            find(false);
+        }
+    };
+    private volatile boolean firstSampleReceived;
+    // one per characteristic of the profile, null for a button; used by the pipeline's task
+    private final FrameDecoder[] decoders;
+    private final NotificationRouter.Target[] targets;
+    // handle << 32 | route of each subscribed characteristic of this connection, replaced when
+    // one is added; read by the GATT callback, which only compares its own one or two handles
+    private volatile long[] routes = new long[0];
+    // null for a button
+    private final SampleRingBuffer samples;
+    private final DevicePipeline pipeline;
+    private final int[] drainBuffer;
+    private final long[] drainTimestamps;
+    private final int[] channelValues;
+    // null without beat detection
+    private final SampleRingBuffer beats;
+    private final int[] beatBuffer;
+    private final long[] beatTimestamps;
+    private final int[] beatValues;
+    private final VitalsPresenter.Field[] textFields = new VitalsPresenter.Field[SampleRingBuffer.DEVICE_LANES];
+    private final int[] textIndices = new int[SampleRingBuffer.DEVICE_LANES];
+    // debounced state of a button, null for a streaming sensor; used by the GATT callback
+    private final AlertLatch alert;
+
+    /**
+     * Constructor for the SensorDevice class.
+     *
+     * @param context           The context of the acquisition service.
+     * @param reciever          The receiver for the samples of the device.
+     * @param connectionManager The manager that owns this device.
+     * @param profile           What the sensor is and how its notifications are decoded.
+     * @param slot              The device's slot in the connection manager, its key in the router.
+     */
+    public SensorDevice(Context context, DataReciever reciever, BleConnectionManager connectionManager,
+                        DeviceProfile profile, int slot) {
+        this.context = context;
+        this.reciever = reciever;
+        this.connectionManager = connectionManager;
+        this.profile = profile;
+        this.tag = profile.getName();
+        this.slot = slot;
+        this.scanService = profile.getAdvertisedService() != null ? new ParcelUuid(profile.getAdvertisedService()) : null;
+        this.router = connectionManager.getRouter();
+        this.operations = connectionManager.newOperationQueue();
+        this.metrics = PipelineMetrics.register(tag);
+        this.notifySection = "notify " + tag;
+        this.deliverSection = "deliver " + tag;
+
+        decoders = new FrameDecoder[profile.getCharacteristicCount()];
+        targets = new NotificationRouter.Target[decoders.length];
+        for (int i = 0; i < decoders.length; i++) {
+            FrameDecoder decoder = profile.newDecoder(i);
+            decoders[i] = decoder;
+            int source = i;
+            // bound once here, so subscribing and routing allocate nothing
+            targets[i] = decoder != null
+                    ? (route, value, arrivalNanos) -> onSamplesReceived(source, value, arrivalNanos)
+                    : (route, value, arrivalNanos) -> onButtonPressed(value, arrivalNanos);
+        }
+        alert = profile.getEventChannel() != DeviceProfile.NO_CHANNEL
+                ? new AlertLatch(AlertLatch.DEFAULT_DEBOUNCE_NANOS) : null;
+
+        if (profile.hasSamples()) {
+            samples = new SampleRingBuffer(SAMPLE_CAPACITY, SampleRingBuffer.DEVICE_LANES);
+            if (profile.getBeatRateChannel() != DeviceProfile.NO_CHANNEL) {
+                beats = new SampleRingBuffer(BEAT_CAPACITY, DevicePipeline.BEAT_LANES);
+                beatBuffer = new int[beats.capacity() * beats.lanes()];
+                beatTimestamps = new long[beats.capacity()];
+                beatValues = new int[beats.capacity()];
+            } else {
+                beats = null;
+                beatBuffer = null;
+                beatTimestamps = null;
+                beatValues = null;
+            }
+            pipeline = new DevicePipeline(decoders, samples, connectionManager.getWorkerPool(),
+                    DevicePipeline.DEFAULT_INBOX_CAPACITY, this::onDecoded,
+                    beats != null ? new BeatDetector(profile.getSampleRateHz()) : null, beats);
+            metrics.setRing(samples);
+            metrics.setPipeline(pipeline);
+            drainBuffer = new int[samples.capacity() * samples.lanes()];
+            drainTimestamps = new long[samples.capacity()];
+            channelValues = new int[samples.capacity()];
+        } else {
+            samples = null;
+            pipeline = null;
+            drainBuffer = null;
+            drainTimestamps = null;
+            channelValues = null;
+            beats = null;
+            beatBuffer = null;
+            beatTimestamps = null;
+            beatValues = null;
+        }
+    }
+
+    /**
+     * Starts connecting to the sensor. It is looked up with a filtered scan first, so the GATT
+     * connection is only attempted once the sensor is actually advertising. Does nothing while
+     * the sensor is connected or still looked for, so a repeated call neither requests a second
+     * scan nor opens a second GATT client. Must be called on the main thread.
+     */
+    public void connect() {
+        if (bluetoothGatt != null || finding) {
+            Log.d(tag, "Already connecting");
+            return;
+        }
+        firstSampleReceived = false;
+        wanted = true;
+        rescanDelayMs = RESCAN_INITIAL_DELAY_MS;
+        mainHandler.removeCallbacks(rescanTask);
+        connectionManager.onConnecting(tag);
+        find(true);
+    }
+
+    private void find(boolean urgent) {
+        if (finding) {
+            return;
+        }
+        finding = true;
+        if (profile.getAddress() != null) {
+            connectionManager.getScanner().findByAddress(profile.getAddress(), urgent, scanCallback);
+        } else {
+            connectionManager.getScanner().findByService(scanService, urgent, scanCallback);
+        }
+    }
+
+    private final SensorScanner.Callback scanCallback = new SensorScanner.Callback() {
+        @SuppressLint("MissingPermission")
+        @Override
+        public void onDeviceFound(BluetoothDevice device) {
+            finding = false;
+            if (!wanted) {
+                // closed while the result was on its way
+                return;
+            }
+            Log.d(tag, "Connecting to device: " + device.getName());
+            rescanDelayMs = RESCAN_INITIAL_DELAY_MS;
+            // never leak a client: the old one is closed before a new one is opened
+            if (bluetoothGatt != null) {
+                releaseGatt();
+            }
+            bluetoothGatt = device.connectGatt(context, false, gattCallback);
+        }
+
+        @Override
+        public void onScanTimeout() {
+            finding = false;
+            if (!wanted) {
+                Log.e(tag, "Device not found. Unable to connect.");
+                return;
+            }
+            // keep watching with a low-power scan, less often the longer the sensor is away
+            Log.w(tag, "Device not found, looking again in " + rescanDelayMs + " ms");
+            mainHandler.removeCallbacks(rescanTask);
+            mainHandler.postDelayed(rescanTask, rescanDelayMs);
+            rescanDelayMs = Math.min(2 * rescanDelayMs, RESCAN_MAX_DELAY_MS);
+        }
+    };
+
+    /**
+     * Callback for GATT events, including connection state changes, service discovery,
+     * characteristic reading, and characteristic changes.
+     */
+    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
+        @SuppressLint("MissingPermission")
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            if (newState == BluetoothProfile.STATE_CONNECTED) {
+                Log.i(tag, "Connected to GATT server.");
+                metrics.onConnected();
+                // the decoders and the beat detector start over, every connection of connect()
+                // and every reconnect of a lost sensor alike
+                if (pipeline != null) {
+                    pipeline.reset();
+                }
+                if (!hasConnectPermission()) {
+                    return;
+                }
+                // a larger MTU lets the sensor pack more samples into one notification, and the
+                // high priority shortens the connection interval so frames are not delayed
+                if (profile.getRequestedMtu() > 0) {
+                    operations.enqueue(GattOperationQueue.OP_REQUEST_MTU, () -> gatt.requestMtu(profile.getRequestedMtu()), null);
+                }
+                if (profile.isHighPriority()) {
+                    operations.enqueueLocal(GattOperationQueue.OP_CONNECTION_PRIORITY,
+                            () -> gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH), null);
+                }
+                operations.enqueue(GattOperationQueue.OP_DISCOVER_SERVICES, gatt::discoverServices, null);
+            } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+                Log.i(tag, "Disconnected from GATT server.");
+                operations.clear();
+                releaseGatt();
+                // watch for the sensor to come back with a low-power batched scan, on the main
+                // thread like the scans started by connect()
+                mainHandler.post(() -> {
+                    if (wanted) {
+                        find(false);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                Log.i(tag, "MTU " + mtu);
+            } else {
+                Log.e(tag, "onMtuChanged received: " + status);
+            }
+            operations.complete(GattOperationQueue.OP_REQUEST_MTU, status == BluetoothGatt.GATT_SUCCESS);
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            operations.complete(GattOperationQueue.OP_DISCOVER_SERVICES, status == BluetoothGatt.GATT_SUCCESS);
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                Log.i(tag, "Services discovered");
+                subscribe(gatt);
+            } else {
+                Log.e(tag, "onServicesDiscovered received: " + status);
+            }
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            operations.complete(GattOperationQueue.OP_WRITE_DESCRIPTOR, status == BluetoothGatt.GATT_SUCCESS);
+        }
+
+        @Override
+        public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                onNotification(characteristic);
+            }
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            onNotification(characteristic);
+        }
+    };
+
+    /**
+     * Stamps a notification with its arrival time and routes it to its decoder.
+     */
+    private void onNotification(BluetoothGattCharacteristic characteristic) {
+        long arrivalNanos = SystemClock.elapsedRealtimeNanos();
+        Trace.beginSection(notifySection);
+        try {
+            int handle = characteristic.getInstanceId();
+            for (long route : routes) {
+                if ((int) (route >>> 32) == handle) {
+                    router.dispatch((int) route, characteristic.getValue(), arrivalNanos);
+                    break;
+                }
+            }
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private boolean hasConnectPermission() {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
+            Log.e(tag, "Permission BLUETOOTH_CONNECT not granted");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Enables the notifications of the profile's characteristics and routes them to their
+     * decoders by the handles of this connection. The manager is told once the last one is enabled.
+     *
+     * @param gatt The GATT server instance.
+     */
+    @SuppressLint("MissingPermission")
+    private void subscribe(BluetoothGatt gatt) {
+        BluetoothGattService service = gatt.getService(profile.getService());
+        if (service == null) {
+            Log.e(tag, "Service not found");
+            return;
+        }
+        if (!hasConnectPermission()) {
+            return;
+        }
+        int last = profile.getCharacteristicCount() - 1;
+        for (int i = 0; i <= last; i++) {
+            BluetoothGattCharacteristic characteristic = service.getCharacteristic(profile.getCharacteristic(i));
+            if (characteristic == null) {
+                Log.e(tag, "Characteristic not found: " + profile.getCharacteristic(i));
+                continue;
+            }
+            int handle = characteristic.getInstanceId();
+            int route = router.register(slot, handle, targets[i]);
+            long[] routes = Arrays.copyOf(this.routes, this.routes.length + 1);
+            routes[routes.length - 1] = ((long) handle << 32) | (route & 0xFFFFFFFFL);
+            this.routes = routes;
+            Log.d(tag, "Routing " + profile.getCharacteristic(i) + " as route " + route);
+            boolean subscribed = i == last;
+            if (!profile.isEnableDescriptor()) {
+                operations.enqueueLocal(GattOperationQueue.OP_SET_NOTIFICATION,
+                        () -> gatt.setCharacteristicNotification(characteristic, true),
+                        success -> {
+                            if (subscribed) {
+                                connectionManager.onSubscribed(tag);
+                            }
+                        });
+                continue;
+            }
+            operations.enqueueLocal(GattOperationQueue.OP_SET_NOTIFICATION,
+                    () -> gatt.setCharacteristicNotification(characteristic, true), null);
+            BluetoothGattDescriptor descriptor = characteristic.getDescriptor(DeviceProfile.CLIENT_CHARACTERISTIC_CONFIG);
+            if (descriptor == null) {
+                Log.e(tag, "Descriptor not found for characteristic");
+                continue;
+            }
+            operations.enqueue(GattOperationQueue.OP_WRITE_DESCRIPTOR, () -> {
+                descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+                return gatt.writeDescriptor(descriptor);
+            }, success -> {
+                if (!success) {
+                    Log.e(tag, "Enabling notifications failed");
+                } else if (subscribed) {
+                    connectionManager.onSubscribed(tag);
+                }
+            });
+        }
+    }
+
+    /**
+     * Hands a notification of a streaming characteristic to the pipeline, which decodes it on the
+     * worker pool. Called on the Bluetooth thread by the router.
+     */
+    private void onSamplesReceived(int source, byte[] value, long arrivalNanos) {
+        // a full inbox drops the notification, counted by the pipeline
+        pipeline.offer(source, value, arrivalNanos);
+    }
+
+    /**
+     * Counts a decoded notification. Called on the worker pool by the pipeline.
+     */
+    private void onDecoded(int source, int count, long arrivalNanos) {
+        FrameDecoder decoder = decoders[source];
+        if (count < 0) {
+            metrics.onMalformedPacket();
+            Log.e(tag, "Malformed notification, error " + count);
+            return;
+        }
+        if (PipelineMetrics.isEnabled()) {
+            metrics.onNotification(arrivalNanos, SystemClock.elapsedRealtimeNanos(), count);
+        }
+        if (decoder.getLastGap() > 0) {
+            metrics.onLostSamples(decoder.getLastGap());
+            Log.w(tag, "Lost " + decoder.getLastGap() + " samples, " + decoder.getLostSampleCount() + " in total");
+        }
+        if (count > 0 && !firstSampleReceived) {
+            firstSampleReceived = true;
+            connectionManager.onFirstSample(tag);
+        }
+    }
+
+    /**
+     * Raises the alert when the button was pressed. The new state is sent as an
+     * asynchronous message to the front of the main thread's queue, so it neither waits behind
+     * the drains and text updates queued there nor for a traversal barrier, and is shown by the
+     * next frame. Called on the Bluetooth thread by the router.
+     */
+    private void onButtonPressed(byte[] value, long arrivalNanos) {
+        int change = alert.onPacket(value, arrivalNanos);
+        if (change == AlertLatch.MALFORMED) {
+            metrics.onMalformedPacket();
+            Log.e(tag, "Received value is empty");
+            return;
+        }
+        if (change == AlertLatch.IGNORED) {
+            return;
+        }
+        // the receiver shows the warning text
+        Message message = Message.obtain(mainHandler,
+                () -> reciever.onSample(profile.getEventChannel(), arrivalNanos, 1));
+        message.setAsynchronous(true);
+        mainHandler.sendMessageAtFrontOfQueue(message);
+    }
+
+    /**
+     * Clears the alert of a button once the staff saw it; the receiver hides the warning text.
+     * Does nothing for a device without a button or whose alert is not raised. Must be called on
+     * the main thread.
+     */
+    public void acknowledgeAlert() {
+        if (alert != null && alert.acknowledge() == AlertLatch.CLEARED) {
+            reciever.onSample(profile.getEventChannel(), SystemClock.elapsedRealtimeNanos(), 0);
+        }
+    }
+
+    /**
+     * Drains the samples and beats buffered since the last display frame and hands them to the
+     * receiver, one channel per lane. Must be called on the UI thread, once per frame or
+     * background drain of the {@link AcquisitionService}.
+     */
+    public void onFrame() {
+        if (samples == null) {
+            return;
+        }
+        deliverBeats();
+        int count = samples.drain(drainBuffer, drainTimestamps, samples.capacity());
+        if (count == 0) {
+            return;
+        }
+        long drainedNanos = PipelineMetrics.isEnabled() ? SystemClock.elapsedRealtimeNanos() : 0;
+        Trace.beginSection(deliverSection);
+        try {
+            deliver(count);
+        } finally {
+            Trace.endSection();
+        }
+        if (PipelineMetrics.isEnabled()) {
+            metrics.onDelivered(drainTimestamps[0], drainedNanos, SystemClock.elapsedRealtimeNanos());
+        }
+    }
+
+    /**
+     * Hands the drained samples to the receiver, one channel per lane, and updates the text fields.
+     */
+    private void deliver(int count) {
+        int lanes = SampleRingBuffer.DEVICE_LANES;
+        for (int lane = 0; lane < lanes; lane++) {
+            int channel = profile.getLaneChannel(lane);
+            if (channel == DeviceProfile.NO_CHANNEL) {
+                continue;
+            }
+            SampleRingBuffer.copyLane(drainBuffer, lanes, lane, channelValues, count);
+            reciever.onSamples(channel, drainTimestamps, channelValues, 0, count);
+        }
+
+        // the text fields with the latest values, published by the VitalsPresenter
+        int last = (count - 1) * lanes;
+        for (int lane = 0; lane < lanes; lane++) {
+            if (textFields[lane] != null) {
+                textFields[lane].set(textIndices[lane], drainBuffer[last + lane]);
+            }
+        }
+    }
+
+    /**
+     * Hands the beats the pipeline detected in the PPG waveform to the receiver, so the rate the
+     * sensor reports can be checked against the waveform.
+     */
+    private void deliverBeats() {
+        if (beats == null) {
+            return;
+        }
+        int count = beats.drain(beatBuffer, beatTimestamps, beats.capacity());
+        if (count == 0) {
+            return;
+        }
+        SampleRingBuffer.copyLane(beatBuffer, beats.lanes(), DevicePipeline.BEAT_LANE_RATE, beatValues, count);
+        reciever.onSamples(profile.getBeatRateChannel(), beatTimestamps, beatValues, 0, count);
+        SampleRingBuffer.copyLane(beatBuffer, beats.lanes(), DevicePipeline.BEAT_LANE_INTERVAL, beatValues, count);
+        reciever.onSamples(profile.getBeatIntervalChannel(), beatTimestamps, beatValues, 0, count);
+    }
+
+    /**
+     * Shows the latest value of a lane in a text field, published by the {@link VitalsPresenter}.
+     *
+     * @param lane  One of the {@code SampleRingBuffer.LANE_} constants.
+     * @param field The text field.
+     * @param index The value of the field the lane is shown as.
+     */
+    public void setTextField(int lane, VitalsPresenter.Field field, int index) {
+        textFields[lane] = field;
+        textIndices[lane] = index;
+    }
+
+    /**
+     * The text field the lane of a channel is shown in, or null if it is not shown or not one of
+     * this device's lanes.
+     */
+    public VitalsPresenter.Field getTextFieldOfChannel(int channel) {
+        for (int lane = 0; lane < textFields.length; lane++) {
+            if (textFields[lane] != null && profile.getLaneChannel(lane) == channel) {
+                return textFields[lane];
+            }
+        }
+        return null;
+    }
+
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    public DeviceProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Returns the buffer between the worker pool and the UI, e.g. to read its drop counter;
+     * null for a button.
+     */
+    public SampleRingBuffer getSamples() {
+        return samples;
+    }
+
+    /**
+     * Returns the pipeline the notifications are decoded in, null for a button.
+     */
+    public DevicePipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Closes the GATT connection and stops looking for the sensor, also after it was lost.
+     * Must be called on the main thread.
+     */
+    public void closeConnection() {
+        wanted = false;
+        finding = false;
+        mainHandler.removeCallbacks(rescanTask);
+        connectionManager.getScanner().cancel(scanCallback);
+        releaseGatt();
+    }
+
+    @SuppressLint("MissingPermission")
+    private void releaseGatt() {
+        routes = new long[0];
+        router.unregister(slot);
+        if (bluetoothGatt != null) {
+            bluetoothGatt.close();
+            bluetoothGatt = null;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * This class runs one shared Bluetooth LE scan for all sensors the app is looking for. Devices
+ * register what they look for (a known MAC address or an advertised service UUID) and the scanner
+ * turns all pending requests into hardware {@link ScanFilter}s of a single scan session, so the
+ * app is only woken up for matching advertisements. The scan uses low-latency settings while a
+ * user is waiting for a connection and low-power settings otherwise, batched where the controller
+ * supports it. It is stopped after a bounded window or as soon as every requested device has
+ * been found.
+ */
+package com.example.Application;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelUuid;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SensorScanner {
+    private static final String TAG = "SensorScanner";
+    private static final long SCAN_WINDOW_MS = 10_000;
+    private static final long BATCH_REPORT_DELAY_MS = 1_000;
+
+    /**
+     * Receives the result of a scan request on the main thread.
+     */
+    public interface Callback {
+        void onDeviceFound(BluetoothDevice device);
+
+        void onScanTimeout();
+    }
+
+    private static class Target {
+        final String address;
+        final ParcelUuid serviceUuid;
+        final boolean urgent;
+        final Callback callback;
+
+        Target(String address, ParcelUuid serviceUuid, boolean urgent, Callback callback) {
+            this.address = address;
+            this.serviceUuid = serviceUuid;
+            this.urgent = urgent;
+            this.callback = callback;
+        }
+
+        boolean matches(ScanResult result) {
+            if (address != null) {
+                return address.equals(result.getDevice().getAddress());
+            }
+            ScanRecord record = result.getScanRecord();
+            if (record == null || record.getServiceUuids() == null) {
+                return false;
+            }
+            return record.getServiceUuids().contains(serviceUuid);
+        }
+
+        ScanFilter toFilter() {
+            ScanFilter.Builder builder = new ScanFilter.Builder();
+            if (address != null) {
+                builder.setDeviceAddress(address);
+            } else {
+                builder.setServiceUuid(serviceUuid);
+            }
+            return builder.build();
+        }
+    }
+
+    private final Context context;
+    private final BluetoothAdapter bluetoothAdapter;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // only touched on the main thread
+    private final List<Target> targets = new ArrayList<>();
+    private boolean scanning;
+    private final Runnable restartTask = this::restartScan;
+    private final Runnable windowExpiredTask = this::onWindowExpired;
+
+    /**
+     * Constructor for the SensorScanner class.
+     *
+     * @param context          The application context, used for permission checks.
+     * @param bluetoothAdapter The Bluetooth adapter that provides the LE scanner.
+     */
+    public SensorScanner(Context context, BluetoothAdapter bluetoothAdapter) {
+        this.context = context;
+        this.bluetoothAdapter = bluetoothAdapter;
+    }
+
+    /**
+     * Looks for a device with a known MAC address.
+     *
+     * @param address  The MAC address.
+     * @param urgent   true if a user is waiting for the connection (low-latency scan).
+     * @param callback Receives the device or the timeout.
+     */
+    public void findByAddress(String address, boolean urgent, Callback callback) {
+        request(new Target(address, null, urgent, callback));
+    }
+
+    /**
+     * Looks for the first device advertising the given service.
+     *
+     * @param serviceUuid The advertised service UUID.
+     * @param urgent      true if a user is waiting for the connection (low-latency scan).
+     * @param callback    Receives the device or the timeout.
+     */
+    public void findByService(ParcelUuid serviceUuid, boolean urgent, Callback callback) {
+        request(new Target(null, serviceUuid, urgent, callback));
+    }
+
+    /**
+     * Withdraws all requests made with the given callback.
+     */
+    public void cancel(Callback callback) {
+        handler.post(() -> {
+            for (int i = targets.size() - 1; i >= 0; i--) {
+                if (targets.get(i).callback == callback) {
+                    targets.remove(i);
+                }
+            }
+            if (targets.isEmpty()) {
+                stopScan();
+            }
+        });
+    }
+
+    private void request(Target target) {
+        handler.post(() -> {
+            targets.add(target);
+            // requests made in the same action (e.g. connecting all devices) share one scan start
+            handler.removeCallbacks(restartTask);
+            handler.post(restartTask);
+        });
+    }
+
+    /**
+     * (Re)starts the scan with one filter per pending request.
+     */
+    @SuppressLint("MissingPermission")
+    private void restartScan() {
+        stopScan();
+        if (targets.isEmpty()) {
+            return;
+        }
+
+        BluetoothLeScanner scanner = bluetoothAdapter.getBluetoothLeScanner();
+        if (scanner == null || !bluetoothAdapter.isEnabled()) {
+            Log.e(TAG, "Bluetooth is not enabled.");
+            failAll();
+            return;
+        }
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "Permission BLUETOOTH_SCAN not granted");
+            failAll();
+            return;
+        }
+
+        boolean urgent = false;
+        List<ScanFilter> filters = new ArrayList<>(targets.size());
+        for (Target target : targets) {
+            filters.add(target.toFilter());
+            urgent |= target.urgent;
+        }
+        ScanSettings.Builder settings = new ScanSettings.Builder()
+                .setCallbackType(ScanSettings.CALLBACK_TYPE_ALL_MATCHES)
+                .setMatchMode(ScanSettings.MATCH_MODE_AGGRESSIVE)
+                .setNumOfMatches(ScanSettings.MATCH_NUM_ONE_ADVERTISEMENT);
+        // without filtering and batching in the controller, a report delay fails the scan with
+        // SCAN_FAILED_FEATURE_UNSUPPORTED
+        boolean batched = !urgent && bluetoothAdapter.isOffloadedFilteringSupported()
+                && bluetoothAdapter.isOffloadedScanBatchingSupported();
+        if (urgent) {
+            settings.setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY).setReportDelay(0);
+        } else if (batched) {
+            // results are collected by the controller and delivered in batches
+            settings.setScanMode(ScanSettings.SCAN_MODE_LOW_POWER).setReportDelay(BATCH_REPORT_DELAY_MS);
+        } else {
+            settings.setScanMode(ScanSettings.SCAN_MODE_LOW_POWER).setReportDelay(0);
+        }
+
+        Log.d(TAG, "Scanning for " + targets.size() + " device(s), "
+                + (urgent ? "low latency" : batched ? "batched" : "low power"));
+        scanner.startScan(filters, settings.build(), scanCallback);
+        scanning = true;
+        handler.postDelayed(windowExpiredTask, SCAN_WINDOW_MS);
+    }
+
+    @SuppressLint("MissingPermission")
+    private void stopScan() {
+        handler.removeCallbacks(windowExpiredTask);
+        if (!scanning) {
+            return;
+        }
+        scanning = false;
+        BluetoothLeScanner scanner = bluetoothAdapter.getBluetoothLeScanner();
+        if (scanner != null && bluetoothAdapter.isEnabled()) {
+            scanner.stopScan(scanCallback);
+        }
+    }
+
+    private void onWindowExpired() {
+        Log.i(TAG, "Scan window expired, " + targets.size() + " device(s) not found");
+        stopScan();
+        failAll();
+    }
+
+    private void failAll() {
+        List<Target> missing = new ArrayList<>(targets);
+        targets.clear();
+        for (Target target : missing) {
+            target.callback.onScanTimeout();
+        }
+    }
+
+    private void handleResult(ScanResult result) {
+        for (int i = 0; i < targets.size(); i++) {
+            Target target = targets.get(i);
+            if (target.matches(result)) {
+                targets.remove(i);
+                if (targets.isEmpty()) {
+                    stopScan();
+                }
+                target.callback.onDeviceFound(result.getDevice());
+                return;
+            }
+        }
+    }
+
+    // scan results are delivered on the main thread
+    private final ScanCallback scanCallback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            handleResult(result);
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            for (ScanResult result : results) {
+                handleResult(result);
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            Log.e(TAG, "Scan failed: " + errorCode);
+            scanning = false;
+            handler.removeCallbacks(windowExpiredTask);
+            failAll();
+        }
+    };
+}
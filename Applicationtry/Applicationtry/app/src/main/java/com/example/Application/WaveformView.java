@@ -0,0 +1,563 @@
+/**
+ * This class is a SurfaceView that draws one or more waveforms from {@link SampleStore}s on its own
+ * render thread, paced by vsync. The traces are drawn into an offscreen bitmap used as a circular
+ * buffer of pixel columns: when new samples arrive only the new columns are cleared and drawn, and
+ * the bitmap is copied to the screen in two parts, so scrolling never redraws the old area.
+ * The whole bitmap is only redrawn after a zoom or scroll gesture. Pinch zooms the time axis,
+ * dragging scrolls back in history, and the Y axis uses fixed bounds.
+ * The X axis is the timestamp of the samples, so traces of sensors with different rates line up
+ * and every pixel column stands for the same time in all of them.
+ * The samples go through a {@link DecimationCache} per trace, so at most about two points per
+ * pixel column are drawn however much history is visible, and zooming out over the whole history
+ * reduces every sample only once per zoom level. A trace can also have the
+ * {@link SummaryPyramid} of its recording: the time before the oldest sample kept in memory, and
+ * the whole window once a pixel column covers a second or more, is then drawn from the min/max
+ * buckets of the pyramid, so hours of recording can be viewed. Only the newest second that is not
+ * summarized yet comes from the samples then.
+ * After a frame is posted, the age of the newest sample of every trace is recorded as its
+ * callback-to-pixel latency and, while a system trace is recorded, written as a counter.
+ */
+package com.example.Application;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import java.util.function.Supplier;
+
+public class WaveformView extends SurfaceView implements SurfaceHolder.Callback {
+    private static final String TAG = "WaveformView";
+    private static final long MIN_VISIBLE_NANOS = 100_000_000;
+    private static final long DEFAULT_VISIBLE_NANOS = 2_000_000_000;
+    private static final float STROKE_WIDTH = 3f;
+    private static final int BACKGROUND_COLOR = Color.WHITE;
+    // from this zoom on the traces are drawn from their summary
+    private static final long SUMMARY_NANOS_PER_PIXEL = SummaryPyramid.getLevelNanos(SummaryPyramid.LEVEL_1S);
+
+    /**
+     * A signal drawn by the view together with its paint and latency.
+     */
+    private static class Signal {
+        final SampleStore store;
+        // the summary of the recorded samples, null if there is none (yet) or no recording
+        final Supplier<SummaryPyramid> summary;
+        final Paint paint;
+        final String name;
+        // band of the view the signal is drawn in, from the top
+        final int row;
+        // counter track of the latency in a system trace
+        final String latencyCounter;
+        final LatencyHistogram latency = new LatencyHistogram();
+        // replaced when the decimation mode changes, used by the render thread only
+        volatile DecimationCache decimation;
+        // render thread state: samples per pixel of the current zoom, end index of the drawn
+        // samples and index of the newest sample whose latency was recorded
+        double samplesPerPixel;
+        long drawnEnd;
+        long shownNewest = -1;
+
+        Signal(SampleStore store, Supplier<SummaryPyramid> summary, int color, String name, int row, int decimationMode) {
+            this.store = store;
+            this.summary = summary;
+            this.name = name;
+            this.row = row;
+            this.latencyCounter = "pixel latency us " + name;
+            this.decimation = new DecimationCache(store, decimationMode);
+            this.paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeWidth(STROKE_WIDTH);
+            paint.setColor(color);
+        }
+    }
+
+    // shared between the UI thread and the render thread
+    private volatile Signal[] signals = new Signal[0];
+    // number of bands the height is split into, one more than the highest row of a signal
+    private volatile int rows = 1;
+    private volatile double minY = 0;
+    private volatile double maxY = 150;
+    private volatile long visibleNanos = DEFAULT_VISIBLE_NANOS;
+    private volatile int decimationMode = DecimationCache.MODE_MIN_MAX;
+    // timestamp one past the right edge, used while not following the newest data
+    private volatile long viewEnd;
+    private volatile boolean following = true;
+    // increased on every change that invalidates the whole bitmap
+    private volatile int viewportVersion;
+
+    private final Object surfaceLock = new Object();
+    private SurfaceHolder surface;
+    private int surfaceWidth, surfaceHeight;
+
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+
+    // render thread state
+    private HandlerThread renderThread;
+    private Handler renderHandler;
+    private volatile boolean rendering;
+    private Bitmap bitmap;
+    private Canvas bitmapCanvas;
+    private final Path path = new Path();
+    private final Rect srcRect = new Rect();
+    private final Rect dstRect = new Rect();
+    private double[] pointX = new double[0];
+    private double[] pointY = new double[0];
+    // grown to the number of buckets of a zoom level, which may be more than the pixel columns
+    private double[] summaryX = new double[0];
+    private double[] summaryY = new double[0];
+    private long[] frameEnds = new long[0];
+    private int drawnVersion = -1;
+    // absolute pixel column one past the right edge drawn into the bitmap
+    private long drawnEndPx;
+
+    public WaveformView(Context context) {
+        this(context, null);
+    }
+
+    public WaveformView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        getHolder().addCallback(this);
+        scaleDetector = new ScaleGestureDetector(context, scaleListener);
+        gestureDetector = new GestureDetector(context, scrollListener);
+    }
+
+    /**
+     * Adds a signal to the view. Must be called on the UI thread.
+     *
+     * @param store The samples to draw.
+     * @param color The line colour.
+     * @param name  The name the latency is reported under.
+     */
+    public void addTrace(SampleStore store, int color, String name) {
+        addTrace(store, color, name, 0);
+    }
+
+    /**
+     * Adds a signal to a band of the view, e.g. one per bed, so many devices stay readable. The
+     * height is split into equal bands, each with the full value range. Must be called on the UI
+     * thread.
+     *
+     * @param store The samples to draw.
+     * @param color The line colour.
+     * @param name  The name the latency is reported under.
+     * @param row   The band, 0 for the top one.
+     */
+    public void addTrace(SampleStore store, int color, String name, int row) {
+        addTrace(store, null, color, name, row);
+    }
+
+    /**
+     * Adds a signal to a band of the view that is drawn from the summary of its recording where
+     * the samples in memory do not reach or a pixel column covers a second or more. Must be called
+     * on the UI thread.
+     *
+     * @param store   The samples to draw.
+     * @param summary Returns the summary of the recorded samples, or null while there is none.
+     * @param color   The line colour.
+     * @param name    The name the latency is reported under.
+     * @param row     The band, 0 for the top one.
+     */
+    public void addTrace(SampleStore store, Supplier<SummaryPyramid> summary, int color, String name, int row) {
+        if (row < 0) {
+            throw new IllegalArgumentException("row must not be negative");
+        }
+        Signal[] old = signals;
+        Signal[] updated = new Signal[old.length + 1];
+        System.arraycopy(old, 0, updated, 0, old.length);
+        updated[old.length] = new Signal(store, summary, color, name, row, decimationMode);
+        rows = Math.max(rows, row + 1);
+        signals = updated;
+        viewportVersion++;
+    }
+
+    /**
+     * Returns the callback-to-pixel latency of a trace: from the arrival of its newest sample
+     * until the frame showing it was posted, recorded once per frame with new samples.
+     *
+     * @param trace The index of the trace, in the order they were added.
+     */
+    public LatencyHistogram getLatency(int trace) {
+        return signals[trace].latency;
+    }
+
+    /**
+     * Writes the callback-to-pixel latency of every trace, e.g. for the metrics overlay.
+     */
+    public String reportLatency() {
+        StringBuilder out = new StringBuilder();
+        for (Signal signal : signals) {
+            out.append(signal.name).append(" on screen ").append(signal.latency).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Sets the fixed bounds of the Y axis.
+     */
+    public void setYRange(double min, double max) {
+        minY = min;
+        maxY = max;
+        viewportVersion++;
+    }
+
+    /**
+     * Sets how much time fits into the width of the view.
+     */
+    public void setVisibleNanos(long nanos) {
+        visibleNanos = Math.max(MIN_VISIBLE_NANOS, nanos);
+        viewportVersion++;
+    }
+
+    /**
+     * Sets how the samples are reduced when there are more than pixel columns:
+     * {@link DecimationCache#MODE_MIN_MAX}, which keeps every peak, or
+     * {@link DecimationCache#MODE_LTTB}, which keeps the shape of the line with half the points.
+     * Must be called on the UI thread.
+     */
+    public void setDecimationMode(int mode) {
+        if (mode == decimationMode) {
+            return;
+        }
+        for (Signal signal : signals) {
+            signal.decimation = new DecimationCache(signal.store, mode);
+        }
+        decimationMode = mode;
+        viewportVersion++;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        renderThread = new HandlerThread(TAG);
+        renderThread.start();
+        renderHandler = new Handler(renderThread.getLooper());
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        rendering = false;
+        renderThread.quitSafely();
+        renderThread = null;
+        renderHandler = null;
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        rendering = true;
+        // the choreographer has to be obtained on the thread whose frames it should drive
+        renderHandler.post(() -> Choreographer.getInstance().postFrameCallback(frameCallback));
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        synchronized (surfaceLock) {
+            surface = holder;
+            surfaceWidth = width;
+            surfaceHeight = height;
+        }
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        rendering = false;
+        // waits for a frame in progress to finish with the surface
+        synchronized (surfaceLock) {
+            surface = null;
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        scaleDetector.onTouchEvent(event);
+        gestureDetector.onTouchEvent(event);
+        return true;
+    }
+
+    private final ScaleGestureDetector.SimpleOnScaleGestureListener scaleListener =
+            new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            setVisibleNanos((long) (visibleNanos / detector.getScaleFactor()));
+            return true;
+        }
+    };
+
+    private final GestureDetector.SimpleOnGestureListener scrollListener = new GestureDetector.SimpleOnGestureListener() {
+        @Override
+        public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+            if (getWidth() == 0) {
+                return false;
+            }
+            double nanosPerPixel = (double) visibleNanos / getWidth();
+            Signal[] signals = WaveformView.this.signals;
+            long newest = newestEnd(signals);
+            long end = (following ? newest : viewEnd) + Math.round(distanceX * nanosPerPixel);
+            // scrolling back to the newest sample resumes following the data
+            if (end >= newest) {
+                following = true;
+            } else {
+                viewEnd = Math.max(end, oldestStart(signals) + visibleNanos);
+                following = false;
+            }
+            viewportVersion++;
+            return true;
+        }
+    };
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!rendering) {
+                return;
+            }
+            renderFrame();
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    /**
+     * Returns the timestamp one past the newest sample of all traces.
+     */
+    private static long newestEnd(Signal[] signals) {
+        long end = Long.MIN_VALUE;
+        for (Signal signal : signals) {
+            long index = signal.store.getEndIndex() - 1;
+            if (index >= 0) {
+                end = Math.max(end, signal.store.getTimestamp(index) + 1);
+            }
+        }
+        return end != Long.MIN_VALUE ? end : 0;
+    }
+
+    /**
+     * Returns the timestamp of the oldest sample kept or summarized by any trace.
+     */
+    private static long oldestStart(Signal[] signals) {
+        long start = Long.MAX_VALUE;
+        for (Signal signal : signals) {
+            if (!signal.store.isEmpty()) {
+                start = Math.min(start, signal.store.getTimestamp(signal.store.getFirstIndex()));
+            }
+            SummaryPyramid summary = signal.summary != null ? signal.summary.get() : null;
+            if (summary != null) {
+                start = Math.min(start, summary.getStartNanos());
+            }
+        }
+        return start != Long.MAX_VALUE ? start : 0;
+    }
+
+    /**
+     * Draws the columns that changed since the last frame and posts the bitmap to the surface.
+     * Runs on the render thread.
+     */
+    private void renderFrame() {
+        synchronized (surfaceLock) {
+            if (surface == null || surfaceWidth == 0 || surfaceHeight == 0) {
+                return;
+            }
+            int width = surfaceWidth;
+            int height = surfaceHeight;
+            if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+                bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                bitmapCanvas = new Canvas(bitmap);
+                pointX = new double[2 * width + 8];
+                pointY = new double[2 * width + 8];
+                drawnVersion = -1;
+            }
+
+            Signal[] signals = this.signals;
+            int version = viewportVersion;
+            double nanosPerPixel = (double) visibleNanos / width;
+            boolean follow = following;
+            long end = follow ? newestEnd(signals) : viewEnd;
+            // the newest sample lands in the last column of the window
+            long endPx = (long) Math.floor((end - 1) / nanosPerPixel) + 1;
+            if (frameEnds.length != signals.length) {
+                frameEnds = new long[signals.length];
+            }
+            // the samples that arrived since the last frame may be spaced back into columns that
+            // were drawn already, so the redraw starts at the newest sample drawn before
+            long changedPx = Long.MAX_VALUE;
+            for (int i = 0; i < signals.length; i++) {
+                Signal signal = signals[i];
+                frameEnds[i] = signal.store.getEndIndex();
+                if (frameEnds[i] > signal.drawnEnd) {
+                    long from = Math.max(signal.drawnEnd - 1, signal.store.getFirstIndex());
+                    changedPx = Math.min(changedPx, (long) Math.floor(signal.store.getTimestamp(from) / nanosPerPixel));
+                }
+            }
+
+            Trace.beginSection("waveform draw");
+            try {
+                if (version != drawnVersion) {
+                    updateZoom(signals, end, width);
+                    drawColumns(signals, endPx - width, endPx, nanosPerPixel, width, height);
+                    drawnVersion = version;
+                } else if (follow && changedPx != Long.MAX_VALUE) {
+                    // the rate of a trace may change, e.g. when a sensor reconnects
+                    updateZoom(signals, end, width);
+                    drawColumns(signals, Math.max(Math.min(changedPx, drawnEndPx - 1), endPx - width), endPx,
+                            nanosPerPixel, width, height);
+                } else {
+                    return;
+                }
+            } finally {
+                Trace.endSection();
+            }
+            drawnEndPx = endPx;
+            for (int i = 0; i < signals.length; i++) {
+                signals[i].drawnEnd = frameEnds[i];
+            }
+
+            Trace.beginSection("waveform post");
+            Canvas canvas = surface.getSurface().lockHardwareCanvas();
+            try {
+                // bitmap columns [split, width) hold the older part of the window
+                int split = (int) Math.floorMod(endPx, (long) width);
+                srcRect.set(split, 0, width, height);
+                dstRect.set(0, 0, width - split, height);
+                canvas.drawBitmap(bitmap, srcRect, dstRect, null);
+                srcRect.set(0, 0, split, height);
+                dstRect.set(width - split, 0, width, height);
+                canvas.drawBitmap(bitmap, srcRect, dstRect, null);
+            } finally {
+                surface.getSurface().unlockCanvasAndPost(canvas);
+                Trace.endSection();
+            }
+            long renderedNanos = SystemClock.elapsedRealtimeNanos();
+            if (follow) {
+                recordLatency(signals, renderedNanos);
+            }
+            if (PipelineMetrics.isEnabled()) {
+                PipelineMetrics.onFrameRendered(renderedNanos);
+            }
+        }
+    }
+
+    /**
+     * Records how old the newest sample of every trace with new samples is now that it is on the
+     * screen. Its timestamp is the arrival of the notification it came with.
+     */
+    private void recordLatency(Signal[] signals, long renderedNanos) {
+        boolean tracing = Trace.isEnabled();
+        for (int i = 0; i < signals.length; i++) {
+            Signal signal = signals[i];
+            long newest = frameEnds[i] - 1;
+            if (newest < 0 || newest < signal.store.getFirstIndex() || newest == signal.shownNewest) {
+                continue;
+            }
+            signal.shownNewest = newest;
+            long latency = renderedNanos - signal.store.getTimestamp(newest);
+            signal.latency.record(latency);
+            if (tracing) {
+                Trace.setCounter(signal.latencyCounter, latency / 1000);
+            }
+        }
+    }
+
+    /**
+     * Picks the decimation level of every trace from the number of its samples in the window.
+     */
+    private void updateZoom(Signal[] signals, long end, int width) {
+        for (Signal signal : signals) {
+            long samples = signal.store.indexAt(end) - signal.store.indexAt(end - visibleNanos);
+            signal.samplesPerPixel = (double) samples / width;
+        }
+    }
+
+    /**
+     * Clears and redraws the absolute pixel columns [fromPx, toPx) of the circular bitmap,
+     * splitting the range where it wraps around the right edge.
+     */
+    private void drawColumns(Signal[] signals, long fromPx, long toPx, double nanosPerPixel, int width, int height) {
+        long origin = Math.floorDiv(fromPx, (long) width) * width;
+        drawPiece(signals, fromPx, Math.min(toPx, origin + width), origin, nanosPerPixel, height);
+        if (toPx > origin + width) {
+            drawPiece(signals, origin + width, toPx, origin + width, nanosPerPixel, height);
+        }
+    }
+
+    private void drawPiece(Signal[] signals, long fromPx, long toPx, long originPx, double nanosPerPixel, int height) {
+        int left = (int) (fromPx - originPx);
+        int right = (int) (toPx - originPx);
+        bitmapCanvas.save();
+        bitmapCanvas.clipRect(left, 0, right, height);
+        bitmapCanvas.drawColor(BACKGROUND_COLOR, PorterDuff.Mode.SRC);
+
+        long fromNanos = (long) Math.floor(fromPx * nanosPerPixel);
+        long toNanos = (long) Math.ceil(toPx * nanosPerPixel);
+        double min = minY;
+        double rowHeight = (double) height / rows;
+        double scaleY = rowHeight / (maxY - min);
+        for (Signal signal : signals) {
+            double bottom = (signal.row + 1) * rowHeight;
+            SampleStore store = signal.store;
+            path.rewind();
+            int drawn = 0;
+            // [fromNanos, split) comes from the summary, the rest from the samples
+            long split = fromNanos;
+            SummaryPyramid summary = signal.summary != null ? signal.summary.get() : null;
+            if (summary != null && summary.getSampleCount() > 0) {
+                long storeStart = store.isEmpty() ? Long.MAX_VALUE : store.getTimestamp(store.getFirstIndex());
+                // the newest bucket may still be filling, the samples have it complete
+                split = nanosPerPixel >= SUMMARY_NANOS_PER_PIXEL
+                        ? Math.min(storeStart, summary.getEndNanos() - SUMMARY_NANOS_PER_PIXEL) : storeStart;
+                // whole buckets, so none reaches into the part drawn from the samples
+                long bucketNanos = SummaryPyramid.getLevelNanos(SummaryPyramid.levelFor((long) nanosPerPixel));
+                split = Math.min(Math.floorDiv(split, bucketNanos) * bucketNanos, toNanos);
+                int buckets = split > fromNanos ? (int) ((split - fromNanos) / bucketNanos) : 0;
+                if (buckets > 0) {
+                    if (summaryX.length < 2 * buckets + 2) {
+                        summaryX = new double[2 * buckets + 2];
+                        summaryY = new double[2 * buckets + 2];
+                    }
+                    int points = summary.decimateMinMax(fromNanos, split, buckets, summaryX, summaryY);
+                    for (int i = 0; i < points; i++) {
+                        addPoint(drawn++, summaryX[i] / nanosPerPixel - originPx,
+                                bottom - (summaryY[i] - min) * scaleY);
+                    }
+                } else {
+                    split = fromNanos;
+                }
+            }
+            // one sample on each side so the line segments join the neighbouring columns
+            long firstSample = store.indexAt(split) - 1;
+            long endSample = store.indexAt(toNanos) + 1;
+            int points = split < toNanos
+                    ? signal.decimation.decimate(firstSample, endSample, signal.samplesPerPixel, pointX, pointY) : 0;
+            for (int i = 0; i < points; i++) {
+                addPoint(drawn++, store.getTimestamp((long) pointX[i]) / nanosPerPixel - originPx,
+                        bottom - (pointY[i] - min) * scaleY);
+            }
+            if (drawn > 0) {
+                bitmapCanvas.drawPath(path, signal.paint);
+            }
+        }
+        bitmapCanvas.restore();
+    }
+
+    private void addPoint(int index, double x, double y) {
+        if (index == 0) {
+            path.moveTo((float) x, (float) y);
+        } else {
+            path.lineTo((float) x, (float) y);
+        }
+    }
+}
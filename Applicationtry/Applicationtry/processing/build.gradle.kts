@@ -0,0 +1,51 @@
+// Android-free sample processing (decoding, buffering, aggregation, recording and replay) with its
+// unit tests and JMH benchmarks, so the hot paths can be measured on a plain JVM.
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+// the PPG table of the ESP32 mockup, packaged from the sketch's header so there is one copy of it
+val ppgTable = tasks.register<Copy>("ppgTable") {
+    from(file("../../../ESP32_signal19a/PPG_Values.h"))
+    into(layout.buildDirectory.dir("generated/ppgTable/com/example/Application"))
+}
+
+sourceSets["main"].resources.srcDir(files(layout.buildDirectory.dir("generated/ppgTable")).builtBy(ppgTable))
+
+tasks.test {
+    // the fixtures are read relative to the module directory
+    workingDir = projectDir
+}
+
+// ./gradlew :processing:jmh
+// The results are written as JMH JSON next to the sources; committing them with a change
+// makes the difference in ns/op and allocated bytes/op show up in the diff of the pull request.
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    resultFormat.set("JSON")
+    resultsFile.set(layout.projectDirectory.file("benchmarks/results.json"))
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+}
+
+// ./gradlew :processing:loadTest --args="<seconds> <mtu> <jitter ms> <loss> <callback threads> <worker threads>"
+// Drives 1 to 50 virtual sensors through their pipelines on a shared worker pool and prints one
+// line per run, with the CPU time per sample to check that the cost grows linearly.
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs the virtual multi-sensor load generator."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.example.Application.LoadGenerator")
+}
@@ -0,0 +1,148 @@
+/**
+ * Benchmarks the per-frame and per-sample aggregations: the min/max decimation over the history,
+ * uncached and through the zoom cache of the waveform view, the beat detector, and recording into
+ * a latency histogram, once from a single thread and once from four threads sharing it.
+ */
+package com.example.Application;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AggregationBenchmark {
+    private static final int HISTORY = 1 << 16;
+    private static final double SAMPLE_RATE_HZ = 100;
+    private static final long SAMPLE_PERIOD_NANOS = 10_000_000L;
+
+    private final BeatDetector detector = new BeatDetector(SAMPLE_RATE_HZ);
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private double[] signal;
+    private int position;
+    private long timestamp;
+
+    @State(Scope.Benchmark)
+    public static class SharedHistogram {
+        final LatencyHistogram histogram = new LatencyHistogram();
+    }
+
+    @State(Scope.Thread)
+    public static class History {
+        // samples in the visible window
+        @Param({"1000", "10000", "60000"})
+        public int window;
+
+        final SampleStore store = new SampleStore(HISTORY);
+        final DecimationCache minMaxCache = new DecimationCache(store, DecimationCache.MODE_MIN_MAX);
+        final DecimationCache lttbCache = new DecimationCache(store, DecimationCache.MODE_LTTB);
+        // one point pair per pixel column of a 1080 pixel wide view
+        final double[] pointX = new double[2 * 1080 + 8];
+        final double[] pointY = new double[2 * 1080 + 8];
+        private long timestamp;
+
+        @Setup
+        public void setUp() {
+            for (double value : pulse()) {
+                append(value);
+            }
+        }
+
+        void append(double value) {
+            timestamp += SAMPLE_PERIOD_NANOS;
+            store.append(timestamp, value);
+        }
+    }
+
+    /**
+     * A 72 bpm pulse with its dicrotic wave on top of a slow baseline drift.
+     */
+    static double[] pulse() {
+        double[] signal = new double[HISTORY];
+        for (int i = 0; i < HISTORY; i++) {
+            double t = i / SAMPLE_RATE_HZ;
+            double phase = 2 * Math.PI * 1.2 * t;
+            signal[i] = 60 + 30 * Math.sin(phase) + 8 * Math.sin(2 * phase + 1) + 5 * Math.sin(2 * Math.PI * 0.1 * t);
+        }
+        return signal;
+    }
+
+    @Setup
+    public void setUp() {
+        signal = pulse();
+    }
+
+    /**
+     * The reduction without a cache: every sample of the window is read again every frame.
+     */
+    @Benchmark
+    public int decimateMinMax(History history) {
+        SampleStore store = history.store;
+        long end = store.getEndIndex();
+        long from = end - history.window;
+        int points = 0;
+        for (int b = 0; b < 1080; b++) {
+            long start = from + (long) history.window * b / 1080;
+            long stop = from + (long) history.window * (b + 1) / 1080;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (long i = start; i < stop; i++) {
+                double value = store.get(i);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            history.pointX[points] = start;
+            history.pointY[points++] = min;
+            history.pointX[points] = start;
+            history.pointY[points++] = max;
+        }
+        return points;
+    }
+
+    /**
+     * A frame of the view with the zoom cache: the window moves by one sample, as it does while
+     * following the data, so only the newest bucket is ever reduced.
+     */
+    @Benchmark
+    public int decimateCachedMinMax(History history) {
+        history.append(signal[position = (position + 1) & (HISTORY - 1)]);
+        long end = history.store.getEndIndex();
+        return history.minMaxCache.decimate(end - history.window, end, history.window / 1080.0, history.pointX, history.pointY);
+    }
+
+    @Benchmark
+    public int decimateCachedLttb(History history) {
+        history.append(signal[position = (position + 1) & (HISTORY - 1)]);
+        long end = history.store.getEndIndex();
+        return history.lttbCache.decimate(end - history.window, end, history.window / 1080.0, history.pointX, history.pointY);
+    }
+
+    @Benchmark
+    public boolean beatDetectorSample() {
+        position = (position + 1) & (HISTORY - 1);
+        timestamp += SAMPLE_PERIOD_NANOS;
+        return detector.process(timestamp, signal[position]);
+    }
+
+    @Benchmark
+    public void histogramRecord() {
+        position = (position + 1) & (HISTORY - 1);
+        histogram.record(position * 37L);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void histogramRecordShared(SharedHistogram shared) {
+        position = (position + 1) & (HISTORY - 1);
+        shared.histogram.record(position * 37L);
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Benchmarks the notification decoding on the Bluetooth thread: the 5-byte SpO2 frames and the
+ * legacy and packed mockup frames, each decoded into a {@link SampleRingBuffer} and drained again
+ * like the UI thread does once per frame.
+ */
+package com.example.Application;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DecodeBenchmark {
+    // frames per SpO2 notification and samples per packed mockup frame
+    @Param({"1", "4", "10"})
+    public int samplesPerPacket;
+
+    private final Spo2PacketDecoder spo2Decoder = new Spo2PacketDecoder();
+    private final MockFrameDecoder mockDecoder = new MockFrameDecoder();
+    private final SampleRingBuffer ring = new SampleRingBuffer(1024, SampleRingBuffer.DEVICE_LANES);
+    private final int[] drainBuffer = new int[ring.capacity() * ring.lanes()];
+    private final long[] drainTimestamps = new long[ring.capacity()];
+    private byte[] spo2Packet;
+    private byte[] legacyMockPacket;
+    private byte[] packedMockPacket;
+    private int sequence;
+    private long timestamp;
+
+    @Setup
+    public void setUp() {
+        spo2Packet = new byte[samplesPerPacket * Spo2PacketDecoder.FRAME_LENGTH];
+        for (int f = 0; f < samplesPerPacket; f++) {
+            int i = f * Spo2PacketDecoder.FRAME_LENGTH;
+            spo2Packet[i] = (byte) 0x80;
+            spo2Packet[i + 1] = (byte) (40 + f);
+            spo2Packet[i + 2] = 0x40;
+            spo2Packet[i + 3] = 72;
+            spo2Packet[i + 4] = 97;
+        }
+        legacyMockPacket = new byte[]{0, 42, 0, 72, 97};
+        packedMockPacket = new byte[MockFrameDecoder.HEADER_LENGTH + samplesPerPacket];
+        packedMockPacket[0] = MockFrameDecoder.FORMAT_VERSION;
+        packedMockPacket[3] = 50;
+        packedMockPacket[5] = (byte) samplesPerPacket;
+        packedMockPacket[6] = 72;
+        packedMockPacket[7] = 97;
+        for (int i = 0; i < samplesPerPacket; i++) {
+            packedMockPacket[MockFrameDecoder.HEADER_LENGTH + i] = (byte) (40 + i);
+        }
+    }
+
+    @Benchmark
+    public int spo2Packet() {
+        int frames = spo2Decoder.decodeInto(spo2Packet, ring, timestamp++);
+        return frames + ring.drain(drainBuffer, drainTimestamps, ring.capacity());
+    }
+
+    @Benchmark
+    public int legacyMockFrame() {
+        int samples = mockDecoder.decodeInto(legacyMockPacket, ring, timestamp++);
+        return samples + ring.drain(drainBuffer, drainTimestamps, ring.capacity());
+    }
+
+    @Benchmark
+    public int packedMockFrame() {
+        // consecutive sequence numbers, so the gap check sees a clean stream
+        packedMockPacket[1] = (byte) sequence;
+        packedMockPacket[2] = (byte) (sequence >>> 8);
+        sequence += samplesPerPacket;
+        int samples = mockDecoder.decodeInto(packedMockPacket, ring, timestamp++);
+        return samples + ring.drain(drainBuffer, drainTimestamps, ring.capacity());
+    }
+}
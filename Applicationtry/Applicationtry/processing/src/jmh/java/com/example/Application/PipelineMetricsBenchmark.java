@@ -0,0 +1,53 @@
+/**
+ * Benchmarks the cost of the pipeline metrics per sample: one decoded notification and one
+ * delivered batch per 10 samples, like the packed mockup frames, with the metrics enabled and
+ * disabled. The score is per sample, so it can be compared with the sample period directly.
+ */
+package com.example.Application;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PipelineMetricsBenchmark {
+    private static final int SAMPLES_PER_NOTIFICATION = 10;
+
+    @Param({"true", "false"})
+    public boolean enabled;
+
+    private PipelineMetrics metrics;
+    private long arrival;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        metrics = PipelineMetrics.register("benchmark");
+        PipelineMetrics.setEnabled(enabled);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PipelineMetrics.setEnabled(false);
+        PipelineMetrics.unregister(metrics);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES_PER_NOTIFICATION)
+    public void notificationAndDelivery() {
+        long i = arrival++;
+        metrics.onNotification(i, i + 2_000 + (i & 1023), SAMPLES_PER_NOTIFICATION);
+        metrics.onDelivered(i, i + 5_000_000, i + 5_020_000);
+    }
+}
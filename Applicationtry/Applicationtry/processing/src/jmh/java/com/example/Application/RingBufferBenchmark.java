@@ -0,0 +1,104 @@
+/**
+ * Benchmarks the hand-over between the Bluetooth threads and the UI thread: one device with its
+ * own producer and consumer thread, and several devices whose producers run at the same time
+ * while one consumer drains all of their buffers, like the UI thread does once per frame.
+ * The consumer's operations are drain calls, so its score is the cost of one drain; the drop
+ * counters show whether the consumer kept up.
+ */
+package com.example.Application;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RingBufferBenchmark {
+    private static final int DEVICES = 3;
+    private static final int CAPACITY = 1024;
+
+    @State(Scope.Group)
+    public static class Rings {
+        final SampleRingBuffer[] rings = new SampleRingBuffer[DEVICES];
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            for (int i = 0; i < DEVICES; i++) {
+                rings[i] = new SampleRingBuffer(CAPACITY, SampleRingBuffer.DEVICE_LANES);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        final int[] record = {40, 72, 97};
+        long timestamp;
+        int device;
+
+        @Setup
+        public void setUp(ThreadParams params) {
+            device = params.getSubgroupThreadIndex() % DEVICES;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Consumer {
+        final int[] drainBuffer = new int[CAPACITY * SampleRingBuffer.DEVICE_LANES];
+        final long[] drainTimestamps = new long[CAPACITY];
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Drops {
+        public long dropped;
+    }
+
+    @Benchmark
+    @Group("oneDevice")
+    @GroupThreads(1)
+    public boolean oneDeviceOffer(Rings rings, Producer producer) {
+        return rings.rings[0].offer(producer.record, producer.timestamp++);
+    }
+
+    @Benchmark
+    @Group("oneDevice")
+    @GroupThreads(1)
+    public int oneDeviceDrain(Rings rings, Consumer consumer, Drops drops) {
+        SampleRingBuffer ring = rings.rings[0];
+        int count = ring.drain(consumer.drainBuffer, consumer.drainTimestamps, ring.capacity());
+        drops.dropped = ring.getDroppedCount();
+        return count;
+    }
+
+    @Benchmark
+    @Group("threeDevices")
+    @GroupThreads(DEVICES)
+    public boolean threeDevicesOffer(Rings rings, Producer producer) {
+        return rings.rings[producer.device].offer(producer.record, producer.timestamp++);
+    }
+
+    @Benchmark
+    @Group("threeDevices")
+    @GroupThreads(1)
+    public int threeDevicesDrain(Rings rings, Consumer consumer, Drops drops) {
+        int count = 0;
+        long dropped = 0;
+        for (SampleRingBuffer ring : rings.rings) {
+            count += ring.drain(consumer.drainBuffer, consumer.drainTimestamps, ring.capacity());
+            dropped += ring.getDroppedCount();
+        }
+        drops.dropped = dropped;
+        return count;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Benchmarks how a notification finds its decoder on the Bluetooth thread: the UUID of the
+ * characteristic compared as a string, against the route the {@link NotificationRouter} resolved
+ * when the device subscribed.
+ */
+package com.example.Application;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RoutingBenchmark {
+    private static final String CHARACTERISTIC_UUID = "49535343-1e4d-4bd9-ba61-23c647249616";
+
+    // connected devices, each with one routed characteristic
+    @Param({"3", "16"})
+    public int devices;
+
+    private final UUID characteristic = UUID.fromString(CHARACTERISTIC_UUID);
+    private final NotificationRouter router = new NotificationRouter();
+    private final byte[] value = {1};
+    // what each device keeps from subscribing
+    private int[] routes;
+    private long routed;
+    private int device;
+
+    @Setup
+    public void setUp() {
+        routes = new int[devices];
+        for (int d = 0; d < devices; d++) {
+            routes[d] = router.register(d, 0x2A + d, (route, value, arrivalNanos) -> routed += route);
+        }
+    }
+
+    @Benchmark
+    public long uuidString() {
+        if (CHARACTERISTIC_UUID.equals(characteristic.toString())) {
+            routed++;
+        }
+        return routed;
+    }
+
+    @Benchmark
+    public long router() {
+        // every device in turn, so the last route is as frequent as the first
+        int d = device;
+        device = d + 1 == devices ? 0 : d + 1;
+        router.dispatch(routes[d], value, d);
+        return routed;
+    }
+}
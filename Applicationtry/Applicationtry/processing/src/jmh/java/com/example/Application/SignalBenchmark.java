@@ -0,0 +1,51 @@
+/**
+ * Benchmarks the synthetic signal engine: one block of every waveform, and a frame's worth of
+ * samples for many channels at once, as a simulated ward would produce them.
+ */
+package com.example.Application;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SignalBenchmark {
+    private static final int BLOCK = 64;
+
+    // 0 sine, 1 square, 2 triangle, 3 PPG table, 4 PPG pulse
+    @Param({"0", "3", "4"})
+    public int waveType;
+
+    @Param({"1", "1000"})
+    public int channels;
+
+    private SignalGenerator[] generators;
+    private final int[] block = new int[BLOCK];
+
+    @Setup
+    public void setUp() {
+        generators = new SignalGenerator[channels];
+        for (int i = 0; i < channels; i++) {
+            generators[i] = new SignalGenerator(waveType, SignalGenerator.DEFAULT_SAMPLING_RATE_HZ);
+        }
+    }
+
+    @Benchmark
+    public int generateBlock() {
+        int sum = 0;
+        for (SignalGenerator generator : generators) {
+            generator.generate(block, 0, BLOCK);
+            sum += block[BLOCK - 1];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Benchmarks range queries on the summary pyramid of a day at 100 Hz against a scan over the raw
+ * samples of the same range.
+ */
+package com.example.Application;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SummaryBenchmark {
+    private static final long PERIOD_NANOS = 10_000_000;   // 100 Hz
+    private static final int SAMPLES = 24 * 3600 * 100;
+
+    // length of the queried range in minutes
+    @Param({"1", "60"})
+    public int minutes;
+
+    private final long[] timestamps = new long[SAMPLES];
+    private final int[] values = new int[SAMPLES];
+    private final SummaryPyramid pyramid = new SummaryPyramid();
+    private final SummaryPyramid.Summary summary = new SummaryPyramid.Summary();
+    private long from;
+    private long to;
+
+    @Setup
+    public void setUp() {
+        SignalGenerator generator = new SignalGenerator(SignalGenerator.WAVE_PPG, 100);
+        generator.generate(values, 0, SAMPLES);
+        for (int i = 0; i < SAMPLES; i++) {
+            timestamps[i] = i * PERIOD_NANOS;
+        }
+        pyramid.addAll(timestamps, values, 0, SAMPLES);
+        from = TimeUnit.HOURS.toNanos(5) + TimeUnit.SECONDS.toNanos(17);
+        to = from + TimeUnit.MINUTES.toNanos(minutes);
+    }
+
+    @Benchmark
+    public long summarize() {
+        pyramid.summarize(from, to, TimeUnit.SECONDS.toNanos(1), summary);
+        return summary.sum;
+    }
+
+    @Benchmark
+    public long scanSamples() {
+        long sum = 0;
+        for (int i = (int) (from / PERIOD_NANOS), end = (int) (to / PERIOD_NANOS); i < end; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+}
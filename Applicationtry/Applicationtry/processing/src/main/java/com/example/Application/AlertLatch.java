@@ -0,0 +1,80 @@
+/**
+ * This class is the state of one alert button. A press (a 0x01 byte) raises the alert and further
+ * presses leave it raised; it is only cleared when the staff acknowledge it on the tablet. Presses
+ * that follow an accepted one within the debounce time are contact bounce or a repeated
+ * notification and are counted, so a bounce cannot raise the alert again right after it was
+ * acknowledged. A press that is lost or handled twice therefore never clears an alert.
+ * Notifications are applied by one thread, the device's GATT callback, and the acknowledgement
+ * may come from any thread; nothing is allocated.
+ */
+package com.example.Application;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class AlertLatch {
+    public static final long DEFAULT_DEBOUNCE_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    public static final byte PRESS = 0x01;
+    // results of onPacket
+    public static final int MALFORMED = -1;
+    public static final int IGNORED = 0;
+    public static final int RAISED = 1;
+    public static final int CLEARED = 2;
+
+    private final long debounceNanos;
+    private final AtomicBoolean raised = new AtomicBoolean();
+    private long acceptedNanos = Long.MIN_VALUE;
+    private long bounces;
+
+    /**
+     * Constructor for the AlertLatch class.
+     *
+     * @param debounceNanos Minimum time between two presses that both count.
+     */
+    public AlertLatch(long debounceNanos) {
+        this.debounceNanos = debounceNanos;
+    }
+
+    /**
+     * Applies a notification of the button.
+     *
+     * @param value        The notification value.
+     * @param arrivalNanos Arrival time of the notification.
+     * @return {@link #RAISED} if the alert was raised, {@link #IGNORED} for a bounce, a press
+     * while it is raised or another value, {@link #MALFORMED} for an empty value.
+     */
+    public int onPacket(byte[] value, long arrivalNanos) {
+        if (value == null || value.length == 0) {
+            return MALFORMED;
+        }
+        if (value[0] != PRESS) {
+            return IGNORED;
+        }
+        if (acceptedNanos != Long.MIN_VALUE && arrivalNanos - acceptedNanos < debounceNanos) {
+            bounces++;
+            return IGNORED;
+        }
+        acceptedNanos = arrivalNanos;
+        return raised.compareAndSet(false, true) ? RAISED : IGNORED;
+    }
+
+    /**
+     * Clears the alert, e.g. when the warning box was tapped.
+     *
+     * @return {@link #CLEARED} if the alert was raised, {@link #IGNORED} otherwise.
+     */
+    public int acknowledge() {
+        return raised.compareAndSet(true, false) ? CLEARED : IGNORED;
+    }
+
+    public boolean isRaised() {
+        return raised.get();
+    }
+
+    /**
+     * Number of presses ignored because they came too soon after the previous one.
+     */
+    public long getBounceCount() {
+        return bounces;
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * This class detects heart beats in a PPG waveform one sample at a time, so the heart rate the
+ * devices report can be checked against the signal that is actually received. Every sample costs
+ * a fixed amount of work and nothing is allocated:
+ * <ul>
+ * <li>a band-pass filter (0.5 - 5 Hz, two biquads) removes the baseline drift and noise,</li>
+ * <li>a local maximum of the filtered signal above an adaptive threshold (half the running
+ * level of recent beat peaks, slowly decaying) is a beat candidate,</li>
+ * <li>a refractory period after every beat suppresses the dicrotic wave.</li>
+ * </ul>
+ * Beat intervals are measured in samples and converted with the sample rate, so timestamps that
+ * several samples share (one notification) do not distort them.
+ */
+package com.example.Application;
+
+public class BeatDetector {
+    private static final double LOW_CUT_HZ = 0.5;
+    private static final double HIGH_CUT_HZ = 5;
+    private static final double BUTTERWORTH_Q = 0.7071067811865476;
+    private static final double THRESHOLD_FRACTION = 0.5;
+    // weight of a new beat peak in the peak level
+    private static final double PEAK_LEVEL_WEIGHT = 0.25;
+    // the peak level halves within this time without beats
+    private static final double PEAK_LEVEL_HALF_LIFE_S = 3;
+    private static final double MIN_REFRACTORY_S = 0.25;
+    // fraction of the last beat interval that is refractory
+    private static final double REFRACTORY_FRACTION = 0.5;
+    private static final double WARMUP_S = 2;
+    // beats further apart than this (20 bpm) start a new interval measurement
+    private static final double MAX_INTERVAL_S = 3;
+
+    private final Biquad highPass = new Biquad();
+    private final Biquad lowPass = new Biquad();
+    private double sampleRateHz;
+    private double peakLevelDecay;
+    private long warmupSamples;
+    private long minRefractorySamples;
+    private long maxIntervalSamples;
+
+    private long sampleIndex;
+    private double previous;
+    private double beforePrevious;
+    private long previousTimestampNanos;
+    private double peakLevel;
+    private long lastBeatIndex = -1;
+    private long lastBeatNanos;
+    private long intervalSamples;
+    private long beatCount;
+
+    /**
+     * One second-order section in transposed direct form II.
+     */
+    private static final class Biquad {
+        double b0, b1, b2, a1, a2;
+        double z1, z2;
+
+        void setHighPass(double cutoffHz, double sampleRateHz) {
+            double w = 2 * Math.PI * cutoffHz / sampleRateHz;
+            double alpha = Math.sin(w) / (2 * BUTTERWORTH_Q);
+            double cos = Math.cos(w);
+            double a0 = 1 + alpha;
+            b0 = (1 + cos) / 2 / a0;
+            b1 = -(1 + cos) / a0;
+            b2 = b0;
+            a1 = -2 * cos / a0;
+            a2 = (1 - alpha) / a0;
+        }
+
+        void setLowPass(double cutoffHz, double sampleRateHz) {
+            double w = 2 * Math.PI * cutoffHz / sampleRateHz;
+            double alpha = Math.sin(w) / (2 * BUTTERWORTH_Q);
+            double cos = Math.cos(w);
+            double a0 = 1 + alpha;
+            b0 = (1 - cos) / 2 / a0;
+            b1 = (1 - cos) / a0;
+            b2 = b0;
+            a1 = -2 * cos / a0;
+            a2 = (1 - alpha) / a0;
+        }
+
+        double process(double x) {
+            double y = b0 * x + z1;
+            z1 = b1 * x - a1 * y + z2;
+            z2 = b2 * x - a2 * y;
+            return y;
+        }
+
+        void reset(double x) {
+            // steady state for a constant input, so the filter does not ring at start
+            double gain = (b0 + b1 + b2) / (1 + a1 + a2);
+            double y = gain * x;
+            z1 = y - b0 * x;
+            z2 = b2 * x - a2 * y;
+        }
+    }
+
+    /**
+     * Constructor for the BeatDetector class.
+     *
+     * @param sampleRateHz The nominal sample rate of the PPG signal.
+     */
+    public BeatDetector(double sampleRateHz) {
+        setSampleRate(sampleRateHz);
+    }
+
+    /**
+     * Whether the band-pass filter can run at the given sample rate.
+     */
+    public static boolean isSupportedSampleRate(double sampleRateHz) {
+        return sampleRateHz > 2 * HIGH_CUT_HZ;
+    }
+
+    /**
+     * Changes the sample rate, e.g. when a device announces it, and starts over.
+     */
+    public void setSampleRate(double sampleRateHz) {
+        if (!isSupportedSampleRate(sampleRateHz)) {
+            throw new IllegalArgumentException("sample rate too low: " + sampleRateHz);
+        }
+        this.sampleRateHz = sampleRateHz;
+        highPass.setHighPass(LOW_CUT_HZ, sampleRateHz);
+        lowPass.setLowPass(HIGH_CUT_HZ, sampleRateHz);
+        peakLevelDecay = Math.pow(0.5, 1 / (PEAK_LEVEL_HALF_LIFE_S * sampleRateHz));
+        warmupSamples = Math.round(WARMUP_S * sampleRateHz);
+        minRefractorySamples = Math.round(MIN_REFRACTORY_S * sampleRateHz);
+        maxIntervalSamples = Math.round(MAX_INTERVAL_S * sampleRateHz);
+        reset();
+    }
+
+    public double getSampleRate() {
+        return sampleRateHz;
+    }
+
+    /**
+     * Forgets the signal, e.g. after a reconnect.
+     */
+    public void reset() {
+        sampleIndex = 0;
+        previous = beforePrevious = 0;
+        peakLevel = 0;
+        lastBeatIndex = -1;
+        intervalSamples = 0;
+    }
+
+    /**
+     * Processes the next sample.
+     *
+     * @param timestampNanos The timestamp of the sample.
+     * @param value          The PPG value.
+     * @return true if the previous sample was the peak of a beat; its time, interval and rate
+     * are then available through the getters.
+     */
+    public boolean process(long timestampNanos, double value) {
+        if (sampleIndex == 0) {
+            highPass.reset(value);
+            lowPass.reset(0);
+        }
+        double filtered = lowPass.process(highPass.process(value));
+        long index = sampleIndex++;
+        boolean beat = false;
+
+        if (index < warmupSamples) {
+            // the threshold starts from the largest swing seen during the warm-up
+            peakLevel = Math.max(peakLevel, filtered);
+        } else {
+            peakLevel *= peakLevelDecay;
+            long peakIndex = index - 1;
+            boolean localMaximum = previous > beforePrevious && previous >= filtered;
+            if (localMaximum && previous > THRESHOLD_FRACTION * peakLevel && !refractory(peakIndex)) {
+                onBeat(peakIndex, previousTimestampNanos, previous);
+                beat = true;
+            }
+        }
+
+        beforePrevious = previous;
+        previous = filtered;
+        previousTimestampNanos = timestampNanos;
+        return beat;
+    }
+
+    private boolean refractory(long index) {
+        if (lastBeatIndex < 0) {
+            return false;
+        }
+        long refractorySamples = Math.max(minRefractorySamples, Math.round(REFRACTORY_FRACTION * intervalSamples));
+        return index - lastBeatIndex < refractorySamples;
+    }
+
+    private void onBeat(long index, long timestampNanos, double peak) {
+        peakLevel += PEAK_LEVEL_WEIGHT * (peak - peakLevel);
+        long interval = lastBeatIndex >= 0 ? index - lastBeatIndex : 0;
+        intervalSamples = interval <= maxIntervalSamples ? interval : 0;
+        lastBeatIndex = index;
+        lastBeatNanos = timestampNanos;
+        beatCount++;
+    }
+
+    /**
+     * Runs the detector over a batch of samples and collects the detected beats.
+     *
+     * @param timestampsNanos  The sample timestamps.
+     * @param values           The PPG values.
+     * @param count            Number of samples.
+     * @param beatTimestamps   Destination for the beat timestamps, at least {@code count} long.
+     * @param heartRates       Destination for the instantaneous heart rates in bpm.
+     * @param intervalsMillis  Destination for the beat intervals in milliseconds.
+     * @return The number of beats with a measured interval written to the destinations.
+     */
+    public int processAll(long[] timestampsNanos, int[] values, int count,
+                          long[] beatTimestamps, int[] heartRates, int[] intervalsMillis) {
+        int beats = 0;
+        for (int i = 0; i < count; i++) {
+            if (process(timestampsNanos[i], values[i]) && intervalSamples > 0) {
+                beatTimestamps[beats] = lastBeatNanos;
+                heartRates[beats] = (int) Math.round(getHeartRateBpm());
+                intervalsMillis[beats] = (int) Math.round(getIntervalMillis());
+                beats++;
+            }
+        }
+        return beats;
+    }
+
+    /**
+     * Timestamp of the sample at the peak of the last beat.
+     */
+    public long getLastBeatNanos() {
+        return lastBeatNanos;
+    }
+
+    /**
+     * Time between the last two beats in milliseconds, 0 if there is no interval yet.
+     */
+    public double getIntervalMillis() {
+        return intervalSamples * 1000 / sampleRateHz;
+    }
+
+    /**
+     * Heart rate from the last beat interval in beats per minute, 0 if there is no interval yet.
+     */
+    public double getHeartRateBpm() {
+        return intervalSamples > 0 ? 60 * sampleRateHz / intervalSamples : 0;
+    }
+
+    /**
+     * Number of beats detected since this detector was created.
+     */
+    public long getBeatCount() {
+        return beatCount;
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * This interface defines the contract for a data receiver component.
+ * Implementing classes are expected to handle the addition of data points.
+ * Every sample belongs to a channel (one signal of one source) and carries a monotonic
+ * timestamp in nanoseconds ({@code SystemClock.elapsedRealtimeNanos()} time base).
+ * Waveforms and vitals of the same device are separate channels.
+ * The channels of the built-in sensors are the constants below; sensors added at runtime, e.g. for
+ * another bed, get their channels from the {@code BleConnectionManager}.
+ */
+package com.example.Application;
+
+
+public interface DataReciever {
+    int CHANNEL_MOCK_PPG = 0;
+    int CHANNEL_MOCK_HEART_RATE = 1;
+    int CHANNEL_MOCK_SPO2 = 2;
+    int CHANNEL_SPO2_PPG = 3;
+    int CHANNEL_SPO2_PULSE_RATE = 4;
+    int CHANNEL_SPO2_SATURATION = 5;
+    // 1 when the alert button raised the warning, 0 when the warning was acknowledged
+    int CHANNEL_ALERT = 6;
+    // beats detected in the PPG waveforms: heart rate (bpm) and beat interval (ms), one sample per beat
+    int CHANNEL_MOCK_BEAT_RATE = 7;
+    int CHANNEL_MOCK_BEAT_INTERVAL = 8;
+    int CHANNEL_SPO2_BEAT_RATE = 9;
+    int CHANNEL_SPO2_BEAT_INTERVAL = 10;
+    int CHANNEL_COUNT = 11;
+    // sensors added at runtime get a block of channels each, after the ones above: the lanes, then
+    // the beat rate and interval, or the button's event
+    int CHANNELS_PER_DEVICE = SampleRingBuffer.DEVICE_LANES + 2;
+
+    void onSample(int channel, long timestampNanos, int value);
+
+    /**
+     * Delivers several samples of one channel at once.
+     *
+     * @param channel         One of the {@code CHANNEL_} constants.
+     * @param timestampsNanos The sample timestamps.
+     * @param values          The sample values.
+     * @param offset          Index of the first sample in both arrays.
+     * @param count           Number of samples.
+     */
+    void onSamples(int channel, long[] timestampsNanos, int[] values, int offset, int count);
+
+
+
+}
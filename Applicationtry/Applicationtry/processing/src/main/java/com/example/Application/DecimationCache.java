@@ -0,0 +1,282 @@
+/**
+ * This class reduces the samples of a {@link SampleStore} for drawing, with a cache per zoom
+ * level. The zoom level is picked from the samples per pixel: level L splits the history into
+ * buckets of 2^L samples, the smallest power of two that is at least one pixel wide, so the
+ * number of points is bounded by the width of the view and not by the length of the history.
+ * Buckets are aligned to the sample index and do not move when new samples arrive or the view
+ * scrolls, so a finished bucket is reduced once and cached; a frame only reduces the buckets
+ * that were added since the previous one. Two reductions are available:
+ * <ul>
+ * <li>{@link #MODE_MIN_MAX}: the minimum and maximum of every bucket, in the order they
+ * occurred, which keeps every peak,</li>
+ * <li>{@link #MODE_LTTB}: Largest-Triangle-Three-Buckets, one point per bucket chosen to keep
+ * the shape of the line.</li>
+ * </ul>
+ * Buckets that are not finished yet, or whose oldest samples were already overwritten, are reduced
+ * to their minimum and maximum on every call. A cache must only be used by one thread, usually the
+ * render thread; the store may be appended to meanwhile.
+ */
+package com.example.Application;
+
+public class DecimationCache {
+    public static final int MODE_MIN_MAX = 0;
+    public static final int MODE_LTTB = 1;
+
+    /**
+     * The reduced buckets of one zoom level in a circular array, valid for the bucket indices
+     * [from, to).
+     */
+    private static final class Level {
+        final int shift;
+        final int mask;
+        // first point of a bucket, and the second one or -1 for a single point
+        final long[] indexA;
+        final double[] valueA;
+        final long[] indexB;
+        final double[] valueB;
+        long from;
+        long to;
+
+        Level(int shift, int buckets) {
+            this.shift = shift;
+            this.mask = buckets - 1;
+            indexA = new long[buckets];
+            valueA = new double[buckets];
+            indexB = new long[buckets];
+            valueB = new double[buckets];
+        }
+    }
+
+    private final SampleStore store;
+    private final int mode;
+    private final int maxShift;
+    private final Level[] levels;
+    private long reducedBucketCount;
+
+    /**
+     * Constructor for the DecimationCache class.
+     *
+     * @param store The samples to reduce.
+     * @param mode  {@link #MODE_MIN_MAX} or {@link #MODE_LTTB}.
+     */
+    public DecimationCache(SampleStore store, int mode) {
+        if (mode != MODE_MIN_MAX && mode != MODE_LTTB) {
+            throw new IllegalArgumentException("unknown mode " + mode);
+        }
+        this.store = store;
+        this.mode = mode;
+        // the capacity is a power of two
+        this.maxShift = Integer.numberOfTrailingZeros(store.capacity());
+        this.levels = new Level[maxShift + 1];
+    }
+
+    public SampleStore getStore() {
+        return store;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * The zoom level for the given number of samples per pixel: buckets of 2^level samples.
+     * Level 0 means every sample is drawn.
+     */
+    public static int levelFor(double samplesPerPixel) {
+        if (!(samplesPerPixel > 1)) {
+            return 0;
+        }
+        return Math.min(62, 64 - Long.numberOfLeadingZeros((long) Math.ceil(samplesPerPixel) - 1));
+    }
+
+    /**
+     * Reduces the samples in [from, to) for a view showing the given number of samples per pixel.
+     * The points are written in the order of their sample index; at most {@code outX.length}.
+     *
+     * @param from            First sample index, clamped to the stored range.
+     * @param to              Sample index after the last one, clamped to the stored range.
+     * @param samplesPerPixel Samples per pixel column of the view.
+     * @param outX            Receives the sample indices.
+     * @param outY            Receives the sample values.
+     * @return The number of points written.
+     */
+    public int decimate(long from, long to, double samplesPerPixel, double[] outX, double[] outY) {
+        long end = store.getEndIndex();
+        long first = store.getFirstIndex();
+        from = Math.max(from, first);
+        to = Math.min(to, end);
+        if (from >= to) {
+            return 0;
+        }
+        int max = Math.min(outX.length, outY.length);
+        int shift = Math.min(levelFor(samplesPerPixel), maxShift);
+        int points = 0;
+        if (shift == 0) {
+            for (long i = from; i < to && points < max; i++) {
+                outX[points] = i;
+                outY[points++] = store.get(i);
+            }
+            return points;
+        }
+
+        Level level = levels[shift];
+        if (level == null) {
+            level = new Level(shift, Math.max(4, 2 * (store.capacity() >> shift)));
+            levels[shift] = level;
+        }
+        long bucketFrom = from >> shift;
+        long bucketTo = ((to - 1) >> shift) + 1;
+        // buckets that lost samples to the circular store, and buckets still filling, are not cached
+        long firstWhole = (first + (1L << shift) - 1) >> shift;
+        long endWhole = end >> shift;
+        // LTTB needs the next bucket to be finished as well
+        long cacheEnd = mode == MODE_LTTB ? endWhole - 1 : endWhole;
+        update(level, Math.max(bucketFrom, firstWhole), Math.min(bucketTo, cacheEnd), firstWhole);
+
+        for (long b = bucketFrom; b < bucketTo && points < max; b++) {
+            if (b >= level.from && b < level.to) {
+                int slot = (int) (b & level.mask);
+                outX[points] = level.indexA[slot];
+                outY[points++] = level.valueA[slot];
+                if (level.indexB[slot] >= 0 && points < max) {
+                    outX[points] = level.indexB[slot];
+                    outY[points++] = level.valueB[slot];
+                }
+            } else {
+                long start = Math.max(b << shift, first);
+                long stop = Math.min((b + 1) << shift, end);
+                points = emitMinMax(start, stop, outX, outY, points, max);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Makes the level hold the buckets [from, to), reducing only the ones it does not have yet.
+     */
+    private void update(Level level, long from, long to, long firstWhole) {
+        // drop the buckets whose samples were overwritten since they were reduced
+        level.from = Math.max(level.from, firstWhole);
+        if (level.to < level.from) {
+            level.to = level.from;
+        }
+        if (from >= to) {
+            return;
+        }
+        // a range that does not continue the cached one starts over, LTTB chains from left to right
+        if (from < level.from || from > level.to || level.from == level.to) {
+            level.from = from;
+            level.to = from;
+        }
+        for (long b = level.to; b < to; b++) {
+            reduce(level, b);
+            level.to = b + 1;
+            if (level.to - level.from > level.mask + 1) {
+                level.from = level.to - (level.mask + 1);
+            }
+        }
+    }
+
+    private void reduce(Level level, long bucket) {
+        int shift = level.shift;
+        int slot = (int) (bucket & level.mask);
+        long start = bucket << shift;
+        long stop = (bucket + 1) << shift;
+        reducedBucketCount++;
+        if (mode == MODE_MIN_MAX) {
+            long minIndex = start, maxIndex = start;
+            double min = store.get(start), max = min;
+            for (long i = start + 1; i < stop; i++) {
+                double v = store.get(i);
+                if (v < min) {
+                    min = v;
+                    minIndex = i;
+                } else if (v > max) {
+                    max = v;
+                    maxIndex = i;
+                }
+            }
+            boolean minFirst = minIndex <= maxIndex;
+            level.indexA[slot] = minFirst ? minIndex : maxIndex;
+            level.valueA[slot] = minFirst ? min : max;
+            level.indexB[slot] = minIndex == maxIndex ? -1 : (minFirst ? maxIndex : minIndex);
+            level.valueB[slot] = minFirst ? max : min;
+            return;
+        }
+
+        level.indexB[slot] = -1;
+        if (bucket == level.from) {
+            // the first bucket of a chain keeps its first sample
+            level.indexA[slot] = start;
+            level.valueA[slot] = store.get(start);
+            return;
+        }
+        int previous = (int) ((bucket - 1) & level.mask);
+        double ax = level.indexA[previous];
+        double ay = level.valueA[previous];
+        // the third vertex is the average of the next bucket
+        double sum = 0;
+        for (long i = stop, nextStop = stop + (1L << shift); i < nextStop; i++) {
+            sum += store.get(i);
+        }
+        double cx = stop + ((1L << shift) - 1) / 2.0;
+        double cy = sum / (1L << shift);
+        long best = start;
+        double bestArea = -1;
+        for (long i = start; i < stop; i++) {
+            double area = Math.abs((ax - cx) * (store.get(i) - ay) - (ax - i) * (cy - ay));
+            if (area > bestArea) {
+                bestArea = area;
+                best = i;
+            }
+        }
+        level.indexA[slot] = best;
+        level.valueA[slot] = store.get(best);
+    }
+
+    private int emitMinMax(long start, long stop, double[] outX, double[] outY, int points, int max) {
+        if (start >= stop) {
+            return points;
+        }
+        long minIndex = start, maxIndex = start;
+        double min = store.get(start), maxValue = min;
+        for (long i = start + 1; i < stop; i++) {
+            double v = store.get(i);
+            if (v < min) {
+                min = v;
+                minIndex = i;
+            } else if (v > maxValue) {
+                maxValue = v;
+                maxIndex = i;
+            }
+        }
+        if (points < max) {
+            outX[points] = Math.min(minIndex, maxIndex);
+            outY[points++] = minIndex <= maxIndex ? min : maxValue;
+        }
+        if (minIndex != maxIndex && points < max) {
+            outX[points] = Math.max(minIndex, maxIndex);
+            outY[points++] = minIndex <= maxIndex ? maxValue : min;
+        }
+        return points;
+    }
+
+    /**
+     * Forgets all cached buckets, e.g. after the store was refilled.
+     */
+    public void clear() {
+        for (Level level : levels) {
+            if (level != null) {
+                level.from = 0;
+                level.to = 0;
+            }
+        }
+    }
+
+    /**
+     * Number of buckets reduced and cached so far, for checking that frames reuse the cache.
+     */
+    public long getReducedBucketCount() {
+        return reducedBucketCount;
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * This class is the receiving pipeline of one device: an inbox for its notifications, its
+ * decoders and the {@link SampleRingBuffer} the UI drains. The GATT callback only puts the
+ * notification into the inbox; the decoding runs as a task of the shared {@link WorkerPool}, so a
+ * device that sends a lot delays neither the callbacks nor the decoding of the others, and no
+ * state is shared between devices. A full inbox drops the notification and counts it, like the
+ * ring buffer does with samples.
+ * The beats of the PPG waveform are detected in the same task, right after the samples were
+ * decoded, and put into a ring of their own, so the UI only drains them.
+ */
+package com.example.Application;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DevicePipeline {
+    public static final int DEFAULT_INBOX_CAPACITY = 64;
+    // the lanes of the beat records: the instantaneous heart rate in bpm and the beat interval in ms
+    public static final int BEAT_LANE_RATE = 0;
+    public static final int BEAT_LANE_INTERVAL = 1;
+    public static final int BEAT_LANES = 2;
+
+    /**
+     * Told about every decoded notification, on the thread of the pool that decoded it.
+     */
+    public interface Listener {
+        /**
+         * @param source       Index of the decoder, as given to {@link #offer}.
+         * @param count        Number of decoded samples, or the decoder's negative error code.
+         * @param arrivalNanos Arrival time of the notification.
+         */
+        void onDecoded(int source, int count, long arrivalNanos);
+    }
+
+    private final FrameDecoder[] decoders;
+    private final SampleRingBuffer samples;
+    private final Listener listener;
+    private final WorkerPool.Task task;
+    // single-producer/single-consumer inbox: the callback thread writes, the task reads
+    private final byte[][] values;
+    private final long[] arrivals;
+    private final int[] sources;
+    private final int mask;
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final AtomicLong readSequence = new AtomicLong();
+    private final AtomicLong droppedNotifications = new AtomicLong();
+    private final AtomicBoolean resetRequested = new AtomicBoolean();
+    // null without beat detection; only touched by the task
+    private final BeatDetector beatDetector;
+    private final SampleRingBuffer beats;
+    private final int[] ppgValues;
+    private final long[] ppgTimestamps;
+    private final long[] beatTimestamps;
+    private final int[] beatRates;
+    private final int[] beatIntervals;
+    private final int[] beatRecord = new int[BEAT_LANES];
+
+    /**
+     * Constructor for the DevicePipeline class.
+     *
+     * @param decoders      The decoders of the device's characteristics, null for one that is not decoded.
+     * @param samples       The buffer the decoded samples are put into, drained by the UI.
+     * @param pool          The pool shared by all devices.
+     * @param inboxCapacity Number of notifications waiting to be decoded, rounded up to a power of two.
+     * @param listener      Told about every decoded notification, may be null.
+     */
+    public DevicePipeline(FrameDecoder[] decoders, SampleRingBuffer samples, WorkerPool pool, int inboxCapacity,
+                          Listener listener) {
+        this(decoders, samples, pool, inboxCapacity, listener, null, null);
+    }
+
+    /**
+     * Constructor for a DevicePipeline that also detects the beats of the PPG lane.
+     *
+     * @param decoders      The decoders of the device's characteristics, null for one that is not decoded.
+     * @param samples       The buffer the decoded samples are put into, drained by the UI.
+     * @param pool          The pool shared by all devices.
+     * @param inboxCapacity Number of notifications waiting to be decoded, rounded up to a power of two.
+     * @param listener      Told about every decoded notification, may be null.
+     * @param beatDetector  Detects the beats in the PPG lane of the decoded samples, null for none.
+     * @param beats         The buffer the beats are put into as {@link #BEAT_LANES} records, drained by the UI.
+     */
+    public DevicePipeline(FrameDecoder[] decoders, SampleRingBuffer samples, WorkerPool pool, int inboxCapacity,
+                          Listener listener, BeatDetector beatDetector, SampleRingBuffer beats) {
+        if (beatDetector != null && (beats == null || beats.lanes() != BEAT_LANES)) {
+            throw new IllegalArgumentException("beats need a ring of " + BEAT_LANES + " lanes");
+        }
+        int size = Integer.highestOneBit(Math.max(1, inboxCapacity));
+        if (size < inboxCapacity) {
+            size <<= 1;
+        }
+        this.decoders = decoders.clone();
+        this.samples = samples;
+        this.listener = listener;
+        this.values = new byte[size][];
+        this.arrivals = new long[size];
+        this.sources = new int[size];
+        this.mask = size - 1;
+        this.beatDetector = beatDetector;
+        this.beats = beats;
+        if (beatDetector != null) {
+            ppgValues = new int[samples.capacity()];
+            ppgTimestamps = new long[samples.capacity()];
+            beatTimestamps = new long[samples.capacity()];
+            beatRates = new int[samples.capacity()];
+            beatIntervals = new int[samples.capacity()];
+        } else {
+            ppgValues = null;
+            ppgTimestamps = null;
+            beatTimestamps = null;
+            beatRates = null;
+            beatIntervals = null;
+        }
+        this.task = pool.newTask(this::decodeAll);
+    }
+
+    /**
+     * Puts a notification into the inbox and schedules its decoding. Must only be called from one
+     * thread at a time, the device's GATT callback.
+     *
+     * @param source       Index of the decoder.
+     * @param value        The notification value; it is not copied, so it must not be reused.
+     * @param arrivalNanos Arrival time of the notification.
+     * @return false if the inbox was full and the notification was dropped.
+     */
+    public boolean offer(int source, byte[] value, long arrivalNanos) {
+        long sequence = writeSequence.get();
+        if (sequence - readSequence.get() > mask) {
+            droppedNotifications.incrementAndGet();
+            task.schedule();
+            return false;
+        }
+        int slot = (int) (sequence & mask);
+        values[slot] = value;
+        arrivals[slot] = arrivalNanos;
+        sources[slot] = source;
+        writeSequence.lazySet(sequence + 1);
+        task.schedule();
+        return true;
+    }
+
+    /**
+     * Makes the decoders and the beat detector forget the previous connection before the next
+     * notification is decoded.
+     */
+    public void reset() {
+        resetRequested.set(true);
+        task.schedule();
+    }
+
+    private void decodeAll() {
+        if (resetRequested.getAndSet(false)) {
+            for (FrameDecoder decoder : decoders) {
+                if (decoder != null) {
+                    decoder.reset();
+                }
+            }
+            if (beatDetector != null) {
+                beatDetector.reset();
+            }
+        }
+        long read = readSequence.get();
+        long end = writeSequence.get();
+        for (; read < end; read++) {
+            int slot = (int) (read & mask);
+            byte[] value = values[slot];
+            // the inbox does not keep the notification alive
+            values[slot] = null;
+            int source = sources[slot];
+            long arrivalNanos = arrivals[slot];
+            long written = samples.getWriteSequence();
+            int count = decoders[source].decodeInto(value, samples, arrivalNanos);
+            if (count > 0 && beatDetector != null) {
+                detectBeats(decoders[source], written);
+            }
+            readSequence.lazySet(read + 1);
+            if (listener != null) {
+                listener.onDecoded(source, count, arrivalNanos);
+            }
+        }
+    }
+
+    /**
+     * Runs the beat detector over the PPG values of the samples written since {@code written} and
+     * puts the beats into their ring; a full ring drops them and counts them.
+     */
+    private void detectBeats(FrameDecoder decoder, long written) {
+        int sampleRate = decoder.getSampleRateHz();
+        if (sampleRate != 0 && sampleRate != beatDetector.getSampleRate()
+                && BeatDetector.isSupportedSampleRate(sampleRate)) {
+            beatDetector.setSampleRate(sampleRate);
+        }
+        int count = samples.copyWritten(written, SampleRingBuffer.LANE_PPG, ppgValues, ppgTimestamps, ppgValues.length);
+        int found = beatDetector.processAll(ppgTimestamps, ppgValues, count, beatTimestamps, beatRates, beatIntervals);
+        for (int i = 0; i < found; i++) {
+            beatRecord[BEAT_LANE_RATE] = beatRates[i];
+            beatRecord[BEAT_LANE_INTERVAL] = beatIntervals[i];
+            beats.offer(beatRecord, beatTimestamps[i]);
+        }
+    }
+
+    public FrameDecoder getDecoder(int source) {
+        return decoders[source];
+    }
+
+    public SampleRingBuffer getSamples() {
+        return samples;
+    }
+
+    /**
+     * The buffer of the detected beats, null without beat detection.
+     */
+    public SampleRingBuffer getBeats() {
+        return beats;
+    }
+
+    /**
+     * Number of notifications waiting to be decoded.
+     */
+    public int getInboxSize() {
+        return (int) (writeSequence.get() - readSequence.get());
+    }
+
+    /**
+     * Number of notifications dropped because the pool did not keep up with the device.
+     */
+    public long getDroppedNotificationCount() {
+        return droppedNotifications.get();
+    }
+}
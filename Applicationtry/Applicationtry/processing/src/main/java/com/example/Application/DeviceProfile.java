@@ -0,0 +1,424 @@
+/**
+ * This class declares what the app needs to know about one kind of Bluetooth sensor: how it is
+ * found, which service and characteristics it is read from, the layout of its notifications and
+ * the channels its values are handed to the receiver on. The profiles of all known sensors are
+ * listed here, a {@code SensorDevice} connects to a sensor by its profile alone. More sensors of
+ * a known kind, e.g. for another bed, are declared with {@link #forSensor}.
+ */
+package com.example.Application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+public final class DeviceProfile {
+    // 5-byte frames of the SpO2 sensor, decoded by Spo2PacketDecoder
+    public static final int FRAME_SPO2 = 0;
+    // packed or legacy frames of the ESP32 mockup, decoded by MockFrameDecoder
+    public static final int FRAME_MOCK = 1;
+    // a button: byte 0 is 1 for every press
+    public static final int FRAME_BUTTON = 2;
+    public static final int NO_CHANNEL = -1;
+    public static final UUID CLIENT_CHARACTERISTIC_CONFIG = UUID.fromString("00002902-0000-1000-8000-00805F9B34FB");
+
+    public static final DeviceProfile SPO2_OXIMETER = new Builder("Spo2Device")
+            .setAddress("00:A0:50:0E:18:15")
+            .setService("49535343-fe7d-4ae5-8fa9-9fafd205e455")
+            .addCharacteristic("49535343-1e4d-4bd9-ba61-23c647249616", FRAME_SPO2)
+            .setEnableDescriptor(true)
+            .setSampleRate(100)
+            .setLaneChannels(DataReciever.CHANNEL_SPO2_PPG, DataReciever.CHANNEL_SPO2_PULSE_RATE,
+                    DataReciever.CHANNEL_SPO2_SATURATION)
+            .setBeatChannels(DataReciever.CHANNEL_SPO2_BEAT_RATE, DataReciever.CHANNEL_SPO2_BEAT_INTERVAL)
+            .build();
+
+    // found by its advertised service, so any ESP32 running the mockup firmware is used
+    public static final DeviceProfile ESP32_MOCKUP = new Builder("MockupDevice")
+            .setAdvertisedService("ebf2b73d-dfa2-4213-9203-37b161103e98")
+            .setService("ebf2b73d-dfa2-4213-9203-37b161103e98")
+            .addCharacteristic("eee60e57-8045-4567-a683-59997efbcd0a", FRAME_MOCK)
+            // large enough for a frame of 174 PPG samples
+            .setRequestedMtu(185)
+            .setHighPriority(true)
+            // samplingRate of the ESP32 sketch; packed frames announce their rate
+            .setSampleRate(50)
+            .setLaneChannels(DataReciever.CHANNEL_MOCK_PPG, DataReciever.CHANNEL_MOCK_HEART_RATE,
+                    DataReciever.CHANNEL_MOCK_SPO2)
+            .setBeatChannels(DataReciever.CHANNEL_MOCK_BEAT_RATE, DataReciever.CHANNEL_MOCK_BEAT_INTERVAL)
+            .build();
+
+    public static final DeviceProfile ALERT_BUTTON = new Builder("Alert Button sensor")
+            .setAddress("FF:FF:FA:A9:C2:5D")
+            .setService("0000FFE0-0000-1000-8000-00805F9B34FB")
+            .addCharacteristic("0000FFE1-0000-1000-8000-00805F9B34FB", FRAME_BUTTON)
+            .setEnableDescriptor(true)
+            .setEventChannel(DataReciever.CHANNEL_ALERT)
+            .build();
+
+    private static final List<DeviceProfile> PROFILES =
+            Collections.unmodifiableList(Arrays.asList(SPO2_OXIMETER, ESP32_MOCKUP, ALERT_BUTTON));
+
+    // the declared profile this one was made from, itself for a declared one
+    private final DeviceProfile base;
+    private final String name;
+    private final String address;
+    private final UUID advertisedService;
+    private final UUID service;
+    private final UUID[] characteristics;
+    private final int[] frameLayouts;
+    private final boolean enableDescriptor;
+    private final int requestedMtu;
+    private final boolean highPriority;
+    private final int sampleRateHz;
+    private final int[] laneChannels;
+    private final int beatRateChannel;
+    private final int beatIntervalChannel;
+    private final int eventChannel;
+
+    private DeviceProfile(Builder builder) {
+        base = this;
+        name = builder.name;
+        address = builder.address;
+        advertisedService = builder.advertisedService;
+        service = builder.service;
+        characteristics = builder.characteristics.toArray(new UUID[0]);
+        frameLayouts = new int[builder.frameLayouts.size()];
+        for (int i = 0; i < frameLayouts.length; i++) {
+            frameLayouts[i] = builder.frameLayouts.get(i);
+        }
+        enableDescriptor = builder.enableDescriptor;
+        requestedMtu = builder.requestedMtu;
+        highPriority = builder.highPriority;
+        sampleRateHz = builder.sampleRateHz;
+        laneChannels = builder.laneChannels;
+        beatRateChannel = builder.beatRateChannel;
+        beatIntervalChannel = builder.beatIntervalChannel;
+        eventChannel = builder.eventChannel;
+    }
+
+    private DeviceProfile(DeviceProfile base, String name, String address, int firstChannel) {
+        this.base = base;
+        this.name = name;
+        this.address = address;
+        advertisedService = base.advertisedService;
+        service = base.service;
+        characteristics = base.characteristics;
+        frameLayouts = base.frameLayouts;
+        enableDescriptor = base.enableDescriptor;
+        requestedMtu = base.requestedMtu;
+        highPriority = base.highPriority;
+        sampleRateHz = base.sampleRateHz;
+        if (base.laneChannels != null) {
+            laneChannels = new int[base.laneChannels.length];
+            for (int lane = 0; lane < laneChannels.length; lane++) {
+                laneChannels[lane] = base.laneChannels[lane] != NO_CHANNEL ? firstChannel + lane : NO_CHANNEL;
+            }
+        } else {
+            laneChannels = null;
+        }
+        int beats = firstChannel + SampleRingBuffer.DEVICE_LANES;
+        beatRateChannel = base.beatRateChannel != NO_CHANNEL ? beats : NO_CHANNEL;
+        beatIntervalChannel = base.beatIntervalChannel != NO_CHANNEL ? beats + 1 : NO_CHANNEL;
+        eventChannel = base.eventChannel != NO_CHANNEL ? firstChannel : NO_CHANNEL;
+    }
+
+    /**
+     * Returns the profiles of all known sensors.
+     */
+    public static List<DeviceProfile> getProfiles() {
+        return PROFILES;
+    }
+
+    /**
+     * Returns the profile with the given name, or null if there is none.
+     */
+    public static DeviceProfile forName(String name) {
+        for (DeviceProfile profile : PROFILES) {
+            if (profile.name.equals(name)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Declares another sensor of this kind, e.g. the oximeter of another bed. It is found by its
+     * address, and its values go to its own block of {@link DataReciever#CHANNELS_PER_DEVICE}
+     * channels: the lanes first, then the beat rate and interval; a button's presses go to the first.
+     *
+     * @param name         The name the device is logged and measured under, unique among the devices.
+     * @param address      The MAC address of the sensor.
+     * @param firstChannel The first channel of the block.
+     */
+    public DeviceProfile forSensor(String name, String address, int firstChannel) {
+        if (address == null || firstChannel < 0) {
+            throw new IllegalArgumentException(name + ": needs an address and channels");
+        }
+        return new DeviceProfile(base, name, address, firstChannel);
+    }
+
+    /**
+     * The declared profile this one was made from with {@link #forSensor}, or this profile.
+     */
+    public DeviceProfile getBase() {
+        return base;
+    }
+
+    /**
+     * The name the device is logged and measured under.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The MAC address the sensor is found by, or null if it is found by its advertised service.
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    public UUID getAdvertisedService() {
+        return advertisedService;
+    }
+
+    public UUID getService() {
+        return service;
+    }
+
+    public int getCharacteristicCount() {
+        return characteristics.length;
+    }
+
+    public UUID getCharacteristic(int index) {
+        return characteristics[index];
+    }
+
+    /**
+     * Returns one of the {@code FRAME_} constants for the characteristic.
+     */
+    public int getFrameLayout(int index) {
+        return frameLayouts[index];
+    }
+
+    /**
+     * Whether the client characteristic configuration descriptor has to be written to get
+     * notifications; the ESP32 mockup sends them without it.
+     */
+    public boolean isEnableDescriptor() {
+        return enableDescriptor;
+    }
+
+    /**
+     * The MTU requested after connecting, 0 to keep the default of 23.
+     */
+    public int getRequestedMtu() {
+        return requestedMtu;
+    }
+
+    /**
+     * Whether a short connection interval is requested, so frames are not delayed.
+     */
+    public boolean isHighPriority() {
+        return highPriority;
+    }
+
+    /**
+     * The nominal sample rate, until the frames announce one.
+     */
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    /**
+     * Whether the sensor streams samples that are buffered and drained once per display frame.
+     */
+    public boolean hasSamples() {
+        return laneChannels != null;
+    }
+
+    /**
+     * Returns the channel of a lane of the sample records, or {@link #NO_CHANNEL}.
+     *
+     * @param lane One of the {@code SampleRingBuffer.LANE_} constants.
+     */
+    public int getLaneChannel(int lane) {
+        return laneChannels != null && lane < laneChannels.length ? laneChannels[lane] : NO_CHANNEL;
+    }
+
+    /**
+     * The channel of the beat rates detected in the PPG lane, or {@link #NO_CHANNEL} if beats are
+     * not detected.
+     */
+    public int getBeatRateChannel() {
+        return beatRateChannel;
+    }
+
+    public int getBeatIntervalChannel() {
+        return beatIntervalChannel;
+    }
+
+    /**
+     * The channel button presses are handed to, or {@link #NO_CHANNEL}.
+     */
+    public int getEventChannel() {
+        return eventChannel;
+    }
+
+    /**
+     * Whether one of the values of the sensor is handed to the receiver on the given channel.
+     */
+    public boolean hasChannel(int channel) {
+        if (channel == NO_CHANNEL) {
+            return false;
+        }
+        for (int lane = 0; lane < SampleRingBuffer.DEVICE_LANES; lane++) {
+            if (getLaneChannel(lane) == channel) {
+                return true;
+            }
+        }
+        return channel == beatRateChannel || channel == beatIntervalChannel || channel == eventChannel;
+    }
+
+    /**
+     * Creates the decoder for a characteristic, or null for a button. The samples of a
+     * notification are spaced by the nominal sample rate.
+     */
+    public FrameDecoder newDecoder(int index) {
+        FrameDecoder decoder;
+        switch (frameLayouts[index]) {
+            case FRAME_SPO2:
+                decoder = new Spo2PacketDecoder();
+                break;
+            case FRAME_MOCK:
+                decoder = new MockFrameDecoder();
+                break;
+            default:
+                return null;
+        }
+        decoder.setNominalSampleRate(sampleRateHz);
+        return decoder;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Builds a profile. The UUIDs are parsed once, here.
+     */
+    public static final class Builder {
+        private final String name;
+        private String address;
+        private UUID advertisedService;
+        private UUID service;
+        private final List<UUID> characteristics = new ArrayList<>();
+        private final List<Integer> frameLayouts = new ArrayList<>();
+        private boolean enableDescriptor;
+        private int requestedMtu;
+        private boolean highPriority;
+        private int sampleRateHz;
+        private int[] laneChannels;
+        private int beatRateChannel = NO_CHANNEL;
+        private int beatIntervalChannel = NO_CHANNEL;
+        private int eventChannel = NO_CHANNEL;
+
+        public Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder setAddress(String address) {
+            this.address = address;
+            return this;
+        }
+
+        public Builder setAdvertisedService(String uuid) {
+            this.advertisedService = UUID.fromString(uuid);
+            return this;
+        }
+
+        public Builder setService(String uuid) {
+            this.service = UUID.fromString(uuid);
+            return this;
+        }
+
+        /**
+         * Adds a characteristic to subscribe to.
+         *
+         * @param uuid        The UUID of the characteristic within the service.
+         * @param frameLayout One of the {@code FRAME_} constants.
+         */
+        public Builder addCharacteristic(String uuid, int frameLayout) {
+            characteristics.add(UUID.fromString(uuid));
+            frameLayouts.add(frameLayout);
+            return this;
+        }
+
+        public Builder setEnableDescriptor(boolean enableDescriptor) {
+            this.enableDescriptor = enableDescriptor;
+            return this;
+        }
+
+        public Builder setRequestedMtu(int requestedMtu) {
+            this.requestedMtu = requestedMtu;
+            return this;
+        }
+
+        public Builder setHighPriority(boolean highPriority) {
+            this.highPriority = highPriority;
+            return this;
+        }
+
+        public Builder setSampleRate(int sampleRateHz) {
+            this.sampleRateHz = sampleRateHz;
+            return this;
+        }
+
+        /**
+         * Sets the channels of the PPG, pulse rate and SpO2 lanes, in the order of the lanes.
+         */
+        public Builder setLaneChannels(int... laneChannels) {
+            this.laneChannels = laneChannels.clone();
+            return this;
+        }
+
+        public Builder setBeatChannels(int beatRateChannel, int beatIntervalChannel) {
+            this.beatRateChannel = beatRateChannel;
+            this.beatIntervalChannel = beatIntervalChannel;
+            return this;
+        }
+
+        public Builder setEventChannel(int eventChannel) {
+            this.eventChannel = eventChannel;
+            return this;
+        }
+
+        /**
+         * Checks the declaration and builds the profile.
+         *
+         * @throws IllegalStateException if the profile cannot be connected to or has no output.
+         */
+        public DeviceProfile build() {
+            if (address == null && advertisedService == null) {
+                throw new IllegalStateException(name + ": needs an address or an advertised service");
+            }
+            if (service == null || characteristics.isEmpty()) {
+                throw new IllegalStateException(name + ": needs a service and a characteristic");
+            }
+            boolean button = frameLayouts.contains(FRAME_BUTTON);
+            if (button ? eventChannel == NO_CHANNEL : laneChannels == null) {
+                throw new IllegalStateException(name + ": has no channel for its values");
+            }
+            if (laneChannels != null && laneChannels.length > SampleRingBuffer.DEVICE_LANES) {
+                throw new IllegalStateException(name + ": more channels than lanes");
+            }
+            if (laneChannels != null && sampleRateHz <= 0) {
+                throw new IllegalStateException(name + ": needs a nominal sample rate");
+            }
+            return new DeviceProfile(this);
+        }
+    }
+}
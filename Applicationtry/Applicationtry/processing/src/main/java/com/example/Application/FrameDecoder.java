@@ -0,0 +1,47 @@
+/**
+ * A decoder for the notifications of one sensor characteristic. It runs in the device's
+ * {@link DevicePipeline} and appends the decoded samples to the device's {@link SampleRingBuffer} as
+ * (PPG, pulse rate, SpO2) records, so every frame layout is drained and fanned out the same way.
+ */
+package com.example.Application;
+
+public interface FrameDecoder {
+
+    /**
+     * Decodes a notification and appends its samples to the ring buffer. The newest sample gets the
+     * arrival time, the older ones are spaced backwards by the sample period (see {@link SampleClock}).
+     * Must only be called from the ring's producer thread.
+     *
+     * @param packet         The raw notification value.
+     * @param ring           The device's sample buffer.
+     * @param timestampNanos Arrival time of the notification.
+     * @return The number of decoded samples, or a negative error code for malformed packets.
+     */
+    int decodeInto(byte[] packet, SampleRingBuffer ring, long timestampNanos);
+
+    /**
+     * Forgets the state of the previous connection, e.g. a sequence number.
+     */
+    void reset();
+
+    /**
+     * Sets the rate the samples of a notification are spaced by until the frames announce one.
+     */
+    void setNominalSampleRate(int sampleRateHz);
+
+    /**
+     * Sample rate announced by the sensor, 0 if its frames do not carry one.
+     */
+    int getSampleRateHz();
+
+    /**
+     * Number of samples lost right before the most recently decoded packet, 0 if there was no gap
+     * or the frames cannot tell.
+     */
+    int getLastGap();
+
+    /**
+     * Total number of samples lost since this decoder was created.
+     */
+    long getLostSampleCount();
+}
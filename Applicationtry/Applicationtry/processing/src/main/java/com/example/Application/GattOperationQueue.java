@@ -0,0 +1,209 @@
+/**
+ * This class serializes the GATT operations of one connection. Android silently drops an operation
+ * that is issued while another one is still in flight, so every discoverServices, writeDescriptor,
+ * requestMtu etc. goes through this queue: the next operation only starts once the GATT callback
+ * of the previous one reported completion, or its timeout expired.
+ * The class does not depend on the Android framework so it can be tested on the host JVM.
+ */
+package com.example.Application;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class GattOperationQueue {
+    public static final String OP_DISCOVER_SERVICES = "discoverServices";
+    public static final String OP_SET_NOTIFICATION = "setCharacteristicNotification";
+    public static final String OP_WRITE_DESCRIPTOR = "writeDescriptor";
+    public static final String OP_REQUEST_MTU = "requestMtu";
+    public static final String OP_CONNECTION_PRIORITY = "requestConnectionPriority";
+    public static final long DEFAULT_TIMEOUT_MS = 5000;
+
+    /**
+     * Issues the GATT call, e.g. {@code gatt::discoverServices}.
+     */
+    public interface Operation {
+        /**
+         * @return false if the call could not be started.
+         */
+        boolean execute();
+    }
+
+    /**
+     * Notified when an operation finished, failed to start or timed out.
+     */
+    public interface Completion {
+        void onComplete(boolean success);
+    }
+
+    private static class Pending {
+        final String name;
+        final Operation operation;
+        final Completion completion;
+        // false for calls like setCharacteristicNotification that have no GATT callback
+        final boolean awaitsCallback;
+
+        Pending(String name, Operation operation, Completion completion, boolean awaitsCallback) {
+            this.name = name;
+            this.operation = operation;
+            this.completion = completion;
+            this.awaitsCallback = awaitsCallback;
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final long timeoutMs;
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private Pending current;
+    private ScheduledFuture<?> timeout;
+    private int timeoutCount;
+
+    /**
+     * Constructor for the GattOperationQueue class.
+     *
+     * @param scheduler Runs the operation timeouts.
+     * @param timeoutMs Time after which an operation without callback counts as failed.
+     */
+    public GattOperationQueue(ScheduledExecutorService scheduler, long timeoutMs) {
+        this.scheduler = scheduler;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Queues an operation that is completed by a GATT callback calling {@link #complete}.
+     *
+     * @param name       One of the {@code OP_} constants; the callback completes it by this name.
+     * @param operation  The GATT call.
+     * @param completion Optional listener for the result.
+     */
+    public void enqueue(String name, Operation operation, Completion completion) {
+        add(new Pending(name, operation, completion, true));
+    }
+
+    /**
+     * Queues a call that finishes synchronously, so it keeps its place in the order of operations.
+     */
+    public void enqueueLocal(String name, Operation operation, Completion completion) {
+        add(new Pending(name, operation, completion, false));
+    }
+
+    private void add(Pending pending) {
+        synchronized (this) {
+            queue.add(pending);
+            if (current != null) {
+                return;
+            }
+        }
+        startNext();
+    }
+
+    /**
+     * Called from the GATT callback when the operation with the given name finished.
+     * Completions that do not match the operation in flight (e.g. after a timeout) are ignored.
+     *
+     * @param name    The name the operation was queued with.
+     * @param success Whether the callback reported GATT_SUCCESS.
+     */
+    public void complete(String name, boolean success) {
+        Pending done;
+        synchronized (this) {
+            if (current == null || !current.name.equals(name)) {
+                return;
+            }
+            done = current;
+        }
+        if (finish(done, success)) {
+            startNext();
+        }
+    }
+
+    /**
+     * Drops all queued operations, e.g. after a disconnect. Their completions are not called.
+     */
+    public void clear() {
+        synchronized (this) {
+            queue.clear();
+            current = null;
+            if (timeout != null) {
+                timeout.cancel(false);
+                timeout = null;
+            }
+        }
+    }
+
+    /**
+     * Number of operations queued or in flight.
+     */
+    public synchronized int size() {
+        return queue.size() + (current != null ? 1 : 0);
+    }
+
+    /**
+     * Number of operations that did not complete within the timeout.
+     */
+    public synchronized int getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    private void startNext() {
+        while (true) {
+            final Pending next;
+            synchronized (this) {
+                if (current != null || queue.isEmpty()) {
+                    return;
+                }
+                next = queue.poll();
+                current = next;
+            }
+
+            boolean started;
+            try {
+                started = next.operation.execute();
+            } catch (RuntimeException e) {
+                started = false;
+            }
+            if (!started || !next.awaitsCallback) {
+                finish(next, started);
+                continue;
+            }
+
+            synchronized (this) {
+                // the callback may already have completed it on another thread
+                if (current == next) {
+                    timeout = scheduler.schedule(() -> onTimeout(next), timeoutMs, TimeUnit.MILLISECONDS);
+                }
+            }
+            return;
+        }
+    }
+
+    private void onTimeout(Pending pending) {
+        synchronized (this) {
+            if (current != pending) {
+                return;
+            }
+            timeoutCount++;
+        }
+        if (finish(pending, false)) {
+            startNext();
+        }
+    }
+
+    private boolean finish(Pending pending, boolean success) {
+        synchronized (this) {
+            if (current != pending) {
+                return false;
+            }
+            current = null;
+            if (timeout != null) {
+                timeout.cancel(false);
+                timeout = null;
+            }
+        }
+        if (pending.completion != null) {
+            pending.completion.onComplete(success);
+        }
+        return true;
+    }
+}
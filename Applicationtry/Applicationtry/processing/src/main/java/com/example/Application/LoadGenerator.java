@@ -0,0 +1,376 @@
+/**
+ * This class is a host-side load test for the sample pipeline with many sensors. A
+ * {@link VirtualGatt} delivers the notifications of N {@link VirtualSensor}s to per-device
+ * receivers that do what the devices do in their GATT callbacks: put the notification into the
+ * device's {@link DevicePipeline}, which decodes it on the shared {@link WorkerPool}, or for the
+ * alert button apply it to the button's {@link AlertLatch} and hand a raised alert to the UI
+ * thread, where it is acknowledged as soon as it is drawn. A simulated UI thread drains all
+ * buffers once per display frame, appends the samples to {@link SampleStore}s like the
+ * acquisition service does and hands the vitals to the device's {@link VitalsRuleEngine}, which
+ * runs on the same pool.
+ * The raised alerts reach the simulated UI thread through a queue of their own, which it polls
+ * before every frame; the asynchronous message that a {@code SensorDevice} sends to the front of
+ * the main looper's queue is not part of the simulation, so the alert latency is that of the
+ * frame timing alone.
+ * Each run reports the sustained sample rate, the deepest queue, the arrival-to-drain latency of
+ * the newest sample, the time a frame spends draining, the samples that were lost or dropped,
+ * the CPU time of the pool and the UI thread, in total and per device, and the press-to-display
+ * latency of the alerts, so whether the cost grows linearly and the point where the UI thread
+ * stops keeping up show as N grows.
+ * Run it with {@code ./gradlew :processing:loadTest}.
+ */
+package com.example.Application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class LoadGenerator {
+    public static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+    private static final int RING_CAPACITY = 1024;
+    private static final int HISTORY_CAPACITY = 1 << 12;
+    private static final double MOCK_SAMPLE_RATE_HZ = 50;
+    private static final double SPO2_SAMPLE_RATE_HZ = 100;
+    private static final double ALERT_PRESSES_PER_SECOND = 0.2;
+    // the pool of the app holds the decoding and the rules of every connection
+    private static final int TASKS_PER_DEVICE = 2;
+
+    /**
+     * The measurements of one run.
+     */
+    public static final class Result {
+        public int devices;
+        public double seconds;
+        public long offeredSamples;
+        public long deliveredSamples;
+        public long alertPresses;
+        // presses that raised an alert, each recorded in the alert latency
+        public long alertChanges;
+        // the most frames that finished between an alert reaching the UI thread's queue and the
+        // frame that draws it; the frame running at that time cannot draw it, so 1 is the next one
+        public long maxAlertFrames;
+        public long lostSamples;
+        public long droppedSamples;
+        public long malformedPackets;
+        public int maxQueueDepth;
+        public long droppedNotifications;
+        public long ruleTransitions;
+        public long frames;
+        public long lateFrames;
+        // frames in which a device had samples, each recorded once in the latency
+        public long drains;
+        public int workerThreads;
+        public long workerBusyNanos;
+        public long uiBusyNanos;
+        public final LatencyHistogram latency = new LatencyHistogram();
+        public final LatencyHistogram frameDrain = new LatencyHistogram();
+        // from the arrival of a press until the vsync of the frame that shows the new state
+        public final LatencyHistogram alertLatency = new LatencyHistogram();
+
+        public double getOfferedSamplesPerSecond() {
+            return offeredSamples / seconds;
+        }
+
+        public double getDeliveredSamplesPerSecond() {
+            return deliveredSamples / seconds;
+        }
+
+        /**
+         * CPU time of the pool and the UI thread as a percentage of one core.
+         */
+        public double getCpuPercent() {
+            return (workerBusyNanos + uiBusyNanos) / (seconds * 1e7);
+        }
+
+        /**
+         * CPU time per delivered sample; flat as devices are added if the cost scales linearly.
+         */
+        public double getCpuNanosPerSample() {
+            return deliveredSamples > 0 ? (double) (workerBusyNanos + uiBusyNanos) / deliveredSamples : 0;
+        }
+
+        public static String header() {
+            return String.format(Locale.ROOT, "%7s %10s %10s %7s %7s %6s %9s %9s %9s %9s %6s %6s %9s %9s",
+                    "devices", "offered/s", "deliver/s", "lost", "dropped", "queue",
+                    "lat p50", "lat p99", "frame p99", "frame max", "late", "cpu %", "cpu/smpl", "alert max");
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%7d %10.0f %10.0f %7d %7d %6d %7.2fms %7.2fms %7.2fms %7.2fms %6d %6.1f %7.0fns %7.2fms",
+                    devices, getOfferedSamplesPerSecond(), getDeliveredSamplesPerSecond(), lostSamples,
+                    droppedSamples, maxQueueDepth, latency.getQuantileNanos(0.5) / 1e6,
+                    latency.getQuantileNanos(0.99) / 1e6, frameDrain.getQuantileNanos(0.99) / 1e6,
+                    frameDrain.getMaxNanos() / 1e6, lateFrames, getCpuPercent(), getCpuNanosPerSample(),
+                    alertLatency.getMaxNanos() / 1e6);
+        }
+    }
+
+    /**
+     * The receiving side of one device, with its own pipeline and rules.
+     */
+    private static final class Receiver {
+        final int kind;
+        final SampleRingBuffer samples = new SampleRingBuffer(RING_CAPACITY, SampleRingBuffer.DEVICE_LANES);
+        final SampleStore[] stores = new SampleStore[SampleRingBuffer.DEVICE_LANES];
+        // null for the alert button
+        final DevicePipeline pipeline;
+        final VitalsRuleEngine rules;
+        // null for the waveform sensors
+        final AlertLatch alert;
+
+        Receiver(int kind, WorkerPool pool, AtomicLong malformed, AtomicLong transitions) {
+            this.kind = kind;
+            for (int lane = 0; lane < stores.length; lane++) {
+                stores[lane] = new SampleStore(HISTORY_CAPACITY);
+            }
+            if (kind == VirtualSensor.KIND_ALERT) {
+                pipeline = null;
+                rules = null;
+                alert = new AlertLatch(AlertLatch.DEFAULT_DEBOUNCE_NANOS);
+                return;
+            }
+            alert = null;
+            FrameDecoder decoder = kind == VirtualSensor.KIND_SPO2 ? new Spo2PacketDecoder() : new MockFrameDecoder();
+            pipeline = new DevicePipeline(new FrameDecoder[]{decoder}, samples, pool,
+                    DevicePipeline.DEFAULT_INBOX_CAPACITY, (source, count, arrivalNanos) -> {
+                        if (count < 0) {
+                            malformed.incrementAndGet();
+                        }
+                    });
+            // the ranges of the acquisition service
+            long second = TimeUnit.SECONDS.toNanos(1);
+            rules = new VitalsRuleEngine(SampleRingBuffer.DEVICE_LANES, pool, Runnable::run,
+                    (rule, active, timestampNanos, value) -> transitions.incrementAndGet());
+            rules.addRule(new VitalsRuleEngine.Rule("SpO2 critically low", SampleRingBuffer.LANE_SPO2,
+                    VitalsRuleEngine.SEVERITY_CRITICAL, 90, Double.POSITIVE_INFINITY, 1, 5 * second, 2 * second));
+            rules.addRule(new VitalsRuleEngine.Rule("Pulse rate critical", SampleRingBuffer.LANE_PULSE_RATE,
+                    VitalsRuleEngine.SEVERITY_CRITICAL, 40, 150, 5, 5 * second, 2 * second));
+            rules.start();
+        }
+    }
+
+    /**
+     * A ward of sensors: the kinds take turns, so every third device is an alert button.
+     *
+     * @param devices Number of sensors.
+     * @param mtu     The negotiated MTU of the waveform sensors.
+     * @param jitter  Maximum deviation of a notification from its nominal time.
+     * @param loss    Probability that a notification is lost.
+     */
+    public static List<VirtualSensor> ward(int devices, int mtu, long jitter, double loss) {
+        List<VirtualSensor> sensors = new ArrayList<>();
+        for (int i = 0; i < devices; i++) {
+            VirtualSensor sensor;
+            switch (i % 3) {
+                case 0:
+                    sensor = new VirtualSensor(VirtualSensor.KIND_SPO2, SPO2_SAMPLE_RATE_HZ, mtu);
+                    break;
+                case 1:
+                    sensor = new VirtualSensor(VirtualSensor.KIND_MOCK_ESP32, MOCK_SAMPLE_RATE_HZ, mtu);
+                    break;
+                default:
+                    sensor = new VirtualSensor(VirtualSensor.KIND_ALERT, ALERT_PRESSES_PER_SECOND, VirtualSensor.DEFAULT_MTU);
+                    break;
+            }
+            sensor.setJitter(jitter);
+            sensor.setLossProbability(loss);
+            sensors.add(sensor);
+        }
+        return sensors;
+    }
+
+    /**
+     * Runs the sensors through the pipeline for the given time, on a pool of
+     * {@link WorkerPool#defaultThreads()} threads.
+     */
+    public static Result run(List<VirtualSensor> sensors, int callbackThreads, long durationNanos, long seed)
+            throws InterruptedException {
+        return run(sensors, callbackThreads, WorkerPool.defaultThreads(), durationNanos, seed);
+    }
+
+    /**
+     * Runs the sensors through the pipeline for the given time.
+     *
+     * @param sensors         The simulated sensors.
+     * @param callbackThreads Number of GATT callback threads.
+     * @param workerThreads   Number of threads of the pool the pipelines share.
+     * @param durationNanos   How long the sensors send.
+     * @param seed            Seed of the jitter and loss.
+     */
+    public static Result run(List<VirtualSensor> sensors, int callbackThreads, int workerThreads, long durationNanos,
+                             long seed) throws InterruptedException {
+        WorkerPool pool = new WorkerPool("LoadGenerator", workerThreads, Math.max(1, TASKS_PER_DEVICE * sensors.size()));
+        // arrival time, finished frames and device of the raised alerts; the UI thread takes them
+        // before anything else
+        Queue<long[]> alertChanges = new ConcurrentLinkedQueue<>();
+        AtomicLong finishedFrames = new AtomicLong();
+        Thread uiThread = Thread.currentThread();
+        AtomicLong malformed = new AtomicLong();
+        AtomicLong alertPresses = new AtomicLong();
+        AtomicLong transitions = new AtomicLong();
+        Receiver[] receivers = new Receiver[sensors.size()];
+        for (int i = 0; i < receivers.length; i++) {
+            receivers[i] = new Receiver(sensors.get(i).getKind(), pool, malformed, transitions);
+        }
+        Result result = new Result();
+        result.devices = sensors.size();
+        result.workerThreads = workerThreads;
+
+        VirtualGatt gatt = new VirtualGatt(sensors, callbackThreads, (device, value, arrivalNanos) -> {
+            Receiver receiver = receivers[device];
+            if (receiver.pipeline != null) {
+                receiver.pipeline.offer(0, value, arrivalNanos);
+            } else {
+                // what the alert button's SensorDevice does: a change is sent to the front of the
+                // UI thread's queue, so it runs as soon as the current frame is done
+                if (value.length > 0 && value[0] == AlertLatch.PRESS) {
+                    alertPresses.incrementAndGet();
+                }
+                int change = receiver.alert.onPacket(value, arrivalNanos);
+                if (change == AlertLatch.MALFORMED) {
+                    malformed.incrementAndGet();
+                } else if (change != AlertLatch.IGNORED) {
+                    alertChanges.add(new long[]{arrivalNanos, finishedFrames.get(), device});
+                    LockSupport.unpark(uiThread);
+                }
+            }
+        }, seed);
+
+        int[] drainBuffer = new int[RING_CAPACITY * SampleRingBuffer.DEVICE_LANES];
+        long[] drainTimestamps = new long[RING_CAPACITY];
+        int[] laneValues = new int[RING_CAPACITY];
+        // the alerts raised since the last frame
+        List<long[]> shownAlerts = new ArrayList<>();
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        gatt.start();
+        long nextFrame = start + FRAME_NANOS;
+        while (true) {
+            for (long[] change; (change = alertChanges.poll()) != null; ) {
+                shownAlerts.add(change);
+            }
+            long wait = nextFrame - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            long frameStart = System.nanoTime();
+            boolean last = frameStart >= end;
+            if (last) {
+                gatt.stop();
+                awaitDecoded(receivers);
+            }
+            // the warning box is drawn in this frame, measured from its vsync like the frame time
+            // of a Choreographer callback; a change that came in after it is still drawn by it.
+            // The staff acknowledge it right away, so the next press raises it again.
+            for (long[] change : shownAlerts) {
+                result.alertLatency.record(Math.max(0, nextFrame - change[0]));
+                result.maxAlertFrames = Math.max(result.maxAlertFrames, result.frames - change[1]);
+                receivers[(int) change[2]].alert.acknowledge();
+            }
+            result.alertChanges += shownAlerts.size();
+            shownAlerts.clear();
+            for (Receiver receiver : receivers) {
+                result.maxQueueDepth = Math.max(result.maxQueueDepth, receiver.samples.size());
+                int count = receiver.samples.drain(drainBuffer, drainTimestamps, RING_CAPACITY);
+                if (count == 0) {
+                    continue;
+                }
+                // the newest sample has the arrival time of its notification, the older ones of a
+                // notification are spaced back by the sample period
+                result.latency.record(frameStart - drainTimestamps[count - 1]);
+                result.drains++;
+                for (int lane = 0; lane < SampleRingBuffer.DEVICE_LANES; lane++) {
+                    SampleRingBuffer.copyLane(drainBuffer, SampleRingBuffer.DEVICE_LANES, lane, laneValues, count);
+                    for (int i = 0; i < count; i++) {
+                        receiver.stores[lane].append(drainTimestamps[i], laneValues[i]);
+                    }
+                    if (lane != SampleRingBuffer.LANE_PPG) {
+                        receiver.rules.submit(lane, drainTimestamps, laneValues, 0, count);
+                    }
+                }
+                result.deliveredSamples += count;
+            }
+            long frameEnd = System.nanoTime();
+            result.frameDrain.record(frameEnd - frameStart);
+            result.uiBusyNanos += frameEnd - frameStart;
+            result.frames++;
+            finishedFrames.set(result.frames);
+            if (last) {
+                break;
+            }
+            // a frame that overruns its budget makes the next one late, like a janky UI thread
+            nextFrame += FRAME_NANOS;
+            if (frameEnd > nextFrame) {
+                result.lateFrames++;
+                nextFrame = frameEnd;
+            }
+        }
+
+        result.seconds = (System.nanoTime() - start) / 1e9;
+        result.workerBusyNanos = pool.getBusyNanos();
+        for (Receiver receiver : receivers) {
+            if (receiver.rules != null) {
+                receiver.rules.stop();
+            }
+        }
+        pool.shutdown();
+        result.alertPresses = alertPresses.get();
+        result.malformedPackets = malformed.get();
+        result.ruleTransitions = transitions.get();
+        for (int i = 0; i < receivers.length; i++) {
+            VirtualSensor sensor = sensors.get(i);
+            if (sensor.getKind() == VirtualSensor.KIND_ALERT) {
+                continue;
+            }
+            result.offeredSamples += sensor.getSampleCount();
+            result.droppedSamples += receivers[i].samples.getDroppedCount();
+            result.droppedNotifications += receivers[i].pipeline.getDroppedNotificationCount();
+        }
+        result.lostSamples = result.offeredSamples - result.deliveredSamples - result.droppedSamples;
+        return result;
+    }
+
+    /**
+     * Waits until the pool decoded the notifications that were delivered before the sensors stopped.
+     */
+    private static void awaitDecoded(Receiver[] receivers) {
+        for (Receiver receiver : receivers) {
+            while (receiver.pipeline != null && receiver.pipeline.getInboxSize() > 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Runs wards of 1 to 50 sensors and prints one line per run.
+     *
+     * @param args Optional: seconds per run, MTU, jitter in ms, loss probability, callback threads,
+     *             worker threads.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int mtu = args.length > 1 ? Integer.parseInt(args[1]) : 185;
+        long jitter = TimeUnit.MILLISECONDS.toNanos(args.length > 2 ? Long.parseLong(args[2]) : 5);
+        double loss = args.length > 3 ? Double.parseDouble(args[3]) : 0.001;
+        int callbackThreads = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        int workerThreads = args.length > 5 ? Integer.parseInt(args[5]) : WorkerPool.defaultThreads();
+
+        System.out.printf(Locale.ROOT,
+                "%d s per run, MTU %d, jitter %d ms, loss %.3f, %d callback threads, %d worker threads%n",
+                seconds, mtu, TimeUnit.NANOSECONDS.toMillis(jitter), loss, callbackThreads, workerThreads);
+        System.out.println(Result.header());
+        for (int devices : new int[]{1, 2, 5, 10, 20, 30, 40, 50}) {
+            Result result = run(ward(devices, mtu, jitter, loss), callbackThreads, workerThreads,
+                    TimeUnit.SECONDS.toNanos(seconds), devices);
+            System.out.println(result);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * This class decodes the notifications of the ESP32 mockup characteristic. The mockup packs several
+ * PPG samples into one versioned frame instead of sending one notification per sample:
+ *
+ * <pre>
+ * byte 0      format version (1)
+ * byte 1-2    sequence number of the first sample, uint16 little endian, wraps around
+ * byte 3-4    sample rate in Hz, uint16 little endian
+ * byte 5      number of PPG samples N
+ * byte 6      heart rate in bpm
+ * byte 7      SpO2 in %
+ * byte 8..    N PPG samples, one unsigned byte each
+ * </pre>
+ *
+ * N is chosen by the sender so the frame fits into the negotiated MTU. Because the sequence number
+ * counts samples, a jump in it tells exactly how many samples were lost on the way.
+ * The old 5-byte frame (byte 0 is 0; PPG, heart rate and SpO2 in bytes 1, 3 and 4) is still
+ * accepted so older firmware keeps working.
+ */
+package com.example.Application;
+
+public class MockFrameDecoder implements FrameDecoder {
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_LENGTH = 8;
+    public static final int LEGACY_FRAME_LENGTH = 5;
+    public static final int MAX_SAMPLES_PER_FRAME = 255;
+    // the ATT notification header takes 3 bytes of every MTU
+    public static final int ATT_HEADER_LENGTH = 3;
+    public static final int PACKET_TOO_SHORT = -1;
+    public static final int PACKET_TRUNCATED = -2;
+    public static final int UNKNOWN_VERSION = -3;
+    private static final int SEQUENCE_MASK = 0xFFFF;
+
+    private final int[] record = new int[SampleRingBuffer.DEVICE_LANES];
+    private final SampleClock clock = new SampleClock(0);
+    // rate the clock spaces the samples by, the announced one once a packed frame arrived
+    private int clockRateHz;
+    // sequence number the next frame should start with, -1 until the first frame arrived
+    private int expectedSequence = -1;
+    private volatile int sampleRateHz;
+    private int lastGap;
+    private long lostSamples;
+    private long gapCount;
+
+    /**
+     * Returns how many PPG samples fit into one frame for the given ATT MTU.
+     *
+     * @param mtu The negotiated MTU (23 if none was negotiated).
+     */
+    public static int samplesPerFrame(int mtu) {
+        return Math.max(0, Math.min(MAX_SAMPLES_PER_FRAME, mtu - ATT_HEADER_LENGTH - HEADER_LENGTH));
+    }
+
+    /**
+     * Forgets the sequence number, e.g. after a reconnect. The next frame is not counted as a gap.
+     */
+    @Override
+    public void reset() {
+        expectedSequence = -1;
+        lastGap = 0;
+        clock.reset();
+    }
+
+    /**
+     * Sets the rate the samples of a frame are spaced by until a packed frame announces its rate.
+     */
+    @Override
+    public void setNominalSampleRate(int sampleRateHz) {
+        if (this.sampleRateHz == 0) {
+            clockRateHz = sampleRateHz;
+            clock.setSampleRate(sampleRateHz);
+        }
+    }
+
+    /**
+     * Decodes a notification and appends its samples to the ring buffer as
+     * (PPG, heart rate, SpO2) records. Must only be called from the ring's producer thread.
+     *
+     * @param packet         The raw notification value.
+     * @param ring           The device's sample buffer.
+     * @param timestampNanos Arrival time of the notification, the timestamp of its newest sample.
+     * @return The number of decoded samples, or {@link #PACKET_TOO_SHORT}, {@link #PACKET_TRUNCATED}
+     * or {@link #UNKNOWN_VERSION} for malformed packets.
+     */
+    @Override
+    public int decodeInto(byte[] packet, SampleRingBuffer ring, long timestampNanos) {
+        if (packet == null || packet.length < LEGACY_FRAME_LENGTH) {
+            return PACKET_TOO_SHORT;
+        }
+        if (packet[0] == 0 && packet.length == LEGACY_FRAME_LENGTH) {
+            lastGap = 0;
+            record[SampleRingBuffer.LANE_PPG] = packet[1] & 0xFF;
+            record[SampleRingBuffer.LANE_PULSE_RATE] = packet[3] & 0xFF;
+            record[SampleRingBuffer.LANE_SPO2] = packet[4] & 0xFF;
+            clock.stamp(timestampNanos, 1);
+            ring.offer(record, timestampNanos);
+            return 1;
+        }
+        if (packet[0] != FORMAT_VERSION) {
+            return UNKNOWN_VERSION;
+        }
+        if (packet.length < HEADER_LENGTH) {
+            return PACKET_TOO_SHORT;
+        }
+        int count = packet[5] & 0xFF;
+        if (packet.length < HEADER_LENGTH + count) {
+            return PACKET_TRUNCATED;
+        }
+
+        int sequence = (packet[1] & 0xFF) | (packet[2] & 0xFF) << 8;
+        sampleRateHz = (packet[3] & 0xFF) | (packet[4] & 0xFF) << 8;
+        checkSequence(sequence, count);
+        if (sampleRateHz != 0 && sampleRateHz != clockRateHz) {
+            clockRateHz = sampleRateHz;
+            clock.setSampleRate(sampleRateHz);
+        }
+        if (count > 0) {
+            clock.stamp(timestampNanos, count);
+        }
+
+        record[SampleRingBuffer.LANE_PULSE_RATE] = packet[6] & 0xFF;
+        record[SampleRingBuffer.LANE_SPO2] = packet[7] & 0xFF;
+        for (int i = 0; i < count; i++) {
+            record[SampleRingBuffer.LANE_PPG] = packet[HEADER_LENGTH + i] & 0xFF;
+            ring.offer(record, clock.timestampOf(i));
+        }
+        return count;
+    }
+
+    private void checkSequence(int sequence, int count) {
+        lastGap = 0;
+        if (expectedSequence >= 0 && sequence != expectedSequence) {
+            int gap = (sequence - expectedSequence) & SEQUENCE_MASK;
+            // a jump backwards means the sender restarted, that is not a loss
+            if (gap < (SEQUENCE_MASK + 1) / 2) {
+                lastGap = gap;
+                lostSamples += gap;
+                gapCount++;
+            }
+        }
+        expectedSequence = (sequence + count) & SEQUENCE_MASK;
+    }
+
+    /**
+     * Number of samples lost right before the most recently decoded frame, 0 if there was no gap.
+     */
+    @Override
+    public int getLastGap() {
+        return lastGap;
+    }
+
+    /**
+     * Total number of samples lost since this decoder was created.
+     */
+    @Override
+    public long getLostSampleCount() {
+        return lostSamples;
+    }
+
+    /**
+     * Number of frames that were preceded by a gap.
+     */
+    public long getGapCount() {
+        return gapCount;
+    }
+
+    /**
+     * Sample rate announced by the last packed frame, 0 if none was received yet.
+     */
+    @Override
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * This class routes GATT notifications to their decoders without comparing UUIDs. When a device
+ * subscribes, each of its characteristics is registered under the device's slot and the
+ * characteristic's handle (its instance id, unique within one GATT server) and gets a small route
+ * id, which the device keeps next to the handle. A notification is then handed to the target at
+ * its route's index of an array, without searching or allocating.
+ * Routes change only when a device subscribes or disconnects but are read for every notification,
+ * so the tables are copied on write and dispatch never takes a lock.
+ */
+package com.example.Application;
+
+import java.util.Arrays;
+
+public class NotificationRouter {
+    public static final int NO_ROUTE = -1;
+
+    /**
+     * Receives the notifications of one route, on the Bluetooth thread.
+     */
+    public interface Target {
+        /**
+         * @param route        The route id returned by {@link #register}.
+         * @param value        The notification value.
+         * @param arrivalNanos Arrival time of the notification.
+         */
+        void onNotification(int route, byte[] value, long arrivalNanos);
+    }
+
+    /**
+     * Keys and targets of all routes, never changed once published. A free slot has no target.
+     */
+    private static final class Table {
+        final long[] keys;
+        final Target[] targets;
+
+        Table(long[] keys, Target[] targets) {
+            this.keys = keys;
+            this.targets = targets;
+        }
+    }
+
+    private volatile Table table = new Table(new long[0], new Target[0]);
+
+    private static long key(int device, int handle) {
+        return ((long) device << 32) | (handle & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Routes the notifications of a characteristic to a target. Registering the same device and
+     * handle again replaces the target and keeps the route id.
+     *
+     * @param device The slot of the device, not negative.
+     * @param handle The characteristic's handle within the device's GATT server.
+     * @param target Receives the notifications.
+     * @return The route id, the smallest one that is free.
+     */
+    public synchronized int register(int device, int handle, Target target) {
+        if (device < 0) {
+            throw new IllegalArgumentException("device slot must not be negative: " + device);
+        }
+        Table current = table;
+        long key = key(device, handle);
+        int route = indexOf(current, key);
+        if (route == NO_ROUTE) {
+            for (int i = 0; i < current.targets.length && route == NO_ROUTE; i++) {
+                if (current.targets[i] == null) {
+                    route = i;
+                }
+            }
+        }
+        if (route == NO_ROUTE) {
+            route = current.keys.length;
+        }
+        long[] keys = Arrays.copyOf(current.keys, Math.max(route + 1, current.keys.length));
+        Target[] targets = Arrays.copyOf(current.targets, keys.length);
+        keys[route] = key;
+        targets[route] = target;
+        table = new Table(keys, targets);
+        return route;
+    }
+
+    /**
+     * Removes all routes of a device, e.g. when it disconnected. The handles of its characteristics
+     * may differ after the next service discovery, so they are registered again.
+     *
+     * @param device The slot of the device.
+     */
+    public synchronized void unregister(int device) {
+        Table current = table;
+        Target[] targets = current.targets.clone();
+        for (int i = 0; i < targets.length; i++) {
+            if ((int) (current.keys[i] >>> 32) == device) {
+                targets[i] = null;
+            }
+        }
+        table = new Table(current.keys, targets);
+    }
+
+    /**
+     * Returns the route id of a characteristic, or {@link #NO_ROUTE} if it is not registered.
+     */
+    public int route(int device, int handle) {
+        return indexOf(table, key(device, handle));
+    }
+
+    /**
+     * Hands a notification to the target of its route. Called on the Bluetooth thread.
+     *
+     * @param route        The route id returned by {@link #register} for the characteristic.
+     * @param value        The notification value.
+     * @param arrivalNanos Arrival time of the notification.
+     * @return false if the route is not registered, e.g. because its device disconnected.
+     */
+    public boolean dispatch(int route, byte[] value, long arrivalNanos) {
+        Target[] targets = table.targets;
+        if (route < 0 || route >= targets.length) {
+            return false;
+        }
+        Target target = targets[route];
+        if (target == null) {
+            return false;
+        }
+        target.onNotification(route, value, arrivalNanos);
+        return true;
+    }
+
+    /**
+     * Number of registered routes.
+     */
+    public int getRouteCount() {
+        int count = 0;
+        for (Target target : table.targets) {
+            if (target != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int indexOf(Table table, long key) {
+        long[] keys = table.keys;
+        // only when subscribing; every device has one or two routes
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key && table.targets[i] != null) {
+                return i;
+            }
+        }
+        return NO_ROUTE;
+    }
+}
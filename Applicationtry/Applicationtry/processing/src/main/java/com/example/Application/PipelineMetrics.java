@@ -0,0 +1,281 @@
+/**
+ * This class collects the metrics of one sample source along the pipeline from the Bluetooth
+ * callback to the screen:
+ * <ul>
+ * <li>notifications, samples, malformed packets, samples lost on the way (sequence gaps),
+ * samples dropped by a full ring buffer, notifications dropped by a full pipeline inbox, and
+ * reconnects,</li>
+ * <li>decode time from the arrival of a notification until the worker pool decoded it,</li>
+ * <li>queueing time from the arrival of a sample until the UI thread drains it,</li>
+ * <li>delivery time of a drained batch to the {@link DataReciever},</li>
+ * <li>callback-to-pixel latency from the arrival of a sample until the waveform frame showing it
+ * is posted,</li>
+ * <li>press-to-display latency of a button from the arrival of a press until the frame that
+ * draws the warning box starts; presses are rare, so it is recorded even while disabled.</li>
+ * </ul>
+ * Counters are atomics and durations go into {@link LatencyHistogram}s, so nothing is locked.
+ * Durations are recorded per notification and per drained batch, not per sample. While the
+ * metrics are disabled every recording call returns after one volatile read.
+ * All timestamps are {@code SystemClock.elapsedRealtimeNanos()}.
+ */
+package com.example.Application;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PipelineMetrics {
+    private static final List<PipelineMetrics> SOURCES = new CopyOnWriteArrayList<>();
+    private static volatile boolean enabled;
+
+    private final String name;
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong malformedPackets = new AtomicLong();
+    private final AtomicLong lostSamples = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+    private final LatencyHistogram decode = new LatencyHistogram();
+    private final LatencyHistogram queueing = new LatencyHistogram();
+    private final LatencyHistogram delivery = new LatencyHistogram();
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final LatencyHistogram alert = new LatencyHistogram();
+    // arrival of the oldest delivered sample that is not on the screen yet, 0 for none
+    private final AtomicLong pendingArrivalNanos = new AtomicLong();
+    private volatile SampleRingBuffer ring;
+    private volatile DevicePipeline pipeline;
+
+    // rates of the last report
+    private long reportedAtNanos;
+    private long reportedNotifications;
+    private long reportedSamples;
+
+    /**
+     * Creates the metrics of a source and adds them to the report.
+     *
+     * @param name The source, e.g. the TAG of the device.
+     */
+    public static PipelineMetrics register(String name) {
+        PipelineMetrics metrics = new PipelineMetrics(name);
+        SOURCES.add(metrics);
+        return metrics;
+    }
+
+    /**
+     * Removes the metrics of a source that is gone from the report, e.g. when the service that
+     * owns the device is destroyed and a new one registers its own.
+     */
+    public static void unregister(PipelineMetrics metrics) {
+        SOURCES.remove(metrics);
+    }
+
+    private PipelineMetrics(String name) {
+        this.name = name;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        PipelineMetrics.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets the ring buffer of the source, whose drop counter is reported.
+     */
+    public void setRing(SampleRingBuffer ring) {
+        this.ring = ring;
+    }
+
+    /**
+     * Sets the pipeline of the source, whose inbox drop counter is reported.
+     */
+    public void setPipeline(DevicePipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Records a decoded notification. Called on the thread that decoded it.
+     *
+     * @param arrivalNanos Arrival time of the notification.
+     * @param decodedNanos Time the decoding finished.
+     * @param sampleCount  Number of decoded samples.
+     */
+    public void onNotification(long arrivalNanos, long decodedNanos, int sampleCount) {
+        if (!enabled) {
+            return;
+        }
+        notifications.incrementAndGet();
+        samples.addAndGet(sampleCount);
+        decode.record(decodedNanos - arrivalNanos);
+    }
+
+    /**
+     * Counts a packet that could not be decoded.
+     */
+    public void onMalformedPacket() {
+        if (enabled) {
+            malformedPackets.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts samples the sender numbered but that never arrived.
+     */
+    public void onLostSamples(int count) {
+        if (enabled) {
+            lostSamples.addAndGet(count);
+        }
+    }
+
+    /**
+     * Counts a connection; every one after the first is a reconnect.
+     */
+    public void onConnected() {
+        connections.incrementAndGet();
+    }
+
+    /**
+     * Records a batch drained and handed to the receiver. Called on the UI thread.
+     *
+     * @param oldestArrivalNanos Arrival of the first sample of the batch.
+     * @param drainedNanos       Time the batch was drained from the ring buffer.
+     * @param deliveredNanos     Time the receiver returned.
+     */
+    public void onDelivered(long oldestArrivalNanos, long drainedNanos, long deliveredNanos) {
+        if (!enabled) {
+            return;
+        }
+        queueing.record(drainedNanos - oldestArrivalNanos);
+        delivery.record(deliveredNanos - drainedNanos);
+        pendingArrivalNanos.compareAndSet(0, oldestArrivalNanos);
+    }
+
+    /**
+     * Records the press-to-display latency of an alert change. Called on the UI thread by the
+     * frame that draws it.
+     */
+    public void onAlertShown(long arrivalNanos, long shownNanos) {
+        alert.record(shownNanos - arrivalNanos);
+    }
+
+    /**
+     * Records the callback-to-pixel latency of the samples delivered since the last frame of
+     * every source. Called on the render thread after a frame was posted.
+     */
+    public static void onFrameRendered(long renderedNanos) {
+        if (!enabled) {
+            return;
+        }
+        for (PipelineMetrics metrics : SOURCES) {
+            long arrival = metrics.pendingArrivalNanos.getAndSet(0);
+            if (arrival != 0) {
+                metrics.endToEnd.record(renderedNanos - arrival);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getNotificationCount() {
+        return notifications.get();
+    }
+
+    public long getSampleCount() {
+        return samples.get();
+    }
+
+    public long getMalformedPacketCount() {
+        return malformedPackets.get();
+    }
+
+    public long getLostSampleCount() {
+        return lostSamples.get();
+    }
+
+    public long getDroppedSampleCount() {
+        SampleRingBuffer ring = this.ring;
+        return ring != null ? ring.getDroppedCount() : 0;
+    }
+
+    public long getDroppedNotificationCount() {
+        DevicePipeline pipeline = this.pipeline;
+        return pipeline != null ? pipeline.getDroppedNotificationCount() : 0;
+    }
+
+    public long getReconnectCount() {
+        return Math.max(0, connections.get() - 1);
+    }
+
+    public LatencyHistogram getDecodeHistogram() {
+        return decode;
+    }
+
+    public LatencyHistogram getQueueingHistogram() {
+        return queueing;
+    }
+
+    public LatencyHistogram getDeliveryHistogram() {
+        return delivery;
+    }
+
+    public LatencyHistogram getEndToEndHistogram() {
+        return endToEnd;
+    }
+
+    public LatencyHistogram getAlertHistogram() {
+        return alert;
+    }
+
+    /**
+     * Writes the metrics of this source, with the notification and sample rates since the last report.
+     */
+    public synchronized void report(StringBuilder out, long nowNanos) {
+        long notificationCount = notifications.get();
+        long sampleCount = samples.get();
+        double seconds = (nowNanos - reportedAtNanos) / 1e9;
+        double notificationRate = reportedAtNanos != 0 && seconds > 0 ? (notificationCount - reportedNotifications) / seconds : 0;
+        double sampleRate = reportedAtNanos != 0 && seconds > 0 ? (sampleCount - reportedSamples) / seconds : 0;
+        reportedAtNanos = nowNanos;
+        reportedNotifications = notificationCount;
+        reportedSamples = sampleCount;
+
+        out.append(name).append('\n');
+        out.append(String.format(Locale.ROOT, "  %.1f notifications/s, %.1f samples/s%n", notificationRate, sampleRate));
+        out.append(String.format(Locale.ROOT,
+                "  notifications %d, samples %d, malformed %d, lost %d, dropped %d, reconnects %d, inbox dropped %d%n",
+                notificationCount, sampleCount, getMalformedPacketCount(), getLostSampleCount(),
+                getDroppedSampleCount(), getReconnectCount(), getDroppedNotificationCount()));
+        out.append("  decode     ").append(decode).append('\n');
+        out.append("  queueing   ").append(queueing).append('\n');
+        out.append("  delivery   ").append(delivery).append('\n');
+        out.append("  end-to-end ").append(endToEnd).append('\n');
+        if (alert.getCount() > 0) {
+            out.append("  alert      ").append(alert).append('\n');
+        }
+    }
+
+    /**
+     * Writes the metrics of all sources, e.g. for the debug overlay.
+     */
+    public static String reportAll(long nowNanos) {
+        StringBuilder out = new StringBuilder();
+        for (PipelineMetrics metrics : SOURCES) {
+            metrics.report(out, nowNanos);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes the metrics of all sources to a file.
+     */
+    public static void dumpAll(Writer writer, long nowNanos) throws IOException {
+        writer.write(reportAll(nowNanos));
+        writer.flush();
+    }
+}
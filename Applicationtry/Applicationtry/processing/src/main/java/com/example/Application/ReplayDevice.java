@@ -0,0 +1,281 @@
+/**
+ * This class stands in for the Bluetooth devices when there is no hardware: it replays a
+ * {@link ReplaySource} through the same path as a {@code SensorDevice}.
+ * A replay thread takes the role of the GATT callback thread and writes the samples into a
+ * {@link SampleRingBuffer}; {@link #onFrame()} drains it on the UI thread once per display frame
+ * and hands the samples to the {@link DataReciever}.
+ * The replay runs in real time, accelerated by a factor, or as fast as the pipeline takes the
+ * samples, and it can be paused and moved to any position. In the last mode the delivered
+ * samples per second measure the throughput of the pipeline without any radio involved.
+ * The samples are delivered with the time they were replayed at on the receiver's clock, not
+ * the time they were recorded at, so their timestamps keep increasing across seeks and loops
+ * and are never ahead of the clock, not even as fast as possible, where they are the time each
+ * sample was handed over.
+ */
+package com.example.Application;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+public class ReplayDevice {
+    public static final double REAL_TIME = 1;
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+    private static final int RING_CAPACITY = 8192;
+    private static final int READ_BATCH = 256;
+    private static final int LANE_CHANNEL = 0;
+    private static final int LANE_VALUE = 1;
+    private static final int LANES = 2;
+    // longest sleep before pause, seek and stop requests are looked at again
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long NO_SEEK = -1;
+
+    private final ReplaySource source;
+    private final DataReciever reciever;
+    private final LongSupplier clock;
+    private final SampleRingBuffer samples = new SampleRingBuffer(RING_CAPACITY, LANES);
+    private final int[] drainBuffer = new int[samples.capacity() * LANES];
+    private final long[] drainTimestamps = new long[samples.capacity()];
+    private final int[] channelValues = new int[samples.capacity()];
+    private final long[] channelTimestamps = new long[samples.capacity()];
+    private final Thread thread;
+    private final Object lock = new Object();
+    private final AtomicLong delivered = new AtomicLong();
+    private volatile double speed = REAL_TIME;
+    private volatile boolean paused;
+    private volatile boolean stopped;
+    private volatile boolean finished;
+    private volatile long seekRequest = NO_SEEK;
+    private volatile long positionNanos;
+    private volatile IOException failure;
+    private volatile long startedNanos;
+
+    /**
+     * Constructor for the ReplayDevice class, with {@code System.nanoTime()} as the clock.
+     *
+     * @param source   The samples to replay; closed by {@link #stop()}.
+     * @param reciever The receiver the samples are delivered to.
+     */
+    public ReplayDevice(ReplaySource source, DataReciever reciever) {
+        this(source, reciever, System::nanoTime);
+    }
+
+    /**
+     * Constructor for the ReplayDevice class.
+     *
+     * @param source   The samples to replay; closed by {@link #stop()}.
+     * @param reciever The receiver the samples are delivered to.
+     * @param clock    The monotonic clock of the receiver's timestamps, e.g.
+     *                 {@code SystemClock::elapsedRealtimeNanos}; paces the replay.
+     */
+    public ReplayDevice(ReplaySource source, DataReciever reciever, LongSupplier clock) {
+        this.source = source;
+        this.reciever = reciever;
+        this.clock = clock;
+        thread = new Thread(this::replayLoop, "ReplayDevice");
+    }
+
+    /**
+     * Starts the replay from the beginning of the source.
+     */
+    public void start() {
+        startedNanos = System.nanoTime();
+        thread.start();
+    }
+
+    /**
+     * Sets the replay speed: {@link #REAL_TIME}, a factor like 10 for ten times real time, or
+     * {@link #AS_FAST_AS_POSSIBLE}.
+     */
+    public void setSpeed(double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("speed must not be negative");
+        }
+        this.speed = speed;
+    }
+
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        synchronized (lock) {
+            paused = false;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Continues the replay at the given position. Samples that were already handed over are
+     * still delivered.
+     *
+     * @param offsetNanos Time relative to the start of the source.
+     */
+    public void seek(long offsetNanos) {
+        synchronized (lock) {
+            seekRequest = Math.max(0, offsetNanos);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops the replay thread and closes the source.
+     */
+    public void stop() throws InterruptedException {
+        synchronized (lock) {
+            stopped = true;
+            lock.notifyAll();
+        }
+        if (thread.isAlive()) {
+            thread.join();
+        }
+        try {
+            source.close();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void replayLoop() {
+        long[] timestamps = new long[READ_BATCH];
+        int[] values = new int[READ_BATCH];
+        int[] record = new int[LANES];
+        int batchCount = 0;
+        int batchPosition = 0;
+        // the sample that was due at anchorWallNanos; re-anchored to the clock after pause, seek,
+        // speed change or a loop of the source
+        long anchorWallNanos = 0;
+        long anchorSampleNanos = 0;
+        double anchorSpeed = -1;
+
+        try {
+            while (!stopped) {
+                long seek = seekRequest;
+                if (seek != NO_SEEK) {
+                    seekRequest = NO_SEEK;
+                    source.seek(seek);
+                    batchCount = batchPosition = 0;
+                    finished = false;
+                    anchorSpeed = -1;
+                }
+                if (paused || finished) {
+                    synchronized (lock) {
+                        while ((paused || finished) && !stopped && seekRequest == NO_SEEK) {
+                            lock.wait();
+                        }
+                    }
+                    anchorSpeed = -1;
+                    continue;
+                }
+
+                if (batchPosition == batchCount) {
+                    batchCount = source.read(timestamps, values, READ_BATCH);
+                    batchPosition = 0;
+                    if (batchCount < 0) {
+                        batchCount = 0;
+                        finished = true;
+                        continue;
+                    }
+                }
+                long timestamp = timestamps[batchPosition];
+
+                double currentSpeed = speed;
+                long replayed;
+                if (currentSpeed > 0) {
+                    if (currentSpeed != anchorSpeed || timestamp < anchorSampleNanos) {
+                        anchorWallNanos = clock.getAsLong();
+                        anchorSampleNanos = timestamp;
+                        anchorSpeed = currentSpeed;
+                    }
+                    // handed over once due, so it is never ahead of the clock
+                    replayed = anchorWallNanos + (long) ((timestamp - anchorSampleNanos) / currentSpeed);
+                    long wait = replayed - clock.getAsLong();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(Math.min(wait, MAX_PARK_NANOS));
+                        continue;
+                    }
+                } else {
+                    // the spacing of the source would run ahead of the clock
+                    anchorSpeed = currentSpeed;
+                    replayed = clock.getAsLong();
+                }
+
+                // the pipeline is the limit, not the replay: wait instead of dropping
+                if (samples.size() == samples.capacity()) {
+                    LockSupport.parkNanos(MAX_PARK_NANOS / 50);
+                    continue;
+                }
+                record[LANE_CHANNEL] = source.getRunChannel();
+                record[LANE_VALUE] = values[batchPosition];
+                samples.offer(record, replayed);
+                positionNanos = timestamp - source.getStartNanos();
+                batchPosition++;
+            }
+        } catch (IOException e) {
+            failure = e;
+            finished = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drains the samples replayed since the last display frame and hands them to the receiver,
+     * one call per run of samples of the same channel. Must be called on the UI thread, once per frame or
+     * background drain of the {@code AcquisitionService}.
+     */
+    public void onFrame() {
+        int count = samples.drain(drainBuffer, drainTimestamps, samples.capacity());
+        int i = 0;
+        while (i < count) {
+            int channel = drainBuffer[i * LANES + LANE_CHANNEL];
+            int run = 0;
+            while (i < count && drainBuffer[i * LANES + LANE_CHANNEL] == channel) {
+                channelValues[run] = drainBuffer[i * LANES + LANE_VALUE];
+                channelTimestamps[run] = drainTimestamps[i];
+                run++;
+                i++;
+            }
+            reciever.onSamples(channel, channelTimestamps, channelValues, 0, run);
+        }
+        delivered.addAndGet(count);
+    }
+
+    /**
+     * Number of samples handed to the receiver so far.
+     */
+    public long getDeliveredSampleCount() {
+        return delivered.get();
+    }
+
+    /**
+     * Delivered samples per second of wall time since {@link #start()}.
+     */
+    public double getSamplesPerSecond() {
+        long elapsed = System.nanoTime() - startedNanos;
+        return elapsed > 0 ? delivered.get() * 1e9 / elapsed : 0;
+    }
+
+    /**
+     * Position of the last replayed sample relative to the start of the source.
+     */
+    public long getPositionNanos() {
+        return positionNanos;
+    }
+
+    /**
+     * True once the source is exhausted and every sample was delivered.
+     */
+    public boolean isFinished() {
+        return finished && samples.size() == 0;
+    }
+
+    /**
+     * The error that ended the replay, or null.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+}
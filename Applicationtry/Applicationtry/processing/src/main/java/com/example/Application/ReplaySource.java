@@ -0,0 +1,43 @@
+/**
+ * This interface defines a source of previously captured samples for {@link ReplayDevice}, e.g. a
+ * recorded session or a simulated signal. Samples of all channels come out in time order.
+ */
+package com.example.Application;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface ReplaySource extends Closeable {
+    /**
+     * Reads the next run of samples. All samples of a run belong to the same channel, which
+     * {@link #getRunChannel()} returns afterwards.
+     *
+     * @param timestampsNanos Destination for the timestamps.
+     * @param values          Destination for the values.
+     * @param max             Maximum number of samples to read.
+     * @return The number of samples, or -1 at the end of the source.
+     */
+    int read(long[] timestampsNanos, int[] values, int max) throws IOException;
+
+    /**
+     * The channel of the samples returned by the last {@link #read}.
+     */
+    int getRunChannel();
+
+    /**
+     * Moves to the first sample at or after the given time.
+     *
+     * @param offsetNanos Time relative to {@link #getStartNanos()}.
+     */
+    void seek(long offsetNanos) throws IOException;
+
+    /**
+     * Timestamp of the first sample.
+     */
+    long getStartNanos();
+
+    /**
+     * Time from the first to the last sample, or {@link Long#MAX_VALUE} for endless sources.
+     */
+    long getDurationNanos();
+}
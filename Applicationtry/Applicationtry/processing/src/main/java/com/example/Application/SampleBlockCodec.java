@@ -0,0 +1,162 @@
+/**
+ * This class defines the on-disk format of recorded sessions and encodes/decodes its sample blocks.
+ * A segment file starts with an 8-byte header (magic, format version) followed by blocks. Every
+ * block holds up to {@link #MAX_BLOCK_SAMPLES} samples of one channel:
+ *
+ * <pre>
+ * int    block magic
+ * byte   channel
+ * short  sample count
+ * long   timestamp of the first sample (ns)
+ * long   timestamp of the last sample (ns)
+ * int    first value
+ * int    payload length
+ * byte[] payload: per further sample the zigzag varint of the timestamp delta-of-delta (in us)
+ *        and the zigzag varint of the value delta
+ * int    CRC32 of header and payload
+ * </pre>
+ *
+ * Regularly spaced samples of a slowly changing signal cost about two bytes each. Timestamps of
+ * all but the first sample of a block are stored with microsecond resolution.
+ * The block headers double as the sparse time index of a segment, and the CRC lets a reader find
+ * the end of the valid data after a crash.
+ */
+package com.example.Application;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+public final class SampleBlockCodec {
+    public static final int SEGMENT_MAGIC = 0x50504753;   // "PPGS"
+    public static final int FORMAT_VERSION = 1;
+    public static final int SEGMENT_HEADER_LENGTH = 8;
+    public static final int BLOCK_MAGIC = 0x424C4B31;     // "BLK1"
+    public static final int BLOCK_HEADER_LENGTH = 31;
+    public static final int CRC_LENGTH = 4;
+    public static final int MAX_BLOCK_SAMPLES = 0xFFFF;
+    // a 64-bit and a 32-bit varint
+    public static final int MAX_BYTES_PER_SAMPLE = 15;
+
+    private SampleBlockCodec() {
+    }
+
+    /**
+     * Returns the maximum encoded length of a block, including header and CRC.
+     *
+     * @param count Number of samples in the block.
+     */
+    public static int maxBlockLength(int count) {
+        return BLOCK_HEADER_LENGTH + count * MAX_BYTES_PER_SAMPLE + CRC_LENGTH;
+    }
+
+    /**
+     * Writes the segment header at the current position of the buffer.
+     */
+    public static void writeSegmentHeader(ByteBuffer out) {
+        out.putInt(SEGMENT_MAGIC);
+        out.putInt(FORMAT_VERSION);
+    }
+
+    /**
+     * Encodes one block at the current position of a heap buffer.
+     *
+     * @param channel         The channel of the samples, 0 to 255.
+     * @param timestampsNanos The sample timestamps, in ascending order.
+     * @param values          The sample values.
+     * @param offset          Index of the first sample in both arrays.
+     * @param count           Number of samples, 1 to {@link #MAX_BLOCK_SAMPLES}.
+     * @param out             Destination with at least {@link #maxBlockLength} bytes remaining.
+     * @param crc             Reusable checksum.
+     * @return The number of bytes written.
+     */
+    public static int encodeBlock(int channel, long[] timestampsNanos, int[] values, int offset, int count,
+                                  ByteBuffer out, CRC32 crc) {
+        if (count <= 0 || count > MAX_BLOCK_SAMPLES) {
+            throw new IllegalArgumentException("invalid block size " + count);
+        }
+        int start = out.position();
+        int end = offset + count;
+        out.putInt(BLOCK_MAGIC);
+        out.put((byte) channel);
+        out.putShort((short) count);
+        out.putLong(timestampsNanos[offset]);
+        out.putLong(timestampsNanos[end - 1]);
+        out.putInt(values[offset]);
+        int lengthPosition = out.position();
+        out.putInt(0);
+
+        long previousMicros = timestampsNanos[offset] / 1000;
+        long previousDelta = 0;
+        int previousValue = values[offset];
+        for (int i = offset + 1; i < end; i++) {
+            long micros = timestampsNanos[i] / 1000;
+            long delta = micros - previousMicros;
+            putVarLong(out, zigzag(delta - previousDelta));
+            putVarLong(out, zigzag((long) values[i] - previousValue));
+            previousMicros = micros;
+            previousDelta = delta;
+            previousValue = values[i];
+        }
+        out.putInt(lengthPosition, out.position() - lengthPosition - 4);
+
+        crc.reset();
+        crc.update(out.array(), out.arrayOffset() + start, out.position() - start);
+        out.putInt((int) crc.getValue());
+        return out.position() - start;
+    }
+
+    /**
+     * Decodes the payload of a block whose header was already read.
+     *
+     * @param payload             The payload, positioned at its first byte.
+     * @param count               Number of samples from the header.
+     * @param firstTimestampNanos Timestamp of the first sample from the header.
+     * @param firstValue          First value from the header.
+     * @param timestampsNanos     Destination for the timestamps, at least {@code count} long.
+     * @param values              Destination for the values, at least {@code count} long.
+     */
+    public static void decodePayload(ByteBuffer payload, int count, long firstTimestampNanos, int firstValue,
+                                     long[] timestampsNanos, int[] values) {
+        timestampsNanos[0] = firstTimestampNanos;
+        values[0] = firstValue;
+        long firstMicros = firstTimestampNanos / 1000;
+        long micros = firstMicros;
+        long delta = 0;
+        int value = firstValue;
+        for (int i = 1; i < count; i++) {
+            delta += unzigzag(getVarLong(payload));
+            micros += delta;
+            value += (int) unzigzag(getVarLong(payload));
+            timestampsNanos[i] = firstTimestampNanos + (micros - firstMicros) * 1000;
+            values[i] = value;
+        }
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * This class gives every sample of a notification its own timestamp. A notification that carries
+ * several samples has one arrival time, which belongs to its newest sample; the older samples are
+ * spaced backwards from it by the sample period. When a notification arrives early, e.g. right after
+ * a late one, its samples are squeezed in between the previous sample and the arrival, so the
+ * timestamps never go backwards as long as the arrival times do not.
+ * Used by one decoder on the Bluetooth thread; nothing is allocated.
+ */
+package com.example.Application;
+
+public class SampleClock {
+    private long periodNanos;
+    // timestamp of the newest sample stamped so far
+    private long lastNanos = Long.MIN_VALUE;
+    private long arrivalNanos;
+    private long stepNanos;
+    private int count;
+
+    /**
+     * Constructor for the SampleClock class.
+     *
+     * @param sampleRateHz The nominal sample rate, 0 to stamp all samples with the arrival time.
+     */
+    public SampleClock(int sampleRateHz) {
+        setSampleRate(sampleRateHz);
+    }
+
+    /**
+     * Sets the sample rate, e.g. the one a frame announced.
+     */
+    public void setSampleRate(int sampleRateHz) {
+        periodNanos = sampleRateHz > 0 ? 1_000_000_000L / sampleRateHz : 0;
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * Forgets the previous sample, e.g. after a reconnect.
+     */
+    public void reset() {
+        lastNanos = Long.MIN_VALUE;
+    }
+
+    /**
+     * Spaces the samples of a notification; their timestamps are read with {@link #timestampOf}.
+     *
+     * @param arrivalNanos Arrival time of the notification.
+     * @param count        Number of samples it carries.
+     */
+    public void stamp(long arrivalNanos, int count) {
+        this.arrivalNanos = arrivalNanos;
+        this.count = count;
+        long step = periodNanos;
+        if (count > 1 && lastNanos != Long.MIN_VALUE) {
+            // the oldest sample must not come before the newest one of the previous notification
+            long room = Math.max(0, arrivalNanos - lastNanos) / (count - 1);
+            step = Math.min(step, room);
+        }
+        stepNanos = count > 1 ? step : 0;
+        lastNanos = Math.max(lastNanos, arrivalNanos);
+    }
+
+    /**
+     * Returns the timestamp of sample {@code i} of the notification last given to {@link #stamp};
+     * the newest sample gets the arrival time.
+     */
+    public long timestampOf(int i) {
+        return arrivalNanos - (count - 1 - i) * stepNanos;
+    }
+}
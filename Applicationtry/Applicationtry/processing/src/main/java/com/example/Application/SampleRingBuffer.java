@@ -0,0 +1,170 @@
+/**
+ * This class is a lock-free single-producer/single-consumer ring buffer of primitive samples.
+ * The GATT callback thread writes records into it and the UI thread drains them once per display
+ * frame. Every record has the same number of int lanes (e.g. PPG, pulse rate and SpO2) and a
+ * monotonic arrival timestamp.
+ * When the consumer falls behind, new records are dropped and counted instead of queueing up.
+ */
+package com.example.Application;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SampleRingBuffer {
+    public static final int LANE_PPG = 0;
+    public static final int LANE_PULSE_RATE = 1;
+    public static final int LANE_SPO2 = 2;
+    public static final int DEVICE_LANES = 3;
+
+    private final int[] records;
+    private final long[] timestamps;
+    private final int lanes;
+    private final int mask;
+    // sequence of the next record to write, only advanced by the producer
+    private final AtomicLong writeSequence = new AtomicLong();
+    // sequence of the next record to read, only advanced by the consumer
+    private final AtomicLong readSequence = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // producer-local copy of readSequence to avoid reading the volatile on every offer
+    private long cachedReadSequence;
+
+    /**
+     * Constructor for the SampleRingBuffer class.
+     *
+     * @param capacity Number of records, rounded up to a power of two.
+     * @param lanes    Number of int values per record.
+     */
+    public SampleRingBuffer(int capacity, int lanes) {
+        if (capacity <= 0 || lanes <= 0) {
+            throw new IllegalArgumentException("capacity and lanes must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.lanes = lanes;
+        this.records = new int[size * lanes];
+        this.timestamps = new long[size];
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public int lanes() {
+        return lanes;
+    }
+
+    /**
+     * Appends one record. Must only be called from the producer thread.
+     *
+     * @param record          The lane values, at least {@link #lanes()} long.
+     * @param timestampNanos  Arrival time of the record, e.g. {@code SystemClock.elapsedRealtimeNanos()}.
+     * @return true if the record was stored, false if the buffer was full and it was dropped.
+     */
+    public boolean offer(int[] record, long timestampNanos) {
+        long sequence = writeSequence.get();
+        if (sequence - cachedReadSequence > mask) {
+            cachedReadSequence = readSequence.get();
+            if (sequence - cachedReadSequence > mask) {
+                dropped.lazySet(dropped.get() + 1);
+                return false;
+            }
+        }
+
+        int slot = (int) (sequence & mask);
+        System.arraycopy(record, 0, records, slot * lanes, lanes);
+        timestamps[slot] = timestampNanos;
+        writeSequence.lazySet(sequence + 1);
+        return true;
+    }
+
+    /**
+     * Copies up to {@code maxRecords} records into {@code dest}, lane values interleaved.
+     * Must only be called from the consumer thread.
+     *
+     * @param dest           Destination array, at least {@code maxRecords * lanes()} long.
+     * @param destTimestamps Destination for the timestamps, at least {@code maxRecords} long.
+     * @param maxRecords     Maximum number of records to take.
+     * @return The number of records copied.
+     */
+    public int drain(int[] dest, long[] destTimestamps, int maxRecords) {
+        long read = readSequence.get();
+        int available = (int) Math.min(writeSequence.get() - read, maxRecords);
+        if (available <= 0) {
+            return 0;
+        }
+
+        int first = (int) (read & mask);
+        int firstPart = Math.min(available, mask + 1 - first);
+        System.arraycopy(records, first * lanes, dest, 0, firstPart * lanes);
+        System.arraycopy(timestamps, first, destTimestamps, 0, firstPart);
+        if (firstPart < available) {
+            System.arraycopy(records, 0, dest, firstPart * lanes, (available - firstPart) * lanes);
+            System.arraycopy(timestamps, 0, destTimestamps, firstPart, available - firstPart);
+        }
+        readSequence.lazySet(read + available);
+        return available;
+    }
+
+    /**
+     * Copies one lane of the records written since a sequence, e.g. the samples of the
+     * notification just decoded, so the producer can process them further. Must only be called
+     * from the producer thread: the records may have been drained already, but only the producer
+     * overwrites them.
+     *
+     * @param fromSequence   The {@link #getWriteSequence()} before the records were written.
+     * @param lane           The lane to copy.
+     * @param dest           Destination for the lane values.
+     * @param destTimestamps Destination for the timestamps.
+     * @param maxRecords     Maximum number of records to copy, at most {@link #capacity()}.
+     * @return The number of records copied, without the ones that were dropped.
+     */
+    public int copyWritten(long fromSequence, int lane, int[] dest, long[] destTimestamps, int maxRecords) {
+        long end = writeSequence.get();
+        int count = (int) Math.min(end - fromSequence, Math.min(maxRecords, mask + 1));
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((end - count + i) & mask);
+            dest[i] = records[slot * lanes + lane];
+            destTimestamps[i] = timestamps[slot];
+        }
+        return count;
+    }
+
+    /**
+     * Copies one lane out of drained, interleaved records.
+     *
+     * @param records The records returned by {@link #drain}.
+     * @param lanes   Number of lanes per record.
+     * @param lane    The lane to copy.
+     * @param dest    Destination, at least {@code count} long.
+     * @param count   Number of records.
+     */
+    public static void copyLane(int[] records, int lanes, int lane, int[] dest, int count) {
+        for (int i = 0, r = lane; i < count; i++, r += lanes) {
+            dest[i] = records[r];
+        }
+    }
+
+    /**
+     * Number of records written and not yet drained.
+     */
+    public int size() {
+        return (int) (writeSequence.get() - readSequence.get());
+    }
+
+    public long getWriteSequence() {
+        return writeSequence.get();
+    }
+
+    public long getReadSequence() {
+        return readSequence.get();
+    }
+
+    /**
+     * Number of records lost because the consumer stalled.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * This class keeps the history of one signal in a fixed-capacity circular array of doubles,
+ * keyed by a monotonically increasing sample index. Every sample also keeps its timestamp, so the
+ * history can be searched and drawn by time. Appending never allocates; once the store
+ * is full the oldest samples are overwritten; the waveform view reduces it for drawing with a
+ * {@link DecimationCache}. There must be a single writer thread;
+ * other threads may read the samples below {@link #getEndIndex()} while it appends.
+ */
+package com.example.Application;
+
+public class SampleStore {
+    private final double[] values;
+    // elapsedRealtimeNanos of every sample, not decreasing
+    private final long[] timestamps;
+    private final int mask;
+    // index the next appended sample gets, published after the sample is written
+    private volatile long endIndex;
+
+    /**
+     * Constructor for the SampleStore class.
+     *
+     * @param capacity Number of samples kept, rounded up to a power of two.
+     */
+    public SampleStore(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.values = new double[size];
+        this.timestamps = new long[size];
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    /**
+     * Appends a sample and returns the index assigned to it.
+     *
+     * @param timestampNanos The time of the sample, not before the previous one.
+     * @param value          The sample.
+     */
+    public long append(long timestampNanos, double value) {
+        long index = endIndex;
+        values[(int) (index & mask)] = value;
+        timestamps[(int) (index & mask)] = timestampNanos;
+        endIndex = index + 1;
+        return index;
+    }
+
+    /**
+     * Index of the oldest sample still kept.
+     */
+    public long getFirstIndex() {
+        return Math.max(0, endIndex - values.length);
+    }
+
+    /**
+     * Index the next sample will get, i.e. one past the newest sample.
+     */
+    public long getEndIndex() {
+        return endIndex;
+    }
+
+    public boolean isEmpty() {
+        return endIndex == 0;
+    }
+
+    /**
+     * Returns the sample at {@code index}, which must lie in [getFirstIndex(), getEndIndex()).
+     */
+    public double get(long index) {
+        return values[(int) (index & mask)];
+    }
+
+    /**
+     * Returns the timestamp of the sample at {@code index}, which must lie in
+     * [getFirstIndex(), getEndIndex()).
+     */
+    public long getTimestamp(long index) {
+        return timestamps[(int) (index & mask)];
+    }
+
+    /**
+     * Returns the index of the oldest kept sample whose timestamp is not before
+     * {@code timestampNanos}, or {@link #getEndIndex()} if there is none.
+     */
+    public long indexAt(long timestampNanos) {
+        long end = endIndex;
+        long low = Math.max(0, end - values.length);
+        long high = end;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (timestamps[(int) (middle & mask)] < timestampNanos) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
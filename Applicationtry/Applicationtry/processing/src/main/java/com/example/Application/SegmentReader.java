@@ -0,0 +1,237 @@
+/**
+ * This class reads a segment file written by {@link SessionRecorder}. Opening a segment scans its
+ * block headers into a sparse per-channel time index (one entry per block), so a position in the
+ * recording is found by a binary search and only the blocks that are actually needed are decoded.
+ * The scan stops at the first incomplete or corrupt block, which is where a crash interrupted the
+ * recorder; {@link #recover} cuts such a tail off.
+ */
+package com.example.Application;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+public class SegmentReader implements Closeable {
+    private static final int MAX_CHANNELS = 256;
+
+    /**
+     * Index entry of one block.
+     */
+    public static final class Block {
+        public final int channel;
+        public final int count;
+        public final long firstTimestampNanos;
+        public final long lastTimestampNanos;
+        final int firstValue;
+        final long payloadOffset;
+        final int payloadLength;
+
+        Block(int channel, int count, long firstTimestampNanos, long lastTimestampNanos, int firstValue,
+              long payloadOffset, int payloadLength) {
+            this.channel = channel;
+            this.count = count;
+            this.firstTimestampNanos = firstTimestampNanos;
+            this.lastTimestampNanos = lastTimestampNanos;
+            this.firstValue = firstValue;
+            this.payloadOffset = payloadOffset;
+            this.payloadLength = payloadLength;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final List<Block> blocks = new ArrayList<>();
+    // by channel, null for a channel without blocks
+    private final List<List<Block>> channelBlocks = new ArrayList<>(Collections.nCopies(MAX_CHANNELS, (List<Block>) null));
+    private final long validLength;
+    private ByteBuffer payload = ByteBuffer.allocate(1024);
+
+    /**
+     * Opens a segment and builds its index.
+     *
+     * @param segment The segment file.
+     * @throws IOException if the file cannot be read or is not a segment.
+     */
+    public SegmentReader(File segment) throws IOException {
+        file = new RandomAccessFile(segment, "r");
+        channel = file.getChannel();
+        try {
+            validLength = scan();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private long scan() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SampleBlockCodec.BLOCK_HEADER_LENGTH);
+        header.limit(SampleBlockCodec.SEGMENT_HEADER_LENGTH);
+        if (!readFully(header, 0)
+                || header.getInt(0) != SampleBlockCodec.SEGMENT_MAGIC
+                || header.getInt(4) != SampleBlockCodec.FORMAT_VERSION) {
+            throw new IOException("not a session segment");
+        }
+
+        CRC32 crc = new CRC32();
+        long size = channel.size();
+        long position = SampleBlockCodec.SEGMENT_HEADER_LENGTH;
+        while (true) {
+            header.clear();
+            if (!readFully(header, position) || header.getInt(0) != SampleBlockCodec.BLOCK_MAGIC) {
+                return position;
+            }
+            int blockChannel = header.get(4) & 0xFF;
+            int count = header.getShort(5) & 0xFFFF;
+            int payloadLength = header.getInt(27);
+            long payloadOffset = position + SampleBlockCodec.BLOCK_HEADER_LENGTH;
+            if (count == 0 || payloadLength < 0
+                    || payloadLength > (count - 1) * SampleBlockCodec.MAX_BYTES_PER_SAMPLE
+                    || payloadOffset + payloadLength + SampleBlockCodec.CRC_LENGTH > size) {
+                return position;
+            }
+
+            ByteBuffer body = payloadBuffer(payloadLength + SampleBlockCodec.CRC_LENGTH);
+            if (!readFully(body, payloadOffset)) {
+                return position;
+            }
+            crc.reset();
+            crc.update(header.array(), 0, SampleBlockCodec.BLOCK_HEADER_LENGTH);
+            crc.update(body.array(), 0, payloadLength);
+            if ((int) crc.getValue() != body.getInt(payloadLength)) {
+                return position;
+            }
+
+            Block block = new Block(blockChannel, count, header.getLong(7), header.getLong(15), header.getInt(23),
+                    payloadOffset, payloadLength);
+            blocks.add(block);
+            List<Block> list = channelBlocks.get(blockChannel);
+            if (list == null) {
+                list = new ArrayList<>();
+                channelBlocks.set(blockChannel, list);
+            }
+            list.add(block);
+            position = payloadOffset + payloadLength + SampleBlockCodec.CRC_LENGTH;
+        }
+    }
+
+    private ByteBuffer payloadBuffer(int length) {
+        if (payload.capacity() < length) {
+            payload = ByteBuffer.allocate(Math.max(length, payload.capacity() * 2));
+        }
+        payload.clear();
+        payload.limit(length);
+        return payload;
+    }
+
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * All valid blocks in file order.
+     */
+    public List<Block> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    /**
+     * The blocks of one channel in time order.
+     */
+    public List<Block> getBlocks(int channel) {
+        List<Block> list = channelBlocks.get(channel);
+        return list != null ? Collections.unmodifiableList(list) : Collections.<Block>emptyList();
+    }
+
+    /**
+     * Finds the block of a channel that contains the given time, or the first one after it.
+     *
+     * @param channel        The channel.
+     * @param timestampNanos The time to seek to.
+     * @return The index into {@link #getBlocks(int)}, or -1 if the channel has no samples at or after that time.
+     */
+    public int findBlock(int channel, long timestampNanos) {
+        List<Block> list = channelBlocks.get(channel);
+        if (list == null) {
+            return -1;
+        }
+        int low = 0;
+        int high = list.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (list.get(mid).lastTimestampNanos < timestampNanos) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low < list.size() ? low : -1;
+    }
+
+    /**
+     * Decodes the samples of a block.
+     *
+     * @param block           An entry of this segment's index.
+     * @param timestampsNanos Destination for the timestamps, at least {@code block.count} long.
+     * @param values          Destination for the values, at least {@code block.count} long.
+     * @return The number of samples, {@code block.count}.
+     */
+    public int readBlock(Block block, long[] timestampsNanos, int[] values) throws IOException {
+        ByteBuffer body = payloadBuffer(block.payloadLength);
+        if (!readFully(body, block.payloadOffset)) {
+            throw new EOFException("segment was truncated");
+        }
+        SampleBlockCodec.decodePayload(body, block.count, block.firstTimestampNanos, block.firstValue,
+                timestampsNanos, values);
+        return block.count;
+    }
+
+    /**
+     * Length of the file up to the end of the last valid block.
+     */
+    public long getValidLength() {
+        return validLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Cuts an incomplete or corrupt tail, e.g. a block that was being written when the app
+     * crashed, off a segment file.
+     *
+     * @param segment The segment file.
+     * @return The number of bytes removed.
+     * @throws IOException if the file cannot be read or is not a segment.
+     */
+    public static long recover(File segment) throws IOException {
+        long validLength;
+        try (SegmentReader reader = new SegmentReader(segment)) {
+            validLength = reader.getValidLength();
+        }
+        long removed = segment.length() - validLength;
+        if (removed > 0) {
+            try (RandomAccessFile out = new RandomAccessFile(segment, "rw")) {
+                out.getChannel().truncate(validLength);
+            }
+        }
+        return removed;
+    }
+}
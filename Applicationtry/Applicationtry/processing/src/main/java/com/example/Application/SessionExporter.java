@@ -0,0 +1,430 @@
+/**
+ * This class exports channels and a time range of a session written by {@link SessionRecorder}
+ * for offline analysis, e.g. with NeuroKit2 as in {@code pythonProject/PPG_Stimulation.py}.
+ * Two formats are written:
+ * <ul>
+ * <li>{@link #FORMAT_CSV}: one file with the rows {@code channel,timestamp_ns,time_s,value},
+ * channel after channel, {@code time_s} counted from the start of the session,</li>
+ * <li>{@link #FORMAT_NPY}: a directory with one NumPy {@code .npy} file per channel holding a
+ * little-endian int64 array of shape (2, n), the timestamps in row 0 and the values in row 1, so
+ * {@code t, v = np.load(file, mmap_mode="r")} maps it without reading it.</li>
+ * </ul>
+ * The session is decoded one block at a time and encoded through a fixed buffer, so memory stays
+ * bounded for sessions of any length. The values of a .npy file are first written to a temporary
+ * file and appended behind the timestamps with {@link FileChannel#transferTo}, which lets the
+ * kernel copy them without passing through the heap. The export runs on a background executor;
+ * it reports its progress and can be cancelled between blocks, which deletes the partial files.
+ */
+package com.example.Application;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+public class SessionExporter {
+    public static final int FORMAT_CSV = 0;
+    public static final int FORMAT_NPY = 1;
+    public static final String CSV_HEADER = "channel,timestamp_ns,time_s,value\n";
+    private static final String[] CHANNEL_NAMES = {
+            "mock_ppg", "mock_heart_rate", "mock_spo2", "spo2_ppg", "spo2_pulse_rate", "spo2_saturation",
+            "alert", "mock_beat_rate", "mock_beat_interval", "spo2_beat_rate", "spo2_beat_interval"};
+    // the block of a sensor added at runtime, see DataReciever#CHANNELS_PER_DEVICE; the session does
+    // not tell an oximeter from a button, whose presses are in the first channel
+    private static final String[] ADDED_CHANNEL_NAMES = {
+            "ppg_or_alert", "pulse_rate", "spo2", "beat_rate", "beat_interval"};
+    private static final int BUFFER_BYTES = 64 * 1024;
+    // longer than any CSV row
+    private static final int MAX_ROW_BYTES = 128;
+    // magic, version, header length and the padded dictionary, a multiple of 64 as NumPy wants
+    private static final int NPY_HEADER_BYTES = 128;
+
+    /**
+     * Receives the progress and the result of an export started with {@link #start}.
+     */
+    public interface Listener {
+        /**
+         * Called on the callback executor whenever another percent of the samples was exported.
+         */
+        void onProgress(long exportedSamples, long totalSamples);
+
+        /**
+         * Called on the callback executor when the export ended.
+         *
+         * @param files   The files written, empty if it failed.
+         * @param failure Null on success, an {@link InterruptedIOException} if it was cancelled.
+         */
+        void onFinished(List<File> files, IOException failure);
+    }
+
+    private final File directory;
+    private final String session;
+    private final int format;
+    private final int[] channels;
+    private final long fromNanos;
+    private final long toNanos;
+    private final File output;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final List<File> files = new ArrayList<>();
+    private Executor callbackExecutor;
+    private Listener listener;
+    private volatile boolean cancelled;
+    private volatile long exportedSamples;
+    private volatile long totalSamples;
+    private int reportedPercent = -1;
+
+    /**
+     * Constructor for the SessionExporter class.
+     *
+     * @param directory The directory the session was recorded to.
+     * @param session   The session name given to the recorder.
+     * @param format    {@link #FORMAT_CSV} or {@link #FORMAT_NPY}.
+     * @param channels  The channels to export, in this order.
+     * @param fromNanos Start of the exported range, a sample timestamp.
+     * @param toNanos   End of the exported range, exclusive.
+     * @param output    The CSV file, or the directory for the .npy files.
+     */
+    public SessionExporter(File directory, String session, int format, int[] channels, long fromNanos, long toNanos,
+                           File output) {
+        if (format != FORMAT_CSV && format != FORMAT_NPY) {
+            throw new IllegalArgumentException("unknown format " + format);
+        }
+        this.directory = directory;
+        this.session = session;
+        this.format = format;
+        this.channels = channels.clone();
+        this.fromNanos = fromNanos;
+        this.toNanos = toNanos;
+        this.output = output;
+    }
+
+    /**
+     * Name of a channel in the exported files. The channels of the sensors added at runtime are
+     * named after the order they were added in, e.g. {@code added1_ppg_or_alert}.
+     */
+    public static String channelName(int channel) {
+        if (channel >= 0 && channel < CHANNEL_NAMES.length) {
+            return CHANNEL_NAMES[channel];
+        }
+        if (channel >= DataReciever.CHANNEL_COUNT) {
+            int added = channel - DataReciever.CHANNEL_COUNT;
+            int offset = added % DataReciever.CHANNELS_PER_DEVICE;
+            if (offset < ADDED_CHANNEL_NAMES.length) {
+                return "added" + (added / DataReciever.CHANNELS_PER_DEVICE + 1) + "_" + ADDED_CHANNEL_NAMES[offset];
+            }
+        }
+        return "channel" + channel;
+    }
+
+    /**
+     * Name of the .npy file of a channel in the output directory.
+     */
+    public static String npyName(String session, int channel) {
+        return session + "_" + channelName(channel) + ".npy";
+    }
+
+    /**
+     * Runs the export on the given executor.
+     *
+     * @param executor         Runs the export, e.g. a single thread executor.
+     * @param callbackExecutor Runs the listener calls, e.g. {@code activity::runOnUiThread}.
+     * @param listener         Receives the progress and the result.
+     * @return The future of the export; cancelling it has the effect of {@link #cancel}.
+     */
+    public Future<?> start(ExecutorService executor, Executor callbackExecutor, Listener listener) {
+        this.callbackExecutor = callbackExecutor;
+        this.listener = listener;
+        return executor.submit(() -> {
+            List<File> result = new ArrayList<>();
+            IOException failure = null;
+            try {
+                result = export();
+            } catch (IOException e) {
+                failure = e;
+            }
+            List<File> finishedFiles = result;
+            IOException finishedFailure = failure;
+            callbackExecutor.execute(() -> listener.onFinished(finishedFiles, finishedFailure));
+        });
+    }
+
+    /**
+     * Stops the export before the next block; the partial files are deleted.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Exports on the calling thread.
+     *
+     * @return The files written.
+     * @throws IOException if the session cannot be read or the files cannot be written, or an
+     *                     {@link InterruptedIOException} if the export was cancelled.
+     */
+    public List<File> export() throws IOException {
+        List<SegmentReader> segments = new ArrayList<>();
+        try {
+            for (int number = 0; ; number++) {
+                File file = new File(directory, SessionRecorder.segmentName(session, number));
+                if (!file.exists()) {
+                    break;
+                }
+                segments.add(new SegmentReader(file));
+            }
+            if (segments.isEmpty()) {
+                throw new IOException("no segments for session " + session);
+            }
+
+            long startNanos = Long.MAX_VALUE;
+            int maxBlock = 1;
+            long total = 0;
+            for (SegmentReader segment : segments) {
+                for (SegmentReader.Block block : segment.getBlocks()) {
+                    startNanos = Math.min(startNanos, block.firstTimestampNanos);
+                    maxBlock = Math.max(maxBlock, block.count);
+                }
+                for (int channel : channels) {
+                    for (SegmentReader.Block block : segment.getBlocks(channel)) {
+                        if (overlaps(block)) {
+                            total += block.count;
+                        }
+                    }
+                }
+            }
+            totalSamples = total;
+            long[] timestamps = new long[maxBlock];
+            int[] values = new int[maxBlock];
+            if (format == FORMAT_CSV) {
+                exportCsv(segments, startNanos, timestamps, values);
+            } else {
+                exportNpy(segments, timestamps, values);
+            }
+            reportProgress(true);
+            return new ArrayList<>(files);
+        } catch (IOException | RuntimeException e) {
+            for (File file : files) {
+                file.delete();
+            }
+            files.clear();
+            throw e;
+        } finally {
+            for (SegmentReader segment : segments) {
+                segment.close();
+            }
+        }
+    }
+
+    private boolean overlaps(SegmentReader.Block block) {
+        return block.lastTimestampNanos >= fromNanos && block.firstTimestampNanos < toNanos;
+    }
+
+    private void exportCsv(List<SegmentReader> segments, long startNanos, long[] timestamps, int[] values)
+            throws IOException {
+        files.add(output);
+        try (RandomAccessFile file = new RandomAccessFile(output, "rw")) {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            buffer.clear();
+            buffer.put(CSV_HEADER.getBytes(StandardCharsets.US_ASCII));
+            for (int exported : channels) {
+                byte[] name = channelName(exported).getBytes(StandardCharsets.US_ASCII);
+                for (SegmentReader segment : segments) {
+                    for (SegmentReader.Block block : segment.getBlocks(exported)) {
+                        if (!overlaps(block)) {
+                            continue;
+                        }
+                        int count = readBlock(segment, block, timestamps, values);
+                        for (int i = 0; i < count; i++) {
+                            if (timestamps[i] < fromNanos || timestamps[i] >= toNanos) {
+                                continue;
+                            }
+                            if (buffer.remaining() < MAX_ROW_BYTES + name.length) {
+                                flush(channel);
+                            }
+                            buffer.put(name).put((byte) ',');
+                            putDecimal(timestamps[i]);
+                            buffer.put((byte) ',');
+                            putSeconds(timestamps[i] - startNanos);
+                            buffer.put((byte) ',');
+                            putDecimal(values[i]);
+                            buffer.put((byte) '\n');
+                        }
+                    }
+                }
+            }
+            flush(channel);
+        }
+    }
+
+    private void exportNpy(List<SegmentReader> segments, long[] timestamps, int[] values) throws IOException {
+        if (!output.isDirectory() && !output.mkdirs()) {
+            throw new IOException("cannot create " + output);
+        }
+        for (int exported : channels) {
+            File npy = new File(output, npyName(session, exported));
+            File valuesFile = new File(output, npy.getName() + ".tmp");
+            files.add(npy);
+            files.add(valuesFile);
+            try (RandomAccessFile file = new RandomAccessFile(npy, "rw");
+                 RandomAccessFile valuesTemporary = new RandomAccessFile(valuesFile, "rw")) {
+                file.setLength(0);
+                valuesTemporary.setLength(0);
+                FileChannel channel = file.getChannel();
+                FileChannel valuesChannel = valuesTemporary.getChannel();
+                channel.position(NPY_HEADER_BYTES);
+                long count = 0;
+                ByteBuffer valueBuffer = ByteBuffer.allocate(8 * timestamps.length).order(ByteOrder.LITTLE_ENDIAN);
+                for (SegmentReader segment : segments) {
+                    for (SegmentReader.Block block : segment.getBlocks(exported)) {
+                        if (!overlaps(block)) {
+                            continue;
+                        }
+                        int n = readBlock(segment, block, timestamps, values);
+                        valueBuffer.clear();
+                        for (int i = 0; i < n; i++) {
+                            if (timestamps[i] < fromNanos || timestamps[i] >= toNanos) {
+                                continue;
+                            }
+                            if (buffer.remaining() < 8) {
+                                flush(channel);
+                            }
+                            buffer.putLong(timestamps[i]);
+                            valueBuffer.putLong(values[i]);
+                            count++;
+                        }
+                        valueBuffer.flip();
+                        while (valueBuffer.hasRemaining()) {
+                            valuesChannel.write(valueBuffer);
+                        }
+                    }
+                }
+                flush(channel);
+
+                // the values follow the timestamps, copied by the kernel
+                long position = 0;
+                long size = valuesChannel.size();
+                while (position < size) {
+                    position += valuesChannel.transferTo(position, size - position, channel);
+                }
+                writeNpyHeader(channel, count);
+            }
+            files.remove(valuesFile);
+            valuesFile.delete();
+        }
+    }
+
+    private int readBlock(SegmentReader segment, SegmentReader.Block block, long[] timestamps, int[] values)
+            throws IOException {
+        if (cancelled || Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("export cancelled");
+        }
+        int count = segment.readBlock(block, timestamps, values);
+        exportedSamples += count;
+        reportProgress(false);
+        return count;
+    }
+
+    private void reportProgress(boolean finished) {
+        Listener target = listener;
+        if (target == null) {
+            return;
+        }
+        long total = totalSamples;
+        long exported = finished ? total : exportedSamples;
+        int percent = total > 0 ? (int) (100 * exported / total) : 100;
+        if (percent == reportedPercent) {
+            return;
+        }
+        reportedPercent = percent;
+        callbackExecutor.execute(() -> target.onProgress(exported, total));
+    }
+
+    private void flush(FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the .npy header for an int64 array of shape (2, count) to the start of the file.
+     */
+    private static void writeNpyHeader(FileChannel channel, long count) throws IOException {
+        StringBuilder header = new StringBuilder("{'descr': '<i8', 'fortran_order': False, 'shape': (2, ")
+                .append(count).append("), }");
+        int dictionaryBytes = NPY_HEADER_BYTES - 10;
+        while (header.length() < dictionaryBytes - 1) {
+            header.append(' ');
+        }
+        header.append('\n');
+        ByteBuffer bytes = ByteBuffer.allocate(NPY_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.put((byte) 0x93).put("NUMPY".getBytes(StandardCharsets.US_ASCII)).put((byte) 1).put((byte) 0);
+        bytes.putShort((short) dictionaryBytes);
+        bytes.put(header.toString().getBytes(StandardCharsets.US_ASCII));
+        bytes.flip();
+        long position = 0;
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+
+    private void putDecimal(long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            if (value == Long.MIN_VALUE) {
+                buffer.put("9223372036854775808".getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            value = -value;
+        }
+        int start = buffer.position();
+        do {
+            buffer.put((byte) ('0' + value % 10));
+            value /= 10;
+        } while (value != 0);
+        // the digits were written from the last one
+        for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            byte digit = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, digit);
+        }
+    }
+
+    /**
+     * Writes nanoseconds as seconds with six decimals.
+     */
+    private void putSeconds(long nanos) {
+        long micros = Math.floorDiv(nanos, 1000);
+        putDecimal(Math.floorDiv(micros, 1_000_000));
+        buffer.put((byte) '.');
+        long fraction = Math.floorMod(micros, 1_000_000);
+        for (long digit = 100_000; digit > 0; digit /= 10) {
+            buffer.put((byte) ('0' + fraction / digit % 10));
+        }
+    }
+
+    /**
+     * Number of samples decoded so far, including those outside the range.
+     */
+    public long getExportedSampleCount() {
+        return exportedSamples;
+    }
+
+    /**
+     * Number of samples in the blocks that overlap the range, known once the export started.
+     */
+    public long getTotalSampleCount() {
+        return totalSamples;
+    }
+}
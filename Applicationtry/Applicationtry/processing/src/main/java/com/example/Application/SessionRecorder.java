@@ -0,0 +1,428 @@
+/**
+ * This class records every sample of a session to disk. The UI thread hands samples over by
+ * copying them into preallocated per-channel chunks; full chunks are passed to a writer thread
+ * that encodes them as compressed blocks ({@link SampleBlockCodec}) and appends them to segment
+ * files through a FileChannel. The number of chunks is fixed, so memory stays bounded: if the
+ * writer falls behind, samples are dropped and counted instead of blocking the UI.
+ * Segments are append-only; after a crash the last incomplete block is cut off by
+ * {@link SegmentReader#recover}, which the recorder runs when it starts on the last segment of
+ * every session that was not closed, i.e. has no summary file.
+ * The writer thread also feeds a {@link SummaryPyramid} per channel, which is saved next to the
+ * segments when the session is closed, so a long recording can be navigated without decoding it.
+ */
+package com.example.Application;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+public class SessionRecorder {
+    public static final String SEGMENT_SUFFIX = ".seg";
+    public static final String SUMMARY_SUFFIX = ".sum";
+    public static final int DEFAULT_CHUNKS = 32;
+    public static final int CHUNK_SAMPLES = 1024;
+    public static final long DEFAULT_SEGMENT_BYTES = 8L << 20;
+    // a chunk is handed to the writer after this time even if it is not full,
+    // which bounds what a crash can lose
+    private static final long MAX_CHUNK_AGE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final class Chunk {
+        final long[] timestamps = new long[CHUNK_SAMPLES];
+        final int[] values = new int[CHUNK_SAMPLES];
+        int channel;
+        int count;
+        long startedNanos;
+    }
+
+    private static final Chunk END_OF_SESSION = new Chunk();
+
+    private final File directory;
+    private final String session;
+    private final long segmentBytes;
+    private final Chunk[] current;
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> filled;
+    private final Thread writer;
+    private final AtomicLong droppedSamples = new AtomicLong();
+    private final AtomicLong recordedSamples = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    // created by the writer thread for the channels that have samples
+    private final SummaryPyramid[] summaries;
+    private volatile IOException failure;
+    private boolean closed;
+
+    // writer thread state
+    private final ByteBuffer blockBuffer = ByteBuffer.allocate(SampleBlockCodec.maxBlockLength(CHUNK_SAMPLES));
+    private final CRC32 crc = new CRC32();
+    private RandomAccessFile segmentFile;
+    private FileChannel segmentChannel;
+    private int segmentNumber;
+    private long segmentLength;
+
+    /**
+     * Constructor for the SessionRecorder class with the default memory and segment size.
+     *
+     * @param directory Directory the segment files are written to.
+     * @param session   Name of the session, the prefix of its segment files.
+     * @param channels  Number of channels, e.g. {@link DataReciever#CHANNEL_COUNT}.
+     */
+    public SessionRecorder(File directory, String session, int channels) {
+        this(directory, session, channels, DEFAULT_CHUNKS, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Constructor for the SessionRecorder class.
+     *
+     * @param directory    Directory the segment files are written to.
+     * @param session      Name of the session, the prefix of its segment files.
+     * @param channels     Number of channels.
+     * @param chunks       Number of chunks of {@link #CHUNK_SAMPLES} samples, more than {@code channels}.
+     * @param segmentBytes Size after which the next segment file is started.
+     */
+    public SessionRecorder(File directory, String session, int channels, int chunks, long segmentBytes) {
+        if (chunks <= channels) {
+            throw new IllegalArgumentException("need more chunks than channels");
+        }
+        this.directory = directory;
+        this.session = session;
+        this.segmentBytes = segmentBytes;
+        this.current = new Chunk[channels];
+        this.summaries = new SummaryPyramid[channels];
+        this.free = new ArrayBlockingQueue<>(chunks);
+        this.filled = new ArrayBlockingQueue<>(chunks + 1);
+        for (int i = 0; i < chunks; i++) {
+            free.add(new Chunk());
+        }
+        writer = new Thread(this::writeLoop, "SessionRecorder");
+        writer.setPriority(Thread.NORM_PRIORITY - 1);
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Records one sample. Must only be called from one thread, e.g. the UI thread.
+     */
+    public void record(int channel, long timestampNanos, int value) {
+        Chunk chunk = chunkFor(channel);
+        if (chunk == null) {
+            droppedSamples.incrementAndGet();
+            return;
+        }
+        chunk.timestamps[chunk.count] = timestampNanos;
+        chunk.values[chunk.count] = value;
+        if (++chunk.count == CHUNK_SAMPLES) {
+            handOver(channel);
+        }
+        recordedSamples.incrementAndGet();
+    }
+
+    /**
+     * Records several samples of one channel, see {@link DataReciever#onSamples}.
+     */
+    public void record(int channel, long[] timestampsNanos, int[] values, int offset, int count) {
+        int end = offset + count;
+        int i = offset;
+        while (i < end) {
+            Chunk chunk = chunkFor(channel);
+            if (chunk == null) {
+                recordedSamples.addAndGet(i - offset);
+                droppedSamples.addAndGet(end - i);
+                return;
+            }
+            int n = Math.min(end - i, CHUNK_SAMPLES - chunk.count);
+            System.arraycopy(timestampsNanos, i, chunk.timestamps, chunk.count, n);
+            System.arraycopy(values, i, chunk.values, chunk.count, n);
+            chunk.count += n;
+            i += n;
+            if (chunk.count == CHUNK_SAMPLES) {
+                handOver(channel);
+            }
+        }
+        recordedSamples.addAndGet(count);
+    }
+
+    private Chunk chunkFor(int channel) {
+        if (closed) {
+            return null;
+        }
+        long now = System.nanoTime();
+        Chunk chunk = current[channel];
+        if (chunk != null && now - chunk.startedNanos > MAX_CHUNK_AGE_NANOS) {
+            handOver(channel);
+            chunk = null;
+        }
+        if (chunk == null) {
+            chunk = free.poll();
+            if (chunk == null) {
+                return null;
+            }
+            chunk.channel = channel;
+            chunk.count = 0;
+            chunk.startedNanos = now;
+            current[channel] = chunk;
+        }
+        return chunk;
+    }
+
+    /**
+     * Hands the chunks that are older than the maximum age to the writer, also those of channels
+     * that stopped recording, e.g. the alert button or a disconnected sensor, so a crash cannot
+     * lose what they recorded last. Must be called from the recording thread, e.g. every drain.
+     *
+     * @param nowNanos The current {@code System.nanoTime()}.
+     */
+    public void flushStale(long nowNanos) {
+        if (closed) {
+            return;
+        }
+        for (int channel = 0; channel < current.length; channel++) {
+            Chunk chunk = current[channel];
+            if (chunk != null && nowNanos - chunk.startedNanos > MAX_CHUNK_AGE_NANOS) {
+                handOver(channel);
+            }
+        }
+    }
+
+    private void handOver(int channel) {
+        Chunk chunk = current[channel];
+        current[channel] = null;
+        if (chunk != null && chunk.count > 0) {
+            filled.add(chunk);
+        } else if (chunk != null) {
+            free.add(chunk);
+        }
+    }
+
+    /**
+     * Hands the partially filled chunks to the writer, writes everything and closes the segment.
+     * Must be called from the recording thread.
+     */
+    public void close() throws InterruptedException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (int channel = 0; channel < current.length; channel++) {
+            handOver(channel);
+        }
+        filled.add(END_OF_SESSION);
+        writer.join();
+    }
+
+    private void writeLoop() {
+        recoverSegments();
+        try {
+            while (true) {
+                Chunk chunk = filled.take();
+                if (chunk == END_OF_SESSION) {
+                    break;
+                }
+                if (failure == null) {
+                    try {
+                        writeBlock(chunk);
+                        summarize(chunk);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                if (failure != null) {
+                    droppedSamples.addAndGet(chunk.count);
+                }
+                free.add(chunk);
+            }
+            if (failure == null && segmentChannel != null) {
+                saveSummaries();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeSegment();
+        }
+    }
+
+    private void summarize(Chunk chunk) {
+        SummaryPyramid summary = summaries[chunk.channel];
+        if (summary == null) {
+            summary = new SummaryPyramid();
+            synchronized (summaries) {
+                summaries[chunk.channel] = summary;
+            }
+        }
+        summary.addAll(chunk.timestamps, chunk.values, 0, chunk.count);
+    }
+
+    private void saveSummaries() {
+        SummaryPyramid[] snapshot;
+        synchronized (summaries) {
+            snapshot = summaries.clone();
+        }
+        try {
+            SummaryPyramid.save(new File(directory, summaryName(session)), snapshot);
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void writeBlock(Chunk chunk) throws IOException {
+        if (segmentChannel == null || segmentLength >= segmentBytes) {
+            openNextSegment();
+        }
+        blockBuffer.clear();
+        SampleBlockCodec.encodeBlock(chunk.channel, chunk.timestamps, chunk.values, 0, chunk.count, blockBuffer, crc);
+        blockBuffer.flip();
+        int length = blockBuffer.remaining();
+        while (blockBuffer.hasRemaining()) {
+            segmentChannel.write(blockBuffer);
+        }
+        segmentLength += length;
+        bytesWritten.addAndGet(length);
+    }
+
+    private void openNextSegment() throws IOException {
+        closeSegment();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        File file = new File(directory, segmentName(session, segmentNumber++));
+        segmentFile = new RandomAccessFile(file, "rw");
+        segmentFile.setLength(0);
+        segmentChannel = segmentFile.getChannel();
+        blockBuffer.clear();
+        SampleBlockCodec.writeSegmentHeader(blockBuffer);
+        blockBuffer.flip();
+        while (blockBuffer.hasRemaining()) {
+            segmentChannel.write(blockBuffer);
+        }
+        segmentLength = SampleBlockCodec.SEGMENT_HEADER_LENGTH;
+        bytesWritten.addAndGet(SampleBlockCodec.SEGMENT_HEADER_LENGTH);
+    }
+
+    private void closeSegment() {
+        if (segmentFile != null) {
+            try {
+                segmentFile.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            segmentFile = null;
+            segmentChannel = null;
+        }
+    }
+
+    /**
+     * Cuts the incomplete tail off the last segment of every session that crashed. A closed
+     * session has its summary file, and the segments before the last one were closed when the
+     * next one was started, so only those last segments are read.
+     */
+    private void recoverSegments() {
+        File[] segments = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (segments == null) {
+            return;
+        }
+        // the last segment of each session, by session name
+        Map<String, File> lastSegments = new HashMap<>();
+        Map<String, Integer> lastNumbers = new HashMap<>();
+        for (File segment : segments) {
+            String name = segment.getName();
+            int dash = name.lastIndexOf('-');
+            if (dash <= 0) {
+                continue;
+            }
+            int number;
+            try {
+                number = Integer.parseInt(name.substring(dash + 1, name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            String owner = name.substring(0, dash);
+            Integer last = lastNumbers.get(owner);
+            if (last == null || last < number) {
+                lastNumbers.put(owner, number);
+                lastSegments.put(owner, segment);
+            }
+        }
+        for (Map.Entry<String, File> entry : lastSegments.entrySet()) {
+            if (new File(directory, summaryName(entry.getKey())).exists()) {
+                continue;
+            }
+            File segment = entry.getValue();
+            try {
+                SegmentReader.recover(segment);
+            } catch (IOException e) {
+                // crashed before the header was complete, nothing to keep
+                if (segment.length() < SampleBlockCodec.SEGMENT_HEADER_LENGTH) {
+                    segment.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * File name of a segment of a session.
+     */
+    public static String segmentName(String session, int segment) {
+        return String.format(Locale.ROOT, "%s-%04d%s", session, segment, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * File name of the summary pyramids of a session.
+     */
+    public static String summaryName(String session) {
+        return session + SUMMARY_SUFFIX;
+    }
+
+    /**
+     * The summary of a channel's samples written so far, or null if it has none yet. It trails
+     * the recorded samples by the chunks the writer has not taken yet.
+     */
+    public SummaryPyramid getSummary(int channel) {
+        synchronized (summaries) {
+            return summaries[channel];
+        }
+    }
+
+    /**
+     * Number of samples taken over by {@link #record}.
+     */
+    public long getRecordedSampleCount() {
+        return recordedSamples.get();
+    }
+
+    /**
+     * Number of samples lost because the writer fell behind or failed.
+     */
+    public long getDroppedSampleCount() {
+        return droppedSamples.get();
+    }
+
+    /**
+     * Number of bytes written to segment files so far.
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * The error that stopped the writer, or null.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+}
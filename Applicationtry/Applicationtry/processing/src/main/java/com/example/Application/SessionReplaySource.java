@@ -0,0 +1,258 @@
+/**
+ * This class replays a session written by {@link SessionRecorder}. Each channel has a cursor that
+ * decodes one block at a time from the session's segments; the cursors are merged so the samples
+ * of all channels come out in time order. Seeking uses the sparse block index of the segments, so
+ * only the block containing the target time is decoded. The summary pyramids of the session are
+ * read from the file the recorder saved, or rebuilt from the blocks if it is missing or stale.
+ */
+package com.example.Application;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SessionReplaySource implements ReplaySource {
+
+    private static final class Cursor {
+        final int channel;
+        final List<SegmentReader.Block> blocks = new ArrayList<>();
+        final List<SegmentReader> owners = new ArrayList<>();
+        long[] timestamps;
+        int[] values;
+        int blockIndex = -1;
+        int count;
+        int position;
+
+        Cursor(int channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Timestamp of the next sample, loading the next block if needed;
+         * {@link Long#MAX_VALUE} at the end.
+         */
+        long next() throws IOException {
+            while (position == count) {
+                if (blockIndex + 1 >= blocks.size()) {
+                    return Long.MAX_VALUE;
+                }
+                load(blockIndex + 1);
+            }
+            return timestamps[position];
+        }
+
+        void load(int index) throws IOException {
+            blockIndex = index;
+            count = owners.get(index).readBlock(blocks.get(index), timestamps, values);
+            position = 0;
+        }
+
+        void seek(long timestampNanos) throws IOException {
+            int low = 0;
+            int high = blocks.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (blocks.get(mid).lastTimestampNanos < timestampNanos) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (low == blocks.size()) {
+                blockIndex = blocks.size();
+                count = 0;
+                position = 0;
+                return;
+            }
+            load(low);
+            while (position < count && timestamps[position] < timestampNanos) {
+                position++;
+            }
+        }
+    }
+
+    private final List<SegmentReader> segments = new ArrayList<>();
+    private final List<Cursor> cursors = new ArrayList<>();
+    private final long startNanos;
+    private final long endNanos;
+    private final File summaryFile;
+    private SummaryPyramid[] summaries;
+    private int runChannel = -1;
+
+    /**
+     * Opens all segments of a recorded session.
+     *
+     * @param directory The directory the session was recorded to.
+     * @param session   The session name given to the recorder.
+     * @throws IOException if the session has no readable segment.
+     */
+    public SessionReplaySource(File directory, String session) throws IOException {
+        summaryFile = new File(directory, SessionRecorder.summaryName(session));
+        try {
+            for (int number = 0; ; number++) {
+                File file = new File(directory, SessionRecorder.segmentName(session, number));
+                if (!file.exists()) {
+                    break;
+                }
+                segments.add(new SegmentReader(file));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        if (segments.isEmpty()) {
+            throw new IOException("no segments for session " + session);
+        }
+
+        Cursor[] byChannel = new Cursor[256];
+        int maxBlock = 1;
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (SegmentReader segment : segments) {
+            for (SegmentReader.Block block : segment.getBlocks()) {
+                Cursor cursor = byChannel[block.channel];
+                if (cursor == null) {
+                    cursor = byChannel[block.channel] = new Cursor(block.channel);
+                    cursors.add(cursor);
+                }
+                cursor.blocks.add(block);
+                cursor.owners.add(segment);
+                maxBlock = Math.max(maxBlock, block.count);
+                start = Math.min(start, block.firstTimestampNanos);
+                end = Math.max(end, block.lastTimestampNanos);
+            }
+        }
+        for (Cursor cursor : cursors) {
+            cursor.timestamps = new long[maxBlock];
+            cursor.values = new int[maxBlock];
+        }
+        startNanos = cursors.isEmpty() ? 0 : start;
+        endNanos = cursors.isEmpty() ? 0 : end;
+    }
+
+    @Override
+    public int read(long[] timestampsNanos, int[] values, int max) throws IOException {
+        // the cursor with the earliest sample runs until another channel has an earlier one
+        Cursor earliest = null;
+        long earliestNext = Long.MAX_VALUE;
+        long secondNext = Long.MAX_VALUE;
+        for (Cursor cursor : cursors) {
+            long next = cursor.next();
+            if (next < earliestNext) {
+                secondNext = earliestNext;
+                earliestNext = next;
+                earliest = cursor;
+            } else if (next < secondNext) {
+                secondNext = next;
+            }
+        }
+        if (earliest == null) {
+            return -1;
+        }
+
+        runChannel = earliest.channel;
+        int n = 0;
+        while (n < max) {
+            long next = earliest.next();
+            if (next == Long.MAX_VALUE || next > secondNext) {
+                break;
+            }
+            timestampsNanos[n] = next;
+            values[n] = earliest.values[earliest.position++];
+            n++;
+        }
+        return n;
+    }
+
+    @Override
+    public int getRunChannel() {
+        return runChannel;
+    }
+
+    @Override
+    public void seek(long offsetNanos) throws IOException {
+        for (Cursor cursor : cursors) {
+            cursor.seek(startNanos + offsetNanos);
+        }
+    }
+
+    @Override
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    @Override
+    public long getDurationNanos() {
+        return endNanos - startNanos;
+    }
+
+    /**
+     * The summary pyramid of every channel, indexed by channel; null for channels without samples.
+     * The first call loads or rebuilds them, which decodes the whole session if there is no
+     * up-to-date summary file; like {@link #read}, it must not run concurrently with the replay.
+     */
+    public synchronized SummaryPyramid[] getSummaries() throws IOException {
+        if (summaries != null) {
+            return summaries;
+        }
+        if (summaryFile.exists()) {
+            try {
+                SummaryPyramid[] loaded = SummaryPyramid.load(summaryFile);
+                if (matches(loaded)) {
+                    summaries = loaded;
+                    return summaries;
+                }
+            } catch (IOException e) {
+                // rebuilt below
+            }
+        }
+        summaries = rebuildSummaries();
+        return summaries;
+    }
+
+    /**
+     * Whether the loaded pyramids hold as many samples per channel as the segments, e.g. not
+     * after a crash that left the summary of an earlier close.
+     */
+    private boolean matches(SummaryPyramid[] loaded) {
+        for (Cursor cursor : cursors) {
+            long samples = 0;
+            for (SegmentReader.Block block : cursor.blocks) {
+                samples += block.count;
+            }
+            if (cursor.channel >= loaded.length || loaded[cursor.channel] == null
+                    || loaded[cursor.channel].getSampleCount() != samples) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private SummaryPyramid[] rebuildSummaries() throws IOException {
+        int channels = 0;
+        for (Cursor cursor : cursors) {
+            channels = Math.max(channels, cursor.channel + 1);
+        }
+        SummaryPyramid[] rebuilt = new SummaryPyramid[channels];
+        for (Cursor cursor : cursors) {
+            // separate buffers, the cursor keeps its position
+            long[] timestamps = new long[cursor.timestamps.length];
+            int[] values = new int[cursor.values.length];
+            SummaryPyramid pyramid = new SummaryPyramid();
+            for (int i = 0; i < cursor.blocks.size(); i++) {
+                int count = cursor.owners.get(i).readBlock(cursor.blocks.get(i), timestamps, values);
+                pyramid.addAll(timestamps, values, 0, count);
+            }
+            rebuilt[cursor.channel] = pyramid;
+        }
+        return rebuilt;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (SegmentReader segment : segments) {
+            segment.close();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * This class generates the waveforms of the ESP32 mockup without the board: sine, square and
+ * triangle with the sketch's amplitude, DC part, frequency and sampling rate, the 1000-sample
+ * PPG table of {@code PPG_Values.h}, and a synthesized PPG pulse of any length whose heart rate
+ * can be set.
+ * One period of every waveform is precomputed into a table that a 32-bit phase accumulator
+ * walks through, so a sample costs a shift, a load and a multiply-add. Samples are produced in
+ * blocks, which keeps thousands of generators cheap enough for benchmarks and for developing
+ * the UI without hardware. A generator is not thread-safe.
+ */
+package com.example.Application;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SignalGenerator {
+    // waveType of the sketch
+    public static final int WAVE_SINE = 0;
+    public static final int WAVE_SQUARE = 1;
+    public static final int WAVE_TRIANGLE = 2;
+    public static final int WAVE_PPG_TABLE = 3;
+    // not on the board: a PPG pulse at a configurable heart rate
+    public static final int WAVE_PPG = 4;
+
+    // defaults of the sketch
+    public static final double DEFAULT_AMPLITUDE = 30;
+    public static final double DEFAULT_DC_PART = 50;
+    public static final double DEFAULT_FREQUENCY_HZ = 1;
+    public static final double DEFAULT_SAMPLING_RATE_HZ = 50;
+    // the sketch scales the PPG table as 10 + 45 * value
+    public static final double PPG_DC_PART = 10;
+    public static final double PPG_AMPLITUDE = 45;
+    public static final double DEFAULT_HEART_RATE_BPM = 72;
+    public static final int PPG_TABLE_LENGTH = 1000;
+
+    private static final int TABLE_BITS = 12;
+    private static final int TABLE_SHIFT = 32 - TABLE_BITS;
+    private static final float[] SINE = new float[1 << TABLE_BITS];
+    private static final float[] SQUARE = new float[1 << TABLE_BITS];
+    private static final float[] TRIANGLE = new float[1 << TABLE_BITS];
+    private static final float[] PULSE = new float[1 << TABLE_BITS];
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+\\.\\d+");
+    private static volatile float[] ppgTable;
+
+    static {
+        for (int i = 0; i < SINE.length; i++) {
+            double sin = Math.sin(2 * Math.PI * i / SINE.length);
+            SINE[i] = (float) sin;
+            SQUARE[i] = sin >= 0 ? 1 : -1;
+            TRIANGLE[i] = (float) (2 / Math.PI * Math.asin(sin));
+        }
+        // systolic peak and dicrotic wave as two Gaussians, scaled to the 0..2 range of the PPG table
+        double max = 0;
+        double[] pulse = new double[PULSE.length];
+        for (int i = 0; i < pulse.length; i++) {
+            double t = (double) i / pulse.length;
+            pulse[i] = gaussian(t, 0.18, 0.06) + 0.5 * gaussian(t, 0.45, 0.09);
+            max = Math.max(max, pulse[i]);
+        }
+        for (int i = 0; i < pulse.length; i++) {
+            PULSE[i] = (float) (2 * pulse[i] / max);
+        }
+    }
+
+    private int waveType;
+    private double sampleRateHz;
+    private double frequencyHz;
+    private float amplitude;
+    private float dcPart;
+    private int phase;
+    private int phaseIncrement;
+    // position in the PPG table, which the sketch advances by one entry per sample
+    private int tableIndex;
+
+    /**
+     * Creates a generator with the sketch's defaults for the waveform: amplitude 30 around 50 at
+     * 1 Hz for sine, square and triangle; 10 + 45 * value for the PPG table and the PPG pulse,
+     * which runs at 72 bpm.
+     *
+     * @param waveType     One of the {@code WAVE_} constants.
+     * @param sampleRateHz Samples per second.
+     */
+    public SignalGenerator(int waveType, double sampleRateHz) {
+        if (!(sampleRateHz > 0)) {
+            throw new IllegalArgumentException("sample rate must be positive");
+        }
+        this.sampleRateHz = sampleRateHz;
+        setWaveType(waveType);
+    }
+
+    private static double gaussian(double t, double center, double width) {
+        double x = (t - center) / width;
+        return Math.exp(-0.5 * x * x);
+    }
+
+    /**
+     * The PPG table of {@code PPG_Values.h}, the NeuroKit2 pulse the mockup loops through.
+     */
+    public static float[] getPpgTable() {
+        float[] table = ppgTable;
+        if (table == null) {
+            table = loadPpgTable();
+            ppgTable = table;
+        }
+        return table;
+    }
+
+    // PPG_Values.h of the sketch, copied into the resources by the build
+    private static float[] loadPpgTable() {
+        String source;
+        try (InputStream in = SignalGenerator.class.getResourceAsStream("PPG_Values.h")) {
+            if (in == null) {
+                throw new IllegalStateException("PPG_Values.h is missing");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            source = new String(bytes.toByteArray(), StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        float[] table = new float[PPG_TABLE_LENGTH];
+        int count = 0;
+        Matcher matcher = NUMBER.matcher(source);
+        matcher.region(source.indexOf('{') + 1, source.length());
+        while (matcher.find() && count < table.length) {
+            table[count++] = Float.parseFloat(matcher.group());
+        }
+        if (count != table.length) {
+            throw new IllegalStateException("PPG_Values.h has " + count + " values");
+        }
+        return table;
+    }
+
+    /**
+     * Switches the waveform and resets amplitude, DC part and frequency to its defaults. The
+     * phase continues, like on the board when a button is pressed.
+     */
+    public void setWaveType(int waveType) {
+        switch (waveType) {
+            case WAVE_SINE:
+            case WAVE_SQUARE:
+            case WAVE_TRIANGLE:
+                amplitude = (float) DEFAULT_AMPLITUDE;
+                dcPart = (float) DEFAULT_DC_PART;
+                setFrequency(DEFAULT_FREQUENCY_HZ);
+                break;
+            case WAVE_PPG_TABLE:
+                getPpgTable();
+                amplitude = (float) PPG_AMPLITUDE;
+                dcPart = (float) PPG_DC_PART;
+                break;
+            case WAVE_PPG:
+                amplitude = (float) PPG_AMPLITUDE;
+                dcPart = (float) PPG_DC_PART;
+                setHeartRate(DEFAULT_HEART_RATE_BPM);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown wave type " + waveType);
+        }
+        this.waveType = waveType;
+    }
+
+    public int getWaveType() {
+        return waveType;
+    }
+
+    public void setAmplitude(double amplitude) {
+        this.amplitude = (float) amplitude;
+    }
+
+    public double getAmplitude() {
+        return amplitude;
+    }
+
+    public void setDcPart(double dcPart) {
+        this.dcPart = (float) dcPart;
+    }
+
+    public double getDcPart() {
+        return dcPart;
+    }
+
+    /**
+     * Sets the frequency of the periodic waveforms; for the PPG pulse it is the beat rate. The
+     * PPG table plays at one entry per sample regardless of it, like on the board.
+     */
+    public void setFrequency(double frequencyHz) {
+        if (!(frequencyHz >= 0) || frequencyHz >= sampleRateHz / 2) {
+            throw new IllegalArgumentException("frequency must be between 0 and half the sample rate");
+        }
+        this.frequencyHz = frequencyHz;
+        // a full turn of the phase is 2^32
+        phaseIncrement = (int) Math.round(frequencyHz / sampleRateHz * 4294967296.0);
+    }
+
+    public double getFrequency() {
+        return frequencyHz;
+    }
+
+    /**
+     * Sets the heart rate of the PPG pulse. The pulse continues where it is, so the rate can
+     * change from beat to beat.
+     */
+    public void setHeartRate(double bpm) {
+        setFrequency(bpm / 60);
+    }
+
+    public double getHeartRate() {
+        return frequencyHz * 60;
+    }
+
+    public void setSampleRate(double sampleRateHz) {
+        if (!(sampleRateHz > 0)) {
+            throw new IllegalArgumentException("sample rate must be positive");
+        }
+        this.sampleRateHz = sampleRateHz;
+        setFrequency(frequencyHz);
+    }
+
+    public double getSampleRate() {
+        return sampleRateHz;
+    }
+
+    /**
+     * Writes the next samples.
+     *
+     * @param out    Destination.
+     * @param offset First index written.
+     * @param count  Number of samples.
+     */
+    public void generate(float[] out, int offset, int count) {
+        generate(out, null, offset, count);
+    }
+
+    /**
+     * Writes the next samples rounded to integers, the values the sketch sends.
+     *
+     * @param out    Destination.
+     * @param offset First index written.
+     * @param count  Number of samples.
+     */
+    public void generate(int[] out, int offset, int count) {
+        generate(null, out, offset, count);
+    }
+
+    // one loop for both overloads; exactly one of the destinations is given
+    private void generate(float[] floats, int[] ints, int offset, int count) {
+        float a = amplitude;
+        float dc = dcPart;
+        boolean fromTable = waveType == WAVE_PPG_TABLE;
+        float[] table = fromTable ? getPpgTable() : periodTable();
+        int index = tableIndex;
+        int p = phase;
+        int step = phaseIncrement;
+        for (int i = offset, end = offset + count; i < end; i++) {
+            float value;
+            if (fromTable) {
+                value = dc + a * table[index];
+                if (++index == table.length) {
+                    index = 0;
+                }
+            } else {
+                value = dc + a * table[p >>> TABLE_SHIFT];
+                p += step;
+            }
+            if (ints != null) {
+                ints[i] = Math.round(value);
+            } else {
+                floats[i] = value;
+            }
+        }
+        tableIndex = index;
+        phase = p;
+    }
+
+    private float[] periodTable() {
+        switch (waveType) {
+            case WAVE_SQUARE:
+                return SQUARE;
+            case WAVE_TRIANGLE:
+                return TRIANGLE;
+            case WAVE_PPG:
+                return PULSE;
+            default:
+                return SINE;
+        }
+    }
+
+    /**
+     * Starts the waveform over from its first sample.
+     */
+    public void reset() {
+        seek(0);
+    }
+
+    /**
+     * Moves to the given sample, as if the current settings had been used from the first one.
+     */
+    public void seek(long sampleIndex) {
+        // the phase wraps at 2^32, which the truncation to int does as well
+        phase = (int) (sampleIndex * phaseIncrement);
+        tableIndex = (int) (sampleIndex % PPG_TABLE_LENGTH);
+    }
+}
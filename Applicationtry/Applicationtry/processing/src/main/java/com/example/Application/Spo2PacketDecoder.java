@@ -0,0 +1,121 @@
+/**
+ * This class decodes the 5-byte frames sent by the SpO2 sensor without allocating on the
+ * Bluetooth thread. A notification can carry several frames; all of them are decoded into
+ * preallocated primitive arrays and pushed into the device's {@link SampleRingBuffer}, which
+ * the UI thread drains once per display frame.
+ */
+package com.example.Application;
+
+public class Spo2PacketDecoder implements FrameDecoder {
+    public static final int FRAME_LENGTH = 5;
+    public static final int PACKET_TOO_SHORT = -1;
+    public static final int PACKET_NOT_ALIGNED = -2;
+    private static final int DEFAULT_CAPACITY = 128;
+
+    private final int[] spo2, pulseRate, ppg;
+    private final int[] record = new int[SampleRingBuffer.DEVICE_LANES];
+    private final SampleClock clock = new SampleClock(0);
+
+    public Spo2PacketDecoder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for the Spo2PacketDecoder class.
+     *
+     * @param capacity Maximum number of frames decoded from a single notification.
+     */
+    public Spo2PacketDecoder(int capacity) {
+        spo2 = new int[capacity];
+        pulseRate = new int[capacity];
+        ppg = new int[capacity];
+    }
+
+    /**
+     * Decodes every frame of the packet into the given arrays starting at {@code offset}.
+     *
+     * @param packet    The raw notification value.
+     * @param spo2      Destination for the SpO2 values.
+     * @param pulseRate Destination for the pulse rate values.
+     * @param ppg       Destination for the PPG values.
+     * @param offset    First index to write to.
+     * @param capacity  Maximum number of frames to write.
+     * @return The number of decoded frames, or {@link #PACKET_TOO_SHORT} / {@link #PACKET_NOT_ALIGNED}.
+     */
+    public static int decodeFrames(byte[] packet, int[] spo2, int[] pulseRate, int[] ppg, int offset, int capacity) {
+        if (packet == null || packet.length < FRAME_LENGTH) {
+            return PACKET_TOO_SHORT;
+        }
+        if (packet.length % FRAME_LENGTH != 0) {
+            return PACKET_NOT_ALIGNED;
+        }
+
+        int frames = Math.min(packet.length / FRAME_LENGTH, capacity);
+        for (int f = 0, i = 0; f < frames; f++, i += FRAME_LENGTH) {
+            // bit 6 of byte 2 carries bit 7 of the pulse rate
+            spo2[offset + f] = packet[i + 4];
+            pulseRate[offset + f] = packet[i + 3] | ((packet[i + 2] & 64) << 1);
+            ppg[offset + f] = packet[i + 1];
+        }
+        return frames;
+    }
+
+    /**
+     * Decodes a notification and appends its frames to the ring buffer as
+     * (PPG, pulse rate, SpO2) records. Must only be called from the ring's producer thread.
+     *
+     * @param packet         The raw notification value.
+     * @param ring           The device's sample buffer.
+     * @param timestampNanos Arrival time of the notification, the timestamp of its newest sample.
+     * @return The number of decoded frames, or a negative error code for malformed packets.
+     */
+    @Override
+    public int decodeInto(byte[] packet, SampleRingBuffer ring, long timestampNanos) {
+        int frames = decodeFrames(packet, spo2, pulseRate, ppg, 0, ppg.length);
+        if (frames > 0) {
+            clock.stamp(timestampNanos, frames);
+        }
+        for (int i = 0; i < frames; i++) {
+            record[SampleRingBuffer.LANE_PPG] = ppg[i];
+            record[SampleRingBuffer.LANE_PULSE_RATE] = pulseRate[i];
+            record[SampleRingBuffer.LANE_SPO2] = spo2[i];
+            ring.offer(record, clock.timestampOf(i));
+        }
+        return frames;
+    }
+
+    /**
+     * Forgets the timestamp of the previous frame; the frames carry no sequence number.
+     */
+    @Override
+    public void reset() {
+        clock.reset();
+    }
+
+    /**
+     * Sets the rate the frames of one notification are spaced by, without it they all get the
+     * arrival time.
+     */
+    @Override
+    public void setNominalSampleRate(int sampleRateHz) {
+        clock.setSampleRate(sampleRateHz);
+    }
+
+    /**
+     * The frames do not announce a rate, the profile's nominal rate applies.
+     */
+    @Override
+    public int getSampleRateHz() {
+        return 0;
+    }
+
+    @Override
+    public int getLastGap() {
+        return 0;
+    }
+
+    @Override
+    public long getLostSampleCount() {
+        return 0;
+    }
+}
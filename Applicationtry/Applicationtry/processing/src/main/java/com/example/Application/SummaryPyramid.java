@@ -0,0 +1,427 @@
+/**
+ * This class keeps a multi-resolution summary of one channel next to its raw samples: the
+ * minimum, maximum, sum and count per bucket of 1 s, 10 s, 1 min and 10 min, and above that per
+ * bucket of 20 min, 40 min, ... up to about a week. It is updated sample by sample, so it is always
+ * current, and can be saved next to a recorded session.
+ * Buckets are aligned to the timestamp and only the ones with samples are stored, so gaps in a
+ * recording cost nothing. A range query such as "SpO2 minimum from 02:00 to 03:00" combines the
+ * coarsest buckets that lie inside the range and descends to finer levels only at its edges,
+ * touching a bounded number of buckets per level, each found by a binary search: O(log n) instead
+ * of a scan over the samples. The range is rounded to whole buckets of the finest level the query
+ * asks for; a bucket counts if it starts inside the range.
+ * All methods are synchronized, so one thread can add samples while others query.
+ */
+package com.example.Application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class SummaryPyramid {
+    public static final int LEVEL_1S = 0;
+    public static final int LEVEL_10S = 1;
+    public static final int LEVEL_1MIN = 2;
+    public static final int LEVEL_10MIN = 3;
+    // levels above 10 min double the bucket width, 2^10 * 10 min is about a week
+    public static final int LEVEL_COUNT = LEVEL_10MIN + 1 + 10;
+    public static final int FILE_MAGIC = 0x53554D31;   // "SUM1"
+    public static final int FORMAT_VERSION = 1;
+    private static final long[] LEVEL_NANOS;
+    private static final int INITIAL_BUCKETS = 64;
+
+    static {
+        long[] widths = new long[LEVEL_COUNT];
+        widths[LEVEL_1S] = TimeUnit.SECONDS.toNanos(1);
+        widths[LEVEL_10S] = TimeUnit.SECONDS.toNanos(10);
+        widths[LEVEL_1MIN] = TimeUnit.MINUTES.toNanos(1);
+        widths[LEVEL_10MIN] = TimeUnit.MINUTES.toNanos(10);
+        for (int level = LEVEL_10MIN + 1; level < widths.length; level++) {
+            widths[level] = 2 * widths[level - 1];
+        }
+        LEVEL_NANOS = widths;
+    }
+
+    /**
+     * The result of a range query.
+     */
+    public static final class Summary {
+        public int min;
+        public int max;
+        public long sum;
+        public long count;
+
+        public Summary() {
+            reset();
+        }
+
+        public void reset() {
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+            sum = 0;
+            count = 0;
+        }
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * The mean, or NaN if the range had no samples.
+         */
+        public double getMean() {
+            return count > 0 ? (double) sum / count : Double.NaN;
+        }
+
+        @Override
+        public String toString() {
+            return isEmpty() ? "no samples" : "min " + min + ", max " + max + ", mean " + getMean() + ", count " + count;
+        }
+    }
+
+    /**
+     * The buckets of one level that have samples, ordered by bucket index.
+     */
+    private static final class Level {
+        final long width;
+        long[] bucket = new long[INITIAL_BUCKETS];
+        int[] min = new int[INITIAL_BUCKETS];
+        int[] max = new int[INITIAL_BUCKETS];
+        long[] sum = new long[INITIAL_BUCKETS];
+        int[] count = new int[INITIAL_BUCKETS];
+        int size;
+
+        Level(long width) {
+            this.width = width;
+        }
+
+        void add(long timestampNanos, int value) {
+            long b = Math.floorDiv(timestampNanos, width);
+            // a sample older than the newest bucket is counted in the newest bucket
+            if (size == 0 || b > bucket[size - 1]) {
+                if (size == bucket.length) {
+                    grow();
+                }
+                bucket[size] = b;
+                min[size] = value;
+                max[size] = value;
+                sum[size] = value;
+                count[size] = 1;
+                size++;
+                return;
+            }
+            int last = size - 1;
+            if (value < min[last]) {
+                min[last] = value;
+            }
+            if (value > max[last]) {
+                max[last] = value;
+            }
+            sum[last] += value;
+            count[last]++;
+        }
+
+        private void grow() {
+            int capacity = bucket.length * 2;
+            bucket = Arrays.copyOf(bucket, capacity);
+            min = Arrays.copyOf(min, capacity);
+            max = Arrays.copyOf(max, capacity);
+            sum = Arrays.copyOf(sum, capacity);
+            count = Arrays.copyOf(count, capacity);
+        }
+
+        /**
+         * Index of the first stored bucket with an index of at least {@code b}.
+         */
+        int lowerBound(long b) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (bucket[mid] < b) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Adds the buckets with indices in [from, to) to the summary.
+         */
+        void fold(long from, long to, Summary out) {
+            for (int i = lowerBound(from); i < size && bucket[i] < to; i++) {
+                if (min[i] < out.min) {
+                    out.min = min[i];
+                }
+                if (max[i] > out.max) {
+                    out.max = max[i];
+                }
+                out.sum += sum[i];
+                out.count += count[i];
+            }
+        }
+    }
+
+    private final Level[] levels = new Level[LEVEL_NANOS.length];
+    private long sampleCount;
+
+    public SummaryPyramid() {
+        for (int level = 0; level < levels.length; level++) {
+            levels[level] = new Level(LEVEL_NANOS[level]);
+        }
+    }
+
+    /**
+     * Adds a sample to the bucket it falls into on every level.
+     */
+    public synchronized void add(long timestampNanos, int value) {
+        for (Level level : levels) {
+            level.add(timestampNanos, value);
+        }
+        sampleCount++;
+    }
+
+    /**
+     * Adds several samples, see {@link #add}.
+     */
+    public synchronized void addAll(long[] timestampsNanos, int[] values, int offset, int count) {
+        for (Level level : levels) {
+            for (int i = offset, end = offset + count; i < end; i++) {
+                level.add(timestampsNanos[i], values[i]);
+            }
+        }
+        sampleCount += count;
+    }
+
+    /**
+     * Width of the buckets of a level.
+     */
+    public static long getLevelNanos(int level) {
+        return LEVEL_NANOS[level];
+    }
+
+    /**
+     * The coarsest level whose buckets are not wider than the given resolution, at least the
+     * 1 s level.
+     */
+    public static int levelFor(long resolutionNanos) {
+        int level = 0;
+        while (level + 1 < LEVEL_NANOS.length && LEVEL_NANOS[level + 1] <= resolutionNanos) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Summarizes the samples in [fromNanos, toNanos), rounded to buckets of the coarsest level not
+     * wider than the resolution.
+     *
+     * @param fromNanos       Start of the range.
+     * @param toNanos         End of the range, exclusive.
+     * @param resolutionNanos How precisely the ends of the range have to be followed.
+     * @param out             Receives the result.
+     * @return False if the range has no samples.
+     */
+    public synchronized boolean summarize(long fromNanos, long toNanos, long resolutionNanos, Summary out) {
+        out.reset();
+        collect(levels.length - 1, levelFor(resolutionNanos), fromNanos, toNanos, out);
+        return !out.isEmpty();
+    }
+
+    private void collect(int level, int finest, long from, long to, Summary out) {
+        if (from >= to) {
+            return;
+        }
+        long width = LEVEL_NANOS[level];
+        // buckets that start inside the range
+        long first = ceilDiv(from, width);
+        if (level == finest) {
+            levels[level].fold(first, ceilDiv(to, width), out);
+            return;
+        }
+        // buckets that lie completely inside the range; the rest is left to the finer levels
+        long end = Math.floorDiv(to, width);
+        if (first >= end) {
+            collect(level - 1, finest, from, to, out);
+            return;
+        }
+        levels[level].fold(first, end, out);
+        collect(level - 1, finest, from, first * width, out);
+        collect(level - 1, finest, end * width, to, out);
+    }
+
+    private static long ceilDiv(long x, long y) {
+        long quotient = Math.floorDiv(x, y);
+        return Math.floorMod(x, y) == 0 ? quotient : quotient + 1;
+    }
+
+    /**
+     * Reduces [fromNanos, toNanos) to at most two points per bucket for a chart, from the
+     * coarsest level whose buckets are not wider than the range divided by {@code buckets}. Each
+     * stored bucket contributes its minimum and its maximum at the bucket's middle.
+     *
+     * @param fromNanos Start of the range.
+     * @param toNanos   End of the range, exclusive.
+     * @param buckets   Number of buckets, usually the width of the chart in pixels.
+     * @param outX      Receives the timestamps.
+     * @param outY      Receives the values.
+     * @return The number of points written, at most the length of the arrays.
+     */
+    public synchronized int decimateMinMax(long fromNanos, long toNanos, int buckets, double[] outX, double[] outY) {
+        if (fromNanos >= toNanos || buckets <= 0) {
+            return 0;
+        }
+        Level level = levels[levelFor((toNanos - fromNanos) / buckets)];
+        int max = Math.min(outX.length, outY.length) - 1;
+        int points = 0;
+        long end = ceilDiv(toNanos, level.width);
+        for (int i = level.lowerBound(Math.floorDiv(fromNanos, level.width)); i < level.size && level.bucket[i] < end
+                && points < max; i++) {
+            double middle = level.bucket[i] * (double) level.width + level.width / 2.0;
+            outX[points] = middle;
+            outY[points++] = level.min[i];
+            outX[points] = middle;
+            outY[points++] = level.max[i];
+        }
+        return points;
+    }
+
+    /**
+     * Start of the oldest 1 s bucket, or {@code Long.MAX_VALUE} if there are no samples.
+     */
+    public synchronized long getStartNanos() {
+        Level level = levels[LEVEL_1S];
+        return level.size > 0 ? level.bucket[0] * level.width : Long.MAX_VALUE;
+    }
+
+    /**
+     * End of the newest 1 s bucket, or {@code Long.MIN_VALUE} if there are no samples. That
+     * bucket may still get samples.
+     */
+    public synchronized long getEndNanos() {
+        Level level = levels[LEVEL_1S];
+        return level.size > 0 ? (level.bucket[level.size - 1] + 1) * level.width : Long.MIN_VALUE;
+    }
+
+    /**
+     * Number of samples added.
+     */
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Number of stored buckets of a level.
+     */
+    public synchronized int getBucketCount(int level) {
+        return levels[level].size;
+    }
+
+    /**
+     * Writes the pyramid; only the levels are stored, which are enough to answer every query.
+     */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(sampleCount);
+        out.writeInt(levels.length);
+        for (Level level : levels) {
+            out.writeLong(level.width);
+            out.writeInt(level.size);
+            for (int i = 0; i < level.size; i++) {
+                out.writeLong(level.bucket[i]);
+                out.writeInt(level.min[i]);
+                out.writeInt(level.max[i]);
+                out.writeLong(level.sum[i]);
+                out.writeInt(level.count[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads a pyramid written by {@link #writeTo}.
+     *
+     * @throws IOException if the levels do not match this version.
+     */
+    public static SummaryPyramid readFrom(DataInputStream in) throws IOException {
+        SummaryPyramid pyramid = new SummaryPyramid();
+        pyramid.sampleCount = in.readLong();
+        if (in.readInt() != pyramid.levels.length) {
+            throw new IOException("unexpected number of levels");
+        }
+        for (Level level : pyramid.levels) {
+            if (in.readLong() != level.width) {
+                throw new IOException("unexpected level width");
+            }
+            int size = in.readInt();
+            if (size < 0) {
+                throw new IOException("negative bucket count");
+            }
+            while (level.bucket.length < size) {
+                level.grow();
+            }
+            for (int i = 0; i < size; i++) {
+                level.bucket[i] = in.readLong();
+                level.min[i] = in.readInt();
+                level.max[i] = in.readInt();
+                level.sum[i] = in.readLong();
+                level.count[i] = in.readInt();
+            }
+            level.size = size;
+        }
+        return pyramid;
+    }
+
+    /**
+     * Saves the pyramids of all channels to a file; null entries are channels without samples.
+     * The file is written under a temporary name and renamed, so a crash leaves the old one.
+     */
+    public static void save(File file, SummaryPyramid[] pyramids) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(pyramids.length);
+            for (SummaryPyramid pyramid : pyramids) {
+                out.writeBoolean(pyramid != null);
+                if (pyramid != null) {
+                    pyramid.writeTo(out);
+                }
+            }
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("cannot rename " + temporary + " to " + file);
+        }
+    }
+
+    /**
+     * Loads the pyramids saved by {@link #save}.
+     *
+     * @throws IOException if the file cannot be read or is not a summary file.
+     */
+    public static SummaryPyramid[] load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("not a summary file");
+            }
+            int channels = in.readInt();
+            if (channels < 0 || channels > 256) {
+                throw new IOException("invalid channel count");
+            }
+            SummaryPyramid[] pyramids = new SummaryPyramid[channels];
+            for (int channel = 0; channel < channels; channel++) {
+                if (in.readBoolean()) {
+                    pyramids[channel] = readFrom(in);
+                }
+            }
+            return pyramids;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * This class replays the waveforms of the ESP32 mockup from a {@link SignalGenerator}, so the app
+ * can be developed without the board. The samples are endless, evenly spaced and delivered on the
+ * mockup's PPG channel.
+ * A source is described as {@code synthetic:<wave>[:<rate>]}, e.g. {@code synthetic:sine},
+ * {@code synthetic:ppg-table} or {@code synthetic:ppg:120}. The rate is the frequency in Hz for
+ * sine, square and triangle and the heart rate in bpm for the PPG pulse.
+ */
+package com.example.Application;
+
+import java.util.Locale;
+
+public class SyntheticReplaySource implements ReplaySource {
+    public static final String PREFIX = "synthetic:";
+    private static final String[] WAVE_NAMES = {"sine", "square", "triangle", "ppg-table", "ppg"};
+
+    private final SignalGenerator generator;
+    private final long periodNanos;
+    // index of the next sample
+    private long position;
+
+    /**
+     * Constructor for the SyntheticReplaySource class.
+     *
+     * @param generator The signal, its sample rate spaces the timestamps.
+     */
+    public SyntheticReplaySource(SignalGenerator generator) {
+        this.generator = generator;
+        this.periodNanos = Math.round(1e9 / generator.getSampleRate());
+    }
+
+    /**
+     * Creates a source from its description, at the sketch's sampling rate.
+     *
+     * @param spec {@code synthetic:<wave>[:<rate>]}, the wave being one of sine, square, triangle,
+     *             ppg-table and ppg.
+     * @throws IllegalArgumentException If the description is not understood.
+     */
+    public static SyntheticReplaySource parse(String spec) {
+        if (!spec.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("not a synthetic source: " + spec);
+        }
+        String[] parts = spec.substring(PREFIX.length()).toLowerCase(Locale.ROOT).split(":");
+        int waveType = -1;
+        for (int i = 0; i < WAVE_NAMES.length; i++) {
+            if (WAVE_NAMES[i].equals(parts[0])) {
+                waveType = i;
+            }
+        }
+        if (waveType < 0 || parts.length > 2) {
+            throw new IllegalArgumentException("unknown synthetic source: " + spec);
+        }
+        SignalGenerator generator = new SignalGenerator(waveType, SignalGenerator.DEFAULT_SAMPLING_RATE_HZ);
+        if (parts.length == 2) {
+            double rate;
+            try {
+                rate = Double.parseDouble(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("not a number: " + parts[1], e);
+            }
+            if (waveType == SignalGenerator.WAVE_PPG) {
+                generator.setHeartRate(rate);
+            } else {
+                generator.setFrequency(rate);
+            }
+        }
+        return new SyntheticReplaySource(generator);
+    }
+
+    public SignalGenerator getGenerator() {
+        return generator;
+    }
+
+    @Override
+    public int read(long[] timestampsNanos, int[] values, int max) {
+        generator.generate(values, 0, max);
+        for (int i = 0; i < max; i++, position++) {
+            timestampsNanos[i] = position * periodNanos;
+        }
+        return max;
+    }
+
+    @Override
+    public int getRunChannel() {
+        return DataReciever.CHANNEL_MOCK_PPG;
+    }
+
+    @Override
+    public void seek(long offsetNanos) {
+        position = (Math.max(0, offsetNanos) + periodNanos - 1) / periodNanos;
+        generator.seek(position);
+    }
+
+    @Override
+    public long getStartNanos() {
+        return 0;
+    }
+
+    @Override
+    public long getDurationNanos() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * This class replays a signal stored as one value per line, like the NeuroKit2 output in
+ * {@code pythonProject/ppg_values.txt}. The values are scaled the same way the ESP32 mockup scales
+ * its PPG table ({@code 10 + 45 * value}) and get evenly spaced timestamps. The signal can be
+ * looped for endless load tests.
+ */
+package com.example.Application;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+public class TextReplaySource implements ReplaySource {
+    public static final double MOCKUP_PPG_OFFSET = 10;
+    public static final double MOCKUP_PPG_SCALE = 45;
+
+    private final int channel;
+    private final int[] samples;
+    private final long periodNanos;
+    private final boolean loop;
+    // index of the next sample, counting across loops
+    private long position;
+
+    /**
+     * Constructor for the TextReplaySource class.
+     *
+     * @param in           The text, one number per line; it is read completely and closed.
+     * @param sampleRateHz The sample rate of the values.
+     * @param channel      The channel the values are delivered on.
+     * @param offset       Added to every scaled value.
+     * @param scale        Every value is multiplied by this.
+     * @param loop         Whether to start over at the end.
+     */
+    public TextReplaySource(Reader in, double sampleRateHz, int channel, double offset, double scale, boolean loop)
+            throws IOException {
+        this.channel = channel;
+        this.periodNanos = Math.round(1e9 / sampleRateHz);
+        this.loop = loop;
+
+        int[] values = new int[1024];
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(in)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (count == values.length) {
+                    int[] grown = new int[count * 2];
+                    System.arraycopy(values, 0, grown, 0, count);
+                    values = grown;
+                }
+                try {
+                    values[count++] = (int) Math.round(offset + scale * Double.parseDouble(line));
+                } catch (NumberFormatException e) {
+                    throw new IOException("not a number: " + line, e);
+                }
+            }
+        }
+        if (count == 0) {
+            throw new IOException("no samples");
+        }
+        samples = new int[count];
+        System.arraycopy(values, 0, samples, 0, count);
+    }
+
+    /**
+     * Replays the values like the ESP32 mockup sends its PPG table.
+     */
+    public static TextReplaySource mockupPpg(Reader in, double sampleRateHz, boolean loop) throws IOException {
+        return new TextReplaySource(in, sampleRateHz, DataReciever.CHANNEL_MOCK_PPG,
+                MOCKUP_PPG_OFFSET, MOCKUP_PPG_SCALE, loop);
+    }
+
+    @Override
+    public int read(long[] timestampsNanos, int[] values, int max) {
+        if (!loop && position >= samples.length) {
+            return -1;
+        }
+        int count = loop ? max : (int) Math.min(max, samples.length - position);
+        for (int i = 0; i < count; i++, position++) {
+            timestampsNanos[i] = position * periodNanos;
+            values[i] = samples[(int) (position % samples.length)];
+        }
+        return count;
+    }
+
+    @Override
+    public int getRunChannel() {
+        return channel;
+    }
+
+    @Override
+    public void seek(long offsetNanos) {
+        long target = (Math.max(0, offsetNanos) + periodNanos - 1) / periodNanos;
+        position = loop ? target : Math.min(target, samples.length);
+    }
+
+    @Override
+    public long getStartNanos() {
+        return 0;
+    }
+
+    @Override
+    public long getDurationNanos() {
+        return loop ? Long.MAX_VALUE : (samples.length - 1) * periodNanos;
+    }
+
+    /**
+     * Number of distinct values, i.e. the length of one loop.
+     */
+    public int getSampleCount() {
+        return samples.length;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * This class stands in for the GATT layer in load tests. It delivers the notifications of
+ * {@link VirtualSensor}s to a callback with the signature of
+ * {@code BluetoothGattCallback.onCharacteristicChanged}, on a fixed number of callback threads
+ * like the Bluetooth stack's binder threads: every sensor is served by one thread, which sends
+ * its notifications at their nominal times plus jitter and leaves out the lost ones.
+ */
+package com.example.Application;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class VirtualGatt {
+
+    /**
+     * Receives the notifications, like the devices' GATT callbacks.
+     */
+    public interface Callback {
+        /**
+         * Called on a callback thread for every notification that was not lost.
+         *
+         * @param device       Index of the sensor in the list given to the constructor.
+         * @param value        The notification value, a new array for every notification.
+         * @param arrivalNanos {@code System.nanoTime()} when the notification was delivered.
+         */
+        void onCharacteristicChanged(int device, byte[] value, long arrivalNanos);
+    }
+
+    private final List<VirtualSensor> sensors;
+    private final Callback callback;
+    private final Thread[] threads;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private volatile boolean stopped;
+
+    /**
+     * Constructor for the VirtualGatt class.
+     *
+     * @param sensors         The simulated sensors.
+     * @param callbackThreads Number of threads the notifications are delivered on.
+     * @param callback        Receives the notifications.
+     * @param seed            Seed of the jitter and loss, so runs can be repeated.
+     */
+    public VirtualGatt(List<VirtualSensor> sensors, int callbackThreads, Callback callback, long seed) {
+        this.sensors = sensors;
+        this.callback = callback;
+        this.threads = new Thread[Math.max(1, Math.min(callbackThreads, sensors.size()))];
+        for (int t = 0; t < threads.length; t++) {
+            int first = t;
+            Random random = new Random(seed + t);
+            threads[t] = new Thread(() -> deliverLoop(first, threads.length, random), "VirtualGatt-" + t);
+        }
+    }
+
+    public void start() {
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    public void stop() throws InterruptedException {
+        stopped = true;
+        for (Thread thread : threads) {
+            LockSupport.unpark(thread);
+            thread.join();
+        }
+    }
+
+    /**
+     * Serves the sensors first, first + stride, ... until stopped.
+     */
+    private void deliverLoop(int first, int stride, Random random) {
+        int count = (sensors.size() - first + stride - 1) / stride;
+        VirtualSensor[] own = new VirtualSensor[count];
+        int[] device = new int[count];
+        long[] nominal = new long[count];
+        long[] due = new long[count];
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            device[i] = first + i * stride;
+            own[i] = sensors.get(device[i]);
+            // spread the sensors over their first interval, they were not switched on together
+            nominal[i] = start + (long) (random.nextDouble() * own[i].getPacketIntervalNanos());
+            due[i] = nominal[i];
+        }
+
+        while (!stopped) {
+            int next = 0;
+            for (int i = 1; i < count; i++) {
+                if (due[i] < due[next]) {
+                    next = i;
+                }
+            }
+            long wait = due[next] - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+
+            VirtualSensor sensor = own[next];
+            byte[] value = sensor.nextPacket();
+            if (random.nextDouble() < sensor.getLossProbability()) {
+                lost.incrementAndGet();
+            } else {
+                sent.incrementAndGet();
+                callback.onCharacteristicChanged(device[next], value, System.nanoTime());
+            }
+            nominal[next] += sensor.getPacketIntervalNanos();
+            long jitter = sensor.getJitterNanos();
+            due[next] = jitter > 0 ? nominal[next] + (long) ((2 * random.nextDouble() - 1) * jitter) : nominal[next];
+        }
+    }
+
+    /**
+     * Number of notifications delivered to the callback.
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    /**
+     * Number of notifications lost on the simulated radio.
+     */
+    public long getLostCount() {
+        return lost.get();
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * This class simulates one Bluetooth sensor for load tests. It produces the notifications the
+ * real hardware sends, byte for byte:
+ * <ul>
+ * <li>the ESP32 mockup: packed frames ({@link MockFrameDecoder}) with as many samples as the
+ * MTU allows, up to the sketch's batch size,</li>
+ * <li>the SpO2 oximeter: 5-byte frames ({@link Spo2PacketDecoder}), as many as fit into the MTU,</li>
+ * <li>the alert button: a single 0x01 byte per press.</li>
+ * </ul>
+ * The waveform is the synthesized PPG pulse of {@link SignalGenerator} at a fixed heart rate.
+ * Notification timing (jitter) and radio loss are applied by {@link VirtualGatt}, which asks the
+ * sensor for its next packet.
+ */
+package com.example.Application;
+
+import java.util.concurrent.TimeUnit;
+
+public class VirtualSensor {
+    public static final int KIND_MOCK_ESP32 = 0;
+    public static final int KIND_SPO2 = 1;
+    public static final int KIND_ALERT = 2;
+    public static final int DEFAULT_MTU = 23;
+    // samples the ESP32 sketch collects at most before it sends a frame
+    public static final int ESP32_MAX_SAMPLES_PER_FRAME = 10;
+    private static final int HEART_RATE_BPM = 72;
+    private static final int SPO2_PERCENT = 97;
+
+    private final int kind;
+    private final double sampleRateHz;
+    private final int mtu;
+    private final int samplesPerPacket;
+    private final SignalGenerator ppg;
+    private final int[] ppgBlock;
+    private long jitterNanos;
+    private double lossProbability;
+    private long sampleIndex;
+    private int sequence;
+
+    /**
+     * Constructor for the VirtualSensor class.
+     *
+     * @param kind         One of the {@code KIND_} constants.
+     * @param sampleRateHz Samples per second, for the alert button presses per second.
+     * @param mtu          The negotiated ATT MTU, {@link #DEFAULT_MTU} without negotiation.
+     */
+    public VirtualSensor(int kind, double sampleRateHz, int mtu) {
+        if (!(sampleRateHz > 0)) {
+            throw new IllegalArgumentException("sample rate must be positive");
+        }
+        this.kind = kind;
+        this.sampleRateHz = sampleRateHz;
+        this.mtu = mtu;
+        int payload = mtu - MockFrameDecoder.ATT_HEADER_LENGTH;
+        switch (kind) {
+            case KIND_MOCK_ESP32:
+                samplesPerPacket = Math.max(1, Math.min(ESP32_MAX_SAMPLES_PER_FRAME, MockFrameDecoder.samplesPerFrame(mtu)));
+                break;
+            case KIND_SPO2:
+                samplesPerPacket = Math.max(1, payload / Spo2PacketDecoder.FRAME_LENGTH);
+                break;
+            case KIND_ALERT:
+                samplesPerPacket = 1;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown kind " + kind);
+        }
+        // the alert button has no waveform
+        ppg = kind != KIND_ALERT ? new SignalGenerator(SignalGenerator.WAVE_PPG, sampleRateHz) : null;
+        if (ppg != null) {
+            ppg.setHeartRate(HEART_RATE_BPM);
+        }
+        ppgBlock = new int[samplesPerPacket];
+    }
+
+    /**
+     * Sets the maximum deviation of a notification from its nominal send time.
+     */
+    public void setJitter(long jitterNanos) {
+        this.jitterNanos = Math.max(0, jitterNanos);
+    }
+
+    /**
+     * Sets the probability that a notification is lost on the radio.
+     */
+    public void setLossProbability(double lossProbability) {
+        this.lossProbability = Math.max(0, Math.min(1, lossProbability));
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public long getJitterNanos() {
+        return jitterNanos;
+    }
+
+    public double getLossProbability() {
+        return lossProbability;
+    }
+
+    public int getSamplesPerPacket() {
+        return samplesPerPacket;
+    }
+
+    /**
+     * Nominal time between two notifications.
+     */
+    public long getPacketIntervalNanos() {
+        return Math.round(samplesPerPacket * TimeUnit.SECONDS.toNanos(1) / sampleRateHz);
+    }
+
+    /**
+     * Produces the next notification value. Lost notifications are produced as well, so the
+     * sequence numbers show the gap on the receiving side.
+     */
+    public byte[] nextPacket() {
+        switch (kind) {
+            case KIND_MOCK_ESP32:
+                return nextMockFrame();
+            case KIND_SPO2:
+                return nextSpo2Packet();
+            default:
+                sampleIndex++;
+                return new byte[]{0x01};
+        }
+    }
+
+    private byte[] nextMockFrame() {
+        int rate = (int) Math.round(sampleRateHz);
+        byte[] frame = new byte[MockFrameDecoder.HEADER_LENGTH + samplesPerPacket];
+        frame[0] = MockFrameDecoder.FORMAT_VERSION;
+        frame[1] = (byte) sequence;
+        frame[2] = (byte) (sequence >>> 8);
+        frame[3] = (byte) rate;
+        frame[4] = (byte) (rate >>> 8);
+        frame[5] = (byte) samplesPerPacket;
+        frame[6] = (byte) HEART_RATE_BPM;
+        frame[7] = (byte) SPO2_PERCENT;
+        ppg.generate(ppgBlock, 0, samplesPerPacket);
+        for (int i = 0; i < samplesPerPacket; i++) {
+            frame[MockFrameDecoder.HEADER_LENGTH + i] = (byte) ppgBlock[i];
+        }
+        sampleIndex += samplesPerPacket;
+        sequence = (sequence + samplesPerPacket) & 0xFFFF;
+        return frame;
+    }
+
+    private byte[] nextSpo2Packet() {
+        byte[] packet = new byte[samplesPerPacket * Spo2PacketDecoder.FRAME_LENGTH];
+        ppg.generate(ppgBlock, 0, samplesPerPacket);
+        for (int f = 0; f < samplesPerPacket; f++) {
+            int i = f * Spo2PacketDecoder.FRAME_LENGTH;
+            // sync bit and signal strength
+            packet[i] = (byte) 0x86;
+            // the waveform is 7 bit
+            packet[i + 1] = (byte) Math.min(127, ppgBlock[f]);
+            // bit 6 carries bit 7 of the pulse rate
+            packet[i + 2] = (byte) ((HEART_RATE_BPM & 0x80) >> 1);
+            packet[i + 3] = (byte) (HEART_RATE_BPM & 0x7F);
+            packet[i + 4] = (byte) SPO2_PERCENT;
+        }
+        sampleIndex += samplesPerPacket;
+        return packet;
+    }
+
+    /**
+     * Number of samples produced so far, including the ones of lost notifications.
+     */
+    public long getSampleCount() {
+        return sampleIndex;
+    }
+}
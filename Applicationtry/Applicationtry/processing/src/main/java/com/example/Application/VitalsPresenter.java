@@ -0,0 +1,206 @@
+/**
+ * This class coalesces the vitals text updates. The devices store the latest values of their text
+ * fields every frame, which costs no more than an int write; {@link #onFrame(long)} then publishes
+ * them to the views at most every update interval, and only the fields whose values or warnings
+ * changed. The text is formatted into a reusable char buffer, so publishing does not build strings.
+ * Must only be used on the UI thread.
+ */
+package com.example.Application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class VitalsPresenter {
+    public static final long DEFAULT_UPDATE_INTERVAL_MS = 100;
+    // digits of Integer.MIN_VALUE including the sign
+    private static final int MAX_INT_CHARS = 11;
+
+    /**
+     * Where a field's text goes, e.g. {@code textView::setText}.
+     */
+    public interface TextTarget {
+        void setText(char[] text, int start, int length);
+    }
+
+    /**
+     * A text made of fixed parts with int values in between and an optional warning line.
+     */
+    public static final class Field {
+        private final TextTarget target;
+        private final String[] parts;
+        private final int[] values;
+        private final int[] shownValues;
+        private String warning;
+        private String shownWarning;
+        private boolean hasValues;
+        private boolean shown;
+        private char[] buffer;
+
+        private Field(TextTarget target, String[] parts) {
+            this.target = target;
+            this.parts = parts;
+            this.values = new int[parts.length - 1];
+            this.shownValues = new int[values.length];
+            int length = values.length * MAX_INT_CHARS;
+            for (String part : parts) {
+                length += part.length();
+            }
+            buffer = new char[length];
+        }
+
+        /**
+         * Stores the latest value; it is shown with the next published frame.
+         *
+         * @param index Which of the values, 0 for the one after the first part.
+         */
+        public void set(int index, int value) {
+            values[index] = value;
+            hasValues = true;
+        }
+
+        /**
+         * Shows a warning line below the values, or none for null.
+         */
+        public void setWarning(String warning) {
+            this.warning = warning;
+        }
+
+        private boolean changed() {
+            if (!hasValues) {
+                return false;
+            }
+            if (!shown || (warning == null ? shownWarning != null : !warning.equals(shownWarning))) {
+                return true;
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != shownValues[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void publish() {
+            int length = 0;
+            for (int i = 0; i < values.length; i++) {
+                length = append(parts[i], length);
+                length = appendInt(values[i], length);
+                shownValues[i] = values[i];
+            }
+            length = append(parts[values.length], length);
+            if (warning != null) {
+                length = append("\n", length);
+                length = append(warning, length);
+            }
+            shownWarning = warning;
+            shown = true;
+            target.setText(buffer, 0, length);
+        }
+
+        private int append(String text, int position) {
+            ensureCapacity(position + text.length());
+            text.getChars(0, text.length(), buffer, position);
+            return position + text.length();
+        }
+
+        private int appendInt(int value, int position) {
+            ensureCapacity(position + MAX_INT_CHARS);
+            if (value == Integer.MIN_VALUE) {
+                return append(Integer.toString(value), position);
+            }
+            if (value < 0) {
+                buffer[position++] = '-';
+                value = -value;
+            }
+            int digits = 1;
+            for (int rest = value / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            for (int i = position + digits - 1; i >= position; i--) {
+                buffer[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+            return position + digits;
+        }
+
+        private void ensureCapacity(int length) {
+            if (length > buffer.length) {
+                char[] grown = new char[Math.max(length, 2 * buffer.length)];
+                System.arraycopy(buffer, 0, grown, 0, buffer.length);
+                buffer = grown;
+            }
+        }
+    }
+
+    private final List<Field> fields = new ArrayList<>();
+    private long updateIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_UPDATE_INTERVAL_MS);
+    private long lastPublishNanos;
+    private boolean published;
+    private long textUpdates;
+
+    /**
+     * Adds a text field.
+     *
+     * @param target The view the text is shown in.
+     * @param parts  The fixed text around the values: {@code parts[0]}, value 0, {@code parts[1]},
+     *               value 1, ... {@code parts[n]}; n+1 parts for n values.
+     * @return The field the device stores its values in.
+     */
+    public Field addField(TextTarget target, String... parts) {
+        if (parts.length == 0) {
+            throw new IllegalArgumentException("a field needs at least one part");
+        }
+        Field field = new Field(target, parts.clone());
+        fields.add(field);
+        return field;
+    }
+
+    /**
+     * Sets how often the views are updated at most.
+     */
+    public void setUpdateInterval(long intervalMs) {
+        if (intervalMs < 0) {
+            throw new IllegalArgumentException("interval must not be negative");
+        }
+        updateIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+    }
+
+    /**
+     * Publishes the changed fields if the update interval has passed. Called once per display frame.
+     *
+     * @param frameTimeNanos The frame time from the Choreographer.
+     */
+    public void onFrame(long frameTimeNanos) {
+        if (published && frameTimeNanos - lastPublishNanos < updateIntervalNanos) {
+            return;
+        }
+        published = true;
+        lastPublishNanos = frameTimeNanos;
+        for (int i = 0, n = fields.size(); i < n; i++) {
+            Field field = fields.get(i);
+            if (field.changed()) {
+                field.publish();
+                textUpdates++;
+            }
+        }
+    }
+
+    /**
+     * Publishes every field that has values with the next frame, e.g. when the views were
+     * recreated and show none of the texts.
+     */
+    public void invalidate() {
+        for (int i = 0, n = fields.size(); i < n; i++) {
+            fields.get(i).shown = false;
+        }
+        published = false;
+    }
+
+    /**
+     * Number of times a view's text was set.
+     */
+    public long getTextUpdateCount() {
+        return textUpdates;
+    }
+}
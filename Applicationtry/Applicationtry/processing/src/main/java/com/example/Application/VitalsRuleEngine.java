@@ -0,0 +1,376 @@
+/**
+ * This class checks the vitals against configurable rules on a worker thread, so the UI thread
+ * only hands samples over and is told when a rule changes its state. Samples are passed through
+ * a {@link SampleRingBuffer}; every rule looks at the mean of its channel over a sliding window
+ * and, once it is outside the rule's range for the minimum duration, becomes active. It only
+ * clears again when the mean is back inside the range by the hysteresis margin for the same
+ * duration, so a value close to a limit does not make the warning flicker.
+ * The work per sample is constant (running sums) and only the rules of its channel are looked at.
+ * Windows of {@link #SUMMARY_WINDOW_NANOS} and longer do not fit the raw sample window; their
+ * mean is read from a {@link SummaryPyramid} of the channel instead, at the coarsest level that
+ * follows the window to a tenth of its length.
+ * The engine either has its own thread or runs as a task of a {@link WorkerPool}, e.g. one engine
+ * per device on the pool its pipeline runs on.
+ */
+package com.example.Application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class VitalsRuleEngine {
+    public static final int SEVERITY_INFO = 0;
+    public static final int SEVERITY_WARNING = 1;
+    public static final int SEVERITY_CRITICAL = 2;
+    private static final int RING_CAPACITY = 4096;
+    // samples a window keeps at most; older ones are evicted early at very high rates
+    private static final int WINDOW_CAPACITY = 1024;
+    // windows this long are averaged from the summary pyramid of the channel
+    public static final long SUMMARY_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int LANE_CHANNEL = 0;
+    private static final int LANE_VALUE = 1;
+    private static final int LANES = 2;
+    // longest sleep before the worker looks for samples and stop requests again
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /**
+     * Receives the state changes of the rules.
+     */
+    public interface Listener {
+        /**
+         * Called on the callback executor when a rule becomes active or clears.
+         *
+         * @param rule           The rule.
+         * @param active         True if the rule became active.
+         * @param timestampNanos Timestamp of the sample that completed the transition.
+         * @param value          The windowed mean at that sample.
+         */
+        void onRuleChanged(Rule rule, boolean active, long timestampNanos, double value);
+    }
+
+    /**
+     * A range check on one channel.
+     */
+    public static final class Rule {
+        public final String name;
+        public final int channel;
+        public final int severity;
+        public final double low;
+        public final double high;
+        public final double hysteresis;
+        public final long minDurationNanos;
+        public final long windowNanos;
+
+        /**
+         * Constructor for the Rule class.
+         *
+         * @param name             Name shown to the user.
+         * @param channel          The channel that is checked, e.g. a {@code DataReciever} channel.
+         * @param severity         One of the {@code SEVERITY_} constants.
+         * @param low              Lowest value in range, {@code Double.NEGATIVE_INFINITY} for none.
+         * @param high             Highest value in range, {@code Double.POSITIVE_INFINITY} for none.
+         * @param hysteresis       How far inside the range the value has to be to clear the rule.
+         * @param minDurationNanos How long the value has to stay outside (or back inside) before
+         *                         the state changes, 0 for immediately.
+         * @param windowNanos      Length of the window the value is averaged over, 0 for the last sample.
+         */
+        public Rule(String name, int channel, int severity, double low, double high, double hysteresis,
+                    long minDurationNanos, long windowNanos) {
+            if (!(low <= high) || hysteresis < 0 || minDurationNanos < 0 || windowNanos < 0) {
+                throw new IllegalArgumentException("invalid rule " + name);
+            }
+            this.name = name;
+            this.channel = channel;
+            this.severity = severity;
+            this.low = low;
+            this.high = high;
+            this.hysteresis = hysteresis;
+            this.minDurationNanos = minDurationNanos;
+            this.windowNanos = windowNanos;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Window and state of one rule, only touched by the worker thread.
+     */
+    private static final class RuleState {
+        final Rule rule;
+        final long[] timestamps;
+        final int[] values;
+        // set for long windows, shared by the rules of the channel
+        final SummaryPyramid summary;
+        final SummaryPyramid.Summary window = new SummaryPyramid.Summary();
+        int head;
+        int size;
+        long sum;
+        boolean active;
+        boolean pending;
+        long pendingSinceNanos;
+
+        RuleState(Rule rule, SummaryPyramid summary) {
+            this.rule = rule;
+            this.summary = summary;
+            int capacity = summary == null ? WINDOW_CAPACITY : 0;
+            this.timestamps = new long[capacity];
+            this.values = new int[capacity];
+        }
+
+        double add(long timestampNanos, int value) {
+            if (summary != null) {
+                // the sample was added to the pyramid already
+                summary.summarize(timestampNanos - rule.windowNanos, timestampNanos + 1, rule.windowNanos / 10, window);
+                return window.getMean();
+            }
+            if (size == WINDOW_CAPACITY) {
+                evictOldest();
+            }
+            int tail = (head + size) % WINDOW_CAPACITY;
+            timestamps[tail] = timestampNanos;
+            values[tail] = value;
+            sum += value;
+            size++;
+            while (size > 1 && timestampNanos - timestamps[head] > rule.windowNanos) {
+                evictOldest();
+            }
+            return (double) sum / size;
+        }
+
+        private void evictOldest() {
+            sum -= values[head];
+            head = (head + 1) % WINDOW_CAPACITY;
+            size--;
+        }
+
+        /**
+         * Returns true if the sample completed a transition.
+         */
+        boolean evaluate(long timestampNanos, double mean) {
+            boolean changing = active
+                    ? mean >= rule.low + rule.hysteresis && mean <= rule.high - rule.hysteresis
+                    : mean < rule.low || mean > rule.high;
+            if (!changing) {
+                pending = false;
+                return false;
+            }
+            if (!pending) {
+                pending = true;
+                pendingSinceNanos = timestampNanos;
+            }
+            if (timestampNanos - pendingSinceNanos < rule.minDurationNanos) {
+                return false;
+            }
+            pending = false;
+            active = !active;
+            return true;
+        }
+    }
+
+    private final Executor callbackExecutor;
+    private final Listener listener;
+    // one list per channel
+    private final List<List<RuleState>> rulesByChannel;
+    // only for channels with a long window, they grow by about 30 bytes per second of samples
+    private final SummaryPyramid[] summaries;
+    private final SampleRingBuffer samples = new SampleRingBuffer(RING_CAPACITY, LANES);
+    private final int[] record = new int[LANES];
+    // one of them is set: the engine's own thread, or its task on a shared pool
+    private final Thread worker;
+    private final WorkerPool.Task task;
+    // only touched by the thread evaluating the rules
+    private final int[] drainBuffer = new int[samples.capacity() * LANES];
+    private final long[] drainTimestamps = new long[samples.capacity()];
+    private final AtomicLong evaluatedSamples = new AtomicLong();
+    private final AtomicLong transitions = new AtomicLong();
+    private volatile boolean started;
+    private volatile boolean stopped;
+
+    /**
+     * Constructor for the VitalsRuleEngine class.
+     *
+     * @param channels         Number of channels, e.g. {@code DataReciever.CHANNEL_COUNT}.
+     * @param callbackExecutor Runs the listener calls, e.g. {@code activity::runOnUiThread}.
+     * @param listener         Receives the state changes.
+     */
+    public VitalsRuleEngine(int channels, Executor callbackExecutor, Listener listener) {
+        this(channels, null, callbackExecutor, listener);
+    }
+
+    /**
+     * Constructor for the VitalsRuleEngine class, evaluating on a shared pool instead of its own
+     * thread.
+     *
+     * @param channels         Number of channels.
+     * @param pool             The pool the rules are evaluated on, null for an own thread.
+     * @param callbackExecutor Runs the listener calls.
+     * @param listener         Receives the state changes.
+     */
+    public VitalsRuleEngine(int channels, WorkerPool pool, Executor callbackExecutor, Listener listener) {
+        this.callbackExecutor = callbackExecutor;
+        this.listener = listener;
+        this.rulesByChannel = new ArrayList<>(channels);
+        this.summaries = new SummaryPyramid[channels];
+        for (int i = 0; i < channels; i++) {
+            rulesByChannel.add(new ArrayList<RuleState>());
+        }
+        if (pool != null) {
+            worker = null;
+            task = pool.newTask(() -> {
+                if (started && !stopped) {
+                    evaluateAll();
+                }
+            });
+        } else {
+            worker = new Thread(this::evaluateLoop, "VitalsRuleEngine");
+            task = null;
+        }
+    }
+
+    /**
+     * Adds a rule. Rules can only be added before {@link #start()}.
+     */
+    public void addRule(Rule rule) {
+        if (started) {
+            throw new IllegalStateException("rules must be added before start");
+        }
+        SummaryPyramid summary = null;
+        if (rule.windowNanos >= SUMMARY_WINDOW_NANOS) {
+            if (summaries[rule.channel] == null) {
+                summaries[rule.channel] = new SummaryPyramid();
+            }
+            summary = summaries[rule.channel];
+        }
+        rulesByChannel.get(rule.channel).add(new RuleState(rule, summary));
+    }
+
+    /**
+     * Starts the worker thread, or evaluates on the pool from now on.
+     */
+    public void start() {
+        started = true;
+        if (worker != null) {
+            worker.start();
+        } else {
+            task.schedule();
+        }
+    }
+
+    /**
+     * Stops evaluating, and the worker thread if there is one. Samples that were not evaluated yet
+     * are discarded.
+     */
+    public void stop() throws InterruptedException {
+        stopped = true;
+        if (worker == null) {
+            return;
+        }
+        LockSupport.unpark(worker);
+        if (worker.isAlive()) {
+            worker.join();
+        }
+    }
+
+    private void wake() {
+        if (worker != null) {
+            LockSupport.unpark(worker);
+        } else {
+            task.schedule();
+        }
+    }
+
+    /**
+     * Hands a sample to the worker. Must only be called from one thread, e.g. the UI thread.
+     * Channels without rules are skipped right away.
+     */
+    public void submit(int channel, long timestampNanos, int value) {
+        if (rulesByChannel.get(channel).isEmpty()) {
+            return;
+        }
+        record[LANE_CHANNEL] = channel;
+        record[LANE_VALUE] = value;
+        samples.offer(record, timestampNanos);
+        wake();
+    }
+
+    /**
+     * Hands several samples of one channel to the worker, see {@code DataReciever.onSamples}.
+     */
+    public void submit(int channel, long[] timestampsNanos, int[] values, int offset, int count) {
+        if (rulesByChannel.get(channel).isEmpty()) {
+            return;
+        }
+        record[LANE_CHANNEL] = channel;
+        for (int i = offset; i < offset + count; i++) {
+            record[LANE_VALUE] = values[i];
+            samples.offer(record, timestampsNanos[i]);
+        }
+        wake();
+    }
+
+    private void evaluateLoop() {
+        while (!stopped) {
+            if (evaluateAll() == 0) {
+                LockSupport.parkNanos(MAX_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Evaluates the samples handed over so far and returns their number.
+     */
+    private int evaluateAll() {
+        int count = samples.drain(drainBuffer, drainTimestamps, samples.capacity());
+        for (int i = 0; i < count; i++) {
+            evaluate(drainBuffer[i * LANES + LANE_CHANNEL], drainTimestamps[i], drainBuffer[i * LANES + LANE_VALUE]);
+        }
+        if (count > 0) {
+            evaluatedSamples.addAndGet(count);
+        }
+        return count;
+    }
+
+    private void evaluate(int channel, long timestampNanos, int value) {
+        List<RuleState> rules = rulesByChannel.get(channel);
+        if (summaries[channel] != null) {
+            summaries[channel].add(timestampNanos, value);
+        }
+        for (int r = 0, n = rules.size(); r < n; r++) {
+            RuleState state = rules.get(r);
+            double mean = state.add(timestampNanos, value);
+            if (state.evaluate(timestampNanos, mean)) {
+                transitions.incrementAndGet();
+                Rule rule = state.rule;
+                boolean active = state.active;
+                callbackExecutor.execute(() -> listener.onRuleChanged(rule, active, timestampNanos, mean));
+            }
+        }
+    }
+
+    /**
+     * Number of samples the rules were evaluated for.
+     */
+    public long getEvaluatedSampleCount() {
+        return evaluatedSamples.get();
+    }
+
+    /**
+     * Number of state changes reported so far.
+     */
+    public long getTransitionCount() {
+        return transitions.get();
+    }
+
+    /**
+     * Number of samples dropped because the worker fell behind.
+     */
+    public long getDroppedSampleCount() {
+        return samples.getDroppedCount();
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * This class is the pool of worker threads shared by the pipelines of all devices. It runs
+ * {@link Task}s, each the work of one pipeline, e.g. decoding the notifications of one device. A
+ * task is queued at most once however often it is scheduled and never runs on two threads at once,
+ * so the work of one device stays in order without locks while different devices run in parallel.
+ * The number of threads is fixed and the queue holds at most one entry per task, so neither grows
+ * with the load; a device that sends more than its share only makes its own inbox fill up.
+ */
+package com.example.Application;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class WorkerPool {
+    private static final int IDLE = 0;
+    private static final int QUEUED = 1;
+    private static final int RUNNING = 2;
+    // scheduled again while running, it is queued once more when it finishes
+    private static final int RUNNING_SCHEDULED = 3;
+
+    private final ThreadPoolExecutor executor;
+    private final int maxTasks;
+    private final AtomicInteger tasks = new AtomicInteger();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong runs = new AtomicLong();
+
+    /**
+     * A unit of work that is run on the pool whenever it was scheduled, e.g. after a notification
+     * was put into a device's inbox. The work has to take everything that is there when it runs.
+     */
+    public final class Task {
+        private final Runnable work;
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+        private final Runnable runner = this::runOnce;
+
+        private Task(Runnable work) {
+            this.work = work;
+        }
+
+        /**
+         * Makes sure the work runs after this call. Can be called from any thread.
+         */
+        public void schedule() {
+            while (true) {
+                int current = state.get();
+                if (current == IDLE) {
+                    if (state.compareAndSet(IDLE, QUEUED)) {
+                        execute();
+                        return;
+                    }
+                } else if (current == RUNNING) {
+                    if (state.compareAndSet(RUNNING, RUNNING_SCHEDULED)) {
+                        return;
+                    }
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void execute() {
+            try {
+                executor.execute(runner);
+            } catch (RejectedExecutionException e) {
+                // the pool was shut down
+                state.set(IDLE);
+            }
+        }
+
+        private void runOnce() {
+            state.set(RUNNING);
+            long start = System.nanoTime();
+            try {
+                work.run();
+            } finally {
+                busyNanos.addAndGet(System.nanoTime() - start);
+                runs.incrementAndGet();
+                // scheduled while running: queued behind the other tasks instead of running again
+                if (!state.compareAndSet(RUNNING, IDLE)) {
+                    state.set(QUEUED);
+                    execute();
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructor for the WorkerPool class.
+     *
+     * @param name     The name of the threads.
+     * @param threads  Number of threads, e.g. {@link #defaultThreads()}.
+     * @param maxTasks Number of tasks that can be created, which bounds the queue.
+     */
+    public WorkerPool(String name, int threads, int maxTasks) {
+        if (threads <= 0 || maxTasks <= 0) {
+            throw new IllegalArgumentException("threads and tasks must be positive");
+        }
+        this.maxTasks = maxTasks;
+        AtomicInteger created = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxTasks), runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + created.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * One thread per core, leaving one core for the UI and the Bluetooth stack, at most 4.
+     */
+    public static int defaultThreads() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Creates a task that runs the given work on the pool.
+     *
+     * @throws IllegalStateException if the pool already has {@code maxTasks} tasks.
+     */
+    public Task newTask(Runnable work) {
+        if (tasks.incrementAndGet() > maxTasks) {
+            tasks.decrementAndGet();
+            throw new IllegalStateException("more than " + maxTasks + " tasks");
+        }
+        return new Task(work);
+    }
+
+    /**
+     * Stops the threads once the queued tasks have run; later schedules are ignored.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public int getThreadCount() {
+        return executor.getCorePoolSize();
+    }
+
+    /**
+     * Total time the threads spent running tasks, about the CPU time of the pipelines.
+     */
+    public long getBusyNanos() {
+        return busyNanos.get();
+    }
+
+    /**
+     * Number of times a task was run.
+     */
+    public long getRunCount() {
+        return runs.get();
+    }
+}
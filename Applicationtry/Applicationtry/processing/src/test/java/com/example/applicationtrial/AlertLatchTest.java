@@ -0,0 +1,58 @@
+package com.example.applicationtrial;
+
+import com.example.Application.AlertLatch;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link AlertLatch}: a press raises the alert and only an acknowledgement
+ * clears it, bounces and other values change nothing, and an empty notification is reported
+ * instead of read.
+ */
+public class AlertLatchTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final byte[] PRESS = {AlertLatch.PRESS};
+
+    @Test
+    public void onPacket_raisesUntilAcknowledged() {
+        AlertLatch latch = new AlertLatch(AlertLatch.DEFAULT_DEBOUNCE_NANOS);
+        assertFalse(latch.isRaised());
+        assertEquals(AlertLatch.IGNORED, latch.acknowledge());
+        assertEquals(AlertLatch.RAISED, latch.onPacket(PRESS, 1000 * MS));
+        assertTrue(latch.isRaised());
+        // a second press, or the same one delivered twice, does not clear it
+        assertEquals(AlertLatch.IGNORED, latch.onPacket(PRESS, 2000 * MS));
+        assertTrue(latch.isRaised());
+        assertEquals(AlertLatch.CLEARED, latch.acknowledge());
+        assertFalse(latch.isRaised());
+        assertEquals(AlertLatch.IGNORED, latch.acknowledge());
+        assertEquals(AlertLatch.RAISED, latch.onPacket(PRESS, 3000 * MS));
+    }
+
+    @Test
+    public void onPacket_ignoresBouncesAndOtherValues() {
+        AlertLatch latch = new AlertLatch(250 * MS);
+        assertEquals(AlertLatch.RAISED, latch.onPacket(PRESS, 1000 * MS));
+        assertEquals(AlertLatch.CLEARED, latch.acknowledge());
+        // a bounce right after the acknowledgement would raise the alert again if it counted
+        assertEquals(AlertLatch.IGNORED, latch.onPacket(PRESS, 1005 * MS));
+        assertEquals(AlertLatch.IGNORED, latch.onPacket(PRESS, 1249 * MS));
+        assertEquals(AlertLatch.IGNORED, latch.onPacket(new byte[]{0x00}, 1400 * MS));
+        assertFalse(latch.isRaised());
+        assertEquals(2, latch.getBounceCount());
+        // measured from the accepted press, not the bounces
+        assertEquals(AlertLatch.RAISED, latch.onPacket(PRESS, 1500 * MS));
+    }
+
+    @Test
+    public void onPacket_reportsEmptyValues() {
+        AlertLatch latch = new AlertLatch(AlertLatch.DEFAULT_DEBOUNCE_NANOS);
+        assertEquals(AlertLatch.MALFORMED, latch.onPacket(new byte[0], 0));
+        assertEquals(AlertLatch.MALFORMED, latch.onPacket(null, 0));
+        assertFalse(latch.isRaised());
+    }
+}
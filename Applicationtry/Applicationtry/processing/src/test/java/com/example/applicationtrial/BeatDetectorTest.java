@@ -0,0 +1,155 @@
+package com.example.applicationtrial;
+
+import com.example.Application.BeatDetector;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link BeatDetector} with the synthetic PPG signals of the project as
+ * fixtures with a known heart rate.
+ */
+public class BeatDetectorTest {
+    // relative to the module directory, the working directory of the unit tests
+    private static final File PPG_VALUES = new File("../../../pythonProject/ppg_values.txt");
+    private static final File PPG_TABLE = new File("../../../ESP32_signal19a/PPG_Values.h");
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /** NeuroKit2 output, simulated with heart_rate=120 at 100 Hz. */
+    private static double[] ppgValues() throws IOException {
+        List<String> lines = Files.readAllLines(PPG_VALUES.toPath());
+        double[] values = new double[lines.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Double.parseDouble(lines.get(i).trim());
+        }
+        return values;
+    }
+
+    /** The table the ESP32 mockup sends at 50 Hz; one beat every 30 samples, i.e. 100 bpm. */
+    private static double[] ppgTable() throws IOException {
+        String source = new String(Files.readAllBytes(PPG_TABLE.toPath()), StandardCharsets.US_ASCII);
+        Matcher matcher = Pattern.compile("-?\\d+\\.\\d+").matcher(source.substring(source.indexOf('{')));
+        List<Double> values = new ArrayList<>();
+        while (matcher.find()) {
+            values.add(Double.parseDouble(matcher.group()));
+        }
+        double[] table = new double[values.size()];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = values.get(i);
+        }
+        return table;
+    }
+
+    /** Runs the signal through the detector like the devices do, scaled like the mockup. */
+    private static double[] heartRates(double[] signal, double sampleRate, int repeats) {
+        BeatDetector detector = new BeatDetector(sampleRate);
+        int count = signal.length * repeats;
+        long[] timestamps = new long[count];
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = (long) (i * NANOS_PER_SECOND / sampleRate);
+            values[i] = (int) Math.round(10 + 45 * signal[i % signal.length]);
+        }
+        long[] beatTimestamps = new long[count];
+        int[] rates = new int[count];
+        int[] intervals = new int[count];
+        int beats = detector.processAll(timestamps, values, count, beatTimestamps, rates, intervals);
+
+        double[] result = new double[beats];
+        for (int i = 0; i < beats; i++) {
+            result[i] = rates[i];
+            assertEquals(60_000.0 / intervals[i], rates[i], 1);
+        }
+        return result;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static void assertAllWithin(double[] rates, double expected, double tolerance) {
+        for (double rate : rates) {
+            assertEquals(expected, rate, expected * tolerance);
+        }
+    }
+
+    @Test
+    public void neuroKitSignal_120bpm() throws IOException {
+        // 10 s of signal, the first 2 s are the warm-up
+        double[] rates = heartRates(ppgValues(), 100, 1);
+
+        System.out.println("ppg_values.txt: " + rates.length + " beats, median " + median(rates) + " bpm");
+        assertTrue(rates.length >= 13);
+        assertEquals(120, median(rates), 12);
+        // no dicrotic wave counted as a beat, which would double the rate
+        assertAllWithin(rates, 120, 0.25);
+    }
+
+    @Test
+    public void mockupTable_100bpmAt50Hz() throws IOException {
+        double[] rates = heartRates(ppgTable(), 50, 3);
+
+        System.out.println("PPG_Values.h at 50 Hz: " + rates.length + " beats, median " + median(rates) + " bpm");
+        // 60 s of signal
+        assertEquals(100, rates.length, 5);
+        assertEquals(100, median(rates), 5);
+        assertAllWithin(rates, 100, 0.25);
+    }
+
+    @Test
+    public void mockupSine_rateFollowsFrequency() {
+        // the sine of the mockup at 1.2 Hz and 1.8 Hz
+        for (double frequency : new double[]{1.2, 1.8}) {
+            double[] sine = new double[50 * 30];
+            for (int i = 0; i < sine.length; i++) {
+                sine[i] = (30 * Math.sin(2 * Math.PI * frequency * i / 50.0) + 50 - 10) / 45;
+            }
+            double[] rates = heartRates(sine, 50, 1);
+
+            assertAllWithin(rates, frequency * 60, 0.05);
+        }
+    }
+
+    @Test
+    public void flatSignal_hasNoBeats() {
+        double[] flat = new double[2000];
+        Arrays.fill(flat, 1.0);
+
+        assertEquals(0, heartRates(flat, 100, 1).length);
+    }
+
+    @Test
+    public void process_doesNotAllocate() throws IOException {
+        double[] signal = ppgValues();
+        BeatDetector detector = new BeatDetector(100);
+        long beats = 0;
+        // warm up the JIT
+        for (int i = 0; i < 200_000; i++) {
+            beats += detector.process(i * 10_000_000L, signal[i % signal.length]) ? 1 : 0;
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 200_000; i++) {
+            beats += detector.process(i * 10_000_000L, signal[i % signal.length]) ? 1 : 0;
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        assertTrue(beats > 0);
+        assertEquals(0, allocated);
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.applicationtrial;
+
+import com.example.Application.DecimationCache;
+import com.example.Application.SampleStore;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link DecimationCache}: the points are bounded by the pixels, the buckets
+ * are reduced once per zoom level, and the incremental result equals reducing everything at once.
+ */
+public class DecimationCacheTest {
+    private static final int WIDTH = 1080;
+    private static final long PERIOD_NANOS = 10_000_000;   // 100 Hz
+
+    private final double[] pointX = new double[2 * WIDTH + 8];
+    private final double[] pointY = new double[2 * WIDTH + 8];
+
+    /** Appends a sample at the time of its index. */
+    private static void append(SampleStore store, double value) {
+        store.append(store.getEndIndex() * PERIOD_NANOS, value);
+    }
+
+    private static SampleStore randomStore(int capacity, int count, long seed) {
+        SampleStore store = new SampleStore(capacity);
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            append(store, random.nextInt(1000));
+        }
+        return store;
+    }
+
+    @Test
+    public void levelFor_smallestPowerOfTwoAtLeastOnePixel() {
+        assertEquals(0, DecimationCache.levelFor(0.5));
+        assertEquals(0, DecimationCache.levelFor(1));
+        assertEquals(1, DecimationCache.levelFor(1.5));
+        assertEquals(1, DecimationCache.levelFor(2));
+        assertEquals(2, DecimationCache.levelFor(2.1));
+        assertEquals(6, DecimationCache.levelFor(60.7));
+    }
+
+    @Test
+    public void minMax_keepsTheExtremesOfEveryBucket() {
+        SampleStore store = randomStore(1 << 16, 1 << 16, 1);
+        DecimationCache cache = new DecimationCache(store, DecimationCache.MODE_MIN_MAX);
+        double samplesPerPixel = (double) store.getEndIndex() / WIDTH;
+        int points = cache.decimate(0, store.getEndIndex(), samplesPerPixel, pointX, pointY);
+
+        // buckets of 64 samples, two points each, bounded by the pixels and not by the 65536 samples
+        int bucket = 1 << DecimationCache.levelFor(samplesPerPixel);
+        assertEquals(64, bucket);
+        assertEquals(2 * (1 << 16) / bucket, points);
+        assertTrue(points <= 2 * WIDTH + 8);
+        for (int i = 0; i < points; i += 2) {
+            long start = (long) pointX[i] / bucket * bucket;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (long j = start; j < start + bucket; j++) {
+                min = Math.min(min, store.get(j));
+                max = Math.max(max, store.get(j));
+            }
+            assertEquals(Math.min(min, max), Math.min(pointY[i], pointY[i + 1]), 0);
+            assertEquals(Math.max(min, max), Math.max(pointY[i], pointY[i + 1]), 0);
+            assertTrue(pointX[i] < pointX[i + 1]);
+        }
+    }
+
+    @Test
+    public void zoomLevels_areReducedOnce() {
+        SampleStore store = randomStore(1 << 16, 1 << 16, 2);
+        DecimationCache cache = new DecimationCache(store, DecimationCache.MODE_MIN_MAX);
+        long end = store.getEndIndex();
+        cache.decimate(end - 60_000, end, 60_000.0 / WIDTH, pointX, pointY);
+        long reduced = cache.getReducedBucketCount();
+
+        // pinching within the level and redrawing reuses the cached buckets
+        cache.decimate(end - 50_000, end, 50_000.0 / WIDTH, pointX, pointY);
+        cache.decimate(end - 60_000, end, 60_000.0 / WIDTH, pointX, pointY);
+        assertEquals(reduced, cache.getReducedBucketCount());
+
+        // a different level is reduced separately, the first one stays cached
+        cache.decimate(end - 10_000, end, 10_000.0 / WIDTH, pointX, pointY);
+        long otherLevel = cache.getReducedBucketCount();
+        assertTrue(otherLevel > reduced);
+        cache.decimate(end - 60_000, end, 60_000.0 / WIDTH, pointX, pointY);
+        assertEquals(otherLevel, cache.getReducedBucketCount());
+
+        // new samples only reduce the new buckets
+        for (int i = 0; i < 64; i++) {
+            append(store, i);
+        }
+        end = store.getEndIndex();
+        cache.decimate(end - 60_000, end, 60_000.0 / WIDTH, pointX, pointY);
+        assertEquals(otherLevel + 1, cache.getReducedBucketCount());
+    }
+
+    @Test
+    public void incremental_equalsReducingAtOnce() {
+        for (int mode : new int[]{DecimationCache.MODE_MIN_MAX, DecimationCache.MODE_LTTB}) {
+            SampleStore live = new SampleStore(1 << 14);
+            DecimationCache incremental = new DecimationCache(live, mode);
+            Random random = new Random(3);
+            double samplesPerPixel = 16;
+            // frames of 7 samples, the view shows the newest 8000
+            for (int frame = 0; frame < 2000; frame++) {
+                for (int i = 0; i < 7; i++) {
+                    append(live, random.nextInt(1000));
+                }
+                long end = live.getEndIndex();
+                incremental.decimate(end - 8000, end, samplesPerPixel, pointX, pointY);
+            }
+            long end = live.getEndIndex();
+            int points = incremental.decimate(end - 8000, end, samplesPerPixel, pointX, pointY);
+            double[] x = Arrays.copyOf(pointX, points);
+            double[] y = Arrays.copyOf(pointY, points);
+
+            DecimationCache fresh = new DecimationCache(live, mode);
+            if (mode == DecimationCache.MODE_LTTB) {
+                // an LTTB chain depends on where it started, start the fresh one there as well
+                fresh.decimate(0, end, samplesPerPixel, pointX, pointY);
+            }
+            int freshPoints = fresh.decimate(end - 8000, end, samplesPerPixel, pointX, pointY);
+
+            assertEquals("mode " + mode, freshPoints, points);
+            assertArrayEquals(x, Arrays.copyOf(pointX, points), 0);
+            assertArrayEquals(y, Arrays.copyOf(pointY, points), 0);
+            for (int i = 0; i < points; i++) {
+                assertEquals(live.get((long) x[i]), y[i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void lttb_onePointPerBucketAndKeepsASpike() {
+        SampleStore store = new SampleStore(1 << 12);
+        for (int i = 0; i < 4096; i++) {
+            append(store, i == 2000 ? 500 : 50 + Math.sin(i / 50.0));
+        }
+        DecimationCache cache = new DecimationCache(store, DecimationCache.MODE_LTTB);
+        int points = cache.decimate(0, 4096, 32, pointX, pointY);
+
+        // the last bucket is still drawn as min and max until the next one is finished
+        assertEquals(4096 / 32 - 1 + 2, points);
+        boolean spike = false;
+        for (int i = 0; i < points; i++) {
+            spike |= pointX[i] == 2000 && pointY[i] == 500;
+            if (i > 0) {
+                assertTrue(pointX[i] > pointX[i - 1]);
+            }
+        }
+        assertTrue(spike);
+    }
+
+    @Test
+    public void overwrittenHistory_isNotDrawn() {
+        SampleStore store = randomStore(1024, 5000, 4);
+        for (int mode : new int[]{DecimationCache.MODE_MIN_MAX, DecimationCache.MODE_LTTB}) {
+            DecimationCache cache = new DecimationCache(store, mode);
+            int points = cache.decimate(0, store.getEndIndex(), 10, pointX, pointY);
+
+            assertTrue(points > 0);
+            assertTrue(pointX[0] >= store.getFirstIndex());
+            for (int i = 0; i < points; i++) {
+                assertEquals(store.get((long) pointX[i]), pointY[i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void smallOutput_isNotOverrun() {
+        SampleStore store = randomStore(1 << 12, 4096, 5);
+        DecimationCache cache = new DecimationCache(store, DecimationCache.MODE_MIN_MAX);
+
+        assertEquals(10, cache.decimate(0, 4096, 4, new double[10], new double[10]));
+        assertEquals(10, cache.decimate(0, 4096, 0.5, new double[10], new double[10]));
+    }
+}
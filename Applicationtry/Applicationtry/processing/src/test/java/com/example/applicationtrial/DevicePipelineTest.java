@@ -0,0 +1,169 @@
+package com.example.applicationtrial;
+
+import com.example.Application.BeatDetector;
+import com.example.Application.DevicePipeline;
+import com.example.Application.FrameDecoder;
+import com.example.Application.MockFrameDecoder;
+import com.example.Application.SampleRingBuffer;
+import com.example.Application.SignalGenerator;
+import com.example.Application.WorkerPool;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link DevicePipeline}: notifications are decoded in order on the pool,
+ * devices do not share state, a full inbox drops instead of blocking the callback, and the beats
+ * are detected on the pool.
+ */
+public class DevicePipelineTest {
+    private final WorkerPool pool = new WorkerPool("test", 2, 4);
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private static byte[] frame(int sequence, int count) {
+        byte[] packet = new byte[MockFrameDecoder.HEADER_LENGTH + count];
+        packet[0] = MockFrameDecoder.FORMAT_VERSION;
+        packet[1] = (byte) sequence;
+        packet[2] = (byte) (sequence >> 8);
+        packet[3] = 50;
+        packet[5] = (byte) count;
+        packet[6] = 72;
+        packet[7] = 97;
+        for (int i = 0; i < count; i++) {
+            packet[MockFrameDecoder.HEADER_LENGTH + i] = (byte) (sequence + i);
+        }
+        return packet;
+    }
+
+    /** Frames of 5 samples of a 72 bpm PPG pulse at 50 Hz, the newest sample arriving last. */
+    private static void offerPulse(DevicePipeline pipeline, SignalGenerator generator, int fromSequence, int samples,
+                                   long startNanos) throws InterruptedException {
+        int[] ppg = new int[5];
+        for (int sequence = fromSequence; sequence < fromSequence + samples; sequence += 5) {
+            generator.generate(ppg, 0, 5);
+            byte[] packet = frame(sequence, 5);
+            for (int i = 0; i < 5; i++) {
+                packet[MockFrameDecoder.HEADER_LENGTH + i] = (byte) ppg[i];
+            }
+            long arrivalNanos = startNanos + (sequence - fromSequence + 4) * 20_000_000L;
+            while (!pipeline.offer(0, packet, arrivalNanos)) {
+                Thread.sleep(1);
+            }
+        }
+        awaitEmpty(pipeline);
+    }
+
+    private static void awaitEmpty(DevicePipeline pipeline) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pipeline.getInboxSize() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, pipeline.getInboxSize());
+    }
+
+    @Test
+    public void devices_decodeInOrderWithoutSharingState() throws InterruptedException {
+        SampleRingBuffer[] rings = new SampleRingBuffer[2];
+        DevicePipeline[] pipelines = new DevicePipeline[2];
+        AtomicLong malformed = new AtomicLong();
+        for (int d = 0; d < 2; d++) {
+            rings[d] = new SampleRingBuffer(1024, SampleRingBuffer.DEVICE_LANES);
+            pipelines[d] = new DevicePipeline(new FrameDecoder[]{new MockFrameDecoder()}, rings[d], pool,
+                    DevicePipeline.DEFAULT_INBOX_CAPACITY, (source, count, arrivalNanos) -> {
+                        if (count < 0) {
+                            malformed.incrementAndGet();
+                        }
+                    });
+        }
+
+        for (int sequence = 0; sequence < 100; sequence += 5) {
+            assertTrue(pipelines[0].offer(0, frame(sequence, 5), sequence));
+            // the second device starts later, its sequence would be a gap for the first one
+            assertTrue(pipelines[1].offer(0, frame(1000 + sequence, 5), sequence));
+        }
+        awaitEmpty(pipelines[0]);
+        awaitEmpty(pipelines[1]);
+
+        for (int d = 0; d < 2; d++) {
+            assertEquals(0, pipelines[d].getDecoder(0).getLostSampleCount());
+            int[] records = new int[1024 * SampleRingBuffer.DEVICE_LANES];
+            assertEquals(100, rings[d].drain(records, new long[1024], 1024));
+            for (int i = 0; i < 100; i++) {
+                assertEquals((byte) (d * 1000 + i), (byte) records[i * SampleRingBuffer.DEVICE_LANES]);
+            }
+        }
+        assertEquals(0, malformed.get());
+    }
+
+    @Test
+    public void fullInbox_dropsTheNotification() throws InterruptedException {
+        WorkerPool stopped = new WorkerPool("stopped", 1, 1);
+        stopped.shutdown();
+        DevicePipeline pipeline = new DevicePipeline(new FrameDecoder[]{new MockFrameDecoder()},
+                new SampleRingBuffer(64, SampleRingBuffer.DEVICE_LANES), stopped, 4, null);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(pipeline.offer(0, frame(i, 1), i));
+        }
+        assertFalse(pipeline.offer(0, frame(4, 1), 4));
+        assertEquals(1, pipeline.getDroppedNotificationCount());
+        assertEquals(4, pipeline.getInboxSize());
+    }
+
+    @Test
+    public void reset_forgetsTheSequenceBeforeTheNextNotification() throws InterruptedException {
+        SampleRingBuffer ring = new SampleRingBuffer(1024, SampleRingBuffer.DEVICE_LANES);
+        DevicePipeline pipeline = new DevicePipeline(new FrameDecoder[]{new MockFrameDecoder()}, ring, pool,
+                DevicePipeline.DEFAULT_INBOX_CAPACITY, null);
+
+        pipeline.offer(0, frame(0, 5), 1);
+        awaitEmpty(pipeline);
+        // a reconnect: the sensor restarts somewhere else
+        pipeline.reset();
+        pipeline.offer(0, frame(3000, 5), 2);
+        awaitEmpty(pipeline);
+
+        assertEquals(0, pipeline.getDecoder(0).getLostSampleCount());
+    }
+
+    @Test
+    public void beats_areDetectedOnThePoolAndForgottenOnReset() throws InterruptedException {
+        SampleRingBuffer ring = new SampleRingBuffer(4096, SampleRingBuffer.DEVICE_LANES);
+        SampleRingBuffer beats = new SampleRingBuffer(128, DevicePipeline.BEAT_LANES);
+        DevicePipeline pipeline = new DevicePipeline(new FrameDecoder[]{new MockFrameDecoder()}, ring, pool,
+                DevicePipeline.DEFAULT_INBOX_CAPACITY, null, new BeatDetector(50), beats);
+        SignalGenerator generator = new SignalGenerator(SignalGenerator.WAVE_PPG, 50);
+        generator.setHeartRate(72);
+
+        offerPulse(pipeline, generator, 0, 1000, 0);
+        int[] records = new int[beats.capacity() * beats.lanes()];
+        long[] timestamps = new long[beats.capacity()];
+        int count = beats.drain(records, timestamps, beats.capacity());
+        // 20 s at 72 bpm, the first beat has no interval yet
+        assertTrue("beats " + count, count >= 20);
+        for (int i = 0; i < count; i++) {
+            assertEquals(72, records[i * DevicePipeline.BEAT_LANES + DevicePipeline.BEAT_LANE_RATE], 3);
+            assertEquals(833, records[i * DevicePipeline.BEAT_LANES + DevicePipeline.BEAT_LANE_INTERVAL], 40);
+        }
+
+        // a reconnect a minute later: no beat spans the gap
+        pipeline.reset();
+        ring.drain(new int[ring.capacity() * ring.lanes()], new long[ring.capacity()], ring.capacity());
+        offerPulse(pipeline, generator, 5000, 500, 80_000_000_000L);
+        count = beats.drain(records, timestamps, beats.capacity());
+        assertTrue("beats " + count, count > 0);
+        for (int i = 0; i < count; i++) {
+            assertEquals(833, records[i * DevicePipeline.BEAT_LANES + DevicePipeline.BEAT_LANE_INTERVAL], 40);
+            assertTrue(timestamps[i] >= 80_000_000_000L);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.applicationtrial;
+
+import com.example.Application.DataReciever;
+import com.example.Application.DeviceProfile;
+import com.example.Application.FrameDecoder;
+import com.example.Application.MockFrameDecoder;
+import com.example.Application.SampleRingBuffer;
+import com.example.Application.Spo2PacketDecoder;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link DeviceProfile}: the declared sensors can be connected to, no two of
+ * them write to the same channel, and a profile that cannot work is rejected when it is built.
+ */
+public class DeviceProfileTest {
+
+    @Test
+    public void profiles_haveDistinctNamesAndChannels() {
+        Set<String> names = new HashSet<>();
+        Set<Integer> channels = new HashSet<>();
+        for (DeviceProfile profile : DeviceProfile.getProfiles()) {
+            assertTrue(profile.getName(), names.add(profile.getName()));
+            assertSame(profile, DeviceProfile.forName(profile.getName()));
+            assertTrue(profile.getAddress() != null || profile.getAdvertisedService() != null);
+            for (int lane = 0; lane < SampleRingBuffer.DEVICE_LANES; lane++) {
+                addChannel(channels, profile.getLaneChannel(lane));
+            }
+            addChannel(channels, profile.getBeatRateChannel());
+            addChannel(channels, profile.getBeatIntervalChannel());
+            addChannel(channels, profile.getEventChannel());
+        }
+        // every channel of the receiver has exactly one source
+        assertEquals(DataReciever.CHANNEL_COUNT, channels.size());
+        assertNull(DeviceProfile.forName("unknown"));
+    }
+
+    private static void addChannel(Set<Integer> channels, int channel) {
+        if (channel != DeviceProfile.NO_CHANNEL) {
+            assertTrue("channel " + channel + " is used twice", channels.add(channel));
+            assertTrue(channel >= 0 && channel < DataReciever.CHANNEL_COUNT);
+        }
+    }
+
+    @Test
+    public void newDecoder_matchesTheFrameLayout() {
+        FrameDecoder spo2 = DeviceProfile.SPO2_OXIMETER.newDecoder(0);
+        assertTrue(spo2 instanceof Spo2PacketDecoder);
+        assertTrue(DeviceProfile.ESP32_MOCKUP.newDecoder(0) instanceof MockFrameDecoder);
+        assertNull(DeviceProfile.ALERT_BUTTON.newDecoder(0));
+        assertFalse(DeviceProfile.ALERT_BUTTON.hasSamples());
+        assertEquals(UUID.fromString("49535343-1e4d-4bd9-ba61-23c647249616"),
+                DeviceProfile.SPO2_OXIMETER.getCharacteristic(0));
+
+        SampleRingBuffer ring = new SampleRingBuffer(16, SampleRingBuffer.DEVICE_LANES);
+        assertEquals(1, spo2.decodeInto(new byte[]{(byte) 0x80, 40, 0x40, 72, 97}, ring, 0));
+    }
+
+    @Test
+    public void forSensor_movesTheValuesToTheGivenBlock() {
+        int first = DataReciever.CHANNEL_COUNT;
+        DeviceProfile bed2 = DeviceProfile.SPO2_OXIMETER.forSensor("bed 2", "00:11:22:33:44:55", first);
+        assertSame(DeviceProfile.SPO2_OXIMETER, bed2.getBase());
+        assertSame(DeviceProfile.SPO2_OXIMETER, DeviceProfile.SPO2_OXIMETER.getBase());
+        assertEquals("bed 2", bed2.getName());
+        assertEquals("00:11:22:33:44:55", bed2.getAddress());
+        assertEquals(DeviceProfile.SPO2_OXIMETER.getCharacteristic(0), bed2.getCharacteristic(0));
+        assertEquals(first + SampleRingBuffer.LANE_SPO2, bed2.getLaneChannel(SampleRingBuffer.LANE_SPO2));
+        assertEquals(first + SampleRingBuffer.DEVICE_LANES, bed2.getBeatRateChannel());
+        for (int channel = first; channel < first + DataReciever.CHANNELS_PER_DEVICE; channel++) {
+            assertTrue("channel " + channel, bed2.hasChannel(channel));
+        }
+        assertFalse(bed2.hasChannel(first + DataReciever.CHANNELS_PER_DEVICE));
+        assertFalse(bed2.hasChannel(DataReciever.CHANNEL_SPO2_PPG));
+        assertFalse(bed2.hasChannel(DeviceProfile.NO_CHANNEL));
+
+        DeviceProfile button = DeviceProfile.ALERT_BUTTON.forSensor("button 2", "66:77:88:99:AA:BB", first);
+        assertEquals(first, button.getEventChannel());
+        assertFalse(button.hasSamples());
+        assertFalse(button.hasChannel(first + 1));
+
+        try {
+            DeviceProfile.ESP32_MOCKUP.forSensor("no address", null, first);
+            fail("an added sensor is found by its address");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void build_rejectsProfilesThatCannotWork() {
+        try {
+            new DeviceProfile.Builder("no address")
+                    .setService("0000FFE0-0000-1000-8000-00805F9B34FB")
+                    .addCharacteristic("0000FFE1-0000-1000-8000-00805F9B34FB", DeviceProfile.FRAME_BUTTON)
+                    .setEventChannel(DataReciever.CHANNEL_ALERT)
+                    .build();
+            fail("a profile without address or advertised service cannot be found");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            new DeviceProfile.Builder("no channels")
+                    .setAddress("00:11:22:33:44:55")
+                    .setService("0000FFE0-0000-1000-8000-00805F9B34FB")
+                    .addCharacteristic("0000FFE1-0000-1000-8000-00805F9B34FB", DeviceProfile.FRAME_SPO2)
+                    .setSampleRate(100)
+                    .build();
+            fail("a streaming profile needs channels for its lanes");
+        } catch (IllegalStateException expected) {
+        }
+
+        // a fourth sensor is one declaration
+        DeviceProfile chestStrap = new DeviceProfile.Builder("chest strap")
+                .setAdvertisedService("0000180D-0000-1000-8000-00805F9B34FB")
+                .setService("0000180D-0000-1000-8000-00805F9B34FB")
+                .addCharacteristic("00002A37-0000-1000-8000-00805F9B34FB", DeviceProfile.FRAME_MOCK)
+                .setEnableDescriptor(true)
+                .setSampleRate(50)
+                .setLaneChannels(DataReciever.CHANNEL_MOCK_PPG)
+                .build();
+        assertTrue(chestStrap.hasSamples());
+        assertEquals(DeviceProfile.NO_CHANNEL, chestStrap.getLaneChannel(SampleRingBuffer.LANE_SPO2));
+        assertEquals(DeviceProfile.NO_CHANNEL, chestStrap.getBeatRateChannel());
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.applicationtrial;
+
+import com.example.Application.GattOperationQueue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link GattOperationQueue} against a fake GATT connection that behaves like
+ * the Android stack: an operation issued while another one is in flight is silently dropped.
+ */
+public class GattOperationQueueTest {
+    private static final long LATENCY_MS = 20;
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    /** Stand-in for BluetoothGatt plus the callback of the device class that uses it. */
+    private class FakeGatt {
+        final List<String> completed = Collections.synchronizedList(new ArrayList<>());
+        final AtomicLong dropped = new AtomicLong();
+        GattOperationQueue queue;
+        String inFlight;
+        // operation names that never get a callback
+        String lost = "";
+
+        synchronized boolean issue(String name) {
+            if (inFlight != null) {
+                dropped.incrementAndGet();
+                return true;
+            }
+            inFlight = name;
+            if (!name.equals(lost)) {
+                scheduler.schedule(() -> callback(name), LATENCY_MS, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        }
+
+        void callback(String name) {
+            synchronized (this) {
+                inFlight = null;
+            }
+            completed.add(name);
+            if (queue != null) {
+                queue.complete(name, true);
+            }
+        }
+    }
+
+    @Test
+    public void withoutQueue_backToBackOperationsAreDropped() throws InterruptedException {
+        FakeGatt gatt = new FakeGatt();
+
+        gatt.issue(GattOperationQueue.OP_DISCOVER_SERVICES);
+        gatt.issue(GattOperationQueue.OP_REQUEST_MTU);
+        gatt.issue(GattOperationQueue.OP_WRITE_DESCRIPTOR);
+        Thread.sleep(3 * LATENCY_MS);
+
+        assertEquals(2, gatt.dropped.get());
+        assertEquals(1, gatt.completed.size());
+    }
+
+    @Test
+    public void withQueue_operationsRunOneAfterAnother() throws InterruptedException {
+        FakeGatt gatt = new FakeGatt();
+        gatt.queue = new GattOperationQueue(scheduler, 1000);
+        CountDownLatch done = new CountDownLatch(1);
+
+        gatt.queue.enqueue(GattOperationQueue.OP_DISCOVER_SERVICES, () -> gatt.issue(GattOperationQueue.OP_DISCOVER_SERVICES), null);
+        gatt.queue.enqueue(GattOperationQueue.OP_REQUEST_MTU, () -> gatt.issue(GattOperationQueue.OP_REQUEST_MTU), null);
+        gatt.queue.enqueueLocal(GattOperationQueue.OP_SET_NOTIFICATION, () -> true, null);
+        gatt.queue.enqueue(GattOperationQueue.OP_WRITE_DESCRIPTOR, () -> gatt.issue(GattOperationQueue.OP_WRITE_DESCRIPTOR),
+                success -> done.countDown());
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(0, gatt.dropped.get());
+        assertEquals(3, gatt.completed.size());
+        assertEquals(0, gatt.queue.size());
+    }
+
+    @Test
+    public void lostCallback_timesOutAndContinues() throws InterruptedException {
+        FakeGatt gatt = new FakeGatt();
+        gatt.queue = new GattOperationQueue(scheduler, 50);
+        gatt.lost = GattOperationQueue.OP_REQUEST_MTU;
+        boolean[] mtuResult = {true};
+        CountDownLatch done = new CountDownLatch(1);
+
+        gatt.queue.enqueue(GattOperationQueue.OP_REQUEST_MTU, () -> gatt.issue(GattOperationQueue.OP_REQUEST_MTU),
+                success -> {
+                    mtuResult[0] = success;
+                    // the stack gave up on the lost operation as well
+                    synchronized (gatt) {
+                        gatt.inFlight = null;
+                    }
+                });
+        gatt.queue.enqueue(GattOperationQueue.OP_DISCOVER_SERVICES, () -> gatt.issue(GattOperationQueue.OP_DISCOVER_SERVICES),
+                success -> done.countDown());
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertFalse(mtuResult[0]);
+        assertEquals(1, gatt.queue.getTimeoutCount());
+    }
+
+    @Test
+    public void failedStart_completesWithFailureAndContinues() {
+        GattOperationQueue queue = new GattOperationQueue(scheduler, 1000);
+        List<String> results = new ArrayList<>();
+
+        queue.enqueue(GattOperationQueue.OP_DISCOVER_SERVICES, () -> false, success -> results.add("discover " + success));
+        queue.enqueueLocal(GattOperationQueue.OP_SET_NOTIFICATION, () -> true, success -> results.add("notify " + success));
+
+        assertEquals(Arrays.asList("discover false", "notify true"), results);
+    }
+
+    @Test
+    public void parallelBringUp_timeToFirstSample() throws InterruptedException {
+        final int devices = 3;
+        CountDownLatch firstSamples = new CountDownLatch(devices);
+        long[] timeToFirstSample = new long[devices];
+        long start = System.nanoTime();
+
+        for (int d = 0; d < devices; d++) {
+            final int device = d;
+            FakeGatt gatt = new FakeGatt();
+            gatt.queue = new GattOperationQueue(scheduler, 1000);
+            // same sequence the device classes queue after connecting
+            gatt.queue.enqueue(GattOperationQueue.OP_DISCOVER_SERVICES, () -> gatt.issue(GattOperationQueue.OP_DISCOVER_SERVICES), null);
+            gatt.queue.enqueueLocal(GattOperationQueue.OP_SET_NOTIFICATION, () -> true, null);
+            gatt.queue.enqueue(GattOperationQueue.OP_WRITE_DESCRIPTOR, () -> gatt.issue(GattOperationQueue.OP_WRITE_DESCRIPTOR),
+                    success -> scheduler.schedule(() -> {
+                        timeToFirstSample[device] = System.nanoTime() - start;
+                        firstSamples.countDown();
+                    }, LATENCY_MS, TimeUnit.MILLISECONDS));
+        }
+
+        assertTrue(firstSamples.await(1, TimeUnit.SECONDS));
+        long slowestMs = 0;
+        for (long t : timeToFirstSample) {
+            slowestMs = Math.max(slowestMs, TimeUnit.NANOSECONDS.toMillis(t));
+        }
+        System.out.println("parallel bring-up of " + devices + " devices, slowest time to first sample: " + slowestMs + " ms");
+        // three round trips per device; one after another would take three times as long
+        assertTrue(slowestMs < devices * 3 * LATENCY_MS);
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.applicationtrial;
+
+import com.example.Application.LoadGenerator;
+import com.example.Application.MockFrameDecoder;
+import com.example.Application.SampleRingBuffer;
+import com.example.Application.Spo2PacketDecoder;
+import com.example.Application.VirtualSensor;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link VirtualSensor} and {@link LoadGenerator}: the simulated
+ * notifications decode like the hardware's, short runs deliver every sample, the cost of a
+ * sample does not grow with the number of devices and an alert press is on the screen within a
+ * frame while the waveforms load the UI thread. The alerts reach the simulated UI thread through
+ * a queue it polls, not the front of a looper's queue like in {@code SensorDevice}.
+ */
+public class LoadGeneratorTest {
+
+    private static int[] drain(SampleRingBuffer ring) {
+        int[] records = new int[ring.capacity() * ring.lanes()];
+        int count = ring.drain(records, new long[ring.capacity()], ring.capacity());
+        int[] result = new int[count * ring.lanes()];
+        System.arraycopy(records, 0, result, 0, result.length);
+        return result;
+    }
+
+    @Test
+    public void mockSensor_framesDecodeWithoutGaps() {
+        VirtualSensor sensor = new VirtualSensor(VirtualSensor.KIND_MOCK_ESP32, 50, 185);
+        MockFrameDecoder decoder = new MockFrameDecoder();
+        SampleRingBuffer ring = new SampleRingBuffer(1024, SampleRingBuffer.DEVICE_LANES);
+
+        assertEquals(VirtualSensor.ESP32_MAX_SAMPLES_PER_FRAME, sensor.getSamplesPerPacket());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), sensor.getPacketIntervalNanos());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(10, decoder.decodeInto(sensor.nextPacket(), ring, i));
+        }
+        assertEquals(0, decoder.getLostSampleCount());
+        assertEquals(50, decoder.getSampleRateHz());
+
+        int[] records = drain(ring);
+        assertEquals(500 * SampleRingBuffer.DEVICE_LANES, records.length);
+        assertEquals(72, records[SampleRingBuffer.LANE_PULSE_RATE]);
+        assertEquals(97, records[SampleRingBuffer.LANE_SPO2]);
+    }
+
+    @Test
+    public void mockSensor_smallMtuLimitsTheFrame() {
+        VirtualSensor sensor = new VirtualSensor(VirtualSensor.KIND_MOCK_ESP32, 50, VirtualSensor.DEFAULT_MTU);
+        byte[] packet = sensor.nextPacket();
+
+        assertEquals(Math.min(VirtualSensor.ESP32_MAX_SAMPLES_PER_FRAME, MockFrameDecoder.samplesPerFrame(VirtualSensor.DEFAULT_MTU)),
+                sensor.getSamplesPerPacket());
+        assertTrue(packet.length <= VirtualSensor.DEFAULT_MTU - MockFrameDecoder.ATT_HEADER_LENGTH);
+    }
+
+    @Test
+    public void spo2Sensor_fillsTheMtuWithFrames() {
+        VirtualSensor sensor = new VirtualSensor(VirtualSensor.KIND_SPO2, 100, VirtualSensor.DEFAULT_MTU);
+        Spo2PacketDecoder decoder = new Spo2PacketDecoder();
+        SampleRingBuffer ring = new SampleRingBuffer(64, SampleRingBuffer.DEVICE_LANES);
+
+        byte[] packet = sensor.nextPacket();
+        assertEquals(20, packet.length);
+        assertEquals(4, decoder.decodeInto(packet, ring, 0));
+
+        int[] records = drain(ring);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(72, records[i * SampleRingBuffer.DEVICE_LANES + SampleRingBuffer.LANE_PULSE_RATE]);
+            assertEquals(97, records[i * SampleRingBuffer.DEVICE_LANES + SampleRingBuffer.LANE_SPO2]);
+        }
+    }
+
+    @Test
+    public void run_deliversEverySampleWithoutLoss() throws InterruptedException {
+        List<VirtualSensor> sensors = LoadGenerator.ward(3, 185, TimeUnit.MILLISECONDS.toNanos(2), 0);
+        LoadGenerator.Result result = LoadGenerator.run(sensors, 1, TimeUnit.MILLISECONDS.toNanos(500), 1);
+
+        assertTrue(result.offeredSamples > 0);
+        assertEquals(result.offeredSamples, result.deliveredSamples);
+        assertEquals(0, result.droppedSamples);
+        assertEquals(0, result.lostSamples);
+        assertEquals(0, result.malformedPackets);
+        assertEquals(0, result.droppedNotifications);
+        assertEquals(result.drains, result.latency.getCount());
+    }
+
+    @Test
+    public void run_fiftyDevices() throws InterruptedException {
+        List<VirtualSensor> sensors = LoadGenerator.ward(50, 185, TimeUnit.MILLISECONDS.toNanos(5), 0.01);
+        LoadGenerator.Result result = LoadGenerator.run(sensors, 2, TimeUnit.SECONDS.toNanos(1), 50);
+        System.out.println(LoadGenerator.Result.header());
+        System.out.println(result);
+
+        assertEquals(0, result.malformedPackets);
+        assertTrue(result.deliveredSamples > 0);
+        assertEquals(result.offeredSamples, result.deliveredSamples + result.droppedSamples + result.lostSamples);
+    }
+
+    @Test
+    public void run_costPerSampleStaysFlatAsDevicesAreAdded() throws InterruptedException {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        long jitter = TimeUnit.MILLISECONDS.toNanos(5);
+        // warms up the decoders and rules, so the first run is not charged for the compiler
+        LoadGenerator.run(LoadGenerator.ward(6, 185, jitter, 0), 1, 2, second / 2, 1);
+
+        System.out.println(LoadGenerator.Result.header());
+        LoadGenerator.Result few = LoadGenerator.run(LoadGenerator.ward(3, 185, jitter, 0), 1, 2, second, 3);
+        System.out.println(few);
+        LoadGenerator.Result many = LoadGenerator.run(LoadGenerator.ward(24, 185, jitter, 0), 1, 2, second, 24);
+        System.out.println(many);
+
+        // eight times the devices deliver about eight times the samples
+        double ratio = (double) many.deliveredSamples / few.deliveredSamples;
+        assertTrue("delivered ratio " + ratio, ratio > 6 && ratio < 10);
+        assertEquals(0, many.droppedSamples + many.droppedNotifications);
+        // a generous bound for a shared machine; linear cost keeps it near 1
+        assertTrue(few.getCpuNanosPerSample() + " -> " + many.getCpuNanosPerSample(),
+                many.getCpuNanosPerSample() < 3 * few.getCpuNanosPerSample() + 2_000);
+        assertTrue(many.latency.getQuantileNanos(0.99) < 2 * LoadGenerator.FRAME_NANOS + TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void run_alertIsShownWithinAFrameUnderLoad() throws InterruptedException {
+        long jitter = TimeUnit.MILLISECONDS.toNanos(5);
+        List<VirtualSensor> sensors = LoadGenerator.ward(24, 185, jitter, 0);
+        // buttons pressed more often than in the ward, slower than the debounce
+        for (int i = 0; i < sensors.size(); i++) {
+            if (sensors.get(i).getKind() == VirtualSensor.KIND_ALERT) {
+                VirtualSensor button = new VirtualSensor(VirtualSensor.KIND_ALERT, 2, VirtualSensor.DEFAULT_MTU);
+                button.setJitter(jitter);
+                sensors.set(i, button);
+            }
+        }
+        LoadGenerator.Result result = LoadGenerator.run(sensors, 1, 2, TimeUnit.SECONDS.toNanos(2), 25);
+        System.out.println(LoadGenerator.Result.header());
+        System.out.println(result);
+        System.out.println("alert press to frame: " + result.alertLatency + ", at most " + result.maxAlertFrames + " frame(s)");
+
+        assertTrue(result.alertChanges > 10);
+        assertEquals(result.alertChanges, result.alertLatency.getCount());
+        // the change jumps ahead of the drain, so it is drawn by the next frame at the latest,
+        // however long the frames take on this machine
+        assertTrue(result.alertLatency + ", late frames " + result.lateFrames, result.maxAlertFrames <= 1);
+        // and is on the screen within one frame interval of the press; the press is stamped on
+        // arrival, before it is queued, so a GATT thread that is descheduled in between may miss
+        // the vsync by a scheduler tick
+        long tolerance = TimeUnit.MILLISECONDS.toNanos(2);
+        assertTrue(result.alertLatency + ", late frames " + result.lateFrames,
+                result.alertLatency.getMaxNanos() < LoadGenerator.FRAME_NANOS + tolerance);
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.applicationtrial;
+
+import com.example.Application.MockFrameDecoder;
+import com.example.Application.SampleRingBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link MockFrameDecoder}: packed frames, the legacy 5-byte layout and
+ * the detection of lost samples through the sequence number.
+ */
+public class MockFrameDecoderTest {
+    private static final int SAMPLE_RATE = 50;
+
+    private final MockFrameDecoder decoder = new MockFrameDecoder();
+    private final SampleRingBuffer ring = new SampleRingBuffer(1024, SampleRingBuffer.DEVICE_LANES);
+
+    private static byte[] frame(int sequence, int count) {
+        byte[] packet = new byte[MockFrameDecoder.HEADER_LENGTH + count];
+        packet[0] = MockFrameDecoder.FORMAT_VERSION;
+        packet[1] = (byte) sequence;
+        packet[2] = (byte) (sequence >> 8);
+        packet[3] = (byte) SAMPLE_RATE;
+        packet[4] = 0;
+        packet[5] = (byte) count;
+        packet[6] = (byte) 180;
+        packet[7] = 97;
+        for (int i = 0; i < count; i++) {
+            packet[MockFrameDecoder.HEADER_LENGTH + i] = (byte) (200 + i);
+        }
+        return packet;
+    }
+
+    private int[] drain() {
+        int[] records = new int[ring.capacity() * ring.lanes()];
+        int count = ring.drain(records, new long[ring.capacity()], ring.capacity());
+        int[] result = new int[count * ring.lanes()];
+        System.arraycopy(records, 0, result, 0, result.length);
+        return result;
+    }
+
+    @Test
+    public void packedFrame_decodesAllSamples() {
+        assertEquals(4, decoder.decodeInto(frame(0, 4), ring, 1L));
+
+        int[] records = drain();
+        assertEquals(4 * SampleRingBuffer.DEVICE_LANES, records.length);
+        for (int i = 0; i < 4; i++) {
+            int r = i * SampleRingBuffer.DEVICE_LANES;
+            assertEquals(200 + i, records[r + SampleRingBuffer.LANE_PPG]);
+            assertEquals(180, records[r + SampleRingBuffer.LANE_PULSE_RATE]);
+            assertEquals(97, records[r + SampleRingBuffer.LANE_SPO2]);
+        }
+        assertEquals(SAMPLE_RATE, decoder.getSampleRateHz());
+    }
+
+    @Test
+    public void packedFrame_samplesSpacedByAnnouncedRate() {
+        long arrival = 1_000_000_000L;
+        decoder.decodeInto(frame(0, 4), ring, arrival);
+
+        long[] timestamps = new long[ring.capacity()];
+        ring.drain(new int[ring.capacity() * ring.lanes()], timestamps, ring.capacity());
+        assertEquals(arrival, timestamps[3]);
+        assertEquals(arrival - 3 * (1_000_000_000L / SAMPLE_RATE), timestamps[0]);
+    }
+
+    @Test
+    public void legacyFrame_stillDecoded() {
+        byte[] legacy = {0, (byte) 230, 0, 120, 98};
+
+        assertEquals(1, decoder.decodeInto(legacy, ring, 1L));
+        assertArrayEquals(new int[]{230, 120, 98}, drain());
+    }
+
+    @Test
+    public void malformedFrames_rejected() {
+        assertEquals(MockFrameDecoder.PACKET_TOO_SHORT, decoder.decodeInto(null, ring, 1L));
+        assertEquals(MockFrameDecoder.PACKET_TOO_SHORT, decoder.decodeInto(new byte[3], ring, 1L));
+        assertEquals(MockFrameDecoder.UNKNOWN_VERSION, decoder.decodeInto(new byte[]{7, 0, 0, 0, 0, 0, 0, 0}, ring, 1L));
+
+        byte[] truncated = frame(0, 10);
+        byte[] cut = new byte[truncated.length - 1];
+        System.arraycopy(truncated, 0, cut, 0, cut.length);
+        assertEquals(MockFrameDecoder.PACKET_TRUNCATED, decoder.decodeInto(cut, ring, 1L));
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void missingFrame_reportedAsGap() {
+        decoder.decodeInto(frame(0, 5), ring, 1L);
+        decoder.decodeInto(frame(5, 5), ring, 2L);
+        assertEquals(0, decoder.getLastGap());
+
+        // frame with sequence 10 was lost
+        decoder.decodeInto(frame(15, 5), ring, 3L);
+        assertEquals(5, decoder.getLastGap());
+        assertEquals(5, decoder.getLostSampleCount());
+        assertEquals(1, decoder.getGapCount());
+    }
+
+    @Test
+    public void sequenceWrapAround_isNotAGap() {
+        decoder.decodeInto(frame(0xFFFD, 3), ring, 1L);
+        decoder.decodeInto(frame(0, 3), ring, 2L);
+
+        assertEquals(0, decoder.getLostSampleCount());
+    }
+
+    @Test
+    public void senderRestartOrReconnect_isNotAGap() {
+        decoder.decodeInto(frame(500, 5), ring, 1L);
+        decoder.decodeInto(frame(0, 5), ring, 2L);
+        decoder.reset();
+        decoder.decodeInto(frame(3000, 5), ring, 3L);
+
+        assertEquals(0, decoder.getLostSampleCount());
+    }
+
+    @Test
+    public void samplesPerFrame_followsMtu() {
+        // default MTU leaves 12 bytes for samples
+        assertEquals(12, MockFrameDecoder.samplesPerFrame(23));
+        assertEquals(174, MockFrameDecoder.samplesPerFrame(185));
+        assertEquals(MockFrameDecoder.MAX_SAMPLES_PER_FRAME, MockFrameDecoder.samplesPerFrame(517));
+    }
+
+    @Test
+    public void packedFrames_needFewerNotifications() {
+        // one second at 50 Hz
+        int legacyNotifications = SAMPLE_RATE;
+        int perFrame = 10;
+        int packedNotifications = 0;
+        for (int sequence = 0; sequence < SAMPLE_RATE; sequence += perFrame) {
+            decoder.decodeInto(frame(sequence, perFrame), ring, sequence);
+            packedNotifications++;
+        }
+
+        assertEquals(SAMPLE_RATE, ring.size());
+        assertEquals(0, decoder.getLostSampleCount());
+        System.out.println("notifications per second at " + SAMPLE_RATE + " Hz: legacy " + legacyNotifications
+                + ", packed " + packedNotifications);
+        assertTrue(packedNotifications * 5 <= legacyNotifications);
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.applicationtrial;
+
+import com.example.Application.MockFrameDecoder;
+import com.example.Application.NotificationRouter;
+import com.example.Application.SampleRingBuffer;
+import com.example.Application.Spo2PacketDecoder;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link NotificationRouter}: notifications reach the target registered for
+ * their device and characteristic, routes of a disconnected device are freed and reused, and a
+ * routed notification allocates nothing, unlike the UUID string comparison it replaces.
+ */
+public class NotificationRouterTest {
+    private static final int NOTIFICATIONS = 100_000;
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Remembers the last notification it got. */
+    private static final class RecordingTarget implements NotificationRouter.Target {
+        int route = NotificationRouter.NO_ROUTE;
+        byte[] value;
+        long arrivalNanos;
+        int count;
+
+        @Override
+        public void onNotification(int route, byte[] value, long arrivalNanos) {
+            this.route = route;
+            this.value = value;
+            this.arrivalNanos = arrivalNanos;
+            count++;
+        }
+    }
+
+    @Test
+    public void dispatch_reachesTheTargetOfDeviceAndCharacteristic() {
+        NotificationRouter router = new NotificationRouter();
+        RecordingTarget spo2 = new RecordingTarget();
+        RecordingTarget mockup = new RecordingTarget();
+        RecordingTarget button = new RecordingTarget();
+        // the same handle on two devices are two routes
+        assertEquals(0, router.register(0, 42, spo2));
+        assertEquals(1, router.register(1, 42, mockup));
+        assertEquals(2, router.register(2, 7, button));
+
+        byte[] value = {1};
+        assertTrue(router.dispatch(router.route(1, 42), value, 1234));
+        assertEquals(1, mockup.count);
+        assertEquals(1, mockup.route);
+        assertSame(value, mockup.value);
+        assertEquals(1234, mockup.arrivalNanos);
+        assertEquals(0, spo2.count);
+
+        assertTrue(router.dispatch(2, value, 1));
+        assertEquals(1, button.count);
+        assertFalse(router.dispatch(3, value, 1));
+        assertFalse(router.dispatch(NotificationRouter.NO_ROUTE, value, 1));
+        assertEquals(NotificationRouter.NO_ROUTE, router.route(2, 42));
+        assertEquals(NotificationRouter.NO_ROUTE, router.route(3, 7));
+        assertEquals(NotificationRouter.NO_ROUTE, router.route(0, 7));
+        assertEquals(2, router.route(2, 7));
+    }
+
+    @Test
+    public void register_sameCharacteristicKeepsItsRoute() {
+        NotificationRouter router = new NotificationRouter();
+        RecordingTarget first = new RecordingTarget();
+        RecordingTarget second = new RecordingTarget();
+        assertEquals(0, router.register(5, -1, first));
+        assertEquals(0, router.register(5, -1, second));
+        assertEquals(1, router.getRouteCount());
+
+        router.dispatch(0, new byte[0], 0);
+        assertEquals(0, first.count);
+        assertEquals(1, second.count);
+    }
+
+    @Test
+    public void unregister_freesTheRoutesOfTheDevice() {
+        NotificationRouter router = new NotificationRouter();
+        RecordingTarget target = new RecordingTarget();
+        router.register(0, 10, target);
+        router.register(1, 10, target);
+        router.register(1, 11, target);
+        router.register(2, 10, target);
+
+        router.unregister(1);
+        assertEquals(2, router.getRouteCount());
+        assertEquals(NotificationRouter.NO_ROUTE, router.route(1, 10));
+        assertFalse(router.dispatch(1, new byte[0], 0));
+        assertFalse(router.dispatch(2, new byte[0], 0));
+        assertTrue(router.dispatch(3, new byte[0], 0));
+        // the handles after a reconnect get the freed route ids
+        assertEquals(1, router.register(1, 20, target));
+        assertEquals(2, router.register(1, 21, target));
+        assertEquals(4, router.register(3, 10, target));
+
+        try {
+            router.register(-1, 10, target);
+            fail("a negative device slot must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void dispatch_allocatesNothing() {
+        String characteristicUuid = "49535343-1e4d-4bd9-ba61-23c647249616";
+        UUID uuid = UUID.fromString(characteristicUuid);
+        Spo2PacketDecoder spo2Decoder = new Spo2PacketDecoder();
+        MockFrameDecoder mockDecoder = new MockFrameDecoder();
+        SampleRingBuffer ring = new SampleRingBuffer(1024, SampleRingBuffer.DEVICE_LANES);
+        int[] records = new int[ring.capacity() * ring.lanes()];
+        long[] timestamps = new long[ring.capacity()];
+        byte[] packet = {(byte) 0x80, 40, 0x40, 72, 97};
+        long[] decoded = new long[1];
+
+        // before: every notification compares the UUID as a string
+        for (int n = 0; n < NOTIFICATIONS; n++) {
+            if (characteristicUuid.equals(uuid.toString())) {
+                decoded[0] += spo2Decoder.decodeInto(packet, ring, n);
+            }
+            ring.drain(records, timestamps, ring.capacity());
+        }
+        long start = allocatedBytes();
+        for (int n = 0; n < NOTIFICATIONS; n++) {
+            if (characteristicUuid.equals(uuid.toString())) {
+                decoded[0] += spo2Decoder.decodeInto(packet, ring, n);
+            }
+            ring.drain(records, timestamps, ring.capacity());
+        }
+        double uuidBytes = (allocatedBytes() - start) / (double) NOTIFICATIONS;
+
+        // after: the handle was resolved to a route when subscribing
+        NotificationRouter router = new NotificationRouter();
+        router.register(0, 17, (route, value, arrivalNanos) -> decoded[0] += mockDecoder.decodeInto(value, ring, arrivalNanos));
+        int spo2Route = router.register(1, 17, (route, value, arrivalNanos) -> decoded[0] += spo2Decoder.decodeInto(value, ring, arrivalNanos));
+        for (int n = 0; n < NOTIFICATIONS; n++) {
+            router.dispatch(spo2Route, packet, n);
+            ring.drain(records, timestamps, ring.capacity());
+        }
+        start = allocatedBytes();
+        for (int n = 0; n < NOTIFICATIONS; n++) {
+            router.dispatch(spo2Route, packet, n);
+            ring.drain(records, timestamps, ring.capacity());
+        }
+        double routerBytes = (allocatedBytes() - start) / (double) NOTIFICATIONS;
+
+        System.out.printf("per notification: uuid string %.1f bytes, router %.1f bytes%n", uuidBytes, routerBytes);
+        assertEquals(4L * NOTIFICATIONS, decoded[0]);
+        assertEquals(0, ring.getDroppedCount());
+        assertTrue(uuidBytes >= 36);
+        assertTrue(routerBytes < 1.0);
+    }
+}
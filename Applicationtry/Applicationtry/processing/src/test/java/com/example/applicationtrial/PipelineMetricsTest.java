@@ -0,0 +1,145 @@
+package com.example.applicationtrial;
+
+import com.example.Application.LatencyHistogram;
+import com.example.Application.PipelineMetrics;
+import com.example.Application.SampleRingBuffer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link PipelineMetrics} and {@link LatencyHistogram}.
+ */
+public class PipelineMetricsTest {
+
+    @After
+    public void tearDown() {
+        PipelineMetrics.setEnabled(false);
+    }
+
+    @Test
+    public void histogram_quantilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(50_000_000, histogram.getQuantileNanos(0.5), 50_000_000 * 0.035);
+        assertEquals(99_000_000, histogram.getQuantileNanos(0.99), 99_000_000 * 0.035);
+        assertEquals(100_000_000, histogram.getMaxNanos());
+        assertEquals(50_000_500, histogram.getMeanNanos(), 1);
+    }
+
+    @Test
+    public void histogram_smallAndHugeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(63);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getQuantileNanos(0.3));
+        assertEquals(63, histogram.getQuantileNanos(0.6));
+        assertEquals(Long.MAX_VALUE, histogram.getQuantileNanos(1));
+    }
+
+    @Test
+    public void histogram_concurrentRecordingLosesNothing() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                Random random = new Random();
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(random.nextInt(10_000_000));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(400_000, histogram.getCount());
+        assertTrue(histogram.getMaxNanos() < 10_000_000);
+        assertEquals(5_000_000, histogram.getQuantileNanos(0.5), 5_000_000 * 0.05);
+    }
+
+    @Test
+    public void metrics_countAndReport() {
+        PipelineMetrics metrics = PipelineMetrics.register("test device");
+        SampleRingBuffer ring = new SampleRingBuffer(4, 1);
+        metrics.setRing(ring);
+        for (int i = 0; i < 6; i++) {
+            ring.offer(new int[]{i}, i);
+        }
+
+        // nothing is recorded while disabled, except connections
+        metrics.onNotification(0, 100, 10);
+        metrics.onConnected();
+        assertEquals(0, metrics.getNotificationCount());
+
+        PipelineMetrics.setEnabled(true);
+        metrics.onConnected();
+        metrics.onNotification(1_000, 3_000, 10);
+        metrics.onNotification(2_000, 4_000, 10);
+        metrics.onMalformedPacket();
+        metrics.onLostSamples(3);
+        metrics.onDelivered(1_000, 10_000_000, 10_050_000);
+        PipelineMetrics.onFrameRendered(20_001_000);
+        // no new samples, no new latency
+        PipelineMetrics.onFrameRendered(40_000_000);
+
+        assertEquals(2, metrics.getNotificationCount());
+        assertEquals(20, metrics.getSampleCount());
+        assertEquals(1, metrics.getMalformedPacketCount());
+        assertEquals(3, metrics.getLostSampleCount());
+        assertEquals(2, metrics.getDroppedSampleCount());
+        assertEquals(1, metrics.getReconnectCount());
+        assertEquals(2_000, metrics.getDecodeHistogram().getMaxNanos());
+        assertEquals(1, metrics.getEndToEndHistogram().getCount());
+        assertEquals(20_000_000, metrics.getEndToEndHistogram().getMaxNanos());
+
+        String report = PipelineMetrics.reportAll(1_000_000_000);
+        assertTrue(report, report.contains("test device"));
+        assertTrue(report, report.contains("malformed 1, lost 3, dropped 2, reconnects 1"));
+        PipelineMetrics.unregister(metrics);
+    }
+
+    @Test
+    public void onAlertShown_isRecordedWhileDisabled() {
+        PipelineMetrics metrics = PipelineMetrics.register("button");
+        PipelineMetrics.setEnabled(false);
+        metrics.onAlertShown(1_000_000, 9_000_000);
+
+        assertEquals(1, metrics.getAlertHistogram().getCount());
+        assertEquals(8_000_000, metrics.getAlertHistogram().getMaxNanos());
+        StringBuilder report = new StringBuilder();
+        metrics.report(report, 1_000_000_000);
+        assertTrue(report.toString(), report.toString().contains("alert"));
+        PipelineMetrics.unregister(metrics);
+    }
+
+    @Test
+    public void unregister_removesTheSourceFromReportsAndFrames() {
+        PipelineMetrics gone = PipelineMetrics.register("gone device");
+        PipelineMetrics kept = PipelineMetrics.register("kept device");
+        PipelineMetrics.setEnabled(true);
+        gone.onDelivered(1_000, 2_000, 3_000);
+        kept.onDelivered(1_000, 2_000, 3_000);
+
+        PipelineMetrics.unregister(gone);
+        PipelineMetrics.onFrameRendered(10_000);
+
+        assertEquals(0, gone.getEndToEndHistogram().getCount());
+        assertEquals(1, kept.getEndToEndHistogram().getCount());
+        String report = PipelineMetrics.reportAll(1_000_000_000);
+        assertFalse(report, report.contains("gone device"));
+        assertTrue(report, report.contains("kept device"));
+        PipelineMetrics.unregister(kept);
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.applicationtrial;
+
+import com.example.Application.DataReciever;
+import com.example.Application.DecimationCache;
+import com.example.Application.ReplayDevice;
+import com.example.Application.ReplaySource;
+import com.example.Application.SampleStore;
+import com.example.Application.SessionRecorder;
+import com.example.Application.SessionReplaySource;
+import com.example.Application.SignalGenerator;
+import com.example.Application.SyntheticReplaySource;
+import com.example.Application.TextReplaySource;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link ReplayDevice} with the NeuroKit2 signal from
+ * {@code pythonProject/ppg_values.txt}, with recorded sessions and with synthetic signals.
+ */
+public class ReplayDeviceTest {
+    // relative to the app module, the working directory of the unit tests
+    private static final File PPG_VALUES = new File("../../../pythonProject/ppg_values.txt");
+    private static final double PPG_SAMPLE_RATE = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Stores the samples like MainActivity and checks their order. */
+    private static class Receiver implements DataReciever {
+        final SampleStore[] channels = new SampleStore[CHANNEL_COUNT];
+        long firstTimestamp = Long.MIN_VALUE;
+        long lastTimestamp = Long.MIN_VALUE;
+        boolean inOrder = true;
+        // a sample stamped after the time it arrived at, with System.nanoTime() as the clock
+        boolean aheadOfClock;
+
+        Receiver() {
+            for (int i = 0; i < CHANNEL_COUNT; i++) {
+                channels[i] = new SampleStore(1 << 16);
+            }
+        }
+
+        @Override
+        public void onSample(int channel, long timestampNanos, int value) {
+            onSamples(channel, new long[]{timestampNanos}, new int[]{value}, 0, 1);
+        }
+
+        @Override
+        public void onSamples(int channel, long[] timestampsNanos, int[] values, int offset, int count) {
+            long now = System.nanoTime();
+            for (int i = offset; i < offset + count; i++) {
+                inOrder &= timestampsNanos[i] >= lastTimestamp;
+                aheadOfClock |= timestampsNanos[i] > now;
+                if (firstTimestamp == Long.MIN_VALUE) {
+                    firstTimestamp = timestampsNanos[i];
+                }
+                lastTimestamp = timestampsNanos[i];
+                channels[channel].append(timestampsNanos[i], values[i]);
+            }
+        }
+    }
+
+    private ReplayDevice device;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (device != null) {
+            device.stop();
+        }
+    }
+
+    private static TextReplaySource ppg(boolean loop) throws IOException {
+        return TextReplaySource.mockupPpg(new FileReader(PPG_VALUES), PPG_SAMPLE_RATE, loop);
+    }
+
+    /** Calls onFrame like the Choreographer until the condition holds or the timeout expires. */
+    private void pumpFrames(long timeoutMs, BooleanSupplier done) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (!done.getAsBoolean() && System.nanoTime() < deadline) {
+            device.onFrame();
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void textSource_deliversTheScaledSignal() throws Exception {
+        List<String> lines = Files.readAllLines(PPG_VALUES.toPath());
+        Receiver receiver = new Receiver();
+        device = new ReplayDevice(ppg(false), receiver);
+        device.setSpeed(ReplayDevice.AS_FAST_AS_POSSIBLE);
+        device.start();
+        pumpFrames(5000, device::isFinished);
+
+        SampleStore store = receiver.channels[DataReciever.CHANNEL_MOCK_PPG];
+        assertTrue(device.isFinished());
+        assertEquals(lines.size(), store.getEndIndex());
+        for (int i = 0; i < lines.size(); i += 97) {
+            assertEquals(Math.round(10 + 45 * Double.parseDouble(lines.get(i))), store.get(i), 0.0);
+        }
+    }
+
+    @Test
+    public void syntheticSource_deliversTheGeneratedSignal() throws Exception {
+        SyntheticReplaySource source = SyntheticReplaySource.parse("synthetic:ppg:90");
+        assertEquals(90, source.getGenerator().getHeartRate(), 1e-9);
+        SignalGenerator reference = new SignalGenerator(SignalGenerator.WAVE_PPG, SignalGenerator.DEFAULT_SAMPLING_RATE_HZ);
+        reference.setHeartRate(90);
+        int[] expected = new int[1000];
+        reference.generate(expected, 0, expected.length);
+
+        Receiver receiver = new Receiver();
+        device = new ReplayDevice(source, receiver);
+        device.setSpeed(ReplayDevice.AS_FAST_AS_POSSIBLE);
+        device.start();
+        pumpFrames(5000, () -> receiver.channels[DataReciever.CHANNEL_MOCK_PPG].getEndIndex() >= expected.length);
+
+        SampleStore store = receiver.channels[DataReciever.CHANNEL_MOCK_PPG];
+        assertTrue(receiver.inOrder);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], store.get(i), 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void syntheticSource_rejectsUnknownWaves() {
+        SyntheticReplaySource.parse("synthetic:sawtooth");
+    }
+
+    @Test
+    public void realTime_isPacedBySpeedFactor() throws Exception {
+        Receiver receiver = new Receiver();
+        device = new ReplayDevice(ppg(false), receiver);
+        device.setSpeed(4);
+        long start = System.nanoTime();
+        device.start();
+        // 100 samples are one second of signal, a quarter of a second at 4x
+        pumpFrames(5000, () -> device.getDeliveredSampleCount() >= 101);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("took " + elapsedMs + " ms", elapsedMs >= 200 && elapsedMs < 1000);
+    }
+
+    @Test
+    public void pauseAndSeek() throws Exception {
+        Receiver receiver = new Receiver();
+        device = new ReplayDevice(ppg(false), receiver);
+        device.setSpeed(10);
+        device.start();
+        pumpFrames(5000, () -> device.getDeliveredSampleCount() >= 50);
+
+        device.pause();
+        Thread.sleep(50);
+        device.onFrame();
+        long pausedAt = device.getDeliveredSampleCount();
+        Thread.sleep(100);
+        device.onFrame();
+        assertEquals(pausedAt, device.getDeliveredSampleCount());
+
+        // 5 s into the signal is sample 500
+        device.seek(TimeUnit.SECONDS.toNanos(5));
+        device.setSpeed(ReplayDevice.AS_FAST_AS_POSSIBLE);
+        device.resume();
+        pumpFrames(5000, device::isFinished);
+        SampleStore store = receiver.channels[DataReciever.CHANNEL_MOCK_PPG];
+        assertEquals(pausedAt + 500, store.getEndIndex());
+        assertTrue(receiver.inOrder);
+    }
+
+    @Test
+    public void timestamps_followTheClockAcrossSeekAndLoop() throws Exception {
+        Receiver receiver = new Receiver();
+        // the signal is 10 s long, so from 8 s the replay runs into the next loop
+        device = new ReplayDevice(ppg(true), receiver);
+        device.setSpeed(20);
+        long start = System.nanoTime();
+        device.start();
+        device.seek(TimeUnit.SECONDS.toNanos(8));
+        pumpFrames(5000, () -> device.getDeliveredSampleCount() >= 500);
+        // back to the start of the signal, whose recorded timestamps are smaller
+        device.seek(0);
+        long seekedAt = device.getDeliveredSampleCount();
+        pumpFrames(5000, () -> device.getDeliveredSampleCount() >= seekedAt + 100);
+        long end = System.nanoTime();
+
+        assertTrue(receiver.inOrder);
+        assertTrue(receiver.firstTimestamp >= start);
+        // paced samples are handed over when they are due, not before
+        assertTrue(receiver.lastTimestamp <= end);
+    }
+
+    @Test
+    public void timestamps_neverPassTheClockAfterFastReplay() throws Exception {
+        Receiver receiver = new Receiver();
+        device = new ReplayDevice(ppg(true), receiver);
+        device.setSpeed(ReplayDevice.AS_FAST_AS_POSSIBLE);
+        device.start();
+        // minutes of signal in a fraction of a second
+        pumpFrames(5000, () -> device.getDeliveredSampleCount() >= 20_000);
+        device.setSpeed(ReplayDevice.REAL_TIME);
+        long switchedAt = device.getDeliveredSampleCount();
+        pumpFrames(5000, () -> device.getDeliveredSampleCount() >= switchedAt + 20);
+
+        assertTrue(receiver.inOrder);
+        assertFalse(receiver.aheadOfClock);
+        assertTrue(receiver.lastTimestamp <= System.nanoTime());
+    }
+
+    @Test
+    public void recordedSession_replaysAllChannelsInTimeOrder() throws Exception {
+        File dir = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(dir, "s", DataReciever.CHANNEL_COUNT);
+        recorder.start();
+        int[] channels = {DataReciever.CHANNEL_SPO2_PPG, DataReciever.CHANNEL_SPO2_PULSE_RATE, DataReciever.CHANNEL_ALERT};
+        for (int i = 0; i < 3000; i++) {
+            for (int c = 0; c < channels.length; c++) {
+                if (channels[c] != DataReciever.CHANNEL_ALERT || i % 500 == 0) {
+                    recorder.record(channels[c], 1_000_000_000L + i * 10_000_000L + c * 1000L, i);
+                }
+            }
+        }
+        recorder.close();
+
+        Receiver receiver = new Receiver();
+        ReplaySource source = new SessionReplaySource(dir, "s");
+        assertEquals(2999 * 10_000_000L + 1000, source.getDurationNanos());
+        device = new ReplayDevice(source, receiver);
+        device.setSpeed(ReplayDevice.AS_FAST_AS_POSSIBLE);
+        device.start();
+        pumpFrames(5000, device::isFinished);
+
+        assertTrue(receiver.inOrder);
+        assertEquals(3000, receiver.channels[DataReciever.CHANNEL_SPO2_PPG].getEndIndex());
+        assertEquals(3000, receiver.channels[DataReciever.CHANNEL_SPO2_PULSE_RATE].getEndIndex());
+        assertEquals(6, receiver.channels[DataReciever.CHANNEL_ALERT].getEndIndex());
+        assertEquals(2999, receiver.channels[DataReciever.CHANNEL_SPO2_PPG].get(2999), 0.0);
+    }
+
+    @Test
+    public void asFastAsPossible_reportsPipelineThroughput() throws Exception {
+        Receiver receiver = new Receiver();
+        device = new ReplayDevice(ppg(true), receiver);
+        device.setSpeed(ReplayDevice.AS_FAST_AS_POSSIBLE);
+        SampleStore store = receiver.channels[DataReciever.CHANNEL_MOCK_PPG];
+        DecimationCache decimation = new DecimationCache(store, DecimationCache.MODE_MIN_MAX);
+        double[] x = new double[2048];
+        double[] y = new double[2048];
+        device.start();
+
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        while (System.nanoTime() < end) {
+            device.onFrame();
+            // what the waveform view does with the history every frame
+            decimation.decimate(store.getEndIndex() - 10_000, store.getEndIndex(), 10_000 / 512.0, x, y);
+        }
+
+        System.out.printf("replay as fast as possible: %.0f samples/s through decoding, storage and decimation%n",
+                device.getSamplesPerSecond());
+        assertNull(device.getFailure());
+        assertTrue(device.getSamplesPerSecond() > 100_000);
+    }
+}
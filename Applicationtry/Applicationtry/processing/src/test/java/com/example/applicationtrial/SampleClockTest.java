@@ -0,0 +1,66 @@
+package com.example.applicationtrial;
+
+import com.example.Application.SampleClock;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link SampleClock}: the samples of a notification are spaced by the sample
+ * period, the newest one gets the arrival time and timestamps never go backwards.
+ */
+public class SampleClockTest {
+    private static final long PERIOD = 20_000_000L;
+
+    @Test
+    public void stamp_spacesSamplesBackFromArrival() {
+        SampleClock clock = new SampleClock(50);
+        assertEquals(PERIOD, clock.getPeriodNanos());
+
+        clock.stamp(1_000_000_000L, 5);
+
+        assertEquals(1_000_000_000L, clock.timestampOf(4));
+        assertEquals(1_000_000_000L - 4 * PERIOD, clock.timestampOf(0));
+        assertEquals(PERIOD, clock.timestampOf(3) - clock.timestampOf(2));
+    }
+
+    @Test
+    public void earlyNotification_isSqueezedAfterThePreviousOne() {
+        SampleClock clock = new SampleClock(50);
+        clock.stamp(1_000_000_000L, 5);
+        long previous = clock.timestampOf(4);
+
+        // queued behind the previous one, arrives 10 ms later instead of 100 ms
+        clock.stamp(1_010_000_000L, 5);
+
+        assertTrue(clock.timestampOf(0) >= previous);
+        assertEquals(1_010_000_000L, clock.timestampOf(4));
+        for (int i = 1; i < 5; i++) {
+            assertTrue(clock.timestampOf(i) >= clock.timestampOf(i - 1));
+        }
+    }
+
+    @Test
+    public void reset_forgetsThePreviousNotification() {
+        SampleClock clock = new SampleClock(50);
+        clock.stamp(1_000_000_000L, 5);
+        clock.reset();
+
+        clock.stamp(1_010_000_000L, 5);
+
+        assertEquals(1_010_000_000L - 4 * PERIOD, clock.timestampOf(0));
+    }
+
+    @Test
+    public void unknownRate_stampsEverySampleWithArrival() {
+        SampleClock clock = new SampleClock(0);
+        clock.stamp(42L, 3);
+        assertEquals(42L, clock.timestampOf(0));
+        assertEquals(42L, clock.timestampOf(2));
+
+        clock.setSampleRate(100);
+        clock.stamp(1_000_000_000L, 2);
+        assertEquals(1_000_000_000L - 10_000_000L, clock.timestampOf(0));
+    }
+}
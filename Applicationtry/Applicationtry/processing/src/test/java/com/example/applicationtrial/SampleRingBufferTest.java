@@ -0,0 +1,163 @@
+package com.example.applicationtrial;
+
+import com.example.Application.SampleRingBuffer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link SampleRingBuffer}.
+ */
+public class SampleRingBufferTest {
+
+    @Test
+    public void capacity_isRoundedToPowerOfTwo() {
+        assertEquals(8, new SampleRingBuffer(5, 1).capacity());
+        assertEquals(8, new SampleRingBuffer(8, 1).capacity());
+    }
+
+    @Test
+    public void drain_wrapsAroundAndKeepsOrder() {
+        SampleRingBuffer ring = new SampleRingBuffer(4, 2);
+        int[] record = new int[2];
+        int[] out = new int[8];
+        long[] timestamps = new long[4];
+
+        for (int i = 0; i < 3; i++) {
+            record[0] = i;
+            record[1] = -i;
+            assertTrue(ring.offer(record, i));
+        }
+        assertEquals(3, ring.drain(out, timestamps, 4));
+        for (int i = 3; i < 7; i++) {
+            record[0] = i;
+            record[1] = -i;
+            assertTrue(ring.offer(record, i));
+        }
+
+        assertEquals(4, ring.drain(out, timestamps, 4));
+        assertArrayEquals(new int[]{3, -3, 4, -4, 5, -5, 6, -6}, out);
+        assertArrayEquals(new long[]{3, 4, 5, 6}, timestamps);
+        assertEquals(7, ring.getReadSequence());
+    }
+
+    @Test
+    public void copyWritten_copiesTheLaneOfTheNewRecords() {
+        SampleRingBuffer ring = new SampleRingBuffer(4, 2);
+        int[] record = new int[2];
+        int[] out = new int[8];
+        long[] timestamps = new long[4];
+        for (int i = 0; i < 3; i++) {
+            record[1] = i;
+            ring.offer(record, i);
+        }
+        // already drained records are still there for the producer
+        ring.drain(out, timestamps, 4);
+        long written = ring.getWriteSequence();
+        for (int i = 3; i < 6; i++) {
+            record[1] = i;
+            ring.offer(record, 10 * i);
+        }
+
+        int[] lane = new int[4];
+        assertEquals(3, ring.copyWritten(written, 1, lane, timestamps, 4));
+        assertArrayEquals(new int[]{3, 4, 5, 0}, lane);
+        assertArrayEquals(new long[]{30, 40, 50}, Arrays.copyOf(timestamps, 3));
+    }
+
+    @Test
+    public void offer_dropsAndCountsWhenFull() {
+        SampleRingBuffer ring = new SampleRingBuffer(2, 1);
+        int[] record = {1};
+
+        assertTrue(ring.offer(record, 1));
+        assertTrue(ring.offer(record, 2));
+        assertFalse(ring.offer(record, 3));
+        assertEquals(1, ring.getDroppedCount());
+        assertEquals(2, ring.size());
+    }
+
+    @Test
+    public void concurrentProducer_deliversEverySampleInOrder() throws InterruptedException {
+        final int total = 200_000;
+        SampleRingBuffer ring = new SampleRingBuffer(256, 1);
+        Thread producer = new Thread(() -> {
+            int[] record = new int[1];
+            for (int i = 0; i < total; i++) {
+                record[0] = i;
+                while (!ring.offer(record, i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        int[] out = new int[256];
+        long[] timestamps = new long[256];
+        int expected = 0;
+        while (expected < total) {
+            int count = ring.drain(out, timestamps, 256);
+            for (int i = 0; i < count; i++) {
+                assertEquals(expected, timestamps[i]);
+                assertEquals(expected++, out[i]);
+            }
+        }
+        producer.join();
+        assertEquals(total, ring.getWriteSequence());
+    }
+
+    @Test
+    public void slowConsumer_dropsAndCountsAndDrainsInBoundedTime() throws InterruptedException {
+        final int total = 2_000_000;
+        SampleRingBuffer ring = new SampleRingBuffer(1024, SampleRingBuffer.DEVICE_LANES);
+        // the GATT callback thread never waits for the UI
+        Thread producer = new Thread(() -> {
+            int[] record = new int[SampleRingBuffer.DEVICE_LANES];
+            for (int i = 0; i < total; i++) {
+                record[SampleRingBuffer.LANE_PPG] = i;
+                ring.offer(record, i);
+            }
+        });
+        producer.start();
+
+        // a UI thread that drains one frame every millisecond and falls behind
+        int[] out = new int[ring.capacity() * ring.lanes()];
+        long[] timestamps = new long[ring.capacity()];
+        long[] drainNanos = new long[100_000];
+        int frames = 0;
+        long delivered = 0;
+        int last = -1;
+        while (producer.isAlive() || ring.size() > 0) {
+            long start = System.nanoTime();
+            int count = ring.drain(out, timestamps, ring.capacity());
+            if (frames < drainNanos.length) {
+                drainNanos[frames++] = System.nanoTime() - start;
+            }
+            for (int i = 0; i < count; i++) {
+                int value = out[i * ring.lanes() + SampleRingBuffer.LANE_PPG];
+                // records are lost, never reordered or repeated
+                assertTrue(value > last);
+                assertEquals(value, timestamps[i]);
+                last = value;
+            }
+            delivered += count;
+            Thread.sleep(1);
+        }
+        producer.join();
+
+        assertTrue("the consumer kept up", ring.getDroppedCount() > 0);
+        assertEquals(total, delivered + ring.getDroppedCount());
+        assertEquals(delivered, ring.getWriteSequence());
+        assertEquals(delivered, ring.getReadSequence());
+        // a frame takes at most one ring of records, however far the producer is ahead
+        Arrays.sort(drainNanos, 0, frames);
+        long p99 = drainNanos[frames * 99 / 100];
+        System.out.printf("%d frames, %d delivered, %d dropped, drain p99 %.1f us%n",
+                frames, delivered, ring.getDroppedCount(), p99 / 1e3);
+        assertTrue("drain p99 " + p99 + " ns", p99 < TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
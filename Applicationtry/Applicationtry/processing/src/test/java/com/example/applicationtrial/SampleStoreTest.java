@@ -0,0 +1,41 @@
+package com.example.applicationtrial;
+
+import com.example.Application.SampleStore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link SampleStore}.
+ */
+public class SampleStoreTest {
+
+    @Test
+    public void append_overwritesOldestWhenFull() {
+        SampleStore store = new SampleStore(4);
+        for (int i = 0; i < 6; i++) {
+            store.append(1000 + i * 10, i * 10);
+        }
+
+        assertEquals(2, store.getFirstIndex());
+        assertEquals(6, store.getEndIndex());
+        assertEquals(20, store.get(2), 0.0);
+        assertEquals(50, store.get(5), 0.0);
+    }
+
+    @Test
+    public void indexAt_findsSamplesByTimestamp() {
+        SampleStore store = new SampleStore(4);
+        for (int i = 0; i < 6; i++) {
+            store.append(1000 + i * 10, i);
+        }
+
+        assertEquals(1050, store.getTimestamp(5));
+        // the oldest two were overwritten
+        assertEquals(2, store.indexAt(0));
+        assertEquals(3, store.indexAt(1030));
+        assertEquals(4, store.indexAt(1035));
+        assertEquals(6, store.indexAt(2000));
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.applicationtrial;
+
+import com.example.Application.DataReciever;
+import com.example.Application.SessionExporter;
+import com.example.Application.SessionRecorder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link SessionExporter}: the CSV rows and the .npy arrays hold exactly the
+ * samples of the selected channels and range, and a cancelled export leaves no files behind.
+ */
+public class SessionExporterTest {
+    private static final int CHANNELS = 4;
+    private static final long PERIOD_NANOS = 10_000_000;   // 100 Hz
+    private static final long START_NANOS = 5_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static long timestamp(int sample) {
+        return START_NANOS + sample * PERIOD_NANOS;
+    }
+
+    private static int value(int channel, int sample) {
+        return channel * 1000 + sample % 997 - 300;
+    }
+
+    /** Records {@code samples} samples per channel, delivered in batches of 10. */
+    private File record(int samples) throws Exception {
+        File dir = folder.newFolder();
+        // enough chunks for the whole session, nothing is dropped however slow the writer is
+        int chunks = samples * CHANNELS / SessionRecorder.CHUNK_SAMPLES + 2 * CHANNELS;
+        SessionRecorder recorder = new SessionRecorder(dir, "s", CHANNELS, chunks, 256 * 1024);
+        recorder.start();
+        long[] timestamps = new long[10];
+        int[] values = new int[10];
+        for (int s = 0; s < samples; s += 10) {
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                for (int i = 0; i < 10; i++) {
+                    timestamps[i] = timestamp(s + i);
+                    values[i] = value(channel, s + i);
+                }
+                recorder.record(channel, timestamps, values, 0, 10);
+            }
+        }
+        recorder.close();
+        assertNull(recorder.getFailure());
+        assertEquals(0, recorder.getDroppedSampleCount());
+        return dir;
+    }
+
+    @Test
+    public void csv_holdsTheSelectedChannelsAndRange() throws Exception {
+        File dir = record(20_000);
+        File csv = new File(folder.getRoot(), "s.csv");
+        // samples 5000 to 12499 of channels 3 and 1
+        SessionExporter exporter = new SessionExporter(dir, "s", SessionExporter.FORMAT_CSV, new int[]{3, 1},
+                timestamp(5000), timestamp(12_500), csv);
+        List<File> files = exporter.export();
+
+        assertEquals(1, files.size());
+        try (BufferedReader reader = new BufferedReader(new FileReader(csv))) {
+            assertEquals(SessionExporter.CSV_HEADER.trim(), reader.readLine());
+            for (int channel : new int[]{3, 1}) {
+                for (int sample = 5000; sample < 12_500; sample++) {
+                    long nanos = timestamp(sample) - START_NANOS;
+                    String seconds = String.format(Locale.ROOT, "%d.%06d", nanos / 1_000_000_000,
+                            nanos / 1000 % 1_000_000);
+                    assertEquals(SessionExporter.channelName(channel) + "," + timestamp(sample) + "," + seconds
+                            + "," + value(channel, sample), reader.readLine());
+                }
+            }
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void npy_isATwoRowInt64ArrayPerChannel() throws Exception {
+        File dir = record(30_000);
+        File out = new File(folder.getRoot(), "npy");
+        SessionExporter exporter = new SessionExporter(dir, "s", SessionExporter.FORMAT_NPY, new int[]{0, 2},
+                Long.MIN_VALUE, Long.MAX_VALUE, out);
+        List<File> files = exporter.export();
+
+        assertEquals(2, files.size());
+        // no temporary files are left
+        assertEquals(2, out.list().length);
+        for (int channel : new int[]{0, 2}) {
+            File npy = new File(out, SessionExporter.npyName("s", channel));
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(npy.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals((byte) 0x93, bytes.get(0));
+            assertEquals("NUMPY", new String(bytes.array(), 1, 5, StandardCharsets.US_ASCII));
+            int headerLength = bytes.getShort(8);
+            String header = new String(bytes.array(), 10, headerLength, StandardCharsets.US_ASCII);
+            assertEquals(0, (10 + headerLength) % 64);
+            assertTrue(header, header.startsWith("{'descr': '<i8', 'fortran_order': False, 'shape': (2, 30000), }"));
+            assertTrue(header.endsWith("\n"));
+
+            int data = 10 + headerLength;
+            assertEquals(data + 2 * 8 * 30_000, bytes.capacity());
+            for (int sample = 0; sample < 30_000; sample++) {
+                assertEquals(timestamp(sample), bytes.getLong(data + 8 * sample));
+                assertEquals(value(channel, sample), bytes.getLong(data + 8 * (30_000 + sample)));
+            }
+        }
+    }
+
+    @Test
+    public void channelNames_areUniqueForTheAddedSensors() {
+        Set<String> names = new HashSet<>();
+        for (int channel = 0; channel < DataReciever.CHANNEL_COUNT + 4 * DataReciever.CHANNELS_PER_DEVICE; channel++) {
+            assertTrue(SessionExporter.channelName(channel), names.add(SessionExporter.channelName(channel)));
+        }
+        assertEquals("added1_ppg_or_alert", SessionExporter.channelName(DataReciever.CHANNEL_COUNT));
+        assertEquals("added2_beat_interval",
+                SessionExporter.channelName(DataReciever.CHANNEL_COUNT + 2 * DataReciever.CHANNELS_PER_DEVICE - 1));
+    }
+
+    @Test
+    public void background_reportsProgressAndCanBeCancelled() throws Exception {
+        File dir = record(50_000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<Long> progress = new ArrayList<>();
+            List<IOException> failures = new ArrayList<>();
+            File csv = new File(folder.getRoot(), "all.csv");
+            SessionExporter exporter = new SessionExporter(dir, "s", SessionExporter.FORMAT_CSV,
+                    new int[]{0, 1, 2, 3}, Long.MIN_VALUE, Long.MAX_VALUE, csv);
+            exporter.start(executor, Runnable::run, new SessionExporter.Listener() {
+                @Override
+                public void onProgress(long exportedSamples, long totalSamples) {
+                    progress.add(exportedSamples);
+                    assertEquals(4 * 50_000L, totalSamples);
+                }
+
+                @Override
+                public void onFinished(List<File> files, IOException failure) {
+                    failures.add(failure);
+                }
+            }).get(10, TimeUnit.SECONDS);
+
+            assertEquals(1, failures.size());
+            assertNull(failures.get(0));
+            assertTrue(progress.size() > 10);
+            assertEquals(4 * 50_000L, (long) progress.get(progress.size() - 1));
+            for (int i = 1; i < progress.size(); i++) {
+                assertTrue(progress.get(i) > progress.get(i - 1));
+            }
+
+            // cancelled at the first progress report
+            File cancelledCsv = new File(folder.getRoot(), "cancelled.csv");
+            SessionExporter cancelled = new SessionExporter(dir, "s", SessionExporter.FORMAT_CSV,
+                    new int[]{0, 1, 2, 3}, Long.MIN_VALUE, Long.MAX_VALUE, cancelledCsv);
+            failures.clear();
+            cancelled.start(executor, Runnable::run, new SessionExporter.Listener() {
+                @Override
+                public void onProgress(long exportedSamples, long totalSamples) {
+                    cancelled.cancel();
+                }
+
+                @Override
+                public void onFinished(List<File> files, IOException failure) {
+                    assertTrue(files.isEmpty());
+                    failures.add(failure);
+                }
+            }).get(10, TimeUnit.SECONDS);
+
+            assertTrue(failures.get(0) instanceof InterruptedIOException);
+            assertFalse(cancelledCsv.exists());
+            assertTrue(cancelled.getExportedSampleCount() < cancelled.getTotalSampleCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void throughput() throws Exception {
+        File dir = record(100_000);
+        File csv = new File(folder.getRoot(), "big.csv");
+        long start = System.nanoTime();
+        new SessionExporter(dir, "s", SessionExporter.FORMAT_CSV, new int[]{0, 1, 2, 3},
+                Long.MIN_VALUE, Long.MAX_VALUE, csv).export();
+        double csvSeconds = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        new SessionExporter(dir, "s", SessionExporter.FORMAT_NPY, new int[]{0, 1, 2, 3},
+                Long.MIN_VALUE, Long.MAX_VALUE, new File(folder.getRoot(), "big")).export();
+        double npySeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("export of 400000 samples: csv %.2f M samples/s, npy %.2f M samples/s%n",
+                0.4 / csvSeconds, 0.4 / npySeconds);
+        assertTrue(csv.length() > 0);
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.applicationtrial;
+
+import com.example.Application.SampleBlockCodec;
+import com.example.Application.SegmentReader;
+import com.example.Application.SessionRecorder;
+import com.example.Application.SessionReplaySource;
+import com.example.Application.SummaryPyramid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link SessionRecorder} and {@link SegmentReader}: round trip, seeking,
+ * write throughput, recovery of a segment that was cut off by a crash, handing over the samples
+ * of quiet channels, and the summary file.
+ */
+public class SessionRecorderTest {
+    private static final int CHANNELS = 6;
+    private static final long PERIOD_NANOS = 20_000_000;   // 50 Hz
+    private static final long START_NANOS = 123_456_789_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static int ppg(long sample) {
+        return 50 + (int) Math.round(30 * Math.sin(sample * 2 * Math.PI / 50));
+    }
+
+    /** Records {@code samples} samples per channel at 50 Hz, delivered in batches of 5. */
+    private static void recordSession(SessionRecorder recorder, int samples) {
+        long[] timestamps = new long[5];
+        int[] values = new int[5];
+        for (int s = 0; s < samples; s += 5) {
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                for (int i = 0; i < 5; i++) {
+                    timestamps[i] = START_NANOS + (s + i) * PERIOD_NANOS;
+                    values[i] = channel == 0 ? ppg(s + i) : 90 + channel;
+                }
+                recorder.record(channel, timestamps, values, 0, 5);
+            }
+        }
+    }
+
+    private File segment(File dir, int number) {
+        return new File(dir, SessionRecorder.segmentName("test", number));
+    }
+
+    @Test
+    public void roundTrip_restoresAllSamples() throws Exception {
+        File dir = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(dir, "test", CHANNELS);
+        recorder.start();
+        recordSession(recorder, 3000);
+        recorder.close();
+
+        assertNull(recorder.getFailure());
+        assertEquals(0, recorder.getDroppedSampleCount());
+        try (SegmentReader reader = new SegmentReader(segment(dir, 0))) {
+            long[] timestamps = new long[SessionRecorder.CHUNK_SAMPLES];
+            int[] values = new int[SessionRecorder.CHUNK_SAMPLES];
+            int sample = 0;
+            for (SegmentReader.Block block : reader.getBlocks(0)) {
+                int count = reader.readBlock(block, timestamps, values);
+                for (int i = 0; i < count; i++, sample++) {
+                    assertEquals(START_NANOS + sample * PERIOD_NANOS, timestamps[i]);
+                    assertEquals(ppg(sample), values[i]);
+                }
+            }
+            assertEquals(3000, sample);
+            assertEquals(reader.getValidLength(), segment(dir, 0).length());
+        }
+    }
+
+    @Test
+    public void findBlock_seeksWithTheSparseIndex() throws Exception {
+        File dir = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(dir, "test", CHANNELS);
+        recorder.start();
+        recordSession(recorder, 5000);
+        recorder.close();
+
+        try (SegmentReader reader = new SegmentReader(segment(dir, 0))) {
+            List<SegmentReader.Block> blocks = reader.getBlocks(2);
+            assertTrue(blocks.size() > 1);
+            long target = START_NANOS + 4321 * PERIOD_NANOS;
+            SegmentReader.Block block = blocks.get(reader.findBlock(2, target));
+            assertTrue(block.firstTimestampNanos <= target && target <= block.lastTimestampNanos);
+            assertEquals(0, reader.findBlock(2, 0));
+            assertEquals(-1, reader.findBlock(2, Long.MAX_VALUE));
+            assertEquals(-1, reader.findBlock(42, target));
+        }
+    }
+
+    @Test
+    public void segments_rollOverAtTheSizeLimit() throws Exception {
+        File dir = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(dir, "test", CHANNELS, 256, 16 * 1024);
+        recorder.start();
+        recordSession(recorder, 20_000);
+        recorder.close();
+
+        int segments = 0;
+        long samples = 0;
+        while (segment(dir, segments).exists()) {
+            try (SegmentReader reader = new SegmentReader(segment(dir, segments))) {
+                for (SegmentReader.Block block : reader.getBlocks()) {
+                    samples += block.count;
+                }
+            }
+            segments++;
+        }
+        assertTrue(segments > 1);
+        assertEquals(20_000L * CHANNELS, samples);
+    }
+
+    @Test
+    public void writeThroughput_andSizeOfALongSession() throws Exception {
+        File dir = folder.newFolder();
+        // about 1 hour of 6 channels at 50 Hz, fed as fast as possible; enough chunks for all of it
+        final int samples = 180_000;
+        int chunks = samples * CHANNELS / SessionRecorder.CHUNK_SAMPLES + 2 * CHANNELS;
+        SessionRecorder recorder = new SessionRecorder(dir, "test", CHANNELS, chunks, SessionRecorder.DEFAULT_SEGMENT_BYTES);
+        recorder.start();
+        long start = System.nanoTime();
+        recordSession(recorder, samples);
+        recorder.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long total = (long) samples * CHANNELS;
+        double bytesPerSample = (double) recorder.getBytesWritten() / total;
+        System.out.printf("recorder: %.1f M samples/s, %.2f bytes/sample, 3 h at 6 x 50 Hz: %.1f MB%n",
+                total / seconds / 1e6, bytesPerSample, bytesPerSample * 3 * 3600 * 50 * CHANNELS / 1e6);
+        assertEquals(0, recorder.getDroppedSampleCount());
+        assertTrue(bytesPerSample < 3);
+    }
+
+    @Test
+    public void crashMidBlock_recoversAllCompleteBlocks() throws Exception {
+        File dir = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(dir, "test", CHANNELS);
+        recorder.start();
+        recordSession(recorder, 2000);
+        recorder.close();
+        File segment = segment(dir, 0);
+        byte[] complete = Files.readAllBytes(segment.toPath());
+        int blocks;
+        try (SegmentReader reader = new SegmentReader(segment)) {
+            blocks = reader.getBlocks().size();
+        }
+
+        // the process dies at different points while appending one more block
+        for (int cut = 1; cut < 200; cut += 13) {
+            File crashed = folder.newFile();
+            byte[] partial = new byte[complete.length + cut];
+            System.arraycopy(complete, 0, partial, 0, complete.length);
+            System.arraycopy(complete, SampleBlockCodec.SEGMENT_HEADER_LENGTH, partial, complete.length, cut);
+            Files.write(crashed.toPath(), partial);
+
+            try (SegmentReader reader = new SegmentReader(crashed)) {
+                assertEquals(blocks, reader.getBlocks().size());
+            }
+            assertEquals(cut, SegmentReader.recover(crashed));
+            assertArrayEquals(complete, Files.readAllBytes(crashed.toPath()));
+        }
+    }
+
+    @Test
+    public void corruptBlock_endsTheValidData() throws Exception {
+        File dir = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(dir, "test", CHANNELS);
+        recorder.start();
+        recordSession(recorder, 2000);
+        recorder.close();
+        File segment = segment(dir, 0);
+        long length = segment.length();
+
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // flip a payload byte of the last block
+            file.seek(length - SampleBlockCodec.CRC_LENGTH - 1);
+            int b = file.read();
+            file.seek(length - SampleBlockCodec.CRC_LENGTH - 1);
+            file.write(b ^ 0x55);
+        }
+        int blocks;
+        try (SegmentReader reader = new SegmentReader(segment)) {
+            blocks = reader.getBlocks().size();
+            assertTrue(reader.getValidLength() < length);
+        }
+
+        // a new session recovers the leftover segment of a session that crashed before it was
+        // closed, i.e. saved no summary, before it writes
+        assertTrue(new File(dir, SessionRecorder.summaryName("test")).delete());
+        SessionRecorder next = new SessionRecorder(dir, "next", CHANNELS);
+        next.start();
+        next.close();
+        try (SegmentReader reader = new SegmentReader(segment)) {
+            assertEquals(blocks, reader.getBlocks().size());
+            assertEquals(reader.getValidLength(), segment.length());
+        }
+    }
+
+    @Test
+    public void summary_isSavedAndRebuiltWhenMissing() throws Exception {
+        File dir = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(dir, "test", CHANNELS);
+        recorder.start();
+        recordSession(recorder, 3000);
+        recorder.close();
+
+        File summaryFile = new File(dir, SessionRecorder.summaryName("test"));
+        assertTrue(summaryFile.exists());
+        SummaryPyramid.Summary expected = new SummaryPyramid.Summary();
+        SummaryPyramid.Summary actual = new SummaryPyramid.Summary();
+        // one minute of samples, the second minute at a resolution of 10 s
+        long from = START_NANOS + 1000 * PERIOD_NANOS;
+        long to = from + 60_000_000_000L;
+        recorder.getSummary(0).summarize(from, to, 10_000_000_000L, expected);
+        assertEquals(3000, recorder.getSummary(0).getSampleCount());
+        assertEquals(20, expected.min);
+        assertEquals(80, expected.max);
+
+        try (SessionReplaySource loaded = new SessionReplaySource(dir, "test")) {
+            SummaryPyramid[] summaries = loaded.getSummaries();
+            assertEquals(CHANNELS, summaries.length);
+            summaries[0].summarize(from, to, 10_000_000_000L, actual);
+            assertEquals(expected.toString(), actual.toString());
+            summaries[3].summarize(from, to, 10_000_000_000L, actual);
+            assertEquals(93, actual.min);
+            assertEquals(93, actual.max);
+        }
+        assertTrue(summaryFile.delete());
+        try (SessionReplaySource rebuilt = new SessionReplaySource(dir, "test")) {
+            rebuilt.getSummaries()[0].summarize(from, to, 10_000_000_000L, actual);
+            assertEquals(expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    public void flushStale_handsOverQuietChannels() throws Exception {
+        File dir = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(dir, "test", CHANNELS);
+        recorder.start();
+        // one button press, then nothing on that channel
+        recorder.record(5, START_NANOS, 1);
+        recorder.flushStale(System.nanoTime());
+        Thread.sleep(50);
+        assertEquals(0, recorder.getBytesWritten());
+
+        recorder.flushStale(System.nanoTime() + TimeUnit.SECONDS.toNanos(6));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (recorder.getBytesWritten() <= SampleBlockCodec.SEGMENT_HEADER_LENGTH && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        // written before the session is closed
+        try (SegmentReader reader = new SegmentReader(segment(dir, 0))) {
+            assertEquals(1, reader.getBlocks(5).size());
+        }
+        recorder.close();
+    }
+
+    @Test
+    public void start_recoversOnlyTheLastSegmentOfCrashedSessions() throws Exception {
+        File dir = folder.newFolder();
+        for (String session : new String[]{"closed", "crashed"}) {
+            SessionRecorder recorder = new SessionRecorder(dir, session, CHANNELS, SessionRecorder.DEFAULT_CHUNKS, 4096);
+            recorder.start();
+            recordSession(recorder, 3000);
+            recorder.close();
+        }
+        assertTrue(new File(dir, SessionRecorder.summaryName("crashed")).delete());
+        File closedLast = new File(dir, SessionRecorder.segmentName("closed", 1));
+        File crashedFirst = new File(dir, SessionRecorder.segmentName("crashed", 0));
+        int last = 1;
+        while (new File(dir, SessionRecorder.segmentName("crashed", last + 1)).exists()) {
+            last++;
+        }
+        File crashedLast = new File(dir, SessionRecorder.segmentName("crashed", last));
+        assertTrue(crashedLast.exists());
+        File[] garbled = {closedLast, crashedFirst, crashedLast};
+        long[] lengths = new long[garbled.length];
+        for (int i = 0; i < garbled.length; i++) {
+            lengths[i] = garbled[i].length();
+            Files.write(garbled[i].toPath(), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        }
+
+        SessionRecorder next = new SessionRecorder(dir, "next", CHANNELS);
+        next.start();
+        next.close();
+
+        // neither the closed session nor the older segments of the crashed one are read
+        assertEquals(lengths[0] + 3, closedLast.length());
+        assertEquals(lengths[1] + 3, crashedFirst.length());
+        assertEquals(lengths[2], crashedLast.length());
+    }
+
+    @Test(expected = IOException.class)
+    public void notASegment_isRejected() throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        new SegmentReader(file).close();
+    }
+}
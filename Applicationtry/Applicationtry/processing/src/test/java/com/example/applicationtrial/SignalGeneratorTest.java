@@ -0,0 +1,156 @@
+package com.example.applicationtrial;
+
+import com.example.Application.BeatDetector;
+import com.example.Application.SignalGenerator;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link SignalGenerator}: the waveforms match the formulas of the ESP32
+ * sketch, the PPG table matches {@code PPG_Values.h}, and the synthesized pulse has the heart
+ * rate it was given.
+ */
+public class SignalGeneratorTest {
+    // relative to the module directory, the working directory of the unit tests
+    private static final File PPG_TABLE = new File("../../../ESP32_signal19a/PPG_Values.h");
+    private static final double RATE = SignalGenerator.DEFAULT_SAMPLING_RATE_HZ;
+
+    private static float[] generate(SignalGenerator generator, int count) {
+        float[] out = new float[count];
+        generator.generate(out, 0, count);
+        return out;
+    }
+
+    @Test
+    public void sketchWaveforms_matchTheFormulas() {
+        double frequency = 1.5;
+        for (int waveType = SignalGenerator.WAVE_SINE; waveType <= SignalGenerator.WAVE_TRIANGLE; waveType++) {
+            SignalGenerator generator = new SignalGenerator(waveType, RATE);
+            generator.setFrequency(frequency);
+            float[] out = generate(generator, 500);
+
+            for (int i = 0; i < out.length; i++) {
+                double sin = Math.sin(2 * Math.PI * frequency * i / RATE);
+                double expected;
+                if (waveType == SignalGenerator.WAVE_SINE) {
+                    expected = 50 + 30 * sin;
+                } else if (waveType == SignalGenerator.WAVE_SQUARE) {
+                    expected = 50 + 30 * (sin >= 0 ? 1 : -1);
+                } else {
+                    expected = 50 + 30 * (2 / Math.PI) * Math.asin(sin);
+                }
+                // the square flips where the sine crosses zero, up to one table entry off
+                if (waveType == SignalGenerator.WAVE_SQUARE && Math.abs(sin) < 0.01) {
+                    continue;
+                }
+                // one table entry is 2 pi / 4096 of phase
+                assertEquals("wave " + waveType + " sample " + i, expected, out[i], 0.1);
+            }
+        }
+    }
+
+    @Test
+    public void ppgTable_matchesTheSketch() throws IOException {
+        String source = new String(Files.readAllBytes(PPG_TABLE.toPath()), StandardCharsets.US_ASCII);
+        Matcher matcher = Pattern.compile("-?\\d+\\.\\d+").matcher(source.substring(source.indexOf('{')));
+        List<Float> values = new ArrayList<>();
+        while (matcher.find()) {
+            values.add(Float.parseFloat(matcher.group()));
+        }
+        float[] table = SignalGenerator.getPpgTable();
+
+        assertEquals(values.size(), table.length);
+        for (int i = 0; i < table.length; i++) {
+            assertEquals(values.get(i), table[i], 0);
+        }
+    }
+
+    @Test
+    public void ppgTable_isScaledAndLooped() {
+        SignalGenerator generator = new SignalGenerator(SignalGenerator.WAVE_PPG_TABLE, RATE);
+        float[] table = SignalGenerator.getPpgTable();
+        int[] out = new int[2500];
+        generator.generate(out, 0, out.length);
+
+        for (int i = 0; i < out.length; i++) {
+            assertEquals((int) Math.round(10 + 45.0 * table[i % table.length]), out[i]);
+        }
+    }
+
+    @Test
+    public void blocks_continueSeamlessly() {
+        SignalGenerator whole = new SignalGenerator(SignalGenerator.WAVE_PPG, RATE);
+        SignalGenerator pieces = new SignalGenerator(SignalGenerator.WAVE_PPG, RATE);
+        SignalGenerator seeked = new SignalGenerator(SignalGenerator.WAVE_PPG, RATE);
+        float[] expected = generate(whole, 1000);
+        float[] actual = new float[1000];
+        for (int offset = 0, block = 1; offset < actual.length; offset += block, block++) {
+            pieces.generate(actual, offset, Math.min(block, actual.length - offset));
+        }
+        seeked.seek(600);
+
+        assertArrayEquals(expected, actual, 0);
+        assertEquals(expected[600], generate(seeked, 1)[0], 0);
+    }
+
+    @Test
+    public void ppgPulse_hasTheHeartRate() {
+        for (double bpm : new double[]{45, 72, 120, 180}) {
+            SignalGenerator generator = new SignalGenerator(SignalGenerator.WAVE_PPG, 100);
+            generator.setHeartRate(bpm);
+            int count = 100 * 30;
+            long[] timestamps = new long[count];
+            int[] values = new int[count];
+            generator.generate(values, 0, count);
+            for (int i = 0; i < count; i++) {
+                timestamps[i] = i * 10_000_000L;
+            }
+            BeatDetector detector = new BeatDetector(100);
+            int[] rates = new int[count];
+            int beats = detector.processAll(timestamps, values, count, new long[count], rates, new int[count]);
+
+            // 30 s of signal, less the warm-up of the detector
+            assertTrue(bpm + " bpm: " + beats + " beats", beats >= bpm / 2 * 0.85);
+            for (int i = 0; i < beats; i++) {
+                assertEquals(bpm, rates[i], bpm * 0.05);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void frequencyAboveNyquist_isRejected() {
+        new SignalGenerator(SignalGenerator.WAVE_SINE, RATE).setFrequency(RATE / 2);
+    }
+
+    @Test
+    public void throughput() {
+        // a thousand channels of 50 Hz, one second per block
+        SignalGenerator[] channels = new SignalGenerator[1000];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = new SignalGenerator(i % 5, RATE);
+        }
+        int[] block = new int[50];
+        long samples = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < 200; round++) {
+            for (SignalGenerator channel : channels) {
+                channel.generate(block, 0, block.length);
+                samples += block.length;
+            }
+        }
+        double nanosPerSample = (double) (System.nanoTime() - start) / samples;
+        System.out.printf("signal generator: %.1f ns per sample%n", nanosPerSample);
+        assertTrue(nanosPerSample < 100);
+    }
+}
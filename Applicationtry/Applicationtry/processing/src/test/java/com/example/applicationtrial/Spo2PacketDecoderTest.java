@@ -0,0 +1,168 @@
+package com.example.applicationtrial;
+
+import com.example.Application.SampleRingBuffer;
+import com.example.Application.Spo2PacketDecoder;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link Spo2PacketDecoder}. It compares the old one-lambda-per-frame
+ * delivery, which posts to the looper for every frame, with decoding into the device ring buffer,
+ * which the UI drains once per display frame, in terms of allocated bytes per notification. How
+ * the ring behaves when the UI falls behind is tested in {@code SampleRingBufferTest}.
+ */
+public class Spo2PacketDecoderTest {
+    private static final int FRAMES_PER_PACKET = 4;
+    private static final int NOTIFICATIONS = 20_000;
+
+    /** Stand-in for the main looper: queues posted tasks and counts them. */
+    private static class CountingLooper implements Executor {
+        final ArrayDeque<Runnable> queue = new ArrayDeque<>(64);
+        long posts;
+
+        @Override
+        public void execute(Runnable task) {
+            posts++;
+            queue.add(task);
+        }
+
+        void drain() {
+            Runnable task;
+            while ((task = queue.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private int lastSpo2, lastPulseRate;
+    private long ppgSum;
+
+    private void updateUI(int spo2, int pulseRate, int ppg) {
+        lastSpo2 = spo2;
+        lastPulseRate = pulseRate;
+        ppgSum += ppg;
+    }
+
+    private static byte[] packet(int frames) {
+        byte[] packet = new byte[frames * Spo2PacketDecoder.FRAME_LENGTH];
+        for (int f = 0; f < frames; f++) {
+            int i = f * Spo2PacketDecoder.FRAME_LENGTH;
+            packet[i] = (byte) 0x80;
+            packet[i + 1] = (byte) (40 + f);
+            packet[i + 2] = 64;        // pulse rate bit 7
+            packet[i + 3] = 2;         // pulse rate bits 0-6 -> 130 bpm
+            packet[i + 4] = 97;
+        }
+        return packet;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** The delivery path Spo2Device.processPacket used before: one lambda and one post per frame. */
+    private void legacyProcessPacket(CountingLooper looper, byte[] packet) {
+        for (int i = 0; i < packet.length - 4; i += 5) {
+            int spo2 = packet[i + 4];
+            int pulseRate = packet[i + 3] | ((packet[2] & 64) << 1);
+            int ppg = packet[i + 1];
+            looper.execute(() -> updateUI(spo2, pulseRate, ppg));
+        }
+    }
+
+    /** What a Choreographer frame callback does with the drained records. */
+    private void drainFrame(SampleRingBuffer ring, int[] records, long[] timestamps) {
+        int count = ring.drain(records, timestamps, ring.capacity());
+        for (int i = 0; i < count; i++) {
+            int r = i * SampleRingBuffer.DEVICE_LANES;
+            updateUI(records[r + SampleRingBuffer.LANE_SPO2], records[r + SampleRingBuffer.LANE_PULSE_RATE],
+                    records[r + SampleRingBuffer.LANE_PPG]);
+        }
+    }
+
+    @Test
+    public void decodeFrames_readsAllFrames() {
+        int[] spo2 = new int[8], pulseRate = new int[8], ppg = new int[8];
+        int frames = Spo2PacketDecoder.decodeFrames(packet(3), spo2, pulseRate, ppg, 0, 8);
+
+        assertEquals(3, frames);
+        assertEquals(97, spo2[2]);
+        assertEquals(130, pulseRate[2]);
+        assertEquals(42, ppg[2]);
+    }
+
+    @Test
+    public void decodeFrames_rejectsMalformedPackets() {
+        int[] a = new int[4], b = new int[4], c = new int[4];
+        assertEquals(Spo2PacketDecoder.PACKET_TOO_SHORT, Spo2PacketDecoder.decodeFrames(new byte[3], a, b, c, 0, 4));
+        assertEquals(Spo2PacketDecoder.PACKET_NOT_ALIGNED, Spo2PacketDecoder.decodeFrames(new byte[7], a, b, c, 0, 4));
+    }
+
+    @Test
+    public void decodeInto_appendsOneRecordPerFrame() {
+        SampleRingBuffer ring = new SampleRingBuffer(16, SampleRingBuffer.DEVICE_LANES);
+        int[] records = new int[16 * SampleRingBuffer.DEVICE_LANES];
+        long[] timestamps = new long[16];
+
+        assertEquals(2, new Spo2PacketDecoder().decodeInto(packet(2), ring, 7L));
+        assertEquals(2, ring.drain(records, timestamps, 16));
+        assertEquals(7L, timestamps[1]);
+        assertEquals(41, records[SampleRingBuffer.DEVICE_LANES + SampleRingBuffer.LANE_PPG]);
+        assertEquals(130, records[SampleRingBuffer.DEVICE_LANES + SampleRingBuffer.LANE_PULSE_RATE]);
+        assertEquals(97, records[SampleRingBuffer.DEVICE_LANES + SampleRingBuffer.LANE_SPO2]);
+    }
+
+    @Test
+    public void ringDelivery_needsNoAllocation() {
+        byte[] packet = packet(FRAMES_PER_PACKET);
+
+        // before: one lambda per frame
+        CountingLooper legacyLooper = new CountingLooper();
+        for (int n = 0; n < NOTIFICATIONS; n++) {
+            legacyProcessPacket(legacyLooper, packet);
+            legacyLooper.drain();
+        }
+        legacyLooper.posts = 0;
+        long start = allocatedBytes();
+        for (int n = 0; n < NOTIFICATIONS; n++) {
+            legacyProcessPacket(legacyLooper, packet);
+            legacyLooper.drain();
+        }
+        double legacyBytes = (allocatedBytes() - start) / (double) NOTIFICATIONS;
+        double legacyPosts = legacyLooper.posts / (double) NOTIFICATIONS;
+
+        // after: frames go into the ring buffer, drained once per display frame
+        Spo2PacketDecoder decoder = new Spo2PacketDecoder();
+        SampleRingBuffer ring = new SampleRingBuffer(1024, SampleRingBuffer.DEVICE_LANES);
+        int[] records = new int[ring.capacity() * ring.lanes()];
+        long[] timestamps = new long[ring.capacity()];
+        for (int n = 0; n < NOTIFICATIONS; n++) {
+            decoder.decodeInto(packet, ring, n);
+            drainFrame(ring, records, timestamps);
+        }
+        start = allocatedBytes();
+        for (int n = 0; n < NOTIFICATIONS; n++) {
+            decoder.decodeInto(packet, ring, n);
+            drainFrame(ring, records, timestamps);
+        }
+        double ringBytes = (allocatedBytes() - start) / (double) NOTIFICATIONS;
+
+        System.out.printf("per notification (%d frames): legacy %.1f posts / %.1f bytes, ring %.1f bytes%n",
+                FRAMES_PER_PACKET, legacyPosts, legacyBytes, ringBytes);
+
+        assertEquals(FRAMES_PER_PACKET, legacyPosts, 0.0);
+        assertEquals(0, ring.getDroppedCount());
+        assertTrue(legacyBytes >= 16 * FRAMES_PER_PACKET);
+        assertTrue(ringBytes < 1.0);
+        assertEquals(97, lastSpo2);
+        assertEquals(130, lastPulseRate);
+        assertTrue(ppgSum > 0);
+    }
+}
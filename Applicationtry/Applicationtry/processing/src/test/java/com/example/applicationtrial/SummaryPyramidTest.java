@@ -0,0 +1,184 @@
+package com.example.applicationtrial;
+
+import com.example.Application.SummaryPyramid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link SummaryPyramid}: range queries agree with a scan over the samples,
+ * the levels hold one bucket per interval with samples, and the pyramids survive a save and load.
+ */
+public class SummaryPyramidTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long PERIOD_NANOS = 40_000_000;   // 25 Hz
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Two hours at 25 Hz with a gap of ten minutes in the middle. */
+    private static SummaryPyramid session(long[] timestamps, int[] values, long seed) {
+        Random random = new Random(seed);
+        SummaryPyramid pyramid = new SummaryPyramid();
+        long t = 1_000 * SECOND + 123;
+        for (int i = 0; i < timestamps.length; i++) {
+            if (i == timestamps.length / 2) {
+                t += 600 * SECOND;
+            }
+            timestamps[i] = t;
+            values[i] = 90 + random.nextInt(11);
+            t += PERIOD_NANOS;
+        }
+        for (int offset = 0; offset < timestamps.length; offset += 50) {
+            pyramid.addAll(timestamps, values, offset, Math.min(50, timestamps.length - offset));
+        }
+        return pyramid;
+    }
+
+    /** The samples whose bucket of the given width starts in [from, to). */
+    private static SummaryPyramid.Summary scan(long[] timestamps, int[] values, long from, long to, long width) {
+        SummaryPyramid.Summary summary = new SummaryPyramid.Summary();
+        for (int i = 0; i < timestamps.length; i++) {
+            long start = Math.floorDiv(timestamps[i], width) * width;
+            if (start >= from && start < to) {
+                summary.min = Math.min(summary.min, values[i]);
+                summary.max = Math.max(summary.max, values[i]);
+                summary.sum += values[i];
+                summary.count++;
+            }
+        }
+        return summary;
+    }
+
+    @Test
+    public void levelFor_coarsestLevelNotWiderThanTheResolution() {
+        assertEquals(SummaryPyramid.LEVEL_1S, SummaryPyramid.levelFor(1));
+        assertEquals(SummaryPyramid.LEVEL_1S, SummaryPyramid.levelFor(9 * SECOND));
+        assertEquals(SummaryPyramid.LEVEL_10S, SummaryPyramid.levelFor(10 * SECOND));
+        assertEquals(SummaryPyramid.LEVEL_1MIN, SummaryPyramid.levelFor(5 * 60 * SECOND));
+        assertEquals(SummaryPyramid.LEVEL_10MIN, SummaryPyramid.levelFor(15 * 60 * SECOND));
+        assertEquals(SummaryPyramid.LEVEL_COUNT - 1, SummaryPyramid.levelFor(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void summarize_matchesAScanOverTheSamples() {
+        long[] timestamps = new long[2 * 3600 * 25];
+        int[] values = new int[timestamps.length];
+        SummaryPyramid pyramid = session(timestamps, values, 1);
+        long first = timestamps[0];
+        long last = timestamps[timestamps.length - 1];
+        Random random = new Random(2);
+        SummaryPyramid.Summary summary = new SummaryPyramid.Summary();
+
+        for (int query = 0; query < 200; query++) {
+            long from = first - 60 * SECOND + (long) (random.nextDouble() * (last - first + 120 * SECOND));
+            long to = from + (long) (random.nextDouble() * (last - from + 60 * SECOND));
+            long resolution = (long) Math.pow(10, 9 + 3 * random.nextDouble());
+            long width = SummaryPyramid.getLevelNanos(SummaryPyramid.levelFor(resolution));
+            SummaryPyramid.Summary expected = scan(timestamps, values, from, to, width);
+
+            boolean found = pyramid.summarize(from, to, resolution, summary);
+            String range = "[" + from + ", " + to + ") at " + width;
+            assertEquals(range, !expected.isEmpty(), found);
+            assertEquals(range, expected.count, summary.count);
+            assertEquals(range, expected.sum, summary.sum);
+            if (found) {
+                assertEquals(range, expected.min, summary.min);
+                assertEquals(range, expected.max, summary.max);
+            }
+        }
+    }
+
+    @Test
+    public void levels_storeOnlyIntervalsWithSamples() {
+        long[] timestamps = new long[2 * 3600 * 25];
+        int[] values = new int[timestamps.length];
+        SummaryPyramid pyramid = session(timestamps, values, 3);
+
+        assertEquals(timestamps.length, pyramid.getSampleCount());
+        // two hours of samples, the gap of ten minutes has no buckets
+        int seconds = pyramid.getBucketCount(SummaryPyramid.LEVEL_1S);
+        assertTrue(seconds >= 7200 && seconds <= 7202);
+        int minutes = pyramid.getBucketCount(SummaryPyramid.LEVEL_1MIN);
+        assertTrue(minutes >= 120 && minutes <= 122);
+        assertTrue(pyramid.getBucketCount(SummaryPyramid.LEVEL_COUNT - 1) <= 2);
+    }
+
+    @Test
+    public void outOfOrderSample_isCountedInTheNewestBucket() {
+        SummaryPyramid pyramid = new SummaryPyramid();
+        pyramid.add(10 * SECOND, 5);
+        pyramid.add(12 * SECOND, 7);
+        pyramid.add(11 * SECOND, 1);
+        SummaryPyramid.Summary summary = new SummaryPyramid.Summary();
+
+        assertTrue(pyramid.summarize(12 * SECOND, 13 * SECOND, SECOND, summary));
+        assertEquals(2, summary.count);
+        assertEquals(1, summary.min);
+        assertEquals(3, pyramid.getSampleCount());
+    }
+
+    @Test
+    public void decimateMinMax_boundedByTheBuckets() {
+        long[] timestamps = new long[2 * 3600 * 25];
+        int[] values = new int[timestamps.length];
+        SummaryPyramid pyramid = session(timestamps, values, 4);
+        double[] x = new double[2 * 1080];
+        double[] y = new double[2 * 1080];
+        long from = timestamps[0];
+        long to = timestamps[timestamps.length - 1] + 1;
+
+        int points = pyramid.decimateMinMax(from, to, 1080, x, y);
+        assertTrue(points > 0 && points <= x.length);
+        for (int i = 0; i < points; i += 2) {
+            assertEquals(x[i], x[i + 1], 0);
+            assertTrue(y[i] <= y[i + 1]);
+            assertTrue(y[i] >= 90 && y[i + 1] <= 100);
+        }
+        assertEquals(0, pyramid.decimateMinMax(from, to, 1080, new double[1], new double[1]));
+    }
+
+    @Test
+    public void startAndEnd_coverTheSecondsWithSamples() {
+        SummaryPyramid pyramid = new SummaryPyramid();
+        assertEquals(Long.MAX_VALUE, pyramid.getStartNanos());
+        assertEquals(Long.MIN_VALUE, pyramid.getEndNanos());
+        pyramid.add(10 * SECOND + 300, 5);
+        pyramid.add(12 * SECOND + SECOND / 2, 7);
+
+        assertEquals(10 * SECOND, pyramid.getStartNanos());
+        assertEquals(13 * SECOND, pyramid.getEndNanos());
+    }
+
+    @Test
+    public void saveAndLoad_restoresThePyramids() throws Exception {
+        long[] timestamps = new long[3600 * 25];
+        int[] values = new int[timestamps.length];
+        SummaryPyramid[] saved = {session(timestamps, values, 5), null, session(timestamps, values, 6)};
+        File file = new File(folder.getRoot(), "test.sum");
+        SummaryPyramid.save(file, saved);
+        SummaryPyramid[] loaded = SummaryPyramid.load(file);
+
+        assertEquals(3, loaded.length);
+        assertNull(loaded[1]);
+        SummaryPyramid.Summary expected = new SummaryPyramid.Summary();
+        SummaryPyramid.Summary actual = new SummaryPyramid.Summary();
+        for (int channel : new int[]{0, 2}) {
+            assertEquals(saved[channel].getSampleCount(), loaded[channel].getSampleCount());
+            for (int level = 0; level < SummaryPyramid.LEVEL_COUNT; level++) {
+                assertEquals(saved[channel].getBucketCount(level), loaded[channel].getBucketCount(level));
+            }
+            saved[channel].summarize(Long.MIN_VALUE / 2, Long.MAX_VALUE / 2, SECOND, expected);
+            loaded[channel].summarize(Long.MIN_VALUE / 2, Long.MAX_VALUE / 2, SECOND, actual);
+            assertEquals(expected.toString(), actual.toString());
+        }
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+}
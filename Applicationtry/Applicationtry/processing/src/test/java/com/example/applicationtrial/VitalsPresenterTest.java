@@ -0,0 +1,135 @@
+package com.example.applicationtrial;
+
+import com.example.Application.VitalsPresenter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link VitalsPresenter}.
+ */
+public class VitalsPresenterTest {
+    private static final long FRAME_NANOS = 16_666_667L;
+
+    /** Collects what a view would show. */
+    private static class View implements VitalsPresenter.TextTarget {
+        final List<String> texts = new ArrayList<>();
+
+        @Override
+        public void setText(char[] text, int start, int length) {
+            texts.add(new String(text, start, length));
+        }
+
+        String last() {
+            return texts.get(texts.size() - 1);
+        }
+    }
+
+    @Test
+    public void formatsPartsAndValues() {
+        VitalsPresenter presenter = new VitalsPresenter();
+        View view = new View();
+        VitalsPresenter.Field field = presenter.addField(view, "PPG: ", ", HeatRate: ", "bpm, SPO2: ", "%");
+
+        field.set(0, 0);
+        field.set(1, -72);
+        field.set(2, Integer.MAX_VALUE);
+        presenter.onFrame(0);
+
+        assertEquals("PPG: 0, HeatRate: -72bpm, SPO2: " + Integer.MAX_VALUE + "%", view.last());
+    }
+
+    @Test
+    public void nothingIsShownBeforeTheFirstValue() {
+        VitalsPresenter presenter = new VitalsPresenter();
+        View view = new View();
+        presenter.addField(view, "SpO2: ", "%");
+
+        presenter.onFrame(0);
+
+        assertTrue(view.texts.isEmpty());
+    }
+
+    @Test
+    public void unchangedValuesAreNotPublishedAgain() {
+        VitalsPresenter presenter = new VitalsPresenter();
+        View view = new View();
+        VitalsPresenter.Field field = presenter.addField(view, "SpO2: ", "%");
+
+        for (int frame = 0; frame < 600; frame++) {
+            field.set(0, 97);
+            presenter.onFrame(frame * FRAME_NANOS);
+        }
+
+        assertEquals(1, presenter.getTextUpdateCount());
+        assertEquals("SpO2: 97%", view.last());
+    }
+
+    @Test
+    public void invalidate_republishesForNewViews() {
+        VitalsPresenter presenter = new VitalsPresenter();
+        View view = new View();
+        VitalsPresenter.Field field = presenter.addField(view, "SpO2: ", "%");
+        presenter.addField(view, "never set");
+        field.set(0, 97);
+        presenter.onFrame(0);
+        presenter.onFrame(FRAME_NANOS);
+
+        // e.g. the activity came back with fresh views, the unchanged value is shown right away
+        presenter.invalidate();
+        presenter.onFrame(2 * FRAME_NANOS);
+
+        assertEquals(2, presenter.getTextUpdateCount());
+        assertEquals(Arrays.asList("SpO2: 97%", "SpO2: 97%"), view.texts);
+    }
+
+    @Test
+    public void warningIsAddedAndRemoved() {
+        VitalsPresenter presenter = new VitalsPresenter();
+        presenter.setUpdateInterval(0);
+        View view = new View();
+        VitalsPresenter.Field field = presenter.addField(view, "Pulse Rate: ", " bpm");
+
+        field.set(0, 120);
+        field.setWarning("Warning: Pulse Rate value out of range!");
+        presenter.onFrame(0);
+        assertEquals("Pulse Rate: 120 bpm\nWarning: Pulse Rate value out of range!", view.last());
+
+        field.setWarning(null);
+        presenter.onFrame(FRAME_NANOS);
+        assertEquals("Pulse Rate: 120 bpm", view.last());
+        assertEquals(2, view.texts.size());
+    }
+
+    @Test
+    public void changingValues_arePublishedAtTheUpdateInterval() {
+        VitalsPresenter presenter = new VitalsPresenter();
+        View[] views = {new View(), new View(), new View()};
+        VitalsPresenter.Field[] fields = new VitalsPresenter.Field[views.length];
+        for (int i = 0; i < views.length; i++) {
+            fields[i] = presenter.addField(views[i], "value: ", "");
+        }
+
+        // 10 s at 60 frames per second, every value changes every frame
+        int frames = 600;
+        for (int frame = 0; frame < frames; frame++) {
+            for (VitalsPresenter.Field field : fields) {
+                field.set(0, frame);
+            }
+            presenter.onFrame(frame * FRAME_NANOS);
+        }
+
+        long perFrameUpdates = (long) frames * fields.length;
+        System.out.println("text updates in 10 s: " + presenter.getTextUpdateCount()
+                + " instead of " + perFrameUpdates);
+        // every 100 ms at most, i.e. 10 per second and field
+        assertTrue(presenter.getTextUpdateCount() <= 10 * 10 * fields.length + fields.length);
+        assertTrue(presenter.getTextUpdateCount() * 5 <= perFrameUpdates);
+        assertEquals("value: " + (frames - 1) / 6 * 6, views[0].last());
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.applicationtrial;
+
+import com.example.Application.SampleRingBuffer;
+import com.example.Application.VitalsRuleEngine;
+import com.example.Application.WorkerPool;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link VitalsRuleEngine}. The listener runs directly on the worker thread,
+ * or on the thread of the pool the engine runs on.
+ */
+public class VitalsRuleEngineTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int CHANNEL = SampleRingBuffer.LANE_SPO2;
+
+    private final List<String> events = new ArrayList<>();
+    private VitalsRuleEngine engine;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (engine != null) {
+            engine.stop();
+        }
+    }
+
+    private VitalsRuleEngine start(VitalsRuleEngine.Rule... rules) {
+        return start(null, rules);
+    }
+
+    private VitalsRuleEngine start(WorkerPool pool, VitalsRuleEngine.Rule... rules) {
+        engine = new VitalsRuleEngine(SampleRingBuffer.DEVICE_LANES, pool, Runnable::run,
+                (rule, active, timestampNanos, value) -> {
+                    synchronized (events) {
+                        events.add(rule.name + (active ? " on " : " off ") + timestampNanos / MS);
+                    }
+                });
+        for (VitalsRuleEngine.Rule rule : rules) {
+            engine.addRule(rule);
+        }
+        engine.start();
+        return engine;
+    }
+
+    /** Submits one value per 10 ms starting at the given time and waits until they are evaluated. */
+    private void feed(long startMs, int... values) throws InterruptedException {
+        long[] timestamps = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            timestamps[i] = (startMs + 10L * i) * MS;
+        }
+        long expected = engine.getEvaluatedSampleCount() + values.length;
+        engine.submit(CHANNEL, timestamps, values, 0, values.length);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (engine.getEvaluatedSampleCount() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, engine.getEvaluatedSampleCount());
+    }
+
+    private static int[] repeat(int value, int count) {
+        int[] values = new int[count];
+        java.util.Arrays.fill(values, value);
+        return values;
+    }
+
+    private List<String> events() {
+        synchronized (events) {
+            return new ArrayList<>(events);
+        }
+    }
+
+    @Test
+    public void onlyTransitionsAreReported() throws InterruptedException {
+        start(new VitalsRuleEngine.Rule("low", CHANNEL, VitalsRuleEngine.SEVERITY_WARNING,
+                95, 100, 0, 0, 0));
+
+        feed(0, repeat(97, 100));
+        feed(1000, repeat(90, 100));
+        feed(2000, repeat(97, 100));
+
+        assertEquals(2, engine.getTransitionCount());
+        assertEquals("[low on 1000, low off 2000]", events().toString());
+    }
+
+    @Test
+    public void pool_evaluatesLikeTheOwnThread() throws InterruptedException {
+        WorkerPool pool = new WorkerPool("rules", 2, 1);
+        try {
+            start(pool, new VitalsRuleEngine.Rule("low", CHANNEL, VitalsRuleEngine.SEVERITY_WARNING,
+                    95, 100, 0, 0, 0));
+
+            feed(0, repeat(97, 100));
+            feed(1000, repeat(90, 100));
+            feed(2000, repeat(97, 100));
+
+            assertEquals("[low on 1000, low off 2000]", events().toString());
+            assertTrue(pool.getRunCount() > 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void hysteresis_valueAtTheLimitDoesNotFlicker() throws InterruptedException {
+        start(new VitalsRuleEngine.Rule("low", CHANNEL, VitalsRuleEngine.SEVERITY_WARNING,
+                95, 100, 2, 0, 0));
+
+        int[] jitter = new int[200];
+        for (int i = 0; i < jitter.length; i++) {
+            jitter[i] = i % 2 == 0 ? 94 : 96;
+        }
+        feed(0, jitter);
+        assertEquals("[low on 0]", events().toString());
+
+        // 96 is in range, but not by the hysteresis
+        feed(2000, 97);
+        assertEquals("[low on 0, low off 2000]", events().toString());
+    }
+
+    @Test
+    public void minDuration_shortExcursionsAreIgnored() throws InterruptedException {
+        start(new VitalsRuleEngine.Rule("low", CHANNEL, VitalsRuleEngine.SEVERITY_CRITICAL,
+                95, 100, 0, 500 * MS, 0));
+
+        feed(0, repeat(90, 40));
+        feed(400, repeat(97, 10));
+        assertEquals(0, engine.getTransitionCount());
+
+        feed(1000, repeat(90, 60));
+        assertEquals("[low on 1500]", events().toString());
+    }
+
+    @Test
+    public void window_outlierIsAveragedAway() throws InterruptedException {
+        start(new VitalsRuleEngine.Rule("low", CHANNEL, VitalsRuleEngine.SEVERITY_WARNING,
+                95, 100, 0, 0, 1000 * MS));
+
+        feed(0, repeat(98, 100));
+        feed(1000, 50);
+        feed(1010, repeat(98, 100));
+        assertEquals(0, engine.getTransitionCount());
+
+        // the mean drops below 95 once enough low samples are in the window
+        feed(2010, repeat(90, 100));
+        assertEquals("[low on 2380]", events().toString());
+    }
+
+    @Test
+    public void rulesOfOtherChannelsAreNotTouched() throws InterruptedException {
+        start(new VitalsRuleEngine.Rule("pulse", SampleRingBuffer.LANE_PULSE_RATE,
+                VitalsRuleEngine.SEVERITY_WARNING, 60, 100, 0, 0, 0));
+
+        long before = engine.getEvaluatedSampleCount();
+        engine.submit(SampleRingBuffer.LANE_PPG, 0, 10);
+        Thread.sleep(50);
+
+        assertEquals(before, engine.getEvaluatedSampleCount());
+        assertEquals(0, engine.getDroppedSampleCount());
+    }
+
+    @Test
+    public void longWindow_isAveragedFromTheSummary() throws InterruptedException {
+        // one minute at 100 Hz is more than the raw window holds
+        start(new VitalsRuleEngine.Rule("low", CHANNEL, VitalsRuleEngine.SEVERITY_WARNING,
+                95, 100, 0, 0, 60_000 * MS));
+
+        for (int second = 0; second < 60; second += 10) {
+            feed(second * 1000L, repeat(98, 1000));
+        }
+        for (int second = 60; second < 90; second += 10) {
+            feed(second * 1000L, repeat(90, 1000));
+        }
+
+        // the mean of the minute drops below 95 after 22.5 s, up to a second of bucket rounding
+        List<String> events = events();
+        assertEquals(events.toString(), 1, events.size());
+        long onMs = Long.parseLong(events.get(0).substring("low on ".length()));
+        assertTrue(events.toString(), onMs >= 81_500 && onMs <= 83_500);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addRule_afterStartFails() {
+        start();
+        engine.addRule(new VitalsRuleEngine.Rule("late", CHANNEL, VitalsRuleEngine.SEVERITY_INFO,
+                0, 1, 0, 0, 0));
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.applicationtrial;
+
+import com.example.Application.WorkerPool;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link WorkerPool}: a task never runs on two threads at once, runs again
+ * when it was scheduled while running, and the number of tasks is bounded.
+ */
+public class WorkerPoolTest {
+    private final WorkerPool pool = new WorkerPool("test", 4, 2);
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void task_neverRunsConcurrently() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger runs = new AtomicInteger();
+        WorkerPool.Task task = pool.newTask(() -> {
+            if (running.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            runs.incrementAndGet();
+            Thread.yield();
+            running.decrementAndGet();
+        });
+
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    task.schedule();
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        pool.newTask(done::countDown).schedule();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(0, overlaps.get());
+        // coalesced: far fewer runs than schedules
+        assertTrue(runs.get() > 0 && runs.get() <= 40_000);
+    }
+
+    @Test
+    public void scheduleWhileRunning_runsAgain() throws InterruptedException {
+        CountDownLatch firstRun = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch twoRuns = new CountDownLatch(2);
+        WorkerPool.Task task = pool.newTask(() -> {
+            firstRun.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            twoRuns.countDown();
+        });
+
+        task.schedule();
+        assertTrue(firstRun.await(5, TimeUnit.SECONDS));
+        // work that arrives while the task runs must not be left behind
+        task.schedule();
+        task.schedule();
+        release.countDown();
+
+        assertTrue(twoRuns.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void newTask_isBounded() {
+        pool.newTask(() -> { });
+        pool.newTask(() -> { });
+        pool.newTask(() -> { });
+    }
+}
@@ -21,6 +21,7 @@ dependencyResolutionManagement {
 
 rootProject.name = "Applicationtry"
 include(":app")
+include(":processing")
 
 
  
\ No newline at end of file
@@ -24,14 +24,33 @@ const int buttonPinPPG = 25;
 #define SERVICE_UUID        "ebf2b73d-dfa2-4213-9203-37b161103e98" 
 #define CHARACTERISTIC_UUID "eee60e57-8045-4567-a683-59997efbcd0a"
 
+// Frame format: several samples per notification (set to 0 to send the old 5-byte packet per sample)
+#define PACKED_FRAMES 1
+#define FRAME_VERSION 1
+#define FRAME_HEADER_LENGTH 8
+#define ATT_HEADER_LENGTH 3
+#define REQUESTED_MTU 185
+#define SAMPLES_PER_FRAME (REQUESTED_MTU - ATT_HEADER_LENGTH - FRAME_HEADER_LENGTH)   // at most; fewer if the negotiated MTU is smaller
+#define MAX_FRAME_DELAY_MS 100   // a frame is sent once it is full or its first sample is this old, so the waveform stays live
+#define PPG_SAMPLES_PER_BEAT 30  // one beat of precomputedPPG, i.e. 100 bpm at 50 Hz
+#define MOCK_SPO2 98             // the mockup has no oxygen sensor, it sends a normal saturation
+
+BLEServer *pServer;
 BLECharacteristic *pCharacteristic;
 bool deviceConnected=false;
+uint16_t connId = 0;
+uint16_t sequenceNumber = 0;   // sequence number of the next sample, lets the app detect lost frames
+byte frame[FRAME_HEADER_LENGTH + SAMPLES_PER_FRAME];
+int frameCount = 0;
+unsigned long frameStartTime = 0;   // millis() of the first sample in the frame
 int waveType = 0;  
 unsigned long lastSampleTime = 0;
 
 class MyServerCallbacks: public BLEServerCallbacks {
-    void onConnect(BLEServer* pServer) {
+    void onConnect(BLEServer* pServer, esp_ble_gatts_cb_param_t *param) {
       deviceConnected = true;
+      connId = param->connect.conn_id;
+      frameCount = 0;
       Serial.println("Device connected");
     };
 
@@ -67,7 +86,9 @@ void setup() {
 
  // BLE
   BLEDevice::init("ESP32");
-  BLEServer *pServer = BLEDevice::createServer();
+  BLEDevice::setMTU(REQUESTED_MTU);
+  pServer = BLEDevice::createServer();
+  pServer->setCallbacks(new MyServerCallbacks());
   BLEService *pService = pServer->createService(SERVICE_UUID);
   pCharacteristic = pService->createCharacteristic(
                       CHARACTERISTIC_UUID,
@@ -135,22 +156,52 @@ void loop() {
 
       // Converting float to byte for BLE transmission 
       int waveValueInt = (int)round(waveValue);
+      // the rate of the generated beats: one wave period, or one beat of the PPG table
+      int heartRate = waveType == 3 ? 60 * samplingRate / PPG_SAMPLES_PER_BEAT : (int)round(frequency * 60);
+
+#if PACKED_FRAMES
+      // collect the samples and send them together once the frame is full; the MTU is only known while connected
+      if (deviceConnected) {
+        if (frameCount == 0) {
+          frameStartTime = currentTime;
+        }
+        frame[FRAME_HEADER_LENGTH + frameCount] = (byte)waveValueInt;
+        frameCount++;
+        int samplesPerFrame = min(SAMPLES_PER_FRAME, pServer->getPeerMTU(connId) - ATT_HEADER_LENGTH - FRAME_HEADER_LENGTH);
+        if (frameCount >= samplesPerFrame || currentTime - frameStartTime >= MAX_FRAME_DELAY_MS) {
+          frame[0] = FRAME_VERSION;
+          frame[1] = (byte)(sequenceNumber & 0xFF);
+          frame[2] = (byte)(sequenceNumber >> 8);
+          frame[3] = (byte)(samplingRate & 0xFF);
+          frame[4] = (byte)(samplingRate >> 8);
+          frame[5] = (byte)frameCount;
+          frame[6] = (byte)heartRate;   // heart rate
+          frame[7] = (byte)MOCK_SPO2;   // O2 saturation
+
+          pCharacteristic->setValue(frame, FRAME_HEADER_LENGTH + frameCount);
+          pCharacteristic->notify();
+          sequenceNumber += frameCount;
+          frameCount = 0;
+        }
+      }
+#else
       byte waveBytePaket[5] = {0,0,0,0,0};
       
       // ppg
       waveBytePaket[1] = (byte)waveValueInt;
 
       // heart rate
-      waveBytePaket[3] = (byte) (waveValueInt*frequency*60); 
+      waveBytePaket[3] = (byte)heartRate;
      
      // O2 saturation
-     waveBytePaket[4] = (byte) (waveValueInt); 
+     waveBytePaket[4] = (byte)MOCK_SPO2;
        
 
       // Sending wave value as byte via BLE to Andoid App
       
       pCharacteristic->setValue(waveBytePaket, 5);
       pCharacteristic->notify();
+#endif
       
         
     }